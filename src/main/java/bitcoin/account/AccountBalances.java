@@ -0,0 +1,50 @@
+package bitcoin.account;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import lombok.Value;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
+
+import static io.vavr.API.Tuple;
+import static org.bitcoinj.wallet.Wallet.BalanceType.AVAILABLE;
+import static org.bitcoinj.wallet.Wallet.BalanceType.AVAILABLE_SPENDABLE;
+import static org.bitcoinj.wallet.Wallet.BalanceType.ESTIMATED_SPENDABLE;
+
+// Balances of every account of a wallet, summed from the outputs of the wallet after each change like the wallet snapshot,
+// so asking for the balance of one of thousands of accounts is a lookup
+@Value
+class AccountBalances {
+
+    Map<Tuple2<String, BalanceType>, Coin> balanceByAccountIdAndType;
+
+    static AccountBalances of(Wallet wallet, AccountBook accountBook) {
+
+        Map<Tuple2<String, BalanceType>, Coin> balances = HashMap.empty();
+        for (val balanceType : BalanceType.values()) {
+            val available = balanceType == AVAILABLE || balanceType == AVAILABLE_SPENDABLE;
+            val spendable = balanceType == AVAILABLE_SPENDABLE || balanceType == ESTIMATED_SPENDABLE;
+            // The same outputs Wallet.getBalance counts, available ones are those the default coin selector would spend
+            val outputs = List.ofAll(wallet.calculateAllSpendCandidates(available, spendable))
+                    .filter(output -> !available || DefaultCoinSelector.isSelectable(output.getParentTransaction()));
+
+            for (val output : outputs) {
+                val key = accountBook.findAccountIdOf(output).map(accountId -> Tuple(accountId, balanceType));
+                if (key.isDefined()) {
+                    balances = balances.put(key.get(), balances.get(key.get()).getOrElse(Coin.ZERO).add(output.getValue()));
+                }
+            }
+        }
+
+        return new AccountBalances(balances);
+    }
+
+    Coin getBalance(String accountId, BalanceType balanceType) {
+        return balanceByAccountIdAndType.get(Tuple(accountId, balanceType)).getOrElse(Coin.ZERO);
+    }
+}
@@ -0,0 +1,124 @@
+package bitcoin.account;
+
+import bitcoin.config.AddressCache;
+import com.google.protobuf.ByteString;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.HDUtils;
+import org.bitcoinj.wallet.CoinSelector;
+import org.bitcoinj.wallet.KeyChain.KeyPurpose;
+import org.bitcoinj.wallet.Wallet;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static lombok.AccessLevel.PRIVATE;
+
+// Accounts of one wallet, each one a label over the addresses handed out for it. The addresses of an account are
+// kept in a tag of the wallet, so they are saved and loaded with the wallet file. Once a wallet has a book, spends
+// of the whole wallet only select the outputs no account owns.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class AccountBook {
+
+    private static final String TAG_PREFIX = "account:";
+
+    private static final int HASH160_SIZE = 20;
+
+    Wallet wallet;
+
+    AddressCache addressCache;
+
+    CoinSelector walletCoinSelector;
+
+    Map<String, List<Address>> addressesByAccountId = new ConcurrentHashMap<>();
+
+    Map<Address, String> accountIdByAddress = new ConcurrentHashMap<>();
+
+    AccountBook(Wallet wallet, AddressCache addressCache) {
+        this.wallet = wallet;
+        this.addressCache = addressCache;
+        this.walletCoinSelector = wallet.getCoinSelector();
+        wallet.getTags().forEach((tag, addresses) -> {
+            if (tag.startsWith(TAG_PREFIX)) {
+                val accountId = tag.substring(TAG_PREFIX.length());
+                val bytes = addresses.toByteArray();
+                for (int offset = 0; offset < bytes.length; offset += HASH160_SIZE) {
+                    index(accountId, new Address(networkParameters(), Arrays.copyOfRange(bytes, offset, offset + HASH160_SIZE)));
+                }
+            }
+        });
+    }
+
+    // Taking the key from the key chain does not save the wallet, setting the tag does. The key and the account it
+    // belongs to are written in that one save, so the file never holds an address handed out without its account.
+    synchronized Address deriveAddress(String accountId, KeyPurpose keyPurpose) {
+
+        val address = wallet.getActiveKeyChain().getKey(keyPurpose).toAddress(networkParameters());
+        assignAddress(accountId, address);
+
+        return address;
+    }
+
+    // The change key a spend would take next. It is only issued once a transaction paying it is committed, so the
+    // spends of the wallet must not overlap between looking at it and committing. Looking ahead first makes it one of
+    // the keys the wallet already watches for.
+    Address peekChangeAddress() {
+
+        val keyChain = wallet.getActiveKeyChain();
+        keyChain.maybeLookAhead();
+        val path = HDUtils.append(HDUtils.append(keyChain.getWatchingKey().getPath(), ChildNumber.ONE), new ChildNumber(keyChain.getIssuedInternalKeys()));
+
+        return keyChain.getKeyByPath(path, false).toAddress(networkParameters());
+    }
+
+    // The tag only grows, the new address is appended to it rather than the whole account written again
+    synchronized void assignAddress(String accountId, Address address) {
+        index(accountId, address);
+        val tag = TAG_PREFIX + accountId;
+        wallet.setTag(tag, Option.of(wallet.maybeGetTag(tag)).getOrElse(ByteString.EMPTY).concat(ByteString.copyFrom(address.getHash160())));
+    }
+
+    // The outputs of the account, or without one the outputs no account owns, offered to the selector the wallet had
+    // before it got its book
+    CoinSelector coinSelector(Option<String> accountId) {
+        return new AccountOutputsSelector(this, accountId, walletCoinSelector);
+    }
+
+    static boolean hasAccounts(Wallet wallet) {
+        return List.ofAll(wallet.getTags().keySet()).exists(tag -> tag.startsWith(TAG_PREFIX));
+    }
+
+    boolean isOf(Wallet otherWallet) {
+        return wallet == otherWallet;
+    }
+
+    boolean contains(String accountId) {
+        return addressesByAccountId.containsKey(accountId);
+    }
+
+    List<String> findAccountIds() {
+        return List.ofAll(addressesByAccountId.keySet()).sorted();
+    }
+
+    List<Address> findAddresses(String accountId) {
+        return Option.of(addressesByAccountId.get(accountId)).getOrElse(List.empty());
+    }
+
+    Option<String> findAccountIdOf(TransactionOutput output) {
+        return Try.of(() -> addressCache.fromScriptForcingPayToPubKey(output.getScriptBytes())).toOption()
+                .flatMap(address -> Option.of(accountIdByAddress.get(address)));
+    }
+
+    private void index(String accountId, Address address) {
+        addressesByAccountId.merge(accountId, List.of(address), List::appendAll);
+        accountIdByAddress.put(address, accountId);
+    }
+}
@@ -0,0 +1,32 @@
+package bitcoin.account;
+
+import io.vavr.collection.Stream;
+import io.vavr.control.Option;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.CoinSelector;
+
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Only offers the outputs owned by the account, or with no account the outputs no account owns, to the selector of the
+// wallet, which still leaves out reserved ones
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class AccountOutputsSelector implements CoinSelector {
+
+    AccountBook accountBook;
+
+    Option<String> accountId;
+
+    CoinSelector walletCoinSelector;
+
+    @Override
+    public CoinSelection select(Coin target, List<TransactionOutput> candidates) {
+        return walletCoinSelector.select(target, Stream.ofAll(candidates).filter(candidate -> accountBook.findAccountIdOf(candidate).equals(accountId)).toJavaList());
+    }
+}
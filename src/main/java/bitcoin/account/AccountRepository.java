@@ -0,0 +1,43 @@
+package bitcoin.account;
+
+import bitcoin.wallet.WalletReleasedEvent;
+import io.vavr.control.Option;
+import lombok.experimental.FieldDefaults;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class AccountRepository {
+
+    Map<UUID, AccountBook> accountBookByWalletId = new ConcurrentHashMap<>();
+
+    Map<UUID, AccountBalances> accountBalancesByWalletId = new ConcurrentHashMap<>();
+
+    // A wallet handed to another node and back is loaded again, a book of the wallet it was before is made anew
+    AccountBook findOrCreateAccountBook(UUID walletId, Wallet wallet, Function<UUID, AccountBook> accountBookCreator) {
+        return accountBookByWalletId.compute(walletId, (id, accountBook) -> accountBook != null && accountBook.isOf(wallet) ? accountBook : accountBookCreator.apply(id));
+    }
+
+    Option<AccountBalances> findAccountBalancesByWalletId(UUID walletId) {
+        return Option.of(accountBalancesByWalletId.get(walletId));
+    }
+
+    void saveAccountBalances(UUID walletId, AccountBalances accountBalances) {
+        accountBalancesByWalletId.put(walletId, accountBalances);
+    }
+
+    @EventListener
+    public void onWalletReleased(WalletReleasedEvent event) {
+        accountBookByWalletId.remove(event.getWalletId());
+        accountBalancesByWalletId.remove(event.getWalletId());
+    }
+}
@@ -0,0 +1,68 @@
+package bitcoin.account;
+
+import bitcoin.config.AddressCache;
+import bitcoin.account.dto.AccountsDto;
+import bitcoin.transaction.dto.CreateTransactionDto;
+import bitcoin.transaction.dto.StreamedTransactionsDto;
+import bitcoin.transaction.dto.TransactionDto;
+import bitcoin.wallet.dto.AddressDto;
+import bitcoin.wallet.dto.BalanceDto;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+import static bitcoin.fee.FeeTarget.SIX_BLOCKS;
+import static io.vavr.API.Option;
+import static io.vavr.API.Tuple;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.wallet.Wallet.BalanceType.AVAILABLE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/wallet/{walletId}/account", produces = APPLICATION_JSON_VALUE)
+public class AccountResource {
+
+    AccountService accountService;
+
+    AddressCache addressCache;
+
+    @GetMapping
+    public AccountsDto findAccountsOfWallet(@PathVariable("walletId") UUID walletId) {
+        return new AccountsDto(accountService.findAccountsOfWallet(walletId));
+    }
+
+    @PutMapping(path = "/{accountId}/address")
+    public AddressDto deriveReceiveAddress(@PathVariable("walletId") UUID walletId, @PathVariable("accountId") String accountId) {
+        return new AddressDto(accountService.deriveReceiveAddress(walletId, accountId).toBase58());
+    }
+
+    @GetMapping(path = "/{accountId}/balance")
+    public BalanceDto findBalanceOfAccount(@PathVariable("walletId") UUID walletId, @PathVariable("accountId") String accountId, @RequestParam(value = "balanceType", required = false) Wallet.BalanceType balanceType) {
+        return new BalanceDto(accountService.findBalanceOfAccount(walletId, accountId, Option(balanceType).getOrElse(AVAILABLE)));
+    }
+
+    @GetMapping(path = "/{accountId}/transaction")
+    public StreamedTransactionsDto findTransactionsOfAccount(@PathVariable("walletId") UUID walletId, @PathVariable("accountId") String accountId) {
+        return StreamedTransactionsDto.of(accountService.findTransactionsOfAccount(walletId, accountId).map(storedTransaction -> Tuple(storedTransaction.getTransaction(), storedTransaction.getFee())));
+    }
+
+    @PutMapping(path = "/{accountId}/transaction/send")
+    public TransactionDto sendFundsFromAccount(@PathVariable("walletId") UUID walletId, @PathVariable("accountId") String accountId, @RequestBody CreateTransactionDto createTransactionDto) {
+        val transaction = accountService.sendFundsFromAccount(walletId, accountId, addressCache.fromBase58(createTransactionDto.getAddress()), createTransactionDto.getAmount(), Option(createTransactionDto.getFeeTarget()).getOrElse(SIX_BLOCKS));
+
+        return TransactionDto.of(transaction, Option(transaction.getFee()).map(Coin::longValue).getOrNull());
+    }
+}
@@ -0,0 +1,185 @@
+package bitcoin.account;
+
+import bitcoin.config.AddressCache;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.history.StoredTransaction;
+import bitcoin.history.TransactionHistoryStore;
+import bitcoin.transaction.SpendQueue;
+import bitcoin.wallet.WalletListenerExecutors;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WalletStartedEvent;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.InsufficientMoneyException;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.config.UnitConfig.SATOSHI_TO_BITCOIN_CONVERSION;
+import static java.math.MathContext.DECIMAL128;
+import static java.math.RoundingMode.HALF_EVEN;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.wallet.KeyChain.KeyPurpose.RECEIVE_FUNDS;
+
+// Many logical accounts inside one HD wallet. An account owns the outputs paid to the addresses handed out for it,
+// its balance and history are those outputs, and its spends only select them and send the change back to it.
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+public class AccountService {
+
+    private static final Pattern ACCOUNT_ID = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    WalletRepository walletRepository;
+
+    AccountRepository accountRepository;
+
+    TransactionHistoryStore transactionHistoryStore;
+
+    FeeEstimator feeEstimator;
+
+    SpendQueue spendQueue;
+
+    AddressCache addressCache;
+
+    WalletListenerExecutors walletListenerExecutors;
+
+    Set<UUID> walletIdsWithBalancesScheduled = ConcurrentHashMap.newKeySet();
+
+    ExecutorService balancesExecutor = newSingleThreadExecutor();
+
+    // A wallet with accounts gets its book as it starts, before a spend of the whole wallet could take their outputs
+    @EventListener
+    public void onWalletStarted(WalletStartedEvent event) {
+        if (AccountBook.hasAccounts(event.getWallet())) {
+            accountBook(event.getWalletId(), event.getWallet());
+        }
+    }
+
+    List<String> findAccountsOfWallet(UUID walletId) {
+        return accountBook(walletId).findAccountIds();
+    }
+
+    // The first address handed out for an account opens it
+    Address deriveReceiveAddress(UUID walletId, String accountId) {
+
+        if (!ACCOUNT_ID.matcher(accountId).matches()) {
+            throw new RuntimeException(String.format("Invalid accountId=%s, it must match %s", accountId, ACCOUNT_ID.pattern()));
+        }
+
+        return accountBook(walletId).deriveAddress(accountId, RECEIVE_FUNDS);
+    }
+
+    BigDecimal findBalanceOfAccount(UUID walletId, String accountId, Wallet.BalanceType balanceType) {
+
+        verifyAccountExists(walletId, accountId);
+        val accountBalances = accountRepository.findAccountBalancesByWalletId(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        return new BigDecimal(accountBalances.getBalance(accountId, balanceType).longValue()).divide(SATOSHI_TO_BITCOIN_CONVERSION, 8, HALF_EVEN);
+    }
+
+    // The history is indexed by address, an account's history is the union of the histories of its addresses
+    Seq<StoredTransaction> findTransactionsOfAccount(UUID walletId, String accountId) {
+
+        val addresses = verifyAccountExists(walletId, accountId).findAddresses(accountId);
+
+        return addresses.flatMap(address -> transactionHistoryStore.findTransactionsByAddress(walletId, address))
+                .distinctBy(storedTransaction -> storedTransaction.getTransaction().getHash())
+                .sorted(Comparator.comparingLong(StoredTransaction::getUpdateTime).reversed());
+    }
+
+    // Runs on the spend queue of the wallet, so no other spend takes the change key between looking at it and
+    // committing. The change address only joins the account when the transaction has change.
+    Transaction sendFundsFromAccount(UUID walletId, String accountId, Address address, BigDecimal amount, FeeTarget feeTarget) {
+
+        val accountBook = verifyAccountExists(walletId, accountId);
+
+        val sendRequest = SendRequest.to(address, Coin.valueOf(amount.multiply(SATOSHI_TO_BITCOIN_CONVERSION, DECIMAL128).longValueExact()));
+        sendRequest.feePerKb = feeEstimator.estimateFeePerKb(feeTarget);
+
+        val transaction = spendQueue.spend(walletId, wallet -> sendFromAccount(walletId, wallet, accountBook, accountId, sendRequest));
+        log.info("Account={} of wallet={} sent {} to address={} with tx={}", accountId, walletId, amount, address, transaction.getHashAsString());
+
+        return transaction;
+    }
+
+    // The account book of a wallet is read from its tags the first time one of its accounts is used, from then on
+    // its balances follow the wallet and its own spends leave the outputs of the accounts alone
+    private AccountBook accountBook(UUID walletId) {
+
+        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        return accountBook(walletId, wallet);
+    }
+
+    private AccountBook accountBook(UUID walletId, Wallet wallet) {
+        return accountRepository.findOrCreateAccountBook(walletId, wallet, id -> {
+            val accountBook = new AccountBook(wallet, addressCache);
+            wallet.setCoinSelector(accountBook.coinSelector(Option.none()));
+            accountRepository.saveAccountBalances(walletId, AccountBalances.of(wallet, accountBook));
+            // A released wallet keeps its listeners, its balances are not brought back
+            wallet.addChangeEventListener(walletListenerExecutors.executorOf(walletId), changedWallet -> {
+                if (walletRepository.findWalletById(walletId).contains(changedWallet)) {
+                    scheduleBalances(walletId, changedWallet, accountBook);
+                }
+            });
+            return accountBook;
+        });
+    }
+
+    private AccountBook verifyAccountExists(UUID walletId, String accountId) {
+
+        val accountBook = accountBook(walletId);
+        if (!accountBook.contains(accountId)) {
+            throw new RuntimeException(String.format("Account not found with accountId=%s in walletId=%s", accountId, walletId));
+        }
+
+        return accountBook;
+    }
+
+    // Wallet changes come in bursts, balances are only scheduled if there are none waiting to be taken already
+    private void scheduleBalances(UUID walletId, Wallet wallet, AccountBook accountBook) {
+        if (walletIdsWithBalancesScheduled.add(walletId)) {
+            balancesExecutor.execute(() -> {
+                walletIdsWithBalancesScheduled.remove(walletId);
+                accountRepository.saveAccountBalances(walletId, AccountBalances.of(wallet, accountBook));
+            });
+        }
+    }
+
+    private Transaction sendFromAccount(UUID walletId, Wallet wallet, AccountBook accountBook, String accountId, SendRequest sendRequest) throws InsufficientMoneyException {
+
+        val changeAddress = accountBook.peekChangeAddress();
+        sendRequest.changeAddress = changeAddress;
+        sendRequest.coinSelector = accountBook.coinSelector(Option.of(accountId));
+        val sendResult = wallet.sendCoins(sendRequest);
+
+        if (List.ofAll(sendResult.tx.getOutputs()).exists(output -> changeAddress.equals(output.getAddressFromP2PKHScript(networkParameters())))) {
+            accountBook.assignAddress(accountId, changeAddress);
+            scheduleBalances(walletId, wallet, accountBook);
+        }
+
+        return sendResult.tx;
+    }
+}
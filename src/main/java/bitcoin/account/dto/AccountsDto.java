@@ -0,0 +1,10 @@
+package bitcoin.account.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+@Value
+public class AccountsDto {
+
+    List<String> accountIds;
+}
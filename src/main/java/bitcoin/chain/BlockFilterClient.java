@@ -0,0 +1,20 @@
+package bitcoin.chain;
+
+import bitcoin.chain.dto.BlockFilterDto;
+import org.springframework.cloud.netflix.feign.FeignClient;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+// REST interface of a trusted Bitcoin Core node started with -rest and -blockfilterindex
+@FeignClient(name = "block-filter-client", url = "${compact-filter.rest-url:http://localhost:18332/rest}")
+interface BlockFilterClient {
+
+    @RequestMapping(method = GET, path = "/blockfilter/basic/{blockHash}.json")
+    BlockFilterDto findBasicBlockFilter(@PathVariable("blockHash") String blockHash);
+
+    @RequestMapping(method = GET, path = "/block/{blockHash}.bin")
+    byte[] findBlock(@PathVariable("blockHash") String blockHash);
+
+}
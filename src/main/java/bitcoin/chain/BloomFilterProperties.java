@@ -0,0 +1,18 @@
+package bitcoin.chain;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "bloom-filter")
+public class BloomFilterProperties {
+
+    Double falsePositiveRate = 0.00001D;
+
+    Long minimumRecalculationIntervalMillis = 10000L;
+
+}
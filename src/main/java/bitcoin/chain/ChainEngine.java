@@ -0,0 +1,263 @@
+package bitcoin.chain;
+
+import bitcoin.chain.dto.BloomFilterMetricsDto;
+import bitcoin.chain.dto.MempoolMetricsDto;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.CheckpointManager;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBroadcast;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.listeners.DownloadProgressTracker;
+import org.bitcoinj.core.listeners.NewBestBlockListener;
+import org.bitcoinj.net.discovery.DnsDiscovery;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.config.StorageConfig.walletsDirectory;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static lombok.AccessLevel.PRIVATE;
+
+// Every hosted wallet shares one block store, one chain and one peer group, so a block is downloaded once and the
+// peers hold a single filter for all the wallets instead of one connection set and one filter per wallet.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties({BloomFilterProperties.class, HeaderStoreProperties.class})
+public class ChainEngine {
+
+    private static final Path CHAIN_FILE = walletsDirectory().resolve("shared.headers");
+
+    BloomFilterProperties bloomFilterProperties;
+
+    HeaderStoreProperties headerStoreProperties;
+
+    CompactFilterSync compactFilterSync;
+
+    MempoolTracker mempoolTracker;
+
+    ConfirmationTracker confirmationTracker;
+
+    Context context = new Context(networkParameters());
+
+    Map<UUID, Wallet> walletById = new ConcurrentHashMap<>();
+
+    Set<NewBestBlockListener> newBestBlockListeners = ConcurrentHashMap.newKeySet();
+
+    // Every listener added through the engine runs on this single thread, it moves with them from chain to chain
+    ExecutorService listenerExecutor = newSingleThreadExecutor();
+
+    AtomicReference<Engine> engine = new AtomicReference<>();
+
+    ScheduledExecutorService filterExecutor = newSingleThreadScheduledExecutor();
+
+    AtomicLong matchedTransactions = new AtomicLong();
+
+    AtomicLong irrelevantTransactions = new AtomicLong();
+
+    public ChainEngine(BloomFilterProperties bloomFilterProperties, HeaderStoreProperties headerStoreProperties, CompactFilterSync compactFilterSync, MempoolTracker mempoolTracker, ConfirmationTracker confirmationTracker) {
+        this.bloomFilterProperties = bloomFilterProperties;
+        this.headerStoreProperties = headerStoreProperties;
+        this.compactFilterSync = compactFilterSync;
+        this.mempoolTracker = mempoolTracker;
+        this.confirmationTracker = confirmationTracker;
+    }
+
+    public Context context() {
+        return context;
+    }
+
+    // The chain only starts with the first wallet. A wallet born after the checkpoint the store starts at only rolls the
+    // chain back. One born before it restarts the chain from an earlier checkpoint, in the same store, whose headers
+    // are then downloaded again.
+    public synchronized void addWallet(UUID walletId, Wallet wallet) {
+        Context.propagate(context);
+        walletById.put(walletId, wallet);
+        confirmationTracker.track(walletId, wallet);
+        mempoolTracker.watch(walletId, wallet);
+
+        val current = engine.get();
+        if (current == null) {
+            engine.set(start(false));
+            return;
+        }
+
+        val height = current.getChain().getBestChainHeight();
+        current.getPeerGroup().addWallet(wallet);
+        if (!current.getChain().attach(wallet)) {
+            log.info("Shared chain does not reach back to wallet={}, restarting it from an earlier checkpoint", walletId);
+            stop(current);
+            engine.set(start(true));
+            return;
+        }
+
+        // Only a rewound chain has blocks to download again, new wallets at the chain head just wait for the next one
+        if (current.getChain().getBestChainHeight() < height) {
+            Option.of(current.getPeerGroup().getDownloadPeer()).forEach(Peer::startBlockChainDownload);
+        }
+    }
+
+    // A standby keeps the headers at the head before it has wallets, the wallets it takes over then only rewind it to
+    // the block they were last saved at
+    public synchronized void followHeaders() {
+        Context.propagate(context);
+        if (engine.get() == null) {
+            engine.set(start(false));
+        }
+    }
+
+    // The chain keeps running for the other wallets
+    public synchronized void removeWallet(UUID walletId) {
+        mempoolTracker.forget(walletId);
+        confirmationTracker.forget(walletId);
+        Option.of(walletById.remove(walletId)).forEach(wallet -> Option.of(engine.get()).forEach(current -> {
+            current.getPeerGroup().removeWallet(wallet);
+            current.getChain().detach(wallet);
+        }));
+    }
+
+    // Adding the same listener again is a no-op
+    public synchronized void addNewBestBlockListener(NewBestBlockListener listener) {
+        if (newBestBlockListeners.add(listener)) {
+            Option.of(engine.get()).forEach(current -> current.getChain().addNewBestBlockListener(listenerExecutor, listener));
+        }
+    }
+
+    public TransactionBroadcast broadcastTransaction(Transaction transaction) {
+        return Option.of(engine.get())
+                .getOrElseThrow(() -> new RuntimeException(String.format("Chain is not running to broadcast txHash=%s", transaction.getHashAsString())))
+                .getPeerGroup()
+                .broadcastTransaction(transaction);
+    }
+
+    public BloomFilterMetricsDto bloomFilterMetrics() {
+
+        val wallets = List.ofAll(walletById.values());
+        val elements = wallets.map(Wallet::getBloomFilterElementCount).sum().intValue();
+        val peerGroup = Option.of(engine.get()).map(Engine::getPeerGroup);
+        val bloomFilter = peerGroup.flatMap(current -> List.ofAll(current.getConnectedPeers()).flatMap(peer -> Option.of(peer.getBloomFilter())).headOption());
+
+        return new BloomFilterMetricsDto(
+                wallets.size(),
+                elements,
+                bloomFilter.map(filter -> filter.bitcoinSerialize().length).getOrNull(),
+                bloomFilterProperties.getFalsePositiveRate(),
+                bloomFilter.map(filter -> filter.getFalsePositiveRate(elements)).getOrNull(),
+                peerGroup.map(FilteredPeerGroup::getRecalculations).getOrElse(0L),
+                peerGroup.map(FilteredPeerGroup::getCoalescedRecalculations).getOrElse(0L),
+                matchedTransactions.get(),
+                irrelevantTransactions.get());
+    }
+
+    public MempoolMetricsDto mempoolMetrics() {
+        return mempoolTracker.metrics();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        Option.of(engine.getAndSet(null)).forEach(this::stop);
+        filterExecutor.shutdown();
+        listenerExecutor.shutdown();
+    }
+
+    private Engine start(boolean rewind) {
+
+        val blockStore = Try.of(() -> {
+            HeaderStore newBlockStore = new HeaderStore(networkParameters(), CHAIN_FILE, headerStoreProperties.getCapacity());
+            if (rewind || newBlockStore.getChainHead().getHeight() == 0) {
+                checkpoint(newBlockStore);
+            }
+            return newBlockStore;
+        }).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+
+        val chain = Try.of(() -> new SharedBlockChain(context, blockStore, Option.when(compactFilterSync.isEnabled(), compactFilterSync))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        newBestBlockListeners.forEach(listener -> chain.addNewBestBlockListener(listenerExecutor, listener));
+        confirmationTracker.follow(chain);
+
+        val peerGroup = new FilteredPeerGroup(context, chain, filterExecutor, bloomFilterProperties.getMinimumRecalculationIntervalMillis(), compactFilterSync.isEnabled());
+        peerGroup.setBloomFilterFalsePositiveRate(bloomFilterProperties.getFalsePositiveRate());
+        peerGroup.addPeerDiscovery(new DnsDiscovery(networkParameters()));
+        peerGroup.addOnTransactionBroadcastListener(filterExecutor, (peer, tx) -> {
+            mempoolTracker.track(tx, walletById);
+            countMatchedTransaction(tx);
+        });
+        peerGroup.addBlocksDownloadedEventListener(filterExecutor, (peer, block, filteredBlock, blocksLeft) ->
+                Option.of(filteredBlock).forEach(matchedBlock -> matchedBlock.getAssociatedTransactions().values().forEach(this::countMatchedTransaction)));
+
+        walletById.forEach((walletId, wallet) -> {
+            peerGroup.addWallet(wallet);
+            if (!chain.attach(wallet)) {
+                log.warn("Shared chain cannot reach back to the blocks needed by wallet={}", walletId);
+            }
+        });
+
+        peerGroup.startAsync().addListener(() -> peerGroup.startBlockChainDownload(new DownloadProgressTracker()), filterExecutor);
+        log.info("Started shared chain at height={} for {} wallets", chain.getBestChainHeight(), walletById.size());
+
+        return new Engine(blockStore, chain, peerGroup);
+    }
+
+    private void stop(Engine current) {
+        walletById.values().forEach(wallet -> {
+            current.getPeerGroup().removeWallet(wallet);
+            current.getChain().detach(wallet);
+        });
+        current.getPeerGroup().stop();
+        Try.run(() -> current.getBlockStore().close()).onFailure(t -> log.warn("Couldn't close the shared block store", t));
+    }
+
+    // Wallets without a known birthday are clamped to the checkpoint of the others, or to the latest one
+    private void checkpoint(HeaderStore blockStore) throws Exception {
+
+        val time = List.ofAll(walletById.values())
+                .map(wallet -> wallet.getLastBlockSeenHeight() >= 0 ? wallet.getLastBlockSeenTimeSecs() : wallet.getEarliestKeyCreationTime())
+                .filter(walletTime -> walletTime > 0)
+                .min()
+                .getOrElse(Utils::currentTimeSeconds) - SharedBlockChain.KEY_TIME_MARGIN_SECONDS;
+        val checkpoints = CheckpointManager.openStream(networkParameters());
+
+        if (checkpoints != null) {
+            CheckpointManager.checkpoint(networkParameters(), checkpoints, blockStore, time);
+        }
+    }
+
+    // Everything the peers send us matched the filter, what none of our wallets cares about is a false positive
+    private void countMatchedTransaction(Transaction transaction) {
+        matchedTransactions.incrementAndGet();
+        if (mempoolTracker.findWalletIds(transaction, walletById).isEmpty()) {
+            irrelevantTransactions.incrementAndGet();
+        }
+    }
+
+    @Value
+    private static class Engine {
+
+        HeaderStore blockStore;
+
+        SharedBlockChain chain;
+
+        FilteredPeerGroup peerGroup;
+    }
+}
@@ -0,0 +1,47 @@
+package bitcoin.chain;
+
+import bitcoin.chain.dto.AddressCacheMetricsDto;
+import bitcoin.chain.dto.BloomFilterMetricsDto;
+import bitcoin.chain.dto.MempoolMetricsDto;
+import bitcoin.config.AddressCache;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/chain", produces = APPLICATION_JSON_VALUE)
+public class ChainResource {
+
+    ChainEngine chainEngine;
+
+    AddressCache addressCache;
+
+    @GetMapping(path = "/bloom-filter")
+    public BloomFilterMetricsDto findBloomFilterMetrics() {
+        return chainEngine.bloomFilterMetrics();
+    }
+
+    @GetMapping(path = "/mempool")
+    public MempoolMetricsDto findMempoolMetrics() {
+        return chainEngine.mempoolMetrics();
+    }
+
+    // Addresses parsed from requests and from the outputs of the transactions we list, shared by every wallet
+    @GetMapping(path = "/address-cache")
+    public AddressCacheMetricsDto findAddressCacheMetrics() {
+
+        val base58Stats = addressCache.base58Stats();
+        val scriptStats = addressCache.scriptStats();
+
+        return new AddressCacheMetricsDto(addressCache.size(), base58Stats.requestCount(), base58Stats.hitRate(), scriptStats.requestCount(), scriptStats.hitRate(),
+                base58Stats.evictionCount() + scriptStats.evictionCount());
+    }
+}
@@ -0,0 +1,150 @@
+package bitcoin.chain;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+
+import java.util.Arrays;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// BIP158 basic filters: the Golomb-Rice coded, sorted SipHash values of every script a block creates or spends.
+// Query values go in a buffer reused across blocks, so matching a filter allocates nothing once the buffer is big enough.
+// Not thread safe, every block is matched from the chain thread.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class CompactFilterMatcher {
+
+    static final int P = 19;
+
+    static final long M = 784931L;
+
+    @NonFinal
+    long[] queries = new long[0];
+
+    boolean matchesAny(Sha256Hash blockHash, byte[] filter, byte[][] elements) {
+
+        final long n = readCompactSize(filter);
+        if (n == 0 || elements.length == 0) {
+            return false;
+        }
+
+        final byte[] key = blockHash.getReversedBytes();
+        final long k0 = Utils.readInt64(key, 0);
+        final long k1 = Utils.readInt64(key, 8);
+        final long range = n * M;
+
+        if (queries.length < elements.length) {
+            queries = new long[elements.length];
+        }
+        for (int i = 0; i < elements.length; i++) {
+            queries[i] = hashToRange(k0, k1, elements[i], range);
+        }
+        Arrays.sort(queries, 0, elements.length);
+
+        final long end = filter.length * 8L;
+        long bit = VarInt.sizeOf(n) * 8L;
+        long value = 0;
+        int query = 0;
+
+        for (long i = 0; i < n; i++) {
+            long quotient = 0;
+            while (bit < end && readBit(filter, bit++) == 1) {
+                quotient++;
+            }
+            if (bit + P > end) {
+                throw new RuntimeException(String.format("Compact filter of block=%s is truncated", blockHash));
+            }
+            long remainder = 0;
+            for (int b = 0; b < P; b++) {
+                remainder = (remainder << 1) | readBit(filter, bit++);
+            }
+            value += (quotient << P) | remainder;
+
+            while (queries[query] < value) {
+                if (++query == elements.length) {
+                    return false;
+                }
+            }
+            if (queries[query] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static long hashToRange(long k0, long k1, byte[] element, long range) {
+        return multiplyHighUnsigned(sipHash24(k0, k1, element), range);
+    }
+
+    private static int readBit(byte[] filter, long bit) {
+        return (filter[(int) (bit >>> 3)] >>> (7 - (int) (bit & 7))) & 1;
+    }
+
+    private static long readCompactSize(byte[] filter) {
+        if (filter.length == 0) {
+            return 0;
+        }
+        final int first = filter[0] & 0xff;
+        if (first < 253) {
+            return first;
+        }
+        return first == 253 ? (filter[1] & 0xff) | (filter[2] & 0xff) << 8 : first == 254 ? Utils.readUint32(filter, 1) : Utils.readInt64(filter, 1);
+    }
+
+    // High 64 bits of the 128 bit unsigned product
+    private static long multiplyHighUnsigned(long x, long y) {
+        final long x0 = x & 0xffffffffL;
+        final long x1 = x >>> 32;
+        final long y0 = y & 0xffffffffL;
+        final long y1 = y >>> 32;
+        final long t = x1 * y0 + ((x0 * y0) >>> 32);
+        final long w1 = x0 * y1 + (t & 0xffffffffL);
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    private static long sipHash24(long k0, long k1, byte[] data) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+
+        final int blocks = data.length & ~7;
+        for (int offset = 0; offset < blocks; offset += 8) {
+            final long m = Utils.readInt64(data, offset);
+            v3 ^= m;
+            for (int round = 0; round < 2; round++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+
+        long last = ((long) data.length & 0xff) << 56;
+        for (int i = 0; i < (data.length & 7); i++) {
+            last |= ((long) data[blocks + i] & 0xff) << (8 * i);
+        }
+        v3 ^= last;
+        for (int round = 0; round < 2; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= last;
+
+        v2 ^= 0xff;
+        for (int round = 0; round < 4; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+}
@@ -0,0 +1,18 @@
+package bitcoin.chain;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "compact-filter")
+public class CompactFilterProperties {
+
+    Boolean enabled = false;
+
+    String restUrl = "http://localhost:18332/rest";
+
+}
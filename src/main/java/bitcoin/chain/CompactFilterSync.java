@@ -0,0 +1,123 @@
+package bitcoin.chain;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static io.vavr.API.Tuple;
+import static lombok.AccessLevel.PRIVATE;
+
+// With compact filters the peers only send headers. For every new header the BIP158 filter of the block is matched
+// against the scripts of all wallets, and only a block that matches is downloaded and handed to the wallets.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(CompactFilterProperties.class)
+public class CompactFilterSync {
+
+    CompactFilterProperties compactFilterProperties;
+
+    BlockFilterClient blockFilterClient;
+
+    CompactFilterMatcher compactFilterMatcher = new CompactFilterMatcher();
+
+    AtomicLong filtersMatched = new AtomicLong();
+
+    AtomicLong blocksDownloaded = new AtomicLong();
+
+    // Scripts only change when a wallet adds keys, so they are rebuilt when the element counts of the wallets change
+    @NonFinal
+    List<Tuple2<Wallet, Integer>> cachedElementCounts = List.empty();
+
+    @NonFinal
+    byte[][] cachedElements = new byte[0][];
+
+    public CompactFilterSync(CompactFilterProperties compactFilterProperties, @Lazy BlockFilterClient blockFilterClient) {
+        this.compactFilterProperties = compactFilterProperties;
+        this.blockFilterClient = blockFilterClient;
+    }
+
+    public boolean isEnabled() {
+        return compactFilterProperties.getEnabled();
+    }
+
+    // Called from the chain thread before the wallets hear about the block, the same order a filtered block has
+    void receiveMatchingTransactions(StoredBlock block, Collection<Wallet> wallets) {
+
+        val blockTime = block.getHeader().getTimeSeconds();
+        val interestedWallets = List.ofAll(wallets).filter(wallet -> wallet.getEarliestKeyCreationTime() - SharedBlockChain.KEY_TIME_MARGIN_SECONDS <= blockTime);
+        if (interestedWallets.isEmpty()) {
+            return;
+        }
+
+        val blockHash = block.getHeader().getHash();
+        val filter = Utils.HEX.decode(blockFilterClient.findBasicBlockFilter(blockHash.toString()).getFilter());
+        if (!compactFilterMatcher.matchesAny(blockHash, filter, elements(interestedWallets))) {
+            return;
+        }
+        filtersMatched.incrementAndGet();
+
+        val fullBlock = Try.of(() -> new Block(networkParameters(), blockFilterClient.findBlock(blockHash.toString())))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Couldn't download block=%s", blockHash), t));
+        if (!fullBlock.getHash().equals(blockHash)) {
+            throw new RuntimeException(String.format("Downloaded block=%s when block=%s was requested", fullBlock.getHashAsString(), blockHash));
+        }
+        Try.run(() -> fullBlock.verifyTransactions(block.getHeight(), EnumSet.noneOf(Block.VerifyFlag.class)))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Transactions of block=%s do not match its header", blockHash), t));
+        blocksDownloaded.incrementAndGet();
+
+        // Like BlockChain, a wallet only receives what is relevant to it, and every wallet after the first its own copy
+        val transactions = fullBlock.getTransactions();
+        for (int offset = 0; offset < transactions.size(); offset++) {
+            val transaction = transactions.get(offset);
+            val relativityOffset = offset;
+            interestedWallets.filter(wallet -> wallet.isTransactionRelevant(transaction)).zipWithIndex().forEach(walletAndIndex -> walletAndIndex._1.receiveFromBlock(
+                    walletAndIndex._2 == 0 ? transaction : networkParameters().getDefaultSerializer().makeTransaction(transaction.bitcoinSerialize()),
+                    block, AbstractBlockChain.NewBlockType.BEST_CHAIN, relativityOffset));
+        }
+
+        log.info("Block={} at height={} matched the compact filter, {} blocks downloaded so far", blockHash, block.getHeight(), blocksDownloaded.get());
+    }
+
+    private byte[][] elements(List<Wallet> wallets) {
+
+        val elementCounts = wallets.map(wallet -> Tuple(wallet, wallet.getBloomFilterElementCount()));
+        if (!elementCounts.equals(cachedElementCounts)) {
+            cachedElements = wallets.flatMap(CompactFilterSync::scripts).map(Script::getProgram).toJavaArray(byte[].class);
+            cachedElementCounts = elementCounts;
+        }
+
+        return cachedElements;
+    }
+
+    // Basic filters hold output scripts and the scripts spent by the inputs, for a wallet both are its own scripts
+    private static List<Script> scripts(Wallet wallet) {
+
+        val keys = List.<ECKey>ofAll(wallet.getImportedKeys())
+                .appendAll(Try.of(() -> wallet.getActiveKeyChain().getLeafKeys()).getOrElse(Collections.emptyList()));
+
+        return keys.flatMap(key -> List.of(ScriptBuilder.createOutputScript(key.toAddress(networkParameters())), ScriptBuilder.createOutputScript(key)))
+                .appendAll(wallet.getWatchedScripts());
+    }
+}
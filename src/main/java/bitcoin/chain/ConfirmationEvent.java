@@ -0,0 +1,21 @@
+package bitcoin.chain;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+// A transaction of a wallet crossing a confirmation threshold, upwards when a block buries it or downwards when a
+// reorganization takes its block away. Height is the chain height the crossing happened at.
+@Value
+public class ConfirmationEvent {
+
+    UUID walletId;
+
+    String txHash;
+
+    int confirmations;
+
+    int height;
+
+    boolean reached;
+}
@@ -0,0 +1,184 @@
+package bitcoin.chain;
+
+import bitcoin.log.EventLog;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.listeners.TransactionReceivedInBlockListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.BUILDING;
+
+// Transactions of the shared chain indexed by the height of their block, so a new block only looks at the heights
+// that are now exactly at a threshold depth, and a reorganization only at the blocks it swapped, instead of every
+// wallet transaction getting a confidence callback per block. The chain listeners run on a single thread, which
+// owns the block indexes. The wallets holding a transaction are indexed by its hash as they take it, so no wallet is
+// asked whether it holds one.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(ConfirmationTrackerProperties.class)
+public class ConfirmationTracker {
+
+    // Blocks deeper than the highest threshold are kept this much longer in case a reorganization takes them away
+    private static final int REORGANIZATION_MARGIN = 100;
+
+    ApplicationEventPublisher eventPublisher;
+
+    List<Integer> thresholds;
+
+    Map<Sha256Hash, Set<Sha256Hash>> transactionHashesByBlockHash = new HashMap<>();
+
+    TreeMap<Integer, Sha256Hash> blockHashByHeight = new TreeMap<>();
+
+    Map<Sha256Hash, Set<UUID>> walletIdsByTransactionHash = new ConcurrentHashMap<>();
+
+    ExecutorService executor = newSingleThreadExecutor();
+
+    // The first confirmation is always followed, the fee estimator learns from how long a transaction waited for it
+    public ConfirmationTracker(ApplicationEventPublisher eventPublisher, ConfirmationTrackerProperties confirmationTrackerProperties) {
+        this.eventPublisher = eventPublisher;
+        this.thresholds = List.ofAll(confirmationTrackerProperties.getThresholds()).append(1).distinct().sorted();
+    }
+
+    // A wallet tells the transactions it takes as it takes them, before a block holding them reaches this tracker. Of
+    // those it has already, only the ones that can still cross a threshold are indexed.
+    void track(UUID walletId, Wallet wallet) {
+
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> indexWallet(tx.getHash(), walletId));
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> indexWallet(tx.getHash(), walletId));
+
+        List.ofAll(wallet.getTransactions(false))
+                .filter(tx -> tx.getConfidence().getConfidenceType() != BUILDING || tx.getConfidence().getDepthInBlocks() <= thresholds.last() + REORGANIZATION_MARGIN)
+                .forEach(tx -> indexWallet(tx.getHash(), walletId));
+    }
+
+    void forget(UUID walletId) {
+        walletIdsByTransactionHash.values().forEach(walletIds -> walletIds.remove(walletId));
+        walletIdsByTransactionHash.values().removeIf(Set::isEmpty);
+    }
+
+    // A chain restarted from a checkpoint downloads its blocks again, what was indexed from the previous one is dropped
+    void follow(AbstractBlockChain chain) {
+
+        executor.execute(() -> {
+            transactionHashesByBlockHash.clear();
+            blockHashByHeight.clear();
+        });
+
+        chain.addTransactionReceivedListener(executor, new TransactionReceivedInBlockListener() {
+            @Override
+            public void receiveFromBlock(Transaction tx, StoredBlock block, AbstractBlockChain.NewBlockType blockType, int relativityOffset) {
+                index(tx.getHash(), block);
+            }
+
+            @Override
+            public boolean notifyTransactionIsInBlock(Sha256Hash txHash, StoredBlock block, AbstractBlockChain.NewBlockType blockType, int relativityOffset) {
+                index(txHash, block);
+                return false;
+            }
+        });
+        chain.addNewBestBlockListener(executor, this::connect);
+        chain.addReorganizeListener(executor, (splitPoint, oldBlocks, newBlocks) -> reorganize(List.ofAll(oldBlocks), List.ofAll(newBlocks)));
+    }
+
+    // Side chain blocks are indexed too, a reorganization can make them the best chain. The wallets received the block
+    // before this runs, so transactions of the filter that no wallet holds are false positives and are left out.
+    void index(Sha256Hash txHash, StoredBlock block) {
+        if (!walletIdsByTransactionHash.containsKey(txHash)) {
+            return;
+        }
+        transactionHashesByBlockHash.computeIfAbsent(block.getHeader().getHash(), hash -> new HashSet<>()).add(txHash);
+    }
+
+    void connect(StoredBlock block) {
+
+        val height = block.getHeight();
+        if (transactionHashesByBlockHash.containsKey(block.getHeader().getHash())) {
+            blockHashByHeight.put(height, block.getHeader().getHash());
+        }
+
+        // A block reached the threshold depth of confirmations if it is that many blocks from the head, counting both
+        for (val threshold : thresholds) {
+            Option.of(blockHashByHeight.get(height - threshold + 1))
+                    .forEach(blockHash -> transactionHashesByBlockHash.get(blockHash).forEach(txHash -> emit(txHash, threshold, height, true)));
+        }
+
+        val prunedHeights = blockHashByHeight.headMap(height - thresholds.last() - REORGANIZATION_MARGIN);
+        prunedHeights.values().forEach(blockHash -> Option.of(transactionHashesByBlockHash.remove(blockHash)).forEach(txHashes -> txHashes.forEach(walletIdsByTransactionHash::remove)));
+        prunedHeights.clear();
+    }
+
+    // The chain does not announce the new head after a reorganization, so every crossing of the swapped blocks is
+    // emitted here. A transaction mined again in the new blocks only crosses the thresholds between its two depths.
+    void reorganize(List<StoredBlock> oldBlocks, List<StoredBlock> newBlocks) {
+
+        // Both lists go from their chain head down to the split point
+        val oldDepths = depthsOf(oldBlocks.filter(block -> block.getHeader().getHash().equals(blockHashByHeight.get(block.getHeight()))), oldBlocks.get(0).getHeight());
+        oldBlocks.forEach(block -> blockHashByHeight.remove(block.getHeight()));
+
+        val newBlocksWithTransactions = newBlocks.filter(block -> transactionHashesByBlockHash.containsKey(block.getHeader().getHash()));
+        newBlocksWithTransactions.forEach(block -> blockHashByHeight.put(block.getHeight(), block.getHeader().getHash()));
+        val height = newBlocks.get(0).getHeight();
+        val newDepths = depthsOf(newBlocksWithTransactions, height);
+
+        val txHashes = new HashSet<Sha256Hash>(oldDepths.keySet());
+        txHashes.addAll(newDepths.keySet());
+        for (val txHash : txHashes) {
+            val oldDepth = oldDepths.getOrDefault(txHash, 0);
+            val newDepth = newDepths.getOrDefault(txHash, 0);
+            thresholds.filter(threshold -> newDepth < threshold && threshold <= oldDepth).forEach(threshold -> emit(txHash, threshold, height, false));
+            thresholds.filter(threshold -> oldDepth < threshold && threshold <= newDepth).forEach(threshold -> emit(txHash, threshold, height, true));
+        }
+    }
+
+    private Map<Sha256Hash, Integer> depthsOf(List<StoredBlock> blocks, int headHeight) {
+
+        Map<Sha256Hash, Integer> depths = new HashMap<>();
+        for (val block : blocks) {
+            for (val txHash : transactionHashesByBlockHash.get(block.getHeader().getHash())) {
+                depths.put(txHash, headHeight - block.getHeight() + 1);
+            }
+        }
+
+        return depths;
+    }
+
+    private void indexWallet(Sha256Hash txHash, UUID walletId) {
+        walletIdsByTransactionHash.computeIfAbsent(txHash, hash -> ConcurrentHashMap.newKeySet()).add(walletId);
+    }
+
+    // A transaction is announced to every wallet holding it
+    private void emit(Sha256Hash txHash, int confirmations, int height, boolean reached) {
+        Option.of(walletIdsByTransactionHash.get(txHash)).forEach(walletIds -> walletIds.forEach(walletId -> {
+            EventLog.info(log, reached ? "confirmations-reached" : "confirmations-lost")
+                    .field("walletId", walletId)
+                    .field("txid", txHash)
+                    .field("depth", confirmations)
+                    .field("height", height)
+                    .write();
+            eventPublisher.publishEvent(new ConfirmationEvent(walletId, txHash.toString(), confirmations, height, reached));
+        }));
+    }
+}
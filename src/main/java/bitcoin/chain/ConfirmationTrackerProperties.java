@@ -0,0 +1,20 @@
+package bitcoin.chain;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "confirmation-tracker")
+public class ConfirmationTrackerProperties {
+
+    // Confirmations that get an event when a transaction reaches them, or loses them in a reorganization
+    List<Integer> thresholds = Arrays.asList(1, 3, 6);
+
+}
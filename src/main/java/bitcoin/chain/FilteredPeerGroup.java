@@ -0,0 +1,89 @@
+package bitcoin.chain;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.PeerGroup;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED;
+
+// The peer group merges the keys and scripts of every wallet added to it into one filter. Each new address asks for
+// that filter to be recalculated and resent to every peer, which with many wallets means a resend per request.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class FilteredPeerGroup extends PeerGroup {
+
+    ScheduledExecutorService filterExecutor;
+
+    long minimumRecalculationIntervalMillis;
+
+    boolean compactFilters;
+
+    AtomicReference<SettableFuture<BloomFilter>> scheduledRecalculation = new AtomicReference<>();
+
+    AtomicLong lastRecalculationMillis = new AtomicLong();
+
+    AtomicLong recalculations = new AtomicLong();
+
+    AtomicLong coalescedRecalculations = new AtomicLong();
+
+    FilteredPeerGroup(Context context, AbstractBlockChain chain, ScheduledExecutorService filterExecutor, long minimumRecalculationIntervalMillis, boolean compactFilters) {
+        super(context, chain);
+        this.filterExecutor = filterExecutor;
+        this.minimumRecalculationIntervalMillis = minimumRecalculationIntervalMillis;
+        this.compactFilters = compactFilters;
+        // With compact filters no bloom filter is ever sent and the catchup never ends, so the peers only send headers
+        if (compactFilters) {
+            setBloomFilteringEnabled(false);
+            setFastCatchupTimeSecs(Long.MAX_VALUE);
+        }
+    }
+
+    // New addresses come from the lookahead keys that are already in the filter, so resending it can wait and a burst
+    // of them costs a single resend. Refreshes and recalculations for the chain download are not delayed.
+    @Override
+    public ListenableFuture<BloomFilter> recalculateFastCatchupAndFilter(FilterRecalculateMode mode) {
+        if (compactFilters) {
+            return Futures.immediateFuture(null);
+        }
+        if (mode != SEND_IF_CHANGED) {
+            return recalculateNow(mode);
+        }
+
+        val recalculation = SettableFuture.<BloomFilter>create();
+        val scheduled = scheduledRecalculation.accumulateAndGet(recalculation, (current, created) -> current != null ? current : created);
+        if (scheduled != recalculation) {
+            coalescedRecalculations.incrementAndGet();
+            return scheduled;
+        }
+
+        val delay = Math.max(0L, lastRecalculationMillis.get() + minimumRecalculationIntervalMillis - System.currentTimeMillis());
+        filterExecutor.schedule(() -> scheduledRecalculation.getAndSet(null).setFuture(recalculateNow(SEND_IF_CHANGED)), delay, MILLISECONDS);
+
+        return recalculation;
+    }
+
+    long getRecalculations() {
+        return recalculations.get();
+    }
+
+    long getCoalescedRecalculations() {
+        return coalescedRecalculations.get();
+    }
+
+    private ListenableFuture<BloomFilter> recalculateNow(FilterRecalculateMode mode) {
+        lastRecalculationMillis.set(System.currentTimeMillis());
+        recalculations.incrementAndGet();
+        return super.recalculateFastCatchupAndFilter(mode);
+    }
+}
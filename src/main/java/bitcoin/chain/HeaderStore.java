@@ -0,0 +1,315 @@
+package bitcoin.chain;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.val;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static lombok.AccessLevel.PRIVATE;
+
+// Every header of the chain in one memory mapped file, instead of the last few thousand SPVBlockStore keeps.
+// Headers are appended as records, side chains included. Two tables in the same file find a record by the hash of
+// its header (open addressing) and by its height on the best chain. Lookups read straight from the mapping.
+//
+// File layout: file header | height table (capacity ints) | hash table (2 * capacity ints) | records (capacity * 128 bytes)
+//
+// The tables are mapped when the store opens, the records in segments of 64 MB as they fill, so the file and the
+// mapping only grow with the headers actually stored.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class HeaderStore implements BlockStore {
+
+    private static final int MAGIC = 0x68647273;
+
+    private static final int FILE_HEADER_SIZE = 64;
+
+    private static final int RECORD_COUNT_OFFSET = 8;
+
+    private static final int CHAIN_HEAD_OFFSET = 12;
+
+    private static final int HASH_SIZE = 32;
+
+    private static final int RECORD_SIZE = HASH_SIZE + StoredBlock.COMPACT_SERIALIZED_SIZE;
+
+    private static final int SEGMENT_RECORDS = 512 * 1024;
+
+    // Table slots hold the record index plus one, zero is an empty slot
+    private static final int EMPTY = 0;
+
+    NetworkParameters params;
+
+    int capacity;
+
+    int hashTableSize;
+
+    int heightTableOffset;
+
+    int hashTableOffset;
+
+    long recordsOffset;
+
+    FileChannel channel;
+
+    MappedByteBuffer tables;
+
+    ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+
+    ReentrantLock lock = new ReentrantLock();
+
+    @NonFinal
+    boolean closed;
+
+    HeaderStore(NetworkParameters params, Path path, int capacity) throws BlockStoreException {
+        this.params = params;
+        this.capacity = capacity;
+        this.hashTableSize = capacity * 2;
+        this.heightTableOffset = FILE_HEADER_SIZE;
+        this.hashTableOffset = heightTableOffset + capacity * 4;
+        this.recordsOffset = (long) hashTableOffset + (long) hashTableSize * 4;
+
+        if (recordsOffset > Integer.MAX_VALUE) {
+            throw new BlockStoreException(String.format("Header store capacity=%s does not fit in a single mapping", capacity));
+        }
+
+        try {
+            this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+            val existing = channel.size() > 0;
+            this.tables = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsOffset);
+
+            if (!existing) {
+                tables.putInt(0, MAGIC);
+                tables.putInt(4, capacity);
+                val genesis = new StoredBlock(params.getGenesisBlock().cloneAsHeader(), params.getGenesisBlock().getWork(), 0);
+                put(genesis);
+                setChainHead(genesis);
+            } else if (tables.getInt(0) != MAGIC || tables.getInt(4) != capacity) {
+                close();
+                throw new BlockStoreException(String.format("File=%s is not a header store with capacity=%s", path, capacity));
+            }
+        } catch (BlockStoreException e) {
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new BlockStoreException(e);
+        }
+    }
+
+    @Override
+    public void put(StoredBlock block) throws BlockStoreException {
+        lock.lock();
+        try {
+            verifyOpen();
+            val hash = block.getHeader().getHash();
+            val slot = findSlot(hash);
+            val existing = tables.getInt(hashTableOffset + slot * 4);
+            if (existing != EMPTY) {
+                writeRecord(existing - 1, hash, block);
+                return;
+            }
+
+            val record = tables.getInt(RECORD_COUNT_OFFSET);
+            if (record == capacity) {
+                throw new BlockStoreException(String.format("Header store is full with capacity=%s", capacity));
+            }
+            writeRecord(record, hash, block);
+            tables.putInt(hashTableOffset + slot * 4, record + 1);
+            tables.putInt(RECORD_COUNT_OFFSET, record + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public StoredBlock get(Sha256Hash hash) throws BlockStoreException {
+        lock.lock();
+        try {
+            verifyOpen();
+            val existing = tables.getInt(hashTableOffset + findSlot(hash) * 4);
+            return existing == EMPTY ? null : readRecord(existing - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public StoredBlock getChainHead() throws BlockStoreException {
+        lock.lock();
+        try {
+            verifyOpen();
+            return readRecord(tables.getInt(CHAIN_HEAD_OFFSET));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Heights above the new head are cleared first, then the height table follows the new head back until it meets
+    // the part of the best chain it already had
+    @Override
+    public void setChainHead(StoredBlock chainHead) throws BlockStoreException {
+        lock.lock();
+        try {
+            verifyOpen();
+            if (chainHead.getHeight() >= capacity) {
+                throw new BlockStoreException(String.format("Height=%s is beyond the header store capacity=%s", chainHead.getHeight(), capacity));
+            }
+
+            val headRecord = recordOf(chainHead.getHeader().getHash())
+                    .getOrElseThrow(() -> new BlockStoreException(String.format("Chain head=%s is not in the header store", chainHead.getHeader().getHashAsString())));
+            val previousHeight = readRecord(tables.getInt(CHAIN_HEAD_OFFSET)).getHeight();
+            for (int height = chainHead.getHeight() + 1; height <= previousHeight; height++) {
+                tables.putInt(heightTableOffset + height * 4, EMPTY);
+            }
+            tables.putInt(CHAIN_HEAD_OFFSET, headRecord);
+
+            StoredBlock block = chainHead;
+            int record = headRecord;
+            while (block != null && tables.getInt(heightTableOffset + block.getHeight() * 4) != record + 1) {
+                tables.putInt(heightTableOffset + block.getHeight() * 4, record + 1);
+                val prevHash = block.getHeader().getPrevBlockHash();
+                val prevRecord = recordOf(prevHash);
+                block = prevRecord.isDefined() ? readRecord(prevRecord.get()) : null;
+                record = prevRecord.getOrElse(-1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Option<StoredBlock> findByHeight(int height) throws BlockStoreException {
+        lock.lock();
+        try {
+            verifyOpen();
+            val head = readRecord(tables.getInt(CHAIN_HEAD_OFFSET));
+            val record = height >= 0 && height <= head.getHeight() ? tables.getInt(heightTableOffset + height * 4) : EMPTY;
+            return record == EMPTY ? Option.none() : Option.of(readRecord(record - 1));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Unmapped right away rather than whenever the buffers are collected, so the file can be deleted or opened again
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Option.of(tables).forEach(MappedByteBuffer::force);
+            segments.forEach(MappedByteBuffer::force);
+            Option.of(tables).forEach(HeaderStore::unmap);
+            segments.forEach(HeaderStore::unmap);
+            segments.clear();
+            Option.of(channel).forEach(openChannel -> Try.run(openChannel::close));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public NetworkParameters getParams() {
+        return params;
+    }
+
+    private void verifyOpen() throws BlockStoreException {
+        if (closed) {
+            throw new BlockStoreException("Header store is closed");
+        }
+    }
+
+    private Option<Integer> recordOf(Sha256Hash hash) throws BlockStoreException {
+        val existing = tables.getInt(hashTableOffset + findSlot(hash) * 4);
+        return existing == EMPTY ? Option.none() : Option.of(existing - 1);
+    }
+
+    // Linear probing, comparing the hash stored in each record in place
+    private int findSlot(Sha256Hash hash) throws BlockStoreException {
+        val hashBytes = hash.getBytes();
+        int slot = Math.floorMod(hash.hashCode(), hashTableSize);
+        while (true) {
+            val existing = tables.getInt(hashTableOffset + slot * 4);
+            if (existing == EMPTY || hashEquals(existing - 1, hashBytes)) {
+                return slot;
+            }
+            slot = (slot + 1) % hashTableSize;
+        }
+    }
+
+    private boolean hashEquals(int record, byte[] hashBytes) throws BlockStoreException {
+        val segment = segment(record);
+        val offset = (record % SEGMENT_RECORDS) * RECORD_SIZE;
+        for (int i = 0; i < HASH_SIZE; i++) {
+            if (segment.get(offset + i) != hashBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeRecord(int record, Sha256Hash hash, StoredBlock block) throws BlockStoreException {
+        val view = recordView(record);
+        view.put(hash.getBytes());
+        block.serializeCompact(view);
+    }
+
+    private StoredBlock readRecord(int record) throws BlockStoreException {
+        val view = recordView(record);
+        view.position(HASH_SIZE);
+        try {
+            return StoredBlock.deserializeCompact(params, view);
+        } catch (Exception e) {
+            throw new BlockStoreException(e);
+        }
+    }
+
+    // A view over the record in the mapping, nothing is copied
+    private ByteBuffer recordView(int record) throws BlockStoreException {
+        val view = segment(record).duplicate();
+        view.position((record % SEGMENT_RECORDS) * RECORD_SIZE);
+        view.limit((record % SEGMENT_RECORDS + 1) * RECORD_SIZE);
+        return view.slice();
+    }
+
+    // Mapping a segment past the end of the file grows the file
+    private MappedByteBuffer segment(int record) throws BlockStoreException {
+        val index = record / SEGMENT_RECORDS;
+        while (segments.size() <= index) {
+            val offset = recordsOffset + (long) segments.size() * SEGMENT_RECORDS * RECORD_SIZE;
+            segments.add(Try.of(() -> channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) SEGMENT_RECORDS * RECORD_SIZE))
+                    .getOrElseThrow(BlockStoreException::new));
+        }
+        return segments.get(index);
+    }
+
+    // Java 9 and later unmap through Unsafe.invokeCleaner, Java 8 through the cleaner of the buffer. When neither is
+    // there the mapping goes away with the buffer.
+    private static void unmap(MappedByteBuffer buffer) {
+        Try.run(() -> {
+            val unsafeClass = Class.forName("sun.misc.Unsafe");
+            val theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        }).orElseRun(t -> Try.run(() -> {
+            val cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            val cleaner = cleanerMethod.invoke(buffer);
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }));
+    }
+}
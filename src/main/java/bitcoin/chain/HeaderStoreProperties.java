@@ -0,0 +1,17 @@
+package bitcoin.chain;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "header-store")
+public class HeaderStoreProperties {
+
+    // Headers the store can hold, it has to be above the height of the chain since headers are also indexed by height
+    Integer capacity = 8388608;
+
+}
@@ -0,0 +1,19 @@
+package bitcoin.chain;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "mempool")
+public class MempoolProperties {
+
+    Long capacity = 50000L;
+
+    // Unconfirmed transactions are forgotten after two weeks, as Bitcoin Core does
+    Long maximumAgeMillis = 1209600000L;
+
+}
@@ -0,0 +1,189 @@
+package bitcoin.chain;
+
+import bitcoin.chain.dto.MempoolMetricsDto;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.protobuf.ByteString;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static lombok.AccessLevel.PRIVATE;
+
+// Unconfirmed transactions announced by any peer of the shared peer group, kept once however many peers send them.
+// The wallets a transaction touches are worked out when it is first seen, and it is indexed by them. They are found
+// from the output scripts the wallets watch and the outputs they own, indexed as the wallets derive keys and take
+// transactions, so no wallet is asked and none of their locks taken.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(MempoolProperties.class)
+public class MempoolTracker {
+
+    Cache<Sha256Hash, MempoolTransaction> transactionByHash;
+
+    Map<UUID, Collection<Sha256Hash>> transactionHashesByWalletId = new ConcurrentHashMap<>();
+
+    Map<ByteString, Collection<UUID>> walletIdsByScript = new ConcurrentHashMap<>();
+
+    Map<TransactionOutPoint, Collection<UUID>> walletIdsByOutPoint = new ConcurrentHashMap<>();
+
+    AtomicLong announcements = new AtomicLong();
+
+    AtomicLong duplicateAnnouncements = new AtomicLong();
+
+    AtomicLong evictions = new AtomicLong();
+
+    public MempoolTracker(MempoolProperties mempoolProperties) {
+        this.transactionByHash = CacheBuilder.newBuilder()
+                .maximumSize(mempoolProperties.getCapacity())
+                .expireAfterWrite(mempoolProperties.getMaximumAgeMillis(), MILLISECONDS)
+                .removalListener(this::unindex)
+                .build();
+    }
+
+    // Keys, lookahead ones included, and watched scripts are indexed as they are added, owned outputs as their
+    // transactions are received or sent. The listeners run on the thread changing the wallet, under its lock.
+    void watch(UUID walletId, Wallet wallet) {
+
+        wallet.addKeyChainEventListener(Threading.SAME_THREAD, keys -> keys.forEach(key -> indexKey(walletId, key)));
+        wallet.addScriptsChangeEventListener((changedWallet, scripts, isAddingScripts) -> {
+            if (isAddingScripts) {
+                scripts.forEach(script -> indexScript(walletId, script.getProgram()));
+            }
+        });
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> indexOutputs(walletId, changedWallet, tx));
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> indexOutputs(walletId, changedWallet, tx));
+
+        wallet.getActiveKeyChain().getLeafKeys().forEach(key -> indexKey(walletId, key));
+        wallet.getImportedKeys().forEach(key -> indexKey(walletId, key));
+        List.ofAll(wallet.getWatchedScripts()).map(Script::getProgram).forEach(program -> indexScript(walletId, program));
+        wallet.getTransactions(false).forEach(tx -> indexOutputs(walletId, wallet, tx));
+    }
+
+    // Called from the single thread of the peer group listeners
+    void track(Transaction transaction, Map<UUID, Wallet> walletById) {
+
+        announcements.incrementAndGet();
+        if (transactionByHash.getIfPresent(transaction.getHash()) != null) {
+            duplicateAnnouncements.incrementAndGet();
+            return;
+        }
+
+        val fee = fee(transaction, walletById);
+        val mempoolTransaction = new MempoolTransaction(transaction, System.currentTimeMillis(), fee.map(Coin::longValue).getOrNull(),
+                fee.map(value -> value.longValue() * 1000 / transaction.getMessageSize()).getOrNull(), findWalletIds(transaction, walletById));
+
+        transactionByHash.put(transaction.getHash(), mempoolTransaction);
+        mempoolTransaction.getWalletIds().forEach(walletId -> transactionHashesByWalletId.computeIfAbsent(walletId, id -> ConcurrentHashMap.newKeySet()).add(transaction.getHash()));
+    }
+
+    // Transactions seen unconfirmed already know their wallets, so a block full of them is not matched again. A wallet
+    // is touched by a transaction paying one of its scripts or spending one of its outputs, double spends included.
+    Set<UUID> findWalletIds(Transaction transaction, Map<UUID, Wallet> walletById) {
+        return Option.of(transactionByHash.getIfPresent(transaction.getHash())).map(MempoolTransaction::getWalletIds)
+                .getOrElse(() -> List.ofAll(transaction.getOutputs()).flatMap(output -> Option.of(walletIdsByScript.get(ByteString.copyFrom(output.getScriptBytes()))))
+                        .appendAll(List.ofAll(transaction.getInputs()).flatMap(input -> Option.of(walletIdsByOutPoint.get(input.getOutpoint()))))
+                        .foldLeft(HashSet.<UUID>empty(), HashSet::addAll)
+                        .filter(walletById::containsKey));
+    }
+
+    // Confirmed and double spent transactions are dropped as they are found. Their confidences are read, so callers on
+    // a request thread propagate the context of the chain engine first.
+    public List<MempoolTransaction> findTransactionsOfWallet(UUID walletId) {
+
+        val transactions = List.ofAll(Option.of(transactionHashesByWalletId.get(walletId)).getOrElse(ConcurrentHashMap::newKeySet))
+                .flatMap(hash -> Option.of(transactionByHash.getIfPresent(hash)));
+        val confirmed = transactions.filter(MempoolTransaction::isConfirmedOrDead);
+        confirmed.forEach(transaction -> transactionByHash.invalidate(transaction.getTransaction().getHash()));
+
+        return transactions.removeAll(confirmed).sortBy(MempoolTransaction::getFirstSeenMillis).reverse();
+    }
+
+    // Transactions stay tracked for the other wallets they touch
+    void forget(UUID walletId) {
+        transactionHashesByWalletId.remove(walletId);
+        forget(walletIdsByScript, walletId);
+        forget(walletIdsByOutPoint, walletId);
+    }
+
+    MempoolMetricsDto metrics() {
+        return new MempoolMetricsDto(
+                transactionByHash.size(),
+                transactionHashesByWalletId.values().stream().mapToLong(Collection::size).sum(),
+                announcements.get(),
+                duplicateAnnouncements.get(),
+                evictions.get());
+    }
+
+    private void unindex(RemovalNotification<Sha256Hash, MempoolTransaction> notification) {
+        if (notification.wasEvicted()) {
+            evictions.incrementAndGet();
+        }
+        notification.getValue().getWalletIds().forEach(walletId -> Option.of(transactionHashesByWalletId.get(walletId)).forEach(hashes -> hashes.remove(notification.getKey())));
+    }
+
+    // Known only when every spent output is in the tracker or in one of the wallets
+    private Option<Coin> fee(Transaction transaction, Map<UUID, Wallet> walletById) {
+
+        val spentOutputs = List.ofAll(transaction.getInputs()).map(TransactionInput::getOutpoint).map(outPoint -> spentOutput(outPoint, walletById));
+        if (spentOutputs.exists(Option::isEmpty)) {
+            return Option.none();
+        }
+
+        return Option.of(spentOutputs.map(Option::get).map(TransactionOutput::getValue).fold(Coin.ZERO, Coin::add).subtract(transaction.getOutputSum()));
+    }
+
+    private Option<TransactionOutput> spentOutput(TransactionOutPoint outPoint, Map<UUID, Wallet> walletById) {
+        return Option.of(transactionByHash.getIfPresent(outPoint.getHash())).map(MempoolTransaction::getTransaction)
+                .flatMap(parent -> Try.of(() -> parent.getOutput(outPoint.getIndex())).toOption())
+                .orElse(() -> Option.of(walletIdsByOutPoint.get(outPoint)).flatMap(walletIds -> List.ofAll(walletIds).flatMap(walletId -> Option.of(walletById.get(walletId))).headOption())
+                        .flatMap(wallet -> Option.of(wallet.getTransaction(outPoint.getHash())))
+                        .flatMap(parent -> Try.of(() -> parent.getOutput(outPoint.getIndex())).toOption()));
+    }
+
+    // A key is paid to by its address or, for older payments, by its public key
+    private void indexKey(UUID walletId, ECKey key) {
+        indexScript(walletId, ScriptBuilder.createOutputScript(key.toAddress(networkParameters())).getProgram());
+        indexScript(walletId, ScriptBuilder.createOutputScript(key).getProgram());
+    }
+
+    private void indexScript(UUID walletId, byte[] program) {
+        walletIdsByScript.computeIfAbsent(ByteString.copyFrom(program), script -> ConcurrentHashMap.newKeySet()).add(walletId);
+    }
+
+    private void indexOutputs(UUID walletId, Wallet wallet, Transaction transaction) {
+        List.ofAll(transaction.getOutputs()).filter(output -> output.isMineOrWatched(wallet))
+                .forEach(output -> walletIdsByOutPoint.computeIfAbsent(output.getOutPointFor(), outPoint -> ConcurrentHashMap.newKeySet()).add(walletId));
+    }
+
+    private static <K> void forget(Map<K, Collection<UUID>> index, UUID walletId) {
+        index.values().forEach(walletIds -> walletIds.remove(walletId));
+        index.values().removeIf(Collection::isEmpty);
+    }
+}
@@ -0,0 +1,30 @@
+package bitcoin.chain;
+
+import io.vavr.collection.Set;
+import lombok.Value;
+import lombok.val;
+import org.bitcoinj.core.Transaction;
+
+import java.util.UUID;
+
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.BUILDING;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.DEAD;
+
+@Value
+public class MempoolTransaction {
+
+    Transaction transaction;
+
+    long firstSeenMillis;
+
+    Long fee;
+
+    Long feePerKb;
+
+    Set<UUID> walletIds;
+
+    boolean isConfirmedOrDead() {
+        val confidenceType = transaction.getConfidence().getConfidenceType();
+        return confidenceType == BUILDING || confidenceType == DEAD;
+    }
+}
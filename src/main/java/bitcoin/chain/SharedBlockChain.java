@@ -0,0 +1,168 @@
+package bitcoin.chain;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// One chain for every hosted wallet. Wallets join at different heights, so a wallet that is behind rewinds the chain
+// and the wallets that are ahead are detached until the chain is back at the block they have already seen.
+@Slf4j
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class SharedBlockChain extends BlockChain {
+
+    // Same margin WalletAppKit leaves before the earliest key of a wallet
+    static final long KEY_TIME_MARGIN_SECONDS = 60 * 60 * 24 * 7;
+
+    Set<Wallet> attachedWallets = ConcurrentHashMap.newKeySet();
+
+    Map<Wallet, Integer> waitingHeightByWallet = new ConcurrentHashMap<>();
+
+    HeaderStore headerStore;
+
+    Option<CompactFilterSync> compactFilterSync;
+
+    SharedBlockChain(Context context, HeaderStore headerStore, Option<CompactFilterSync> compactFilterSync) throws BlockStoreException {
+        super(context, headerStore);
+        this.headerStore = headerStore;
+        this.compactFilterSync = compactFilterSync;
+        // Runs inside the chain lock and before the listeners of the wallets, so matched transactions reach the wallets
+        // attached before this block, and a waiting wallet is attached before the next block is connected
+        addNewBestBlockListener(Threading.SAME_THREAD, block -> {
+            compactFilterSync.forEach(sync -> receiveMatchingTransactions(sync, block));
+            attachWaitingWallets(block);
+        });
+    }
+
+    // Returns false when the wallet needs blocks from before the checkpoint the store starts at
+    boolean attach(Wallet wallet) {
+        lock.lock();
+        try {
+            val neededHeight = neededHeight(wallet);
+            if (neededHeight < 0) {
+                return false;
+            }
+
+            if (neededHeight > getBestChainHeight()) {
+                waitingHeightByWallet.put(wallet, neededHeight);
+                return true;
+            }
+
+            if (neededHeight < getBestChainHeight()) {
+                if (!Try.run(() -> rollbackBlockStore(neededHeight)).isSuccess()) {
+                    return false;
+                }
+                log.info("Rewound shared chain to height={}", neededHeight);
+                attachedWallets.stream()
+                        .filter(attachedWallet -> attachedWallet.getLastBlockSeenHeight() > neededHeight)
+                        .forEach(attachedWallet -> {
+                            detach(attachedWallet);
+                            waitingHeightByWallet.put(attachedWallet, attachedWallet.getLastBlockSeenHeight());
+                        });
+            }
+
+            addWallet(wallet);
+            attachedWallets.add(wallet);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void detach(Wallet wallet) {
+        lock.lock();
+        try {
+            waitingHeightByWallet.remove(wallet);
+            if (attachedWallets.remove(wallet)) {
+                removeWallet(wallet);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The header is already the chain head when this fails, going one block back makes the peers send it again
+    private void receiveMatchingTransactions(CompactFilterSync sync, StoredBlock block) {
+        Try.run(() -> sync.receiveMatchingTransactions(block, attachedWallets)).getOrElseThrow(t -> {
+            Try.run(() -> rollbackBlockStore(block.getHeight() - 1));
+            return new RuntimeException(String.format("Couldn't match the compact filter of block at height=%s", block.getHeight()), t);
+        });
+    }
+
+    private void attachWaitingWallets(StoredBlock block) {
+        waitingHeightByWallet.entrySet().removeIf(waitingHeight -> {
+            if (waitingHeight.getValue() > block.getHeight()) {
+                return false;
+            }
+            addWallet(waitingHeight.getKey());
+            attachedWallets.add(waitingHeight.getKey());
+            return true;
+        });
+    }
+
+    // A wallet that has seen blocks continues after the last one, a new wallet starts a week before its first key. A
+    // wallet without a known birthday starts where the chain does, instead of taking every wallet back to genesis.
+    private int neededHeight(Wallet wallet) {
+        if (wallet.getLastBlockSeenHeight() >= 0) {
+            return wallet.getLastBlockSeenHeight();
+        }
+
+        val time = wallet.getEarliestKeyCreationTime() - KEY_TIME_MARGIN_SECONDS;
+        return Try.of(() -> {
+            val startHeight = startHeight();
+            if (wallet.getEarliestKeyCreationTime() <= 0) {
+                return startHeight;
+            }
+            if (startHeight > 0 && headerStore.findByHeight(startHeight).get().getHeader().getTimeSeconds() > time) {
+                return -1;
+            }
+            return lastHeightAtOrBefore(startHeight, time);
+        }).getOrElse(-1);
+    }
+
+    // The store holds the best chain from genesis or from a checkpoint on, the heights in between are empty
+    private int startHeight() throws BlockStoreException {
+        int low = 1;
+        int high = getBestChainHeight();
+        if (high == 0 || headerStore.findByHeight(1).isDefined()) {
+            return 0;
+        }
+        while (low < high) {
+            val middle = (low + high) >>> 1;
+            if (headerStore.findByHeight(middle).isDefined()) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    // Block times only roughly increase, close enough given the margin before the first key
+    private int lastHeightAtOrBefore(int startHeight, long time) throws BlockStoreException {
+        int low = startHeight;
+        int high = getBestChainHeight();
+        while (low < high) {
+            val middle = (low + high + 1) >>> 1;
+            if (headerStore.findByHeight(middle).get().getHeader().getTimeSeconds() <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
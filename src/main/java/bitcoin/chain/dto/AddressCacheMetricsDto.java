@@ -0,0 +1,19 @@
+package bitcoin.chain.dto;
+
+import lombok.Value;
+
+@Value
+public class AddressCacheMetricsDto {
+
+    Long addresses;
+
+    Long base58Requests;
+
+    Double base58HitRate;
+
+    Long scriptRequests;
+
+    Double scriptHitRate;
+
+    Long evictions;
+}
@@ -0,0 +1,11 @@
+package bitcoin.chain.dto;
+
+import lombok.Value;
+
+@Value
+public class BlockFilterDto {
+
+    String filter;
+
+    String header;
+}
@@ -0,0 +1,25 @@
+package bitcoin.chain.dto;
+
+import lombok.Value;
+
+@Value
+public class BloomFilterMetricsDto {
+
+    Integer wallets;
+
+    Integer elements;
+
+    Integer sizeInBytes;
+
+    Double falsePositiveRate;
+
+    Double estimatedFalsePositiveRate;
+
+    Long recalculations;
+
+    Long coalescedRecalculations;
+
+    Long matchedTransactions;
+
+    Long irrelevantTransactions;
+}
@@ -0,0 +1,17 @@
+package bitcoin.chain.dto;
+
+import lombok.Value;
+
+@Value
+public class MempoolMetricsDto {
+
+    Long transactions;
+
+    Long transactionsOfWallets;
+
+    Long announcements;
+
+    Long duplicateAnnouncements;
+
+    Long evictions;
+}
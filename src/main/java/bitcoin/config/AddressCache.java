@@ -0,0 +1,86 @@
+package bitcoin.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.script.Script;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static lombok.AccessLevel.PRIVATE;
+
+// Addresses parsed from base58 and from output scripts, kept so the same address in request after request or output
+// after output is decoded, checksummed and parsed once. Failures are not kept, so whatever a client sends that does
+// not parse never takes the place of an address.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(AddressCacheProperties.class)
+public class AddressCache {
+
+    Cache<String, Address> addressByBase58;
+
+    Cache<ByteBuffer, Address> addressByScript;
+
+    Cache<ByteBuffer, Address> forcedAddressByScript;
+
+    public AddressCache(AddressCacheProperties addressCacheProperties) {
+        this.addressByBase58 = CacheBuilder.newBuilder().maximumSize(addressCacheProperties.getCapacity()).recordStats().build();
+        this.addressByScript = CacheBuilder.newBuilder().maximumSize(addressCacheProperties.getCapacity()).recordStats().build();
+        this.forcedAddressByScript = CacheBuilder.newBuilder().maximumSize(addressCacheProperties.getCapacity()).recordStats().build();
+    }
+
+    public Address fromBase58(String base58) {
+
+        val cached = addressByBase58.getIfPresent(base58);
+        if (cached != null) {
+            return cached;
+        }
+
+        val address = Address.fromBase58(networkParameters(), base58);
+        addressByBase58.put(base58, address);
+
+        return address;
+    }
+
+    // As new Script(script).getToAddress(networkParameters()), P2PKH and P2SH only
+    public Address fromScript(byte[] script) {
+        return fromScript(addressByScript, script, false);
+    }
+
+    // As new Script(script).getToAddress(networkParameters(), true), P2PK outputs give the address of their key
+    public Address fromScriptForcingPayToPubKey(byte[] script) {
+        return fromScript(forcedAddressByScript, script, true);
+    }
+
+    public CacheStats base58Stats() {
+        return addressByBase58.stats();
+    }
+
+    public CacheStats scriptStats() {
+        return addressByScript.stats().plus(forcedAddressByScript.stats());
+    }
+
+    public long size() {
+        return addressByBase58.size() + addressByScript.size() + forcedAddressByScript.size();
+    }
+
+    // Lookups wrap the script bytes as they are, only a missing script is copied into its key
+    private static Address fromScript(Cache<ByteBuffer, Address> cache, byte[] script, boolean forcePayToPubKey) {
+
+        val cached = cache.getIfPresent(ByteBuffer.wrap(script));
+        if (cached != null) {
+            return cached;
+        }
+
+        val address = new Script(script).getToAddress(networkParameters(), forcePayToPubKey);
+        cache.put(ByteBuffer.wrap(script.clone()), address);
+
+        return address;
+    }
+}
@@ -0,0 +1,17 @@
+package bitcoin.config;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "address-cache")
+public class AddressCacheProperties {
+
+    // Addresses kept by each of the caches, from base58 and from scripts
+    Long capacity = 100000L;
+
+}
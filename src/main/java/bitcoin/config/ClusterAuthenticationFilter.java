@@ -0,0 +1,64 @@
+package bitcoin.config;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.regex.Pattern;
+
+import static io.vavr.API.Tuple;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static lombok.AccessLevel.PRIVATE;
+
+// Calls between the nodes of a cluster carry the secret they share. The endpoints only nodes call are turned away
+// without it, and what a request says about the node it comes from is only trusted with it.
+@Component
+@AllArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(ClusterProperties.class)
+public class ClusterAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final List<Tuple2<String, Pattern>> CLUSTER_ENDPOINTS = List.of(
+            Tuple("PUT", Pattern.compile("^/shard/nodes/?$")),
+            Tuple("PUT", Pattern.compile("^/shard/wallet/[^/]+/?$")),
+            Tuple("PUT", Pattern.compile("^/replication/heartbeat/?$")),
+            Tuple("PUT", Pattern.compile("^/replication/wallet/[^/]+/?$")),
+            Tuple("DELETE", Pattern.compile("^/replication/wallet/[^/]+/?$")),
+            Tuple("POST", Pattern.compile("^/replication/promote/?$")));
+
+    ClusterProperties clusterProperties;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        val path = RequestPaths.pathOf(request);
+        if (!isPeer(request) && CLUSTER_ENDPOINTS.exists(endpoint -> endpoint._1.equals(request.getMethod()) && endpoint._2.matcher(path).matches())) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    // Compared in constant time. Without a secret set here no request is from a peer.
+    public boolean isPeer(HttpServletRequest request) {
+        val secret = request.getHeader(SECRET_HEADER);
+        return clusterProperties.getSecret() != null && secret != null && MessageDigest.isEqual(clusterProperties.getSecret().getBytes(UTF_8), secret.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,17 @@
+package bitcoin.config;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    // Shared by every node of the cluster and sent with every call between them, none turns those calls away
+    String secret;
+
+}
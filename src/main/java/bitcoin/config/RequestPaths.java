@@ -0,0 +1,26 @@
+package bitcoin.config;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.UtilityClass;
+import lombok.val;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+// Paths as the filters see them, before any controller: which requests are about one wallet, and which one
+@UtilityClass
+public class RequestPaths {
+
+    private static final Pattern WALLET_PATH = Pattern.compile("^/(?:wallet(?:/unlock)?|payment-server|payment-client/payment)/([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})(?:/.*)?$");
+
+    public static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    public static Option<UUID> walletIdOf(String path) {
+        val matcher = WALLET_PATH.matcher(path);
+        return matcher.matches() ? Try.of(() -> UUID.fromString(matcher.group(1))).toOption() : Option.none();
+    }
+}
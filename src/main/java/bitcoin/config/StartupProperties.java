@@ -0,0 +1,17 @@
+package bitcoin.config;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "startup")
+public class StartupProperties {
+
+    // Stops the application once it is ready, for the run that records the classes of a class data sharing archive
+    Boolean exitWhenReady = false;
+
+}
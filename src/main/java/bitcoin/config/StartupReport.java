@@ -0,0 +1,41 @@
+package bitcoin.config;
+
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Time to ready counts from the start of the JVM, so class loading and everything before Spring is included
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(StartupProperties.class)
+public class StartupReport {
+
+    StartupProperties startupProperties;
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+
+        val runtime = ManagementFactory.getRuntimeMXBean();
+        val classLoading = ManagementFactory.getClassLoadingMXBean();
+        log.info("Ready in {} ms since the JVM started, {} beans, {} classes loaded, class data sharing={}",
+                runtime.getUptime(), event.getApplicationContext().getBeanDefinitionCount(), classLoading.getTotalLoadedClassCount(),
+                runtime.getInputArguments().stream().anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile")));
+
+        if (startupProperties.getExitWhenReady()) {
+            log.info("Exiting as startup.exit-when-ready is set");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package bitcoin.config;
+
+import lombok.experimental.UtilityClass;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@UtilityClass
+public class StorageConfig {
+
+    private static final Path WALLETS_DIRECTORY = Paths.get("development/wallets");
+
+    public static Path walletsDirectory() {
+        return WALLETS_DIRECTORY;
+    }
+}
@@ -1,8 +1,11 @@
 package bitcoin.config;
 
+import bitcoin.transaction.dto.StreamedTransactionsDto;
+import bitcoin.transaction.dto.TransactionsDto;
 import com.fasterxml.classmate.TypeResolver;
 import io.vavr.collection.List;
 import lombok.val;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.PathSelectors;
@@ -15,14 +18,18 @@ import static springfox.documentation.builders.RequestHandlerSelectors.basePacka
 import static springfox.documentation.schema.AlternateTypeRules.newRule;
 import static springfox.documentation.spi.DocumentationType.SWAGGER_2;
 
+// Scanning every controller for the docs is a good part of the startup, the production profile goes without them
 @Configuration
 @EnableSwagger2
+@ConditionalOnProperty(name = "swagger.enabled", matchIfMissing = true)
 public class SwaggerConfig {
 
     @Bean
     public Docket api() {
         return new Docket(SWAGGER_2)
                 .alternateTypeRules(vavrCollectionsAsListRule())
+                // Listings are streamed by their own serializer, their json is still that of a TransactionsDto
+                .directModelSubstitute(StreamedTransactionsDto.class, TransactionsDto.class)
                 .select()
                 .apis(basePackage("bitcoin"))
                 .paths(PathSelectors.any())
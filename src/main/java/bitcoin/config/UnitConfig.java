@@ -0,0 +1,11 @@
+package bitcoin.config;
+
+import lombok.experimental.UtilityClass;
+
+import java.math.BigDecimal;
+
+@UtilityClass
+public class UnitConfig {
+
+    public static final BigDecimal SATOSHI_TO_BITCOIN_CONVERSION = BigDecimal.valueOf(100000000L);
+}
@@ -0,0 +1,34 @@
+package bitcoin.consolidation;
+
+import io.vavr.collection.Stream;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.CoinSelection;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Gathers the small outputs whatever the target, the consolidation sends them all back to the wallet minus the fee
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class SmallOutputsSelector extends DefaultCoinSelector {
+
+    long smallOutputValue;
+
+    int maximumInputs;
+
+    @Override
+    public CoinSelection select(Coin target, List<TransactionOutput> candidates) {
+        val smallOutputs = Stream.ofAll(candidates)
+                .filter(output -> output.getValue().value < smallOutputValue)
+                .filter(output -> shouldSelect(output.getParentTransaction()))
+                .take(maximumInputs);
+
+        return new CoinSelection(Coin.valueOf(smallOutputs.map(output -> output.getValue().value).sum().longValue()), smallOutputs.toJavaList());
+    }
+}
@@ -0,0 +1,40 @@
+package bitcoin.consolidation;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "utxo-consolidation")
+public class UtxoConsolidationProperties {
+
+    Boolean enabled = false;
+
+    Thresholds defaults = new Thresholds();
+
+    Map<UUID, Thresholds> wallets = new HashMap<>();
+
+    Thresholds thresholdsOf(UUID walletId) {
+        return wallets.getOrDefault(walletId, defaults);
+    }
+
+    @Data
+    @FieldDefaults(level = PRIVATE)
+    public static class Thresholds {
+
+        Integer minimumOutputs = 100;
+
+        Long smallOutputValue = 100000L;
+
+        Integer maximumInputs = 500;
+
+        Long maximumFeePerKb = 10000L;
+    }
+}
@@ -0,0 +1,34 @@
+package bitcoin.consolidation;
+
+import bitcoin.consolidation.dto.UtxoConsolidationDto;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/wallet/{walletId}/consolidation", produces = APPLICATION_JSON_VALUE)
+public class UtxoConsolidationResource {
+
+    UtxoConsolidationService utxoConsolidationService;
+
+    @GetMapping
+    public UtxoConsolidationDto findLastConsolidationOfWallet(@PathVariable("walletId") UUID walletId) {
+        return utxoConsolidationService.findLastConsolidation(walletId).getOrElseThrow(() -> new RuntimeException(String.format("No consolidation found for walletId=%s", walletId)));
+    }
+
+    @PutMapping
+    public UtxoConsolidationDto consolidateWallet(@PathVariable("walletId") UUID walletId) {
+        return utxoConsolidationService.consolidate(walletId);
+    }
+}
@@ -0,0 +1,151 @@
+package bitcoin.consolidation;
+
+import bitcoin.consolidation.UtxoConsolidationProperties.Thresholds;
+import bitcoin.consolidation.dto.UtxoConsolidationDto;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.transaction.SpendQueue;
+import bitcoin.wallet.OutputReservations;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.InsufficientMoneyException;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static bitcoin.fee.FeeTarget.ECONOMY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.NetworkParameters.MAX_MONEY;
+import static org.bitcoinj.wallet.KeyChain.KeyPurpose.CHANGE;
+
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(UtxoConsolidationProperties.class)
+public class UtxoConsolidationService {
+
+    private static final int SELECTION_TIME_SAMPLES = 5;
+
+    WalletRepository walletRepository;
+
+    FeeEstimator feeEstimator;
+
+    SpendQueue spendQueue;
+
+    UtxoConsolidationProperties utxoConsolidationProperties;
+
+    OutputReservations outputReservations;
+
+    Map<UUID, UtxoConsolidationDto> utxoConsolidationByWalletId = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${utxo-consolidation.fixed-delay:600000}", initialDelayString = "${utxo-consolidation.fixed-delay:600000}")
+    void consolidateAllWallets() {
+        if (!utxoConsolidationProperties.getEnabled()) {
+            return;
+        }
+
+        // Watching wallets have no keys to sign a consolidation with
+        walletRepository.findAllWalletIds()
+                .filter(walletId -> walletRepository.findWalletById(walletId).exists(wallet -> !wallet.isWatching()))
+                .forEach(walletId -> Try.of(() -> consolidate(walletId))
+                        .onFailure(t -> log.warn("Couldn't consolidate outputs of wallet={}", walletId, t)));
+    }
+
+    Option<UtxoConsolidationDto> findLastConsolidation(UUID walletId) {
+        return Option.of(utxoConsolidationByWalletId.get(walletId));
+    }
+
+    UtxoConsolidationDto consolidate(UUID walletId) {
+
+        val watching = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId))).isWatching();
+        if (watching) {
+            return skipped(walletId, "Watching wallet has no keys to sign a consolidation");
+        }
+
+        val thresholds = utxoConsolidationProperties.thresholdsOf(walletId);
+        val feePerKb = feeEstimator.estimateFeePerKb(ECONOMY);
+
+        if (feePerKb.value > thresholds.getMaximumFeePerKb()) {
+            return skipped(walletId, String.format("Economy feePerKb=%s is above the ceiling=%s", feePerKb.value, thresholds.getMaximumFeePerKb()));
+        }
+
+        return spendQueue.spend(walletId, wallet -> consolidate(walletId, wallet, thresholds, feePerKb));
+    }
+
+    private UtxoConsolidationDto consolidate(UUID walletId, Wallet wallet, Thresholds thresholds, Coin feePerKb) throws InsufficientMoneyException {
+
+        // Only outputs a spend of the whole wallet could select are consolidated, the outputs of its accounts stay theirs
+        val walletCoinSelector = wallet.getCoinSelector();
+        val candidates = List.ofAll(wallet.calculateAllSpendCandidates(true, true));
+        val smallOutputs = List.ofAll(walletCoinSelector.select(MAX_MONEY, candidates.toJavaList()).gathered)
+                .filter(output -> output.getValue().value < thresholds.getSmallOutputValue());
+
+        if (smallOutputs.size() < thresholds.getMinimumOutputs()) {
+            return skipped(walletId, String.format("Only %s outputs are below smallOutputValue=%s, minimumOutputs=%s", smallOutputs.size(), thresholds.getSmallOutputValue(), thresholds.getMinimumOutputs()));
+        }
+
+        val utxoCountBefore = candidates.size();
+        val selectionNanosBefore = averageSelectionNanos(candidates);
+
+        // Empty wallet mode sends everything the selector gathers, minus the fee, to a single output of our own
+        val sendRequest = SendRequest.emptyWallet(wallet.freshAddress(CHANGE));
+        sendRequest.feePerKb = feePerKb;
+        val smallOutputsSelector = new SmallOutputsSelector(thresholds.getSmallOutputValue(), thresholds.getMaximumInputs());
+        sendRequest.coinSelector = outputReservations.coinSelector((target, outputs) -> smallOutputsSelector.select(target, new ArrayList<>(walletCoinSelector.select(MAX_MONEY, outputs).gathered)));
+
+        val transaction = wallet.sendCoins(sendRequest).tx;
+
+        val candidatesAfter = List.ofAll(wallet.calculateAllSpendCandidates(true, true));
+        val utxoConsolidation = new UtxoConsolidationDto(
+                new Date(),
+                false,
+                null,
+                transaction.getHashAsString(),
+                transaction.getInputs().size(),
+                Option.of(transaction.getFee()).map(Coin::longValue).getOrElse(0L),
+                utxoCountBefore,
+                candidatesAfter.size(),
+                NANOSECONDS.toMicros(selectionNanosBefore),
+                NANOSECONDS.toMicros(averageSelectionNanos(candidatesAfter)));
+        utxoConsolidationByWalletId.put(walletId, utxoConsolidation);
+
+        log.info("Consolidated outputs of wallet={} with {}", walletId, utxoConsolidation);
+
+        return utxoConsolidation;
+    }
+
+    // A skipped consolidation is not kept, the last one done still is
+    private UtxoConsolidationDto skipped(UUID walletId, String reason) {
+        log.info("Skipping consolidation of wallet={}: {}", walletId, reason);
+        return new UtxoConsolidationDto(new Date(), true, reason, null, 0, 0L, 0, 0, 0L, 0L);
+    }
+
+    private long averageSelectionNanos(List<TransactionOutput> candidates) {
+        val target = Coin.valueOf(candidates.map(output -> output.getValue().value).sum().longValue() / 2);
+        val candidatesAsJavaList = candidates.toJavaList();
+
+        long start = System.nanoTime();
+        for (int sample = 0; sample < SELECTION_TIME_SAMPLES; sample++) {
+            new DefaultCoinSelector().select(target.isPositive() ? target : MAX_MONEY, candidatesAsJavaList);
+        }
+        return (System.nanoTime() - start) / SELECTION_TIME_SAMPLES;
+    }
+}
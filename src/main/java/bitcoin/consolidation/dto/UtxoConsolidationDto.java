@@ -0,0 +1,29 @@
+package bitcoin.consolidation.dto;
+
+import lombok.Value;
+
+import java.util.Date;
+
+@Value
+public class UtxoConsolidationDto {
+
+    Date consolidatedAt;
+
+    boolean skipped;
+
+    String skippedReason;
+
+    String txHash;
+
+    int consolidatedOutputs;
+
+    long fee;
+
+    int utxoCountBefore;
+
+    int utxoCountAfter;
+
+    long averageSelectionMicrosBefore;
+
+    long averageSelectionMicrosAfter;
+}
@@ -0,0 +1,28 @@
+package bitcoin.fee;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "fee-estimation")
+public class FeeEstimationProperties {
+
+    Long minimumFeePerKb = 1000L;
+
+    Long maximumFeePerKb = 1000000L;
+
+    Long fallbackFeePerKb = 10000L;
+
+    Double decay = 0.998D;
+
+    Double minimumSamples = 4D;
+
+    Integer maximumTrackedTransactions = 10000;
+
+    Integer maximumTrackedBlocks = 1008;
+
+}
@@ -0,0 +1,129 @@
+package bitcoin.fee;
+
+import bitcoin.chain.ConfirmationEvent;
+import bitcoin.wallet.WalletReleasedEvent;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.listeners.NewBestBlockListener;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.vavr.API.Tuple;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.DEAD;
+
+// As an SPV node we never see the full contents of a block, so the samples are the transactions our own wallets send:
+// the fee rate they paid and how many blocks they waited until they were included. A transaction is tracked when its
+// wallet sends it and sampled when the confirmation tracker sees its first confirmation.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(FeeEstimationProperties.class)
+public class FeeEstimator implements NewBestBlockListener, WalletCoinsSentEventListener {
+
+    FeeEstimationProperties feeEstimationProperties;
+
+    FeeRateStatistics feeRateStatistics;
+
+    ConcurrentMap<Sha256Hash, TrackedTransaction> trackedTransactionByHash = new ConcurrentHashMap<>();
+
+    AtomicInteger lastProcessedHeight = new AtomicInteger(-1);
+
+    AtomicReference<Map<FeeTarget, Coin>> feePerKbByTarget = new AtomicReference<>(HashMap.empty());
+
+    public FeeEstimator(FeeEstimationProperties feeEstimationProperties) {
+        this.feeEstimationProperties = feeEstimationProperties;
+        this.feeRateStatistics = new FeeRateStatistics(
+                feeEstimationProperties.getMinimumFeePerKb(),
+                feeEstimationProperties.getMaximumFeePerKb(),
+                List.of(FeeTarget.values()).map(FeeTarget::getBlocks).max().get(),
+                feeEstimationProperties.getDecay(),
+                feeEstimationProperties.getMinimumSamples());
+    }
+
+    public Coin estimateFeePerKb(FeeTarget feeTarget) {
+        return feePerKbByTarget.get().get(feeTarget).getOrElse(() -> Coin.valueOf(feeEstimationProperties.getFallbackFeePerKb()));
+    }
+
+    public Map<FeeTarget, Coin> estimateFeesPerKb() {
+        return List.of(FeeTarget.values()).toMap(feeTarget -> feeTarget, this::estimateFeePerKb);
+    }
+
+    // Samples past the limit are not needed to estimate, the tracked transactions stay bounded. Transactions the wallet
+    // only learns about from a block never waited in our sight.
+    @Override
+    public void onCoinsSent(Wallet wallet, Transaction tx, Coin prevBalance, Coin newBalance) {
+        if (tx.getAppearsInHashes() != null || trackedTransactionByHash.containsKey(tx.getHash())
+                || trackedTransactionByHash.size() >= feeEstimationProperties.getMaximumTrackedTransactions()) {
+            return;
+        }
+
+        val fee = tx.getFee();
+        if (fee != null && tx.getValueSentFromMe(wallet).isPositive()) {
+            trackedTransactionByHash.put(tx.getHash(), new TrackedTransaction(tx, fee.value * 1000 / tx.getMessageSize(), wallet.getLastBlockSeenHeight()));
+        }
+    }
+
+    @EventListener
+    public void onConfirmation(ConfirmationEvent confirmationEvent) {
+        if (confirmationEvent.isReached() && confirmationEvent.getConfirmations() == 1) {
+            Option.of(trackedTransactionByHash.remove(Sha256Hash.wrap(confirmationEvent.getTxHash())))
+                    .forEach(trackedTransaction -> feeRateStatistics.record(trackedTransaction.getFeePerKb(), confirmationEvent.getHeight() - trackedTransaction.getSeenAtHeight()));
+        }
+    }
+
+    // The confirmation of a transaction of a wallet that left is not followed here anymore
+    @EventListener
+    public void onWalletReleased(WalletReleasedEvent event) {
+        trackedTransactionByHash.keySet().removeIf(txHash -> event.getWallet().getTransaction(txHash) != null);
+    }
+
+    // Every hosted wallet reports the same blocks, only the first report of each height does the work
+    @Override
+    public void notifyNewBestBlock(StoredBlock block) {
+        val height = block.getHeight();
+        val previousHeight = lastProcessedHeight.getAndAccumulate(height, Math::max);
+        if (height <= previousHeight) {
+            return;
+        }
+
+        feeRateStatistics.decay();
+        // Transactions never confirming, dropped by the peers without a double spend, are forgotten after a while
+        trackedTransactionByHash.values().removeIf(trackedTransaction -> trackedTransaction.getTransaction().getConfidence().getConfidenceType() == DEAD
+                || height - trackedTransaction.getSeenAtHeight() > feeEstimationProperties.getMaximumTrackedBlocks());
+
+        feePerKbByTarget.set(List.of(FeeTarget.values())
+                .flatMap(feeTarget -> feeRateStatistics.estimate(feeTarget.getBlocks()).map(feePerKb -> Tuple(feeTarget, Coin.valueOf(feePerKb))))
+                .toMap(tuple -> tuple));
+
+        log.debug("Fee estimates at height={} are {}", height, feePerKbByTarget.get());
+    }
+
+    @Value
+    private static class TrackedTransaction {
+
+        Transaction transaction;
+
+        long feePerKb;
+
+        int seenAtHeight;
+    }
+}
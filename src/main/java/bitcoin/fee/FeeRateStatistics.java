@@ -0,0 +1,89 @@
+package bitcoin.fee;
+
+import io.vavr.control.Option;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+
+import java.util.Arrays;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Same idea as Bitcoin Core's estimator: fee rates are grouped in exponentially spaced buckets and, for every target,
+// we keep a decayed count of how many samples of each bucket confirmed within that many blocks
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class FeeRateStatistics {
+
+    private static final double BUCKET_SPACING = 1.1D;
+
+    private static final double SUCCESS_THRESHOLD = 0.85D;
+
+    long[] bucketLowerBounds;
+
+    double[] samplesByBucket;
+
+    double[][] confirmedWithinTargetByBucket;
+
+    double decay;
+
+    double minimumSamples;
+
+    FeeRateStatistics(long minimumFeePerKb, long maximumFeePerKb, int maximumTarget, double decay, double minimumSamples) {
+        int numberOfBuckets = (int) Math.ceil(Math.log((double) maximumFeePerKb / minimumFeePerKb) / Math.log(BUCKET_SPACING)) + 1;
+
+        this.bucketLowerBounds = new long[numberOfBuckets];
+        for (int bucket = 0; bucket < numberOfBuckets; bucket++) {
+            bucketLowerBounds[bucket] = (long) (minimumFeePerKb * Math.pow(BUCKET_SPACING, bucket));
+        }
+        this.samplesByBucket = new double[numberOfBuckets];
+        this.confirmedWithinTargetByBucket = new double[maximumTarget][numberOfBuckets];
+        this.decay = decay;
+        this.minimumSamples = minimumSamples;
+    }
+
+    synchronized void record(long feePerKb, int blocksToConfirm) {
+        int bucket = bucketOf(feePerKb);
+
+        samplesByBucket[bucket]++;
+        for (int target = Math.max(blocksToConfirm, 1); target <= confirmedWithinTargetByBucket.length; target++) {
+            confirmedWithinTargetByBucket[target - 1][bucket]++;
+        }
+    }
+
+    synchronized void decay() {
+        for (int bucket = 0; bucket < samplesByBucket.length; bucket++) {
+            samplesByBucket[bucket] *= decay;
+            for (double[] confirmedByBucket : confirmedWithinTargetByBucket) {
+                confirmedByBucket[bucket] *= decay;
+            }
+        }
+    }
+
+    // Walks down from the most expensive bucket, grouping buckets until there are enough samples, and stops at the first group that fails the success threshold
+    synchronized Option<Long> estimate(int target) {
+        val confirmedByBucket = confirmedWithinTargetByBucket[Math.min(target, confirmedWithinTargetByBucket.length) - 1];
+
+        int lowestPassingBucket = -1;
+        double samples = 0;
+        double confirmed = 0;
+        for (int bucket = samplesByBucket.length - 1; bucket >= 0; bucket--) {
+            samples += samplesByBucket[bucket];
+            confirmed += confirmedByBucket[bucket];
+
+            if (samples >= minimumSamples) {
+                if (confirmed / samples < SUCCESS_THRESHOLD) {
+                    break;
+                }
+                lowestPassingBucket = bucket;
+                samples = 0;
+                confirmed = 0;
+            }
+        }
+
+        return lowestPassingBucket < 0 ? Option.none() : Option.some(bucketLowerBounds[lowestPassingBucket]);
+    }
+
+    private int bucketOf(long feePerKb) {
+        int index = Arrays.binarySearch(bucketLowerBounds, feePerKb);
+        return index >= 0 ? index : Math.max(-index - 2, 0);
+    }
+}
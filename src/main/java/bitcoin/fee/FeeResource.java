@@ -0,0 +1,25 @@
+package bitcoin.fee;
+
+import bitcoin.fee.dto.FeeEstimatesDto;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/fee", produces = APPLICATION_JSON_VALUE)
+public class FeeResource {
+
+    FeeEstimator feeEstimator;
+
+    @GetMapping(path = "/estimates")
+    public FeeEstimatesDto findFeeEstimates() {
+        return new FeeEstimatesDto(feeEstimator.estimateFeesPerKb().mapValues(feePerKb -> feePerKb.value));
+    }
+}
@@ -0,0 +1,21 @@
+package bitcoin.fee;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public enum FeeTarget {
+
+    NEXT_BLOCK(1),
+
+    SIX_BLOCKS(6),
+
+    ECONOMY(24);
+
+    int blocks;
+}
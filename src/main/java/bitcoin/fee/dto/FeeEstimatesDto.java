@@ -0,0 +1,11 @@
+package bitcoin.fee.dto;
+
+import bitcoin.fee.FeeTarget;
+import io.vavr.collection.Map;
+import lombok.Value;
+
+@Value
+public class FeeEstimatesDto {
+
+    Map<FeeTarget, Long> feePerKbByTarget;
+}
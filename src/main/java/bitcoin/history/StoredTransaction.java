@@ -0,0 +1,18 @@
+package bitcoin.history;
+
+import lombok.Value;
+import org.bitcoinj.core.Transaction;
+
+@Value
+public class StoredTransaction {
+
+    Transaction transaction;
+
+    int height;
+
+    long updateTime;
+
+    long value;
+
+    Long fee;
+}
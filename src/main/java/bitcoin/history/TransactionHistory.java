@@ -0,0 +1,347 @@
+package bitcoin.history;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.collection.Stream;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.val;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static lombok.AccessLevel.PRIVATE;
+
+// Append-only log of transaction records, every change of a transaction is a new record and the last one wins.
+// Only the indexes live in memory, and they only hold record positions, the transactions themselves are read from disk
+// as a listing gets to them. Once the records replaced outweigh the live ones the log is rewritten with the live ones.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class TransactionHistory implements Closeable {
+
+    private static final long MINIMUM_COMPACTION_SIZE = 1024 * 1024;
+
+    Path path;
+
+    // Appends and compactions write, reads read, so a compaction never moves a record while it is read
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @NonFinal
+    FileChannel channel;
+
+    @NonFinal
+    long liveSize;
+
+    Map<Sha256Hash, RecordPosition> recordPositionByHash = new ConcurrentHashMap<>();
+
+    Map<String, Set<Sha256Hash>> hashesByAddress = new ConcurrentHashMap<>();
+
+    NavigableMap<Integer, Set<Sha256Hash>> hashesByHeight = new ConcurrentSkipListMap<>();
+
+    NavigableMap<Long, Set<Sha256Hash>> hashesByUpdateTime = new ConcurrentSkipListMap<>();
+
+    NavigableMap<Long, Set<Sha256Hash>> hashesByValue = new ConcurrentSkipListMap<>();
+
+    TransactionHistory(Path path) throws IOException {
+        this.path = path;
+        // A compaction cut short by a crash left the log itself untouched
+        Files.deleteIfExists(compactionPath());
+        this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        rebuildIndexes();
+        compactIfWasteful();
+    }
+
+    boolean contains(Sha256Hash txHash, int height, byte confidenceType, long updateTime) {
+        val recordPosition = recordPositionByHash.get(txHash);
+        return recordPosition != null
+                && recordPosition.getHeight() == height
+                && recordPosition.getConfidenceType() == confidenceType
+                && recordPosition.getUpdateTime() == updateTime;
+    }
+
+    void append(Transaction transaction, int height, byte confidenceType, long updateTime, long value, Long fee, List<String> addresses) throws IOException {
+
+        val record = new ByteArrayOutputStream();
+        val output = new DataOutputStream(record);
+        output.writeInt(0);
+        output.write(transaction.getHash().getBytes());
+        output.writeInt(height);
+        output.writeByte(confidenceType);
+        output.writeLong(updateTime);
+        output.writeLong(value);
+        output.writeLong(fee == null ? -1L : fee);
+        output.writeShort(addresses.size());
+        for (String address : addresses) {
+            output.writeUTF(address);
+        }
+        val rawTransaction = transaction.unsafeBitcoinSerialize();
+        output.writeInt(rawTransaction.length);
+        output.write(rawTransaction);
+
+        val buffer = ByteBuffer.wrap(record.toByteArray());
+        buffer.putInt(0, buffer.capacity() - Integer.BYTES);
+
+        lock.writeLock().lock();
+        try {
+            val position = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+
+            index(transaction.getHash(), new RecordPosition(position, buffer.capacity(), height, confidenceType, updateTime, value, fee == null ? -1L : fee, addresses));
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Newest first straight from the update time index, nothing is read before it is iterated
+    Seq<StoredTransaction> findAll() {
+        return read(Stream.ofAll(hashesByUpdateTime.descendingMap().values()).flatMap(Stream::ofAll).distinct());
+    }
+
+    Seq<StoredTransaction> findByAddress(String address) {
+        return read(newestFirst(hashesByAddress.getOrDefault(address, ConcurrentHashMap.newKeySet())));
+    }
+
+    Seq<StoredTransaction> findByHeight(int fromHeight, int toHeight) {
+        return read(newestFirst(List.ofAll(hashesByHeight.subMap(fromHeight, true, toHeight, true).values()).flatMap(List::ofAll)));
+    }
+
+    Seq<StoredTransaction> findByUpdateTime(long fromTime, long toTime) {
+        return read(Stream.ofAll(hashesByUpdateTime.subMap(fromTime, true, toTime, true).descendingMap().values()).flatMap(Stream::ofAll).distinct());
+    }
+
+    Seq<StoredTransaction> findByValue(long fromValue, long toValue) {
+        return read(newestFirst(List.ofAll(hashesByValue.subMap(fromValue, true, toValue, true).values()).flatMap(List::ofAll)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Path compactionPath() {
+        return path.resolveSibling(path.getFileName() + ".compacting");
+    }
+
+    // Sorted on the update times held by the index, the records themselves are read as the listing is iterated
+    private Seq<Sha256Hash> newestFirst(Iterable<Sha256Hash> txHashes) {
+        return List.ofAll(txHashes).distinct()
+                .flatMap(txHash -> Option.of(recordPositionByHash.get(txHash)).map(recordPosition -> Tuple.of(txHash, recordPosition.getUpdateTime())))
+                .sortBy(Comparator.reverseOrder(), Tuple2::_2)
+                .map(Tuple2::_1);
+    }
+
+    private Seq<StoredTransaction> read(Seq<Sha256Hash> txHashes) {
+        return Stream.ofAll(txHashes)
+                .flatMap(txHash -> Try.of(() -> read(txHash)).getOrElseThrow(t -> new RuntimeException(String.format("Couldn't read transaction with txHash=%s from history", txHash), t)));
+    }
+
+    private List<StoredTransaction> read(Sha256Hash txHash) throws IOException {
+
+        val buffer = readRecord(txHash);
+        if (buffer == null) {
+            return List.empty();
+        }
+
+        val input = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        input.skipBytes(Integer.BYTES + 32);
+        val height = input.readInt();
+        input.readByte();
+        val updateTime = input.readLong();
+        val value = input.readLong();
+        val fee = input.readLong();
+        int addressCount = input.readShort();
+        for (int i = 0; i < addressCount; i++) {
+            input.readUTF();
+        }
+        val rawTransaction = new byte[input.readInt()];
+        input.readFully(rawTransaction);
+
+        return List.of(new StoredTransaction(new Transaction(networkParameters(), rawTransaction), height, updateTime, value, fee < 0 ? null : fee));
+    }
+
+    private ByteBuffer readRecord(Sha256Hash txHash) throws IOException {
+        lock.readLock().lock();
+        try {
+            val recordPosition = recordPositionByHash.get(txHash);
+            if (recordPosition == null) {
+                return null;
+            }
+
+            val buffer = ByteBuffer.allocate(recordPosition.getLength());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, recordPosition.getOffset() + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return buffer;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void rebuildIndexes() throws IOException {
+        channel.position(0);
+        val input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+        long offset = 0;
+        try {
+            while (offset < channel.size()) {
+                offset += readIndexEntry(input, offset);
+            }
+        } catch (EOFException e) {
+            // A record cut short by a crash is dropped, it will be appended again from the wallet
+            channel.truncate(offset);
+        }
+    }
+
+    private int readIndexEntry(DataInputStream input, long offset) throws IOException {
+        val length = input.readInt();
+        val hash = new byte[32];
+        input.readFully(hash);
+        val height = input.readInt();
+        val confidenceType = input.readByte();
+        val updateTime = input.readLong();
+        val value = input.readLong();
+        val fee = input.readLong();
+        int addressCount = input.readShort();
+        List<String> addresses = List.empty();
+        for (int i = 0; i < addressCount; i++) {
+            addresses = addresses.append(input.readUTF());
+        }
+        int remaining = input.readInt();
+        while (remaining > 0) {
+            val skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+
+        index(Sha256Hash.wrap(hash), new RecordPosition(offset, length + Integer.BYTES, height, confidenceType, updateTime, value, fee, addresses));
+
+        return length + Integer.BYTES;
+    }
+
+    // Copies the live records in log order to a new file which then replaces the log, called with the write lock held
+    private void compactIfWasteful() throws IOException {
+
+        val size = channel.size();
+        if (size < MINIMUM_COMPACTION_SIZE || size < 2 * liveSize) {
+            return;
+        }
+
+        val recordPositions = List.ofAll(recordPositionByHash.entrySet()).sortBy(entry -> entry.getValue().getOffset());
+        long offset = 0;
+        try (val compacted = FileChannel.open(compactionPath(), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            for (val entry : recordPositions) {
+                val recordPosition = entry.getValue();
+                long copied = 0;
+                while (copied < recordPosition.getLength()) {
+                    copied += channel.transferTo(recordPosition.getOffset() + copied, recordPosition.getLength() - copied, compacted);
+                }
+                offset += copied;
+            }
+            compacted.force(true);
+        }
+
+        channel.close();
+        Files.move(compactionPath(), path, ATOMIC_MOVE, REPLACE_EXISTING);
+        channel = FileChannel.open(path, READ, WRITE);
+
+        offset = 0;
+        for (val entry : recordPositions) {
+            val recordPosition = entry.getValue();
+            recordPositionByHash.put(entry.getKey(), recordPosition.movedTo(offset));
+            offset += recordPosition.getLength();
+        }
+    }
+
+    private void index(Sha256Hash txHash, RecordPosition recordPosition) {
+        val previous = recordPositionByHash.put(txHash, recordPosition);
+        liveSize += recordPosition.getLength();
+        if (previous != null) {
+            liveSize -= previous.getLength();
+            remove(hashesByHeight, previous.getHeight(), txHash);
+            remove(hashesByUpdateTime, previous.getUpdateTime(), txHash);
+            remove(hashesByValue, previous.getValue(), txHash);
+            previous.getAddresses().removeAll(recordPosition.getAddresses()).forEach(address -> remove(hashesByAddress, address, txHash));
+        }
+
+        hashesByHeight.computeIfAbsent(recordPosition.getHeight(), key -> ConcurrentHashMap.newKeySet()).add(txHash);
+        hashesByUpdateTime.computeIfAbsent(recordPosition.getUpdateTime(), key -> ConcurrentHashMap.newKeySet()).add(txHash);
+        hashesByValue.computeIfAbsent(recordPosition.getValue(), key -> ConcurrentHashMap.newKeySet()).add(txHash);
+        recordPosition.getAddresses().forEach(address -> hashesByAddress.computeIfAbsent(address, key -> ConcurrentHashMap.newKeySet()).add(txHash));
+    }
+
+    private static <K> void remove(Map<K, Set<Sha256Hash>> index, K key, Sha256Hash txHash) {
+        index.computeIfPresent(key, (ignored, txHashes) -> {
+            txHashes.remove(txHash);
+            return txHashes.isEmpty() ? null : txHashes;
+        });
+    }
+
+    // Besides where the record is, what it is indexed by, so an unchanged one is not appended again
+    @Value
+    private static class RecordPosition {
+
+        long offset;
+
+        int length;
+
+        int height;
+
+        byte confidenceType;
+
+        long updateTime;
+
+        long value;
+
+        long fee;
+
+        List<String> addresses;
+
+        RecordPosition movedTo(long offset) {
+            return new RecordPosition(offset, length, height, confidenceType, updateTime, value, fee, addresses);
+        }
+    }
+}
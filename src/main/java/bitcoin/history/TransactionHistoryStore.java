@@ -0,0 +1,166 @@
+package bitcoin.history;
+
+import bitcoin.chain.ConfirmationEvent;
+import bitcoin.config.AddressCache;
+import bitcoin.wallet.WalletListenerExecutors;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static bitcoin.config.StorageConfig.walletsDirectory;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.BUILDING;
+
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@AllArgsConstructor
+public class TransactionHistoryStore {
+
+    private static final long UNFOLLOW_TIMEOUT_SECONDS = 30;
+
+    AddressCache addressCache;
+
+    WalletListenerExecutors walletListenerExecutors;
+
+    Map<UUID, FollowedWallet> followedWalletById = new ConcurrentHashMap<>();
+
+    // Follows the wallet from now on and backfills whatever it already has that the history is missing. New and spent
+    // transactions come from the wallet, their blocks from the confirmations the tracker announces.
+    public void follow(UUID walletId, Wallet wallet) {
+
+        val transactionHistory = Try.of(() -> new TransactionHistory(historyFile(walletId))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        // One thread per wallet keeps the records of a transaction in the order the wallet changed it
+        val followedWallet = new FollowedWallet(wallet, transactionHistory, walletListenerExecutors.executorOf(walletId));
+        followedWalletById.put(walletId, followedWallet);
+
+        wallet.addCoinsReceivedEventListener(followedWallet.getExecutor(), (changedWallet, tx, prevBalance, newBalance) -> record(walletId, followedWallet, tx));
+        wallet.addCoinsSentEventListener(followedWallet.getExecutor(), (changedWallet, tx, prevBalance, newBalance) -> record(walletId, followedWallet, tx));
+
+        followedWallet.getExecutor().execute(() -> wallet.getTransactions(true).forEach(tx -> record(walletId, followedWallet, tx)));
+    }
+
+    // The history is rebuilt from the wallet wherever it is followed next. It is closed on the thread of the wallet,
+    // after the records already queued, and the ones queued later are dropped, so none goes to a closed or deleted file.
+    public void unfollow(UUID walletId) {
+        Option.of(followedWalletById.remove(walletId)).forEach(followedWallet -> Try.run(() -> CompletableFuture.runAsync(() -> Try.run(() -> {
+            followedWallet.getTransactionHistory().close();
+            Files.deleteIfExists(historyFile(walletId));
+        }).get(), followedWallet.getExecutor()).get(UNFOLLOW_TIMEOUT_SECONDS, SECONDS))
+                .onFailure(t -> log.warn("Couldn't remove the transaction history of wallet={}", walletId, t)));
+    }
+
+    // A transaction gets or loses its block as it reaches or loses its first confirmation. One mined again at the same
+    // depth by a reorganization is recorded again at the next threshold it crosses.
+    @EventListener
+    public void onConfirmation(ConfirmationEvent event) {
+        Option.of(followedWalletById.get(event.getWalletId())).forEach(followedWallet -> followedWallet.getExecutor().execute(() ->
+                Option.of(followedWallet.getWallet().getTransaction(Sha256Hash.wrap(event.getTxHash())))
+                        .forEach(tx -> record(event.getWalletId(), followedWallet, tx))));
+    }
+
+    public Seq<StoredTransaction> findTransactions(UUID walletId) {
+        return findTransactionHistory(walletId).findAll();
+    }
+
+    public Seq<StoredTransaction> findTransactionsByAddress(UUID walletId, Address address) {
+        return findTransactionHistory(walletId).findByAddress(address.toBase58());
+    }
+
+    public Seq<StoredTransaction> findTransactionsByHeight(UUID walletId, int fromHeight, int toHeight) {
+        return findTransactionHistory(walletId).findByHeight(fromHeight, toHeight);
+    }
+
+    public Seq<StoredTransaction> findTransactionsByUpdateTime(UUID walletId, long fromTime, long toTime) {
+        return findTransactionHistory(walletId).findByUpdateTime(fromTime, toTime);
+    }
+
+    public Seq<StoredTransaction> findTransactionsByValue(UUID walletId, long fromValue, long toValue) {
+        return findTransactionHistory(walletId).findByValue(fromValue, toValue);
+    }
+
+    @PreDestroy
+    void close() {
+        followedWalletById.values().forEach(followedWallet -> Try.run(followedWallet.getTransactionHistory()::close).onFailure(t -> log.warn("Couldn't close transaction history", t)));
+    }
+
+    private static Path historyFile(UUID walletId) {
+        return walletsDirectory().resolve(walletId.toString() + ".history");
+    }
+
+    private TransactionHistory findTransactionHistory(UUID walletId) {
+        return Option.of(followedWalletById.get(walletId)).map(FollowedWallet::getTransactionHistory).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+    }
+
+    private void record(UUID walletId, FollowedWallet followedWallet, Transaction tx) {
+
+        if (followedWalletById.get(walletId) != followedWallet) {
+            return;
+        }
+
+        val wallet = followedWallet.getWallet();
+        val transactionHistory = followedWallet.getTransactionHistory();
+        val confidence = tx.getConfidence();
+        val height = confidence.getConfidenceType() == BUILDING ? confidence.getAppearedAtChainHeight() : -1;
+        val confidenceType = (byte) confidence.getConfidenceType().getValue();
+
+        val updateTime = tx.getUpdateTime().getTime();
+
+        // A transaction is recorded again when its block, confidence or update time changed. Its value takes the wallet
+        // lock and its addresses a lookup per input and output, they are only worked out for a record to append.
+        if (transactionHistory.contains(tx.getHash(), height, confidenceType, updateTime)) {
+            return;
+        }
+
+        val value = tx.getValue(wallet).value;
+        val fee = Option.of(tx.getFee()).map(Coin::longValue).getOrNull();
+        val addresses = addressesOf(tx);
+
+        Try.run(() -> transactionHistory.append(tx, height, confidenceType, updateTime, value, fee, addresses))
+                .onFailure(t -> log.error("Couldn't append tx={} to the history of wallet={}", tx.getHashAsString(), walletId, t));
+    }
+
+    private List<String> addressesOf(Transaction tx) {
+        val inputOutputs = List.ofAll(tx.getInputs()).map(TransactionInput::getConnectedOutput).flatMap(Option::of);
+
+        return inputOutputs.appendAll(tx.getOutputs())
+                .flatMap(output -> Try.of(() -> addressCache.fromScriptForcingPayToPubKey(output.getScriptBytes())).toOption())
+                .map(Address::toBase58)
+                .distinct();
+    }
+
+    @Value
+    private static class FollowedWallet {
+
+        Wallet wallet;
+
+        TransactionHistory transactionHistory;
+
+        Executor executor;
+    }
+}
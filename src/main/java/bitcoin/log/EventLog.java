@@ -0,0 +1,98 @@
+package bitcoin.log;
+
+import lombok.experimental.UtilityClass;
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+// Events written as their name followed by key=value fields. Nothing is built when the level is off, and the fields
+// are only turned into text when the event is written, on the logging thread with the ring buffer appender. Values
+// given directly must not change afterwards, suppliers are called when the event is written.
+@UtilityClass
+public class EventLog {
+
+    // Marks events whose arguments can be formatted later and on another thread
+    public static final Marker EVENT = MarkerFactory.getMarker("EVENT");
+
+    public static Event info(Logger logger, String name) {
+        return logger.isInfoEnabled(EVENT) ? new Event(logger, name, false) : Event.OFF;
+    }
+
+    public static Event debug(Logger logger, String name) {
+        return logger.isDebugEnabled(EVENT) ? new Event(logger, name, true) : Event.OFF;
+    }
+
+    public static class Event {
+
+        private static final Event OFF = new Event(null, null, false);
+
+        private final Logger logger;
+
+        private final String name;
+
+        private final boolean debug;
+
+        private final ArrayList<Object> keysAndValues = new ArrayList<>(8);
+
+        private Event(Logger logger, String name, boolean debug) {
+            this.logger = logger;
+            this.name = name;
+            this.debug = debug;
+        }
+
+        public Event field(String key, Object value) {
+            if (this != OFF) {
+                keysAndValues.add(key);
+                keysAndValues.add(value);
+            }
+            return this;
+        }
+
+        public Event field(String key, Supplier<?> value) {
+            return field(key, (Object) value);
+        }
+
+        public void write() {
+            if (this == OFF) {
+                return;
+            }
+            if (debug) {
+                logger.debug(EVENT, "{}", this);
+            } else {
+                logger.info(EVENT, "{}", this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(64).append(name);
+            for (int index = 0; index < keysAndValues.size(); index += 2) {
+                Object value = keysAndValues.get(index + 1);
+                text.append(' ').append(keysAndValues.get(index)).append('=');
+                appendValue(text, String.valueOf(value instanceof Supplier ? ((Supplier<?>) value).get() : value));
+            }
+            return text.toString();
+        }
+
+        // Values with spaces, quotes or equal signs are quoted so the line still splits into fields
+        private static void appendValue(StringBuilder text, String value) {
+            boolean quoted = value.isEmpty() || value.chars().anyMatch(character -> Character.isWhitespace(character) || character == '=' || character == '"');
+            if (!quoted) {
+                text.append(value);
+                return;
+            }
+            text.append('"');
+            for (int index = 0; index < value.length(); index++) {
+                char character = value.charAt(index);
+                if (character == '"' || character == '\\') {
+                    text.append('\\');
+                }
+                text.append(character);
+            }
+            text.append('"');
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bitcoin.log;
+
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Bounded queue for many producers and one consumer. Producers claim a slot with a compare-and-set on the tail and
+// publish it through the slot's sequence, so neither side ever takes a lock and a full buffer refuses at once.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class RingBuffer<E> {
+
+    int mask;
+
+    AtomicReferenceArray<E> elements;
+
+    // A slot holds an element for position p when its sequence is p + 1, and is free for position p when it is p
+    AtomicLongArray sequences;
+
+    AtomicLong tail = new AtomicLong();
+
+    @NonFinal
+    long head;
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            sequences.set(index, index);
+        }
+    }
+
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence < position) {
+                return false;
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                elements.lazySet(index, element);
+                sequences.set(index, position + 1);
+                return true;
+            }
+        }
+    }
+
+    // Only ever called from the consumer thread
+    E poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
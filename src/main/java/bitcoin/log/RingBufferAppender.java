@@ -0,0 +1,159 @@
+package bitcoin.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Hands events to a single writer thread through a ring buffer, so the threads logging never wait on the console or a
+// lock. When the buffer is full events below WARN are dropped and their number is written once there is room again,
+// warnings and errors are written right away by the thread logging them, ahead of what is still queued. Events of the
+// event log are formatted by the writer, any other message is formatted before it is queued since its arguments may
+// still change.
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private int capacity = 8192;
+
+    private RingBuffer<ILoggingEvent> buffer;
+
+    private Thread writer;
+
+    private volatile boolean running;
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void start() {
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender to write to for [" + name + "]");
+            return;
+        }
+
+        buffer = new RingBuffer<>(capacity);
+        running = true;
+        writer = new Thread(this::write, "ring-buffer-appender-" + name);
+        writer.setDaemon(true);
+        writer.start();
+        super.start();
+    }
+
+    // Whatever is still queued is written before the appenders stop
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+
+        super.stop();
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // What the writer cannot find out later: the thread, the MDC and the message when its arguments may change
+        event.getThreadName();
+        event.getMDCPropertyMap();
+        if (!EventLog.EVENT.equals(event.getMarker())) {
+            event.getFormattedMessage();
+        }
+
+        if (buffer.offer(event)) {
+            return;
+        }
+        if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            appenders.appendLoopOnAppenders(event);
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void write() {
+        long reportedDropped = 0;
+        while (true) {
+            ILoggingEvent event = buffer.poll();
+            if (event != null) {
+                appenders.appendLoopOnAppenders(event);
+                continue;
+            }
+
+            long currentDropped = dropped.get();
+            if (currentDropped > reportedDropped) {
+                appenders.appendLoopOnAppenders(droppedEvent(currentDropped - reportedDropped));
+                reportedDropped = currentDropped;
+            }
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private ILoggingEvent droppedEvent(long count) {
+        LoggerContext loggerContext = (LoggerContext) getContext();
+        return new LoggingEvent(RingBufferAppender.class.getName(), loggerContext.getLogger(RingBufferAppender.class), Level.WARN,
+                "Dropped {} log events, the ring buffer of {} was full", null, new Object[]{count, buffer.capacity()});
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
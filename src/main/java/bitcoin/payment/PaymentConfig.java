@@ -1,5 +1,6 @@
 package bitcoin.payment;
 
+import io.vavr.Lazy;
 import lombok.extern.slf4j.Slf4j;
 import org.bitcoinj.crypto.TrustStoreLoader;
 import org.springframework.context.annotation.Bean;
@@ -13,8 +14,9 @@ import static io.vavr.API.Try;
 @Slf4j
 public class PaymentConfig {
 
+    // Loading the trust store takes a while and only verifying a payment request needs it, so it is loaded the first time
     @Bean
-    KeyStore keyStore() {
-        return Try(() -> new TrustStoreLoader.DefaultTrustStoreLoader().getKeyStore()).onFailure(t -> log.error("Couldn't load the keystore", t)).getOrElse((KeyStore) null);
+    Lazy<KeyStore> keyStore() {
+        return Lazy.of(() -> Try(() -> new TrustStoreLoader.DefaultTrustStoreLoader().getKeyStore()).onFailure(t -> log.error("Couldn't load the keystore", t)).getOrElse((KeyStore) null));
     }
 }
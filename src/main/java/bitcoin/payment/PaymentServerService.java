@@ -1,5 +1,8 @@
 package bitcoin.payment;
 
+import bitcoin.config.AddressCache;
+import bitcoin.log.EventLog;
+import bitcoin.transaction.TransactionVerifier;
 import bitcoin.wallet.WalletRepository;
 import com.google.protobuf.ByteString;
 import io.vavr.collection.List;
@@ -15,8 +18,9 @@ import org.bitcoin.protocols.payments.Protos.PaymentACK;
 import org.bitcoin.protocols.payments.Protos.PaymentDetails;
 import org.bitcoin.protocols.payments.Protos.PaymentRequest;
 import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.params.TestNet3Params;
-import org.bitcoinj.script.Script;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
@@ -36,6 +40,7 @@ import java.security.cert.CertificateException;
 import java.util.UUID;
 import java.util.function.Function;
 
+import static bitcoin.config.UnitConfig.SATOSHI_TO_BITCOIN_CONVERSION;
 import static com.google.protobuf.ByteString.copyFromUtf8;
 import static io.vavr.API.Option;
 import static io.vavr.API.Try;
@@ -52,14 +57,16 @@ import static org.bitcoinj.script.ScriptBuilder.createOutputScript;
 @EnableConfigurationProperties(PaymentRequestSignatureProperties.class)
 public class PaymentServerService {
 
-    private static final BigDecimal SATOSHI_TO_BITCOIN_CONVERSION = BigDecimal.valueOf(100000000L);
-
     WalletRepository walletRepository;
 
     Environment environment;
 
     PaymentRequestSignatureProperties paymentRequestSignatureProperties;
 
+    TransactionVerifier transactionVerifier;
+
+    AddressCache addressCache;
+
     PaymentRequest createPaymentRequest(UUID walletId, BigDecimal amount) {
 
         val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
@@ -91,10 +98,25 @@ public class PaymentServerService {
                 .map(transactionAsByteString -> Try(() -> new Transaction(TestNet3Params.get(), transactionAsByteString.toByteArray())).onFailure(Throwable::printStackTrace).toOption())
                 .flatMap(Option::toList);
 
-        log.info("Memo={}", payment.getMemo());
-        log.info("Merchant Data={}", Option(payment.getMerchantData()).map(ByteString::toStringUtf8).getOrElse("No Merchant Data"));
-        log.info("Refund Outputs={}", List.ofAll(payment.getRefundToList()).zipWithIndex((output, index) -> String.format("(index=%s, address=%s, amount=%s)", index, new Script(output.getScript().toByteArray()).getToAddress(TestNet3Params.get()).toBase58(), output.getAmount())).mkCharSeq(", "));
-        log.info("Transactions={}", transactions);
+        // The payer may send the transactions its payment depends on, those and the wallet's own outputs can be checked
+        Function<TransactionOutPoint, Option<TransactionOutput>> spentOutputs = Try(() -> UUID.fromString(walletId)).toOption()
+                .flatMap(walletRepository::findWalletById)
+                .map(TransactionVerifier::spentOutputsOf)
+                .getOrElse(outPoint -> Option.none());
+        transactionVerifier.verify(transactions, spentOutputs);
+
+        // The payment and its transactions are not touched after this, so they can be written later
+        EventLog.info(log, "payment-received")
+                .field("walletId", walletId)
+                .field("memo", payment.getMemo())
+                .field("merchantData", () -> Option(payment.getMerchantData()).map(ByteString::toStringUtf8).getOrElse("No Merchant Data"))
+                .field("refundOutputs", () -> List.ofAll(payment.getRefundToList()).zipWithIndex((output, index) -> String.format("(index=%s, address=%s, amount=%s)", index, addressCache.fromScript(output.getScript().toByteArray()).toBase58(), output.getAmount())).mkCharSeq(", "))
+                .field("txids", () -> transactions.map(Transaction::getHashAsString).mkCharSeq(","))
+                .write();
+        EventLog.debug(log, "payment-transactions")
+                .field("walletId", walletId)
+                .field("transactions", () -> transactions)
+                .write();
 
         return PaymentACK.newBuilder()
                 .setPayment(payment)
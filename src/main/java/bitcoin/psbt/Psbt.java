@@ -0,0 +1,331 @@
+package bitcoin.psbt;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import lombok.val;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.bitcoinj.core.Utils.HEX;
+
+// Partially signed transaction as described in BIP174, limited to what legacy inputs need: the previous transaction,
+// the partial signatures, the sighash type, the BIP32 origin of the keys and the final scriptSig. Fields of other
+// types, and the output maps, are kept as they are and written back out for the next tool.
+@Value
+class Psbt {
+
+    private static final byte[] MAGIC = {0x70, 0x73, 0x62, 0x74, (byte) 0xff};
+
+    private static final int GLOBAL_UNSIGNED_TX = 0x00;
+
+    private static final int IN_NON_WITNESS_UTXO = 0x00;
+
+    private static final int IN_PARTIAL_SIG = 0x02;
+
+    private static final int IN_SIGHASH_TYPE = 0x03;
+
+    private static final int IN_BIP32_DERIVATION = 0x06;
+
+    private static final int IN_FINAL_SCRIPTSIG = 0x07;
+
+    Transaction transaction;
+
+    Map<String, byte[]> unknownGlobals;
+
+    List<PsbtInput> inputs;
+
+    List<Map<String, byte[]>> outputs;
+
+    static Psbt of(Transaction unsignedTransaction, List<PsbtInput> inputs) {
+        return of(unsignedTransaction, HashMap.empty(), inputs, List.fill(unsignedTransaction.getOutputs().size(), HashMap::empty));
+    }
+
+    // The previous transaction of an input is only trusted for the output it spends if its hash is the outpoint's
+    private static Psbt of(Transaction unsignedTransaction, Map<String, byte[]> unknownGlobals, List<PsbtInput> inputs, List<Map<String, byte[]>> outputs) {
+        if (List.ofAll(unsignedTransaction.getInputs()).exists(input -> input.getScriptBytes().length > 0)) {
+            throw new RuntimeException(String.format("Transaction=%s is already signed", unsignedTransaction.getHashAsString()));
+        }
+        if (unsignedTransaction.getInputs().size() != inputs.size()) {
+            throw new RuntimeException(String.format("Transaction=%s has %s inputs but the psbt has %s", unsignedTransaction.getHashAsString(), unsignedTransaction.getInputs().size(), inputs.size()));
+        }
+        inputs.zipWithIndex().forEach(inputWithIndex -> inputWithIndex._1.getPreviousTransaction().forEach(previous -> {
+            val outPoint = unsignedTransaction.getInput(inputWithIndex._2).getOutpoint();
+            if (!previous.getHash().equals(outPoint.getHash()) || outPoint.getIndex() >= previous.getOutputs().size()) {
+                throw new RuntimeException(String.format("Input=%s of transaction=%s spends outpoint=%s, its previous transaction=%s does not have it", inputWithIndex._2, unsignedTransaction.getHashAsString(), outPoint, previous.getHashAsString()));
+            }
+        }));
+        return new Psbt(unsignedTransaction, unknownGlobals, inputs, outputs);
+    }
+
+    static Psbt parse(byte[] bytes) {
+
+        val buffer = ByteBuffer.wrap(bytes);
+        val magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new RuntimeException("Not a psbt, magic bytes are missing");
+        }
+
+        val global = readMap(buffer);
+        val unsignedTransactionKey = HEX.encode(new byte[]{GLOBAL_UNSIGNED_TX});
+        val rawTransaction = global.get(unsignedTransactionKey).getOrElseThrow(() -> new RuntimeException("Psbt has no unsigned transaction"));
+        val transaction = parseTransaction(rawTransaction);
+
+        List<PsbtInput> inputs = List.empty();
+        for (int index = 0; index < transaction.getInputs().size(); index++) {
+            inputs = inputs.append(PsbtInput.parse(readMap(buffer)));
+        }
+        // Outputs carry nothing this wallet uses, their maps are kept whole
+        List<Map<String, byte[]>> outputs = List.empty();
+        for (int index = 0; index < transaction.getOutputs().size(); index++) {
+            outputs = outputs.append(readMap(buffer));
+        }
+
+        return of(transaction, global.remove(unsignedTransactionKey), inputs, outputs);
+    }
+
+    byte[] serialize() {
+
+        val output = new ByteArrayOutputStream();
+        output.write(MAGIC, 0, MAGIC.length);
+        writeEntry(output, new byte[]{GLOBAL_UNSIGNED_TX}, transaction.unsafeBitcoinSerialize());
+        writeEntries(output, unknownGlobals);
+        output.write(0);
+        inputs.forEach(input -> {
+            input.write(output);
+            output.write(0);
+        });
+        outputs.forEach(entries -> {
+            writeEntries(output, entries);
+            output.write(0);
+        });
+
+        return output.toByteArray();
+    }
+
+    Psbt withInput(int index, PsbtInput input) {
+        return new Psbt(transaction, unknownGlobals, inputs.update(index, input), outputs);
+    }
+
+    // Both must be for the same unsigned transaction, what each side knows about an input is merged
+    Psbt combine(Psbt other) {
+        if (!transaction.getHash().equals(other.transaction.getHash())) {
+            throw new RuntimeException(String.format("Psbt for transaction=%s cannot be combined with one for transaction=%s", transaction.getHashAsString(), other.transaction.getHashAsString()));
+        }
+        return new Psbt(transaction, unknownGlobals.merge(other.unknownGlobals), inputs.zipWith(other.inputs, PsbtInput::combine), outputs.zipWith(other.outputs, Map::merge));
+    }
+
+    // Legacy inputs are final once their scriptSig is built from the signature matching the key of the spent output
+    Psbt finalizeInputs() {
+        return new Psbt(transaction, unknownGlobals, inputs.zipWithIndex().map(inputWithIndex -> inputWithIndex._1.finalizeInput(transaction, inputWithIndex._2)), outputs);
+    }
+
+    Transaction extract() {
+
+        val signedTransaction = parseTransaction(transaction.unsafeBitcoinSerialize());
+        inputs.zipWithIndex().forEach(inputWithIndex -> signedTransaction.getInput(inputWithIndex._2).setScriptSig(new Script(inputWithIndex._1.getFinalScriptSig()
+                .getOrElseThrow(() -> new RuntimeException(String.format("Input=%s of transaction=%s is not final", inputWithIndex._2, transaction.getHashAsString()))))));
+
+        return signedTransaction;
+    }
+
+    private static Transaction parseTransaction(byte[] rawTransaction) {
+        return Try.of(() -> new Transaction(networkParameters(), rawTransaction))
+                .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+    }
+
+    // Keys are kept in hex, so entries with the same key replace each other
+    private static Map<String, byte[]> readMap(ByteBuffer buffer) {
+        Map<String, byte[]> entries = HashMap.empty();
+        while (true) {
+            val key = readBytes(buffer);
+            if (key.length == 0) {
+                return entries;
+            }
+            entries = entries.put(HEX.encode(key), readBytes(buffer));
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        val length = readVarInt(buffer);
+        // The length comes from the psbt, it must not make us allocate more than the bytes actually left
+        if (length < 0 || length > buffer.remaining()) {
+            throw new RuntimeException(String.format("Psbt entry of length=%s exceeds the remaining=%s bytes", length, buffer.remaining()));
+        }
+        val bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long readVarInt(ByteBuffer buffer) {
+        val first = buffer.get(buffer.position()) & 0xff;
+        val size = first < 0xfd ? 1 : first == 0xfd ? 3 : first == 0xfe ? 5 : 9;
+        val bytes = new byte[size];
+        buffer.get(bytes);
+        return new VarInt(bytes, 0).value;
+    }
+
+    private static void writeEntry(ByteArrayOutputStream output, byte[] key, byte[] value) {
+        val keyLength = new VarInt(key.length).encode();
+        val valueLength = new VarInt(value.length).encode();
+        output.write(keyLength, 0, keyLength.length);
+        output.write(key, 0, key.length);
+        output.write(valueLength, 0, valueLength.length);
+        output.write(value, 0, value.length);
+    }
+
+    private static void writeEntries(ByteArrayOutputStream output, Map<String, byte[]> entries) {
+        entries.forEach((key, value) -> writeEntry(output, HEX.decode(key), value));
+    }
+
+    private static byte[] typedKey(int type, byte[] keyData) {
+        val key = new byte[keyData.length + 1];
+        key[0] = (byte) type;
+        System.arraycopy(keyData, 0, key, 1, keyData.length);
+        return key;
+    }
+
+    // Public keys are kept in hex, partial signatures include their sighash byte
+    @Value
+    static class PsbtInput {
+
+        Option<Transaction> previousTransaction;
+
+        Option<Integer> sighashType;
+
+        Map<String, byte[]> partialSignatureByPublicKey;
+
+        Map<String, KeyOrigin> keyOriginByPublicKey;
+
+        Option<byte[]> finalScriptSig;
+
+        Map<String, byte[]> unknown;
+
+        static PsbtInput unsigned(Transaction previousTransaction, Map<String, KeyOrigin> keyOriginByPublicKey) {
+            return new PsbtInput(Option.of(previousTransaction), Option.of((int) Transaction.SigHash.ALL.value), HashMap.empty(), keyOriginByPublicKey, Option.none(), HashMap.empty());
+        }
+
+        PsbtInput withPartialSignature(byte[] publicKey, byte[] signature) {
+            return new PsbtInput(previousTransaction, sighashType, partialSignatureByPublicKey.put(HEX.encode(publicKey), signature), keyOriginByPublicKey, finalScriptSig, unknown);
+        }
+
+        private PsbtInput combine(PsbtInput other) {
+            return new PsbtInput(previousTransaction.orElse(other.previousTransaction), sighashType.orElse(other.sighashType),
+                    partialSignatureByPublicKey.merge(other.partialSignatureByPublicKey), keyOriginByPublicKey.merge(other.keyOriginByPublicKey), finalScriptSig.orElse(other.finalScriptSig),
+                    unknown.merge(other.unknown));
+        }
+
+        private PsbtInput finalizeInput(Transaction transaction, int index) {
+
+            if (finalScriptSig.isDefined()) {
+                return this;
+            }
+
+            val outPoint = transaction.getInput(index).getOutpoint();
+            val spentOutput = previousTransaction.filter(previous -> previous.getHash().equals(outPoint.getHash()))
+                    .getOrElseThrow(() -> new RuntimeException(String.format("Input=%s of transaction=%s has no previous transaction", index, transaction.getHashAsString())))
+                    .getOutput(outPoint.getIndex());
+            val scriptPubKey = spentOutput.getScriptPubKey();
+
+            final Script scriptSig;
+            if (scriptPubKey.isSentToAddress()) {
+                val signature = partialSignatureByPublicKey.find(entry -> Arrays.equals(Utils.sha256hash160(HEX.decode(entry._1)), scriptPubKey.getPubKeyHash()))
+                        .getOrElseThrow(() -> new RuntimeException(String.format("Input=%s of transaction=%s is not signed", index, transaction.getHashAsString())));
+                scriptSig = new ScriptBuilder().data(signature._2).data(HEX.decode(signature._1)).build();
+            } else if (scriptPubKey.isSentToRawPubKey()) {
+                val signature = partialSignatureByPublicKey.get(HEX.encode(scriptPubKey.getPubKey()))
+                        .getOrElseThrow(() -> new RuntimeException(String.format("Input=%s of transaction=%s is not signed", index, transaction.getHashAsString())));
+                scriptSig = new ScriptBuilder().data(signature).build();
+            } else {
+                throw new RuntimeException(String.format("Input=%s of transaction=%s spends a script that cannot be finalized", index, transaction.getHashAsString()));
+            }
+
+            // Once final, BIP174 drops everything else but the previous transaction and the unknown fields
+            return new PsbtInput(previousTransaction, Option.none(), HashMap.empty(), HashMap.empty(), Option.of(scriptSig.getProgram()), unknown);
+        }
+
+        private static PsbtInput parse(Map<String, byte[]> entries) {
+
+            Option<Transaction> previousTransaction = Option.none();
+            Option<Integer> sighashType = Option.none();
+            Map<String, byte[]> partialSignatures = HashMap.empty();
+            Map<String, KeyOrigin> keyOrigins = HashMap.empty();
+            Option<byte[]> finalScriptSig = Option.none();
+            Map<String, byte[]> unknown = HashMap.empty();
+
+            for (val entry : entries) {
+                val key = HEX.decode(entry._1);
+                val keyData = HEX.encode(Arrays.copyOfRange(key, 1, key.length));
+                switch (key[0]) {
+                    case IN_NON_WITNESS_UTXO:
+                        previousTransaction = Option.of(parseTransaction(entry._2));
+                        break;
+                    case IN_PARTIAL_SIG:
+                        partialSignatures = partialSignatures.put(keyData, entry._2);
+                        break;
+                    case IN_SIGHASH_TYPE:
+                        sighashType = Option.of((int) Utils.readUint32(entry._2, 0));
+                        break;
+                    case IN_BIP32_DERIVATION:
+                        keyOrigins = keyOrigins.put(keyData, KeyOrigin.parse(entry._2));
+                        break;
+                    case IN_FINAL_SCRIPTSIG:
+                        finalScriptSig = Option.of(entry._2);
+                        break;
+                    default:
+                        unknown = unknown.put(entry._1, entry._2);
+                        break;
+                }
+            }
+
+            return new PsbtInput(previousTransaction, sighashType, partialSignatures, keyOrigins, finalScriptSig, unknown);
+        }
+
+        private void write(ByteArrayOutputStream output) {
+            previousTransaction.forEach(previous -> writeEntry(output, new byte[]{IN_NON_WITNESS_UTXO}, previous.unsafeBitcoinSerialize()));
+            partialSignatureByPublicKey.forEach((publicKey, signature) -> writeEntry(output, typedKey(IN_PARTIAL_SIG, HEX.decode(publicKey)), signature));
+            sighashType.forEach(type -> {
+                val value = new byte[4];
+                Utils.uint32ToByteArrayLE(type, value, 0);
+                writeEntry(output, new byte[]{IN_SIGHASH_TYPE}, value);
+            });
+            keyOriginByPublicKey.forEach((publicKey, keyOrigin) -> writeEntry(output, typedKey(IN_BIP32_DERIVATION, HEX.decode(publicKey)), keyOrigin.serialize()));
+            finalScriptSig.forEach(scriptSig -> writeEntry(output, new byte[]{IN_FINAL_SCRIPTSIG}, scriptSig));
+            writeEntries(output, unknown);
+        }
+    }
+
+    // Fingerprint of the root key the path starts from, then the path itself
+    @Value
+    static class KeyOrigin {
+
+        int fingerprint;
+
+        List<ChildNumber> path;
+
+        private static KeyOrigin parse(byte[] value) {
+            return new KeyOrigin(ByteBuffer.wrap(value).getInt(),
+                    List.range(0, (value.length - 4) / 4).map(index -> new ChildNumber((int) Utils.readUint32(value, 4 + index * 4))));
+        }
+
+        private byte[] serialize() {
+            val value = ByteBuffer.allocate(4 + path.size() * 4).putInt(fingerprint).array();
+            path.zipWithIndex().forEach(childWithIndex -> Utils.uint32ToByteArrayLE(childWithIndex._1.i() & 0xffffffffL, value, 4 + childWithIndex._2 * 4));
+            return value;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package bitcoin.psbt;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "psbt")
+public class PsbtProperties {
+
+    Long reservationMillis = 3600000L;
+
+}
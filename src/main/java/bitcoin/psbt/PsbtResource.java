@@ -0,0 +1,77 @@
+package bitcoin.psbt;
+
+import bitcoin.config.AddressCache;
+import bitcoin.psbt.dto.PsbtDto;
+import bitcoin.psbt.dto.PsbtsDto;
+import bitcoin.psbt.dto.SignPsbtsDto;
+import bitcoin.transaction.dto.CreateTransactionDto;
+import bitcoin.transaction.dto.TransactionDto;
+import io.vavr.collection.List;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+import java.util.Base64;
+import java.util.UUID;
+
+import static bitcoin.fee.FeeTarget.SIX_BLOCKS;
+import static io.vavr.API.Option;
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+// Psbts travel base64 encoded, as BIP174 suggests for text
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class PsbtResource {
+
+    PsbtService psbtService;
+
+    AddressCache addressCache;
+
+    @PutMapping(path = "/wallet/{walletId}/psbt/create", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public PsbtDto createPsbt(@PathVariable("walletId") UUID walletId, @RequestBody CreateTransactionDto createTransactionDto) {
+        return psbtToDto(psbtService.createPsbt(walletId, addressCache.fromBase58(createTransactionDto.getAddress()), createTransactionDto.getAmount(), Option(createTransactionDto.getFeeTarget()).getOrElse(SIX_BLOCKS)));
+    }
+
+    @PutMapping(path = "/psbt/sign", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public PsbtsDto signPsbts(@Valid @RequestBody SignPsbtsDto signPsbtsDto) {
+        return new PsbtsDto(psbtService.signPsbts(signPsbtsDto.getPsbts().map(PsbtResource::base64ToPsbt), List.of(signPsbtsDto.getMnemonics().split(" ")), signPsbtsDto.getPassword())
+                .map(PsbtResource::psbtToBase64));
+    }
+
+    @PutMapping(path = "/psbt/combine", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public PsbtDto combinePsbts(@RequestBody PsbtsDto psbtsDto) {
+        return psbtToDto(psbtService.combinePsbts(psbtsDto.getPsbts().map(PsbtResource::base64ToPsbt)));
+    }
+
+    @PutMapping(path = "/psbt/finalize", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public PsbtDto finalizePsbt(@RequestBody PsbtDto psbtDto) {
+        return psbtToDto(psbtService.finalizePsbt(base64ToPsbt(psbtDto.getPsbt())));
+    }
+
+    @PutMapping(path = "/wallet/{walletId}/psbt/broadcast", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
+    public TransactionDto broadcastPsbt(@PathVariable("walletId") UUID walletId, @RequestBody PsbtDto psbtDto) {
+        val transaction = psbtService.broadcastPsbt(walletId, base64ToPsbt(psbtDto.getPsbt()));
+
+        return TransactionDto.of(transaction, Option(transaction.getFee()).map(Coin::longValue).getOrNull());
+    }
+
+    private static PsbtDto psbtToDto(Psbt psbt) {
+        return new PsbtDto(psbtToBase64(psbt));
+    }
+
+    private static String psbtToBase64(Psbt psbt) {
+        return Base64.getEncoder().encodeToString(psbt.serialize());
+    }
+
+    private static Psbt base64ToPsbt(String psbt) {
+        return Psbt.parse(Base64.getDecoder().decode(psbt.trim()));
+    }
+}
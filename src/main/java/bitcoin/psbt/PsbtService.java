@@ -0,0 +1,169 @@
+package bitcoin.psbt;
+
+import bitcoin.chain.ChainEngine;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.psbt.Psbt.KeyOrigin;
+import bitcoin.psbt.Psbt.PsbtInput;
+import bitcoin.transaction.SpendQueue;
+import bitcoin.transaction.TransactionVerifier;
+import bitcoin.wallet.OutputReservations;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WatchingKeyOrigin;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.InsufficientMoneyException;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static bitcoin.config.UnitConfig.SATOSHI_TO_BITCOIN_CONVERSION;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.vavr.API.Tuple;
+import static java.math.MathContext.DECIMAL128;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.Utils.HEX;
+
+// Create, sign, combine, finalize and broadcast as separate steps, so the keys can live on another box. The wallet
+// creating the psbt may be watching only, it just needs the public keys of its outputs.
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(PsbtProperties.class)
+public class PsbtService {
+
+    WalletRepository walletRepository;
+
+    FeeEstimator feeEstimator;
+
+    ChainEngine chainEngine;
+
+    PsbtSigner psbtSigner;
+
+    TransactionVerifier transactionVerifier;
+
+    PsbtProperties psbtProperties;
+
+    SpendQueue spendQueue;
+
+    OutputReservations outputReservations;
+
+    // A psbt is not committed to the wallet until it comes back signed, its outputs are reserved until then so no
+    // other spend of the wallet, psbt or not, takes the same output. Selecting and reserving run on the spend queue.
+    Psbt createPsbt(UUID walletId, Address address, BigDecimal amount, FeeTarget feeTarget) {
+
+        val sendRequest = SendRequest.to(address, Coin.valueOf(amount.multiply(SATOSHI_TO_BITCOIN_CONVERSION, DECIMAL128).longValueExact()));
+        sendRequest.feePerKb = feeEstimator.estimateFeePerKb(feeTarget);
+        sendRequest.signInputs = false;
+        // Outputs of a watching wallet count as spendable, their signatures come from the signer
+        sendRequest.missingSigsMode = Wallet.MissingSigsMode.USE_DUMMY_SIG;
+
+        val psbt = spendQueue.spend(walletId, wallet -> createPsbt(wallet, sendRequest));
+        log.info("Created psbt for transaction={} of wallet={}", psbt.getTransaction().getHashAsString(), walletId);
+
+        return psbt;
+    }
+
+    List<Psbt> signPsbts(List<Psbt> psbts, List<String> mnemonic, String passphrase) {
+        return psbtSigner.sign(psbts, mnemonic, passphrase);
+    }
+
+    Psbt combinePsbts(List<Psbt> psbts) {
+        return psbts.reduce(Psbt::combine);
+    }
+
+    Psbt finalizePsbt(Psbt psbt) {
+        return psbt.finalizeInputs();
+    }
+
+    Transaction broadcastPsbt(UUID walletId, Psbt psbt) {
+
+        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        val finalized = psbt.finalizeInputs();
+        val transaction = finalized.extract();
+        // The previous transaction of each input was checked against its outpoint when the psbt was read
+        val previousOutputByOutPoint = finalized.getInputs().zip(transaction.getInputs())
+                .flatMap(inputs -> inputs._1.getPreviousTransaction().map(previous -> Tuple(inputs._2.getOutpoint(), previous.getOutput(inputs._2.getOutpoint().getIndex()))))
+                .toMap(Function.identity());
+
+        // Every scriptSig is run against the output it spends before the transaction reaches the wallet or the peers
+        Try.run(() -> {
+            transaction.verify();
+            transactionVerifier.verify(List.of(transaction), outPoint -> previousOutputByOutPoint.get(outPoint).orElse(() -> TransactionVerifier.spentOutputsOf(wallet).apply(outPoint)));
+        }).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        // Outputs are checked again on the spend queue, another spend may have taken one since the psbt was created. A psbt
+        // broadcast again is not committed twice, only sent to the peers again.
+        spendQueue.spend(walletId, spendingWallet -> {
+            TransactionVerifier.verifyUnspent(List.of(transaction), TransactionVerifier.spentOutputsOf(spendingWallet));
+            if (!spendingWallet.maybeCommitTx(transaction)) {
+                log.info("Psbt of wallet={} with txHash={} was committed already, it is broadcast again", walletId, transaction.getHashAsString());
+            }
+            return transaction;
+        });
+        outputReservations.release(List.ofAll(transaction.getInputs()).map(TransactionInput::getOutpoint));
+
+        chainEngine.broadcastTransaction(transaction).future()
+                .addListener(() -> log.info("Psbt of wallet={} with txHash={} broadcast successfully", walletId, transaction.getHashAsString()), directExecutor());
+
+        return transaction;
+    }
+
+    private Psbt createPsbt(Wallet wallet, SendRequest sendRequest) throws InsufficientMoneyException {
+
+        wallet.completeTx(sendRequest);
+        val transaction = sendRequest.tx;
+        outputReservations.reserve(List.ofAll(transaction.getInputs()).map(TransactionInput::getOutpoint), System.currentTimeMillis() + psbtProperties.getReservationMillis());
+
+        return Psbt.of(transaction, List.ofAll(transaction.getInputs()).map(input -> PsbtInput.unsigned(input.getConnectedOutput().getParentTransaction(), keyOrigins(wallet, input))));
+    }
+
+    // The signer finds its key by the path from the master key. A spending wallet holds its master key, a watching one
+    // only knows its xpub and where that sits under the master.
+    private static Map<String, KeyOrigin> keyOrigins(Wallet wallet, TransactionInput input) {
+
+        val scriptPubKey = input.getConnectedOutput().getScriptPubKey();
+        val key = Option.of(scriptPubKey.isSentToAddress() ? wallet.findKeyFromPubHash(scriptPubKey.getPubKeyHash()) : wallet.findKeyFromPubKey(scriptPubKey.getPubKey()))
+                .filter(DeterministicKey.class::isInstance)
+                .map(DeterministicKey.class::cast);
+
+        return key.map(deterministicKey -> HashMap.of(HEX.encode(deterministicKey.getPubKey()), keyOrigin(wallet, deterministicKey)))
+                .getOrElse(HashMap::empty);
+    }
+
+    private static KeyOrigin keyOrigin(Wallet wallet, DeterministicKey key) {
+
+        if (!wallet.isWatching()) {
+            return new KeyOrigin(root(key).getFingerprint(), List.ofAll(key.getPath()));
+        }
+
+        val watchingKeyOrigin = WatchingKeyOrigin.of(wallet);
+        return new KeyOrigin(watchingKeyOrigin.getMasterFingerprint(), watchingKeyOrigin.pathOf(key, wallet.getWatchingKey()));
+    }
+
+    private static DeterministicKey root(DeterministicKey key) {
+        DeterministicKey root = key;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
+    }
+}
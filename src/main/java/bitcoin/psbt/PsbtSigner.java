@@ -0,0 +1,72 @@
+package bitcoin.psbt;
+
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import lombok.val;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.crypto.DeterministicHierarchy;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.wallet.DeterministicSeed;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.bitcoinj.core.Utils.HEX;
+
+// Stand-in for a signer running somewhere else: it only needs the seed and the psbts, never the wallet. A batch is
+// signed in one pass with a single hierarchy, so keys shared by many psbts of a payout queue are derived once.
+@Component
+class PsbtSigner {
+
+    List<Psbt> sign(List<Psbt> psbts, List<String> mnemonic, String passphrase) {
+
+        val seed = Try.of(() -> new DeterministicSeed(mnemonic.toJavaList(), null, passphrase, 0L))
+                .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        val hierarchy = new DeterministicHierarchy(HDKeyDerivation.createMasterPrivateKey(seed.getSeedBytes()));
+
+        return psbts.map(psbt -> sign(psbt, hierarchy));
+    }
+
+    private static Psbt sign(Psbt psbt, DeterministicHierarchy hierarchy) {
+
+        Psbt signed = psbt;
+        for (int index = 0; index < psbt.getInputs().size(); index++) {
+            val input = psbt.getInputs().get(index);
+            if (input.getFinalScriptSig().isDefined()) {
+                continue;
+            }
+            if (input.getSighashType().exists(sighashType -> sighashType != Transaction.SigHash.ALL.value)) {
+                throw new RuntimeException(String.format("Input=%s of transaction=%s asks for sighash type=%s, only SIGHASH_ALL is signed", index, psbt.getTransaction().getHashAsString(), input.getSighashType().get()));
+            }
+
+            for (val keyOrigin : input.getKeyOriginByPublicKey()) {
+                val publicKey = HEX.decode(keyOrigin._1);
+                val key = Try.of(() -> hierarchy.get(keyOrigin._2.getPath().toJavaList(), false, true)).toOption()
+                        .filter(derived -> Arrays.equals(derived.getPubKey(), publicKey));
+                // Keys of other signers are left to them
+                if (key.isDefined() && !input.getPartialSignatureByPublicKey().containsKey(keyOrigin._1)) {
+                    signed = signed.withInput(index, signed.getInputs().get(index).withPartialSignature(publicKey, signature(psbt, index, key.get())));
+                }
+            }
+        }
+
+        return signed;
+    }
+
+    private static byte[] signature(Psbt psbt, int index, DeterministicKey key) {
+
+        val transaction = psbt.getTransaction();
+        val outPoint = transaction.getInput(index).getOutpoint();
+        val spentOutput = psbt.getInputs().get(index).getPreviousTransaction()
+                .filter(previous -> previous.getHash().equals(outPoint.getHash()))
+                .getOrElseThrow(() -> new RuntimeException(String.format("Input=%s of transaction=%s has no previous transaction", index, transaction.getHashAsString())))
+                .getOutput(outPoint.getIndex());
+
+        val hash = transaction.hashForSignature(index, spentOutput.getScriptBytes(), Transaction.SigHash.ALL, false);
+
+        return new TransactionSignature(key.sign(hash), Transaction.SigHash.ALL, false).encodeToBitcoin();
+    }
+}
@@ -0,0 +1,9 @@
+package bitcoin.psbt.dto;
+
+import lombok.Value;
+
+@Value
+public class PsbtDto {
+
+    String psbt;
+}
@@ -0,0 +1,10 @@
+package bitcoin.psbt.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+@Value
+public class PsbtsDto {
+
+    List<String> psbts;
+}
@@ -0,0 +1,22 @@
+package bitcoin.psbt.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+@Value
+public class SignPsbtsDto {
+
+    @NotNull
+    @Size(min = 1)
+    String password;
+
+    @NotNull
+    @Size(min = 1)
+    String mnemonics;
+
+    @NotNull
+    List<String> psbts;
+}
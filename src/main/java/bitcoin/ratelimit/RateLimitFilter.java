@@ -0,0 +1,81 @@
+package bitcoin.ratelimit;
+
+import bitcoin.config.ClusterAuthenticationFilter;
+import bitcoin.config.RequestPaths;
+import io.vavr.collection.List;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Runs before anything else looks at the request, including forwarding it to the node that owns its wallet. Clients
+// are told apart by their address, anything they send could be changed on every request. Requests of the other nodes
+// of the cluster were counted where they came in.
+@Component
+@AllArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    static final int TOO_MANY_REQUESTS = 429;
+
+    // Each of these derives keys, writes a wallet file and may take the chain back to the birthday of the wallet
+    private static final Pattern CREATION_PATH = Pattern.compile("^/wallet(?:/bulk|/watching)?/?$");
+
+    // Reads that scan a whole wallet or sign, counted as operations like every write
+    private static final List<Pattern> EXPENSIVE_READS = List.of(
+            Pattern.compile("^/wallet/[^/]+/transaction/?$"),
+            Pattern.compile("^/wallet/[^/]+/transaction/(?:address|history)/.*$"),
+            Pattern.compile("^/wallet/[^/]+/account/[^/]+/transaction/?$"),
+            Pattern.compile("^/payment-server/[^/]+$"));
+
+    RateLimiter rateLimiter;
+
+    ClusterAuthenticationFilter clusterAuthenticationFilter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        if (!rateLimiter.isEnabled() || clusterAuthenticationFilter.isPeer(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        val path = RequestPaths.pathOf(request);
+        val wait = rateLimiter.admit(request.getRemoteAddr(), RequestPaths.walletIdOf(path), isOperation(request.getMethod(), path), isCreation(request.getMethod(), path), System.nanoTime());
+        if (wait > 0) {
+            response.setStatus(TOO_MANY_REQUESTS);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds(wait)));
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    static boolean isOperation(String method, String path) {
+        return !"GET".equals(method) && !"HEAD".equals(method) || EXPENSIVE_READS.exists(pattern -> pattern.matcher(path).matches());
+    }
+
+    static boolean isCreation(String method, String path) {
+        return "POST".equals(method) && CREATION_PATH.matcher(path).matches();
+    }
+
+    // Retry-After is in whole seconds, rounded up so a client retrying on time finds a token
+    static long retryAfterSeconds(long waitNanos) {
+        return (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+}
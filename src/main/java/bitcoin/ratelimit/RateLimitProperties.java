@@ -0,0 +1,44 @@
+package bitcoin.ratelimit;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    Boolean enabled = false;
+
+    Budget clientReads = new Budget(200, 100.0);
+
+    Budget clientOperations = new Budget(20, 5.0);
+
+    // Wallets a client creates, on top of its operations
+    Budget clientCreations = new Budget(5, 0.2);
+
+    Budget walletReads = new Budget(100, 50.0);
+
+    Budget walletOperations = new Budget(10, 2.0);
+
+    // Requests a client or a wallet can make at once, and how many it gets back every second
+    @Data
+    @FieldDefaults(level = PRIVATE)
+    public static class Budget {
+
+        Integer capacity;
+
+        Double perSecond;
+
+        public Budget() {
+        }
+
+        Budget(Integer capacity, Double perSecond) {
+            this.capacity = capacity;
+            this.perSecond = perSecond;
+        }
+    }
+}
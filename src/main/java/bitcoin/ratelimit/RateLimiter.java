@@ -0,0 +1,92 @@
+package bitcoin.ratelimit;
+
+import bitcoin.ratelimit.RateLimitProperties.Budget;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Every request takes a token from its client's bucket and, when it is about a wallet, from that wallet's bucket, with
+// reads and operations counted apart so a flood of sends does not starve balance checks. Creating a wallet also takes
+// one from the client's bucket of creations. A request that finds a bucket empty is turned away right there, it never
+// waits, and the tokens it took from the buckets before that one are given back.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimiter {
+
+    RateLimitProperties rateLimitProperties;
+
+    Map<String, TokenBucket> clientReadBuckets = new ConcurrentHashMap<>();
+
+    Map<String, TokenBucket> clientOperationBuckets = new ConcurrentHashMap<>();
+
+    Map<String, TokenBucket> clientCreationBuckets = new ConcurrentHashMap<>();
+
+    Map<UUID, TokenBucket> walletReadBuckets = new ConcurrentHashMap<>();
+
+    Map<UUID, TokenBucket> walletOperationBuckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(RateLimitProperties rateLimitProperties) {
+        this.rateLimitProperties = rateLimitProperties;
+    }
+
+    boolean isEnabled() {
+        return rateLimitProperties.getEnabled();
+    }
+
+    // Nanos the request should be retried after, 0 when it is let through
+    long admit(String client, Option<UUID> walletId, boolean operation, boolean creation, long nowNanos) {
+
+        List<TokenBucket> buckets = List.of(operation
+                ? bucket(clientOperationBuckets, client, rateLimitProperties.getClientOperations(), nowNanos)
+                : bucket(clientReadBuckets, client, rateLimitProperties.getClientReads(), nowNanos));
+        if (creation) {
+            buckets = buckets.prepend(bucket(clientCreationBuckets, client, rateLimitProperties.getClientCreations(), nowNanos));
+        }
+        if (walletId.isDefined()) {
+            buckets = buckets.append(operation
+                    ? bucket(walletOperationBuckets, walletId.get(), rateLimitProperties.getWalletOperations(), nowNanos)
+                    : bucket(walletReadBuckets, walletId.get(), rateLimitProperties.getWalletReads(), nowNanos));
+        }
+
+        List<TokenBucket> taken = List.empty();
+        for (TokenBucket bucket : buckets) {
+            long wait = bucket.tryAcquire(nowNanos);
+            if (wait > 0) {
+                taken.forEach(TokenBucket::release);
+                return wait;
+            }
+            taken = taken.prepend(bucket);
+        }
+        return 0;
+    }
+
+    // A full bucket is the same as no bucket, so those of idle clients and wallets can go
+    @Scheduled(fixedDelay = 60000)
+    public void evictFullBuckets() {
+        long now = System.nanoTime();
+        clientReadBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        clientOperationBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        clientCreationBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        walletReadBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        walletOperationBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    // The map is only written the first time a key is seen
+    private static <K> TokenBucket bucket(Map<K, TokenBucket> buckets, K key, Budget budget, long nowNanos) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, ignored -> new TokenBucket(budget.getCapacity(), budget.getPerSecond(), nowNanos));
+        }
+        return bucket;
+    }
+}
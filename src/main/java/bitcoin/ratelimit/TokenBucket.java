@@ -0,0 +1,50 @@
+package bitcoin.ratelimit;
+
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// A token bucket kept as the single instant it will be full again, so taking a token is one compare-and-set and a
+// bucket nobody used for a while needs no refill. Instead of tokens left, a request sees how far that instant is
+// ahead of now: up to capacity tokens worth of time is let through.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+class TokenBucket {
+
+    long nanosPerToken;
+
+    long burstNanos;
+
+    AtomicLong fullAtNanos;
+
+    TokenBucket(int capacity, double perSecond, long nowNanos) {
+        this.nanosPerToken = (long) (1_000_000_000L / perSecond);
+        this.burstNanos = capacity * nanosPerToken;
+        this.fullAtNanos = new AtomicLong(nowNanos);
+    }
+
+    // Nanos to wait before a token is available, 0 when one was taken
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long fullAt = fullAtNanos.get();
+            long next = Math.max(fullAt, nowNanos) + nanosPerToken;
+            long excess = next - nowNanos - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAtNanos.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Gives back a token taken by tryAcquire, for a request turned away by another bucket after this one let it through
+    void release() {
+        fullAtNanos.addAndGet(-nanosPerToken);
+    }
+
+    boolean isFull(long nowNanos) {
+        return fullAtNanos.get() <= nowNanos;
+    }
+}
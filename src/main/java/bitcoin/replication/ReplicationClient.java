@@ -0,0 +1,30 @@
+package bitcoin.replication;
+
+import bitcoin.replication.dto.ReplicationStatusDto;
+import org.springframework.cloud.netflix.feign.FeignClient;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static bitcoin.config.ClusterAuthenticationFilter.SECRET_HEADER;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.PUT;
+
+// The standby of this node, given as the endpoint of every call
+@FeignClient(name = "replication-client", url = "http://localhost:8080")
+interface ReplicationClient {
+
+    @RequestMapping(method = PUT, path = "/replication/heartbeat")
+    ReplicationStatusDto heartbeat(URI standby, @RequestHeader(SECRET_HEADER) String secret);
+
+    @RequestMapping(method = PUT, path = "/replication/wallet/{walletId}", consumes = APPLICATION_OCTET_STREAM_VALUE)
+    void replicateWallet(URI standby, @RequestHeader(SECRET_HEADER) String secret, @PathVariable("walletId") UUID walletId, byte[] walletFile);
+
+    @RequestMapping(method = DELETE, path = "/replication/wallet/{walletId}")
+    void removeWallet(URI standby, @RequestHeader(SECRET_HEADER) String secret, @PathVariable("walletId") UUID walletId);
+
+}
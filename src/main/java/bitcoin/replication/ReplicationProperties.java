@@ -0,0 +1,22 @@
+package bitcoin.replication;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "replication")
+public class ReplicationProperties {
+
+    // Url of the standby the wallets of this node are replicated to, none means no replication
+    String standbyUrl;
+
+    // This node is the standby of another one and only takes its wallets over once promoted
+    Boolean standby = false;
+
+    Long heartbeatMillis = 2000L;
+
+}
@@ -0,0 +1,54 @@
+package bitcoin.replication;
+
+import bitcoin.replication.dto.ReplicationStatusDto;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/replication", produces = APPLICATION_JSON_VALUE)
+public class ReplicationResource {
+
+    ReplicationService replicationService;
+
+    @GetMapping
+    public ReplicationStatusDto findStatus() {
+        return replicationService.status();
+    }
+
+    @PutMapping(path = "/heartbeat")
+    public ReplicationStatusDto heartbeat() {
+        return replicationService.heartbeat();
+    }
+
+    @PutMapping(path = "/wallet/{walletId}", consumes = APPLICATION_OCTET_STREAM_VALUE)
+    public void replicateWallet(@PathVariable("walletId") UUID walletId, @RequestBody byte[] walletFile) {
+        replicationService.replicateWallet(walletId, walletFile);
+    }
+
+    @DeleteMapping(path = "/wallet/{walletId}")
+    public void removeWallet(@PathVariable("walletId") UUID walletId) {
+        replicationService.removeWallet(walletId);
+    }
+
+    @PostMapping(path = "/promote")
+    public ReplicationStatusDto promote() {
+        replicationService.promote();
+        return replicationService.status();
+    }
+}
@@ -0,0 +1,216 @@
+package bitcoin.replication;
+
+import bitcoin.chain.ChainEngine;
+import bitcoin.config.ClusterProperties;
+import bitcoin.replication.dto.ReplicationStatusDto;
+import bitcoin.wallet.WalletReleasedEvent;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WalletSavedEvent;
+import bitcoin.wallet.WalletService;
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static lombok.AccessLevel.PRIVATE;
+
+// A primary sends the file of every unlocked wallet to its standby each time the wallet saves it, which holds the
+// transactions, the keys looked ahead and the last block seen. The standby keeps those wallets loaded and its chain
+// at the head without them, so taking them over only needs the blocks mined since their last save.
+//
+// A standby is only promoted on request. It cannot tell a primary that is down from one it cannot reach, and promoting
+// itself next to a running primary would have both spend from the same wallets. A primary that finds its standby
+// promoted stops its own wallets.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(ReplicationProperties.class)
+public class ReplicationService {
+
+    ReplicationProperties replicationProperties;
+
+    ClusterProperties clusterProperties;
+
+    WalletService walletService;
+
+    WalletRepository walletRepository;
+
+    ChainEngine chainEngine;
+
+    ReplicationClient replicationClient;
+
+    // Primary side, wallets saved since they were last sent to the standby
+    Set<UUID> pendingWalletIds = ConcurrentHashMap.newKeySet();
+
+    ExecutorService replicationExecutor = newSingleThreadExecutor();
+
+    // Standby side, wallets of the primary as they were last saved
+    Map<UUID, Wallet> standbyWalletById = new ConcurrentHashMap<>();
+
+    AtomicLong lastContactMillis = new AtomicLong();
+
+    AtomicBoolean promoted = new AtomicBoolean();
+
+    // Primary side, the standby was promoted and runs the wallets now
+    AtomicBoolean replaced = new AtomicBoolean();
+
+    public ReplicationService(ReplicationProperties replicationProperties, ClusterProperties clusterProperties, WalletService walletService, WalletRepository walletRepository, ChainEngine chainEngine, @Lazy ReplicationClient replicationClient) {
+        this.replicationProperties = replicationProperties;
+        this.clusterProperties = clusterProperties;
+        this.walletService = walletService;
+        this.walletRepository = walletRepository;
+        this.chainEngine = chainEngine;
+        this.replicationClient = replicationClient;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (isStandby()) {
+            log.info("Standing by, following the chain headers");
+            chainEngine.followHeaders();
+        }
+    }
+
+    // Saves come in bursts, a wallet waiting to be sent is sent once with its latest file
+    @EventListener
+    public void onWalletSaved(WalletSavedEvent event) {
+        if (isPrimary() && pendingWalletIds.add(event.getWalletId())) {
+            replicationExecutor.execute(this::sendPendingWallets);
+        }
+    }
+
+    // Wallets stopped because the standby took them over stay there
+    @EventListener
+    public void onWalletReleased(WalletReleasedEvent event) {
+        if (isPrimary()) {
+            replicationExecutor.execute(() -> Try.run(() -> replicationClient.removeWallet(standby(), clusterProperties.getSecret(), event.getWalletId()))
+                    .onFailure(t -> log.warn("Couldn't remove wallet={} from the standby", event.getWalletId(), t)));
+        }
+    }
+
+    // The primary beats its standby and sends again the wallets the standby does not have, after a restart of either
+    @Scheduled(fixedDelayString = "${replication.heartbeat-millis:2000}")
+    public void replicate() {
+        if (isPrimary()) {
+            replicationExecutor.execute(() -> Try.of(() -> replicationClient.heartbeat(standby(), clusterProperties.getSecret()))
+                    .onSuccess(status -> {
+                        if (status.isPromoted()) {
+                            standDown();
+                        } else {
+                            walletRepository.findAllWalletIds().removeAll(status.getWalletIds()).forEach(pendingWalletIds::add);
+                            sendPendingWallets();
+                        }
+                    })
+                    .onFailure(t -> log.warn("Standby={} is not reachable: {}", replicationProperties.getStandbyUrl(), t.getMessage())));
+        }
+    }
+
+    // A promoted standby still answers, so its old primary learns it was replaced
+    ReplicationStatusDto heartbeat() {
+        if (!replicationProperties.getStandby()) {
+            throw new RuntimeException("This node is not a standby");
+        }
+        if (!promoted.get()) {
+            lastContactMillis.set(System.currentTimeMillis());
+        }
+        return status();
+    }
+
+    ReplicationStatusDto status() {
+        return new ReplicationStatusDto(replicationProperties.getStandby(), promoted.get(), List.ofAll(standbyWalletById.keySet()), lastContactMillis.get());
+    }
+
+    // The file is kept too, so a standby restarting does not lose what it already had
+    void replicateWallet(UUID walletId, byte[] walletFile) {
+
+        verifyStandby();
+        lastContactMillis.set(System.currentTimeMillis());
+
+        Context.propagate(chainEngine.context());
+        val wallet = Try.of(() -> new WalletProtobufSerializer().readWallet(new ByteArrayInputStream(walletFile)))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Couldn't read replicated wallet=%s", walletId), t));
+        walletService.saveWalletFile(walletId, walletFile);
+        standbyWalletById.put(walletId, wallet);
+    }
+
+    void removeWallet(UUID walletId) {
+        verifyStandby();
+        lastContactMillis.set(System.currentTimeMillis());
+        standbyWalletById.remove(walletId);
+        walletService.deleteWalletFile(walletId);
+    }
+
+    // Once promoted the standby runs the wallets itself and turns away its old primary if it comes back
+    synchronized void promote() {
+
+        if (!replicationProperties.getStandby() || !promoted.compareAndSet(false, true)) {
+            return;
+        }
+
+        log.info("Promoted, starting {} replicated wallets", standbyWalletById.size());
+        standbyWalletById.forEach((walletId, wallet) -> Try.run(() -> walletService.startReplicatedWallet(walletId, wallet))
+                .onFailure(t -> log.warn("Couldn't start replicated wallet={}", walletId, t)));
+        standbyWalletById.clear();
+    }
+
+    private boolean isPrimary() {
+        return replicationProperties.getStandbyUrl() != null && !replaced.get();
+    }
+
+    private boolean isStandby() {
+        return replicationProperties.getStandby() && !promoted.get();
+    }
+
+    private void verifyStandby() {
+        if (!isStandby()) {
+            throw new RuntimeException(String.format("This node is not a standby, promoted=%s", promoted.get()));
+        }
+    }
+
+    private URI standby() {
+        return URI.create(replicationProperties.getStandbyUrl());
+    }
+
+    // A wallet that could not be sent waits for the next heartbeat
+    private void sendPendingWallets() {
+        List.ofAll(pendingWalletIds).forEach(walletId -> {
+            pendingWalletIds.remove(walletId);
+            walletRepository.findWalletById(walletId).forEach(wallet -> Try.run(() -> replicationClient.replicateWallet(standby(), clusterProperties.getSecret(), walletId, walletService.readWalletFile(walletId)))
+                    .onFailure(t -> {
+                        log.warn("Couldn't replicate wallet={} to the standby", walletId, t);
+                        pendingWalletIds.add(walletId);
+                    }));
+        });
+    }
+
+    // The wallets stop here without being removed from the standby, a request for them fails until they are moved back
+    private void standDown() {
+        if (replaced.compareAndSet(false, true)) {
+            log.warn("Standby={} was promoted, stopping the wallets of this node", replicationProperties.getStandbyUrl());
+            pendingWalletIds.clear();
+            walletRepository.findAllWalletIds().forEach(walletId -> Try.run(() -> walletService.releaseWallet(walletId))
+                    .onFailure(t -> log.warn("Couldn't stop wallet={}", walletId, t)));
+        }
+    }
+}
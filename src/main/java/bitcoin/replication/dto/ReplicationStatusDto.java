@@ -0,0 +1,18 @@
+package bitcoin.replication.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class ReplicationStatusDto {
+
+    boolean standby;
+
+    boolean promoted;
+
+    List<UUID> walletIds;
+
+    Long lastContactMillis;
+}
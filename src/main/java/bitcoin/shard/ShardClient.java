@@ -0,0 +1,28 @@
+package bitcoin.shard;
+
+import bitcoin.shard.dto.ShardNodesDto;
+import org.springframework.cloud.netflix.feign.FeignClient;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static bitcoin.config.ClusterAuthenticationFilter.SECRET_HEADER;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.web.bind.annotation.RequestMethod.PUT;
+
+// The other nodes of the cluster, the node is given as the endpoint of every call
+@FeignClient(name = "shard-client", url = "http://localhost:8080")
+interface ShardClient {
+
+    @RequestMapping(method = PUT, path = "/shard/nodes", consumes = APPLICATION_JSON_VALUE)
+    ShardNodesDto updateNodes(URI node, @RequestHeader(SECRET_HEADER) String secret, @RequestParam("propagate") boolean propagate, ShardNodesDto shardNodesDto);
+
+    @RequestMapping(method = PUT, path = "/shard/wallet/{walletId}", consumes = APPLICATION_OCTET_STREAM_VALUE)
+    void adoptWallet(URI node, @RequestHeader(SECRET_HEADER) String secret, @PathVariable("walletId") UUID walletId, @RequestParam("unlock") boolean unlock, byte[] walletFile);
+
+}
@@ -0,0 +1,49 @@
+package bitcoin.shard;
+
+import bitcoin.shard.dto.ShardNodesDto;
+import bitcoin.shard.dto.ShardOwnerDto;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+import java.util.UUID;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/shard", produces = APPLICATION_JSON_VALUE)
+public class ShardResource {
+
+    ShardService shardService;
+
+    @GetMapping(path = "/nodes")
+    public ShardNodesDto findNodes() {
+        return new ShardNodesDto(shardService.findNodes());
+    }
+
+    @PutMapping(path = "/nodes", consumes = APPLICATION_JSON_VALUE)
+    public ShardNodesDto updateNodes(@Valid @RequestBody ShardNodesDto shardNodesDto, @RequestParam(name = "propagate", required = false, defaultValue = "true") boolean propagate) {
+        return new ShardNodesDto(shardService.updateNodes(shardNodesDto.getNodes(), propagate));
+    }
+
+    @GetMapping(path = "/wallet/{walletId}")
+    public ShardOwnerDto findOwnerOfWallet(@PathVariable("walletId") UUID walletId) {
+        return new ShardOwnerDto(shardService.ownerOf(walletId), shardService.isLocal(walletId));
+    }
+
+    @PutMapping(path = "/wallet/{walletId}", consumes = APPLICATION_OCTET_STREAM_VALUE)
+    public void adoptWallet(@PathVariable("walletId") UUID walletId, @RequestParam(name = "unlock", required = false, defaultValue = "true") boolean unlock, @RequestBody byte[] walletFile) {
+        shardService.adoptWallet(walletId, walletFile, unlock);
+    }
+}
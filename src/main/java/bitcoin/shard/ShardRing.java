@@ -0,0 +1,47 @@
+package bitcoin.shard;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.Value;
+import lombok.val;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Consistent hashing of wallet ids over the nodes. Each node owns the arcs ending at its points, so a node joining
+// takes wallets only from the nodes before its points and a node leaving only gives its own wallets away.
+@Value
+class ShardRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    List<String> nodes;
+
+    NavigableMap<Long, String> nodeByPoint;
+
+    static ShardRing of(List<String> nodes, int virtualNodes) {
+
+        if (nodes.isEmpty()) {
+            throw new RuntimeException("A shard ring needs at least one node");
+        }
+
+        val distinctNodes = nodes.distinct().sorted();
+
+        val nodeByPoint = new TreeMap<Long, String>();
+        distinctNodes.forEach(node -> List.range(0, virtualNodes).forEach(index -> nodeByPoint.put(HASH.hashString(node + "#" + index, UTF_8).asLong(), node)));
+
+        return new ShardRing(distinctNodes, nodeByPoint);
+    }
+
+    String ownerOf(UUID walletId) {
+
+        val point = HASH.hashString(walletId.toString(), UTF_8).asLong();
+
+        return Option.of(nodeByPoint.ceilingEntry(point)).getOrElse(nodeByPoint::firstEntry).getValue();
+    }
+}
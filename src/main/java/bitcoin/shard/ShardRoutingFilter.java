@@ -0,0 +1,114 @@
+package bitcoin.shard;
+
+import bitcoin.config.ClusterAuthenticationFilter;
+import bitcoin.config.ClusterProperties;
+import bitcoin.config.RequestPaths;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Requests for a wallet another node owns are sent on to that node as they came and its response is passed back, so
+// a client can talk to any node. A request that was already forwarded is served where it lands, which keeps two nodes
+// that disagree for a moment about the owner from sending it back and forth. Only a peer with the cluster secret can
+// say it forwarded a request, the header is ignored on requests of clients.
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+    static final String FORWARDED_HEADER = "X-Shard-Forwarded-By";
+
+    private static final Set<String> HOP_BY_HOP_HEADERS = HashSet.of("connection", "keep-alive", "transfer-encoding", "te", "trailer", "upgrade", "host", "content-length");
+
+    ShardService shardService;
+
+    ClusterAuthenticationFilter clusterAuthenticationFilter;
+
+    ClusterProperties clusterProperties;
+
+    RestTemplate restTemplate = restTemplate();
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        val walletId = RequestPaths.walletIdOf(RequestPaths.pathOf(request));
+        if (walletId.isEmpty() || request.getHeader(FORWARDED_HEADER) != null && clusterAuthenticationFilter.isPeer(request) || shardService.isLocal(walletId.get())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        forward(request, response, shardService.ownerOf(walletId.get()));
+    }
+
+    private void forward(HttpServletRequest request, HttpServletResponse response, String owner) throws IOException {
+
+        val method = HttpMethod.resolve(request.getMethod());
+        if (method == null) {
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        val uri = UriComponentsBuilder.fromHttpUrl(owner).path(RequestPaths.pathOf(request)).query(request.getQueryString()).build(true).toUri();
+
+        val headers = new HttpHeaders();
+        for (val name : Collections.list(request.getHeaderNames())) {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                headers.put(name, Collections.list(request.getHeaders(name)));
+            }
+        }
+        headers.set(FORWARDED_HEADER, shardService.getNodeUrl());
+        headers.remove(ClusterAuthenticationFilter.SECRET_HEADER);
+        Option.of(clusterProperties.getSecret()).forEach(secret -> headers.set(ClusterAuthenticationFilter.SECRET_HEADER, secret));
+
+        val forwarded = Try.of(() -> restTemplate.exchange(uri, method, new HttpEntity<>(StreamUtils.copyToByteArray(request.getInputStream()), headers), byte[].class))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Couldn't forward %s %s to node=%s", request.getMethod(), uri.getPath(), owner), t));
+
+        response.setStatus(forwarded.getStatusCodeValue());
+        forwarded.getHeaders().forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        if (forwarded.getBody() != null) {
+            response.getOutputStream().write(forwarded.getBody());
+        }
+    }
+
+    // Error responses of the owner are passed back as they are
+    private static RestTemplate restTemplate() {
+        val restTemplate = new RestTemplate();
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+
+        return restTemplate;
+    }
+}
@@ -0,0 +1,162 @@
+package bitcoin.shard;
+
+import bitcoin.config.ClusterProperties;
+import bitcoin.shard.dto.ShardNodesDto;
+import bitcoin.wallet.WalletCreatedEvent;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WalletService;
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static lombok.AccessLevel.PRIVATE;
+
+// Every node knows every other node and works out the owner of a wallet on its own from the hash ring. Wallets saved
+// on a node that does not own them anymore are handed to their owner, after a membership change and periodically.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardService {
+
+    ShardingProperties shardingProperties;
+
+    ClusterProperties clusterProperties;
+
+    WalletService walletService;
+
+    WalletRepository walletRepository;
+
+    ShardClient shardClient;
+
+    AtomicReference<ShardRing> shardRing;
+
+    ExecutorService rebalanceExecutor = newSingleThreadExecutor();
+
+    Set<UUID> walletIdsBeingHandedOver = ConcurrentHashMap.newKeySet();
+
+    public ShardService(ShardingProperties shardingProperties, ClusterProperties clusterProperties, WalletService walletService, WalletRepository walletRepository, @Lazy ShardClient shardClient) {
+        this.shardingProperties = shardingProperties;
+        this.clusterProperties = clusterProperties;
+        this.walletService = walletService;
+        this.walletRepository = walletRepository;
+        this.shardClient = shardClient;
+        this.shardRing = new AtomicReference<>(ShardRing.of(shardingProperties.getNodes().isEmpty() ? List.of(shardingProperties.getNodeUrl()) : List.ofAll(shardingProperties.getNodes()),
+                shardingProperties.getVirtualNodes()));
+    }
+
+    boolean isLocal(UUID walletId) {
+        return !shardingProperties.getEnabled() || ownerOf(walletId).equals(shardingProperties.getNodeUrl());
+    }
+
+    String ownerOf(UUID walletId) {
+        return shardRing.get().ownerOf(walletId);
+    }
+
+    String getNodeUrl() {
+        return shardingProperties.getNodeUrl();
+    }
+
+    List<String> findNodes() {
+        return shardRing.get().getNodes();
+    }
+
+    // A node joins or leaves by telling any node the new list, which tells every node of the old and the new list
+    List<String> updateNodes(List<String> nodes, boolean propagate) {
+
+        val previous = shardRing.getAndSet(ShardRing.of(nodes, shardingProperties.getVirtualNodes()));
+        log.info("Shard nodes changed from {} to {}", previous.getNodes(), shardRing.get().getNodes());
+
+        if (propagate) {
+            previous.getNodes().appendAll(nodes).distinct().remove(shardingProperties.getNodeUrl()).forEach(node ->
+                    Try.run(() -> shardClient.updateNodes(URI.create(node), clusterProperties.getSecret(), false, new ShardNodesDto(nodes)))
+                            .onFailure(t -> log.warn("Couldn't tell node={} the new shard nodes", node, t)));
+        }
+        rebalanceExecutor.execute(this::rebalance);
+
+        return shardRing.get().getNodes();
+    }
+
+    void adoptWallet(UUID walletId, byte[] walletFile, boolean unlock) {
+        log.info("Adopting wallet={}", walletId);
+        walletService.adoptWallet(walletId, walletFile, unlock);
+    }
+
+    // A wallet is created on the node the request came to. Its owner takes it before the response, so the next request
+    // for it, forwarded there, finds it.
+    @EventListener
+    public void onWalletCreated(WalletCreatedEvent event) {
+        if (!isLocal(event.getWalletId())) {
+            Try.run(() -> handOver(event.getWalletId(), ownerOf(event.getWalletId())))
+                    .onFailure(t -> log.warn("Couldn't hand new wallet={} over", event.getWalletId(), t));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sharding.rebalance-delay-millis:10000}")
+    public void rebalanceWallets() {
+        if (shardingProperties.getEnabled()) {
+            rebalanceExecutor.execute(this::rebalance);
+        }
+    }
+
+    private void rebalance() {
+
+        if (!shardingProperties.getEnabled()) {
+            return;
+        }
+
+        val ring = shardRing.get();
+        walletService.findWalletFileIds()
+                .filter(walletId -> !ring.ownerOf(walletId).equals(shardingProperties.getNodeUrl()))
+                .forEach(walletId -> Try.run(() -> handOver(walletId, ring.ownerOf(walletId)))
+                        .onFailure(t -> log.warn("Couldn't hand wallet={} over", walletId, t)));
+    }
+
+    // The wallet is stopped before its file is sent, so no change is lost between the copy and the owner loading it.
+    // If the owner cannot take it the wallet stays here as it was. A wallet is handed over by one caller at a time,
+    // without a lock held over the call to its owner, the others find it gone or skip it.
+    private void handOver(UUID walletId, String owner) {
+
+        if (!walletIdsBeingHandedOver.add(walletId)) {
+            log.info("Wallet={} is already being handed over", walletId);
+            return;
+        }
+
+        try {
+            sendTo(walletId, owner);
+        } finally {
+            walletIdsBeingHandedOver.remove(walletId);
+        }
+    }
+
+    private void sendTo(UUID walletId, String owner) {
+
+        log.info("Handing wallet={} over to node={}", walletId, owner);
+        val unlocked = walletRepository.findWalletById(walletId).isDefined();
+        val walletFile = walletService.releaseWallet(walletId);
+
+        Try.run(() -> shardClient.adoptWallet(URI.create(owner), clusterProperties.getSecret(), walletId, unlocked, walletFile))
+                .onSuccess(ignored -> walletService.deleteWalletFile(walletId))
+                .onFailure(t -> {
+                    log.warn("Node={} couldn't adopt wallet={}, it stays here", owner, walletId, t);
+                    if (unlocked) {
+                        walletService.resumeWallet(walletId);
+                    }
+                });
+    }
+}
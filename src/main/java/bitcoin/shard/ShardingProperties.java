@@ -0,0 +1,30 @@
+package bitcoin.shard;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "sharding")
+public class ShardingProperties {
+
+    Boolean enabled = false;
+
+    // Url the other nodes reach this one at, as it appears in the list of nodes
+    String nodeUrl = "http://localhost:8080";
+
+    // Every node of the cluster, this one included. Empty means this node alone.
+    List<String> nodes = new ArrayList<>();
+
+    // Points of each node on the hash ring, more points spread the wallets more evenly
+    Integer virtualNodes = 128;
+
+    Long rebalanceDelayMillis = 10000L;
+
+}
@@ -0,0 +1,13 @@
+package bitcoin.shard.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+import javax.validation.constraints.NotNull;
+
+@Value
+public class ShardNodesDto {
+
+    @NotNull
+    List<String> nodes;
+}
@@ -0,0 +1,11 @@
+package bitcoin.shard.dto;
+
+import lombok.Value;
+
+@Value
+public class ShardOwnerDto {
+
+    String node;
+
+    boolean local;
+}
@@ -0,0 +1,38 @@
+package bitcoin.trace;
+
+import io.vavr.collection.List;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// A stage of one or more traces, those of a batch share its stages. Closing it records the stage once, from any thread.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span("noop", List.empty());
+
+    String name;
+
+    List<Trace> traces;
+
+    long startNanos;
+
+    AtomicBoolean closed = new AtomicBoolean();
+
+    Span(String name, List<Trace> traces) {
+        this.name = name;
+        this.traces = traces;
+        this.startNanos = traces.isEmpty() ? 0 : System.nanoTime();
+    }
+
+    @Override
+    public void close() {
+        if (!traces.isEmpty() && closed.compareAndSet(false, true)) {
+            long endNanos = System.nanoTime();
+            String thread = Thread.currentThread().getName();
+            traces.forEach(trace -> trace.add(name, startNanos, endNanos, thread));
+        }
+    }
+}
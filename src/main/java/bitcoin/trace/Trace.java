@@ -0,0 +1,52 @@
+package bitcoin.trace;
+
+import lombok.Getter;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// One traced request. Spans may still be added after it finished, broadcasts complete long after the response
+@Getter
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class Trace {
+
+    String name;
+
+    long startMillis = System.currentTimeMillis();
+
+    long startNanos = System.nanoTime();
+
+    Queue<SpanRecord> spans = new ConcurrentLinkedQueue<>();
+
+    @NonFinal
+    volatile long durationNanos = -1;
+
+    Trace(String name) {
+        this.name = name;
+    }
+
+    void finish() {
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    void add(String spanName, long spanStartNanos, long spanEndNanos, String thread) {
+        spans.add(new SpanRecord(spanName, spanStartNanos - startNanos, spanEndNanos - spanStartNanos, thread));
+    }
+
+    @Value
+    static class SpanRecord {
+
+        String name;
+
+        long offsetNanos;
+
+        long durationNanos;
+
+        String thread;
+    }
+}
@@ -0,0 +1,86 @@
+package bitcoin.trace;
+
+import bitcoin.wallet.WalletReleasedEvent;
+import io.vavr.collection.List;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Keeps the slowest traces, fastest first in a bounded heap. Once it is full a trace faster than all of them is
+// dropped without taking the lock.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(TracingProperties.class)
+public class TraceRecorder {
+
+    TracingProperties tracingProperties;
+
+    PriorityQueue<Trace> slowest = new PriorityQueue<>(Comparator.comparingLong(Trace::getDurationNanos));
+
+    @NonFinal
+    volatile long admissionNanos;
+
+    public TraceRecorder(TracingProperties tracingProperties) {
+        this.tracingProperties = tracingProperties;
+    }
+
+    boolean isSampled(boolean forced) {
+        double sampleRate = tracingProperties.getSampleRate();
+        return forced || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    String getForceHeader() {
+        return tracingProperties.getForceHeader();
+    }
+
+    void record(Trace trace) {
+
+        if (trace.getDurationNanos() <= admissionNanos) {
+            return;
+        }
+
+        synchronized (slowest) {
+            slowest.add(trace);
+            if (slowest.size() > tracingProperties.getSlowestCapacity()) {
+                slowest.poll();
+            }
+            if (slowest.size() >= tracingProperties.getSlowestCapacity()) {
+                admissionNanos = slowest.peek().getDurationNanos();
+            }
+        }
+    }
+
+    // Slowest first
+    List<Trace> findSlowest() {
+        synchronized (slowest) {
+            return List.ofAll(slowest).sortBy(trace -> -trace.getDurationNanos());
+        }
+    }
+
+    @EventListener
+    public void onWalletReleased(WalletReleasedEvent event) {
+        Tracing.forget(event.getWalletId());
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void forgetStaleSaves() {
+        Tracing.forgetOlderThan(TimeUnit.MILLISECONDS.toNanos(tracingProperties.getAwaitSaveMillis()));
+    }
+
+    void clear() {
+        synchronized (slowest) {
+            slowest.clear();
+            admissionNanos = 0;
+        }
+    }
+}
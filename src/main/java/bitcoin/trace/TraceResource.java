@@ -0,0 +1,46 @@
+package bitcoin.trace;
+
+import bitcoin.trace.dto.SpanDto;
+import bitcoin.trace.dto.TraceDto;
+import bitcoin.trace.dto.TracesDto;
+import io.vavr.collection.List;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+import static lombok.AccessLevel.PRIVATE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@RestController
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@RequestMapping(path = "/trace", produces = APPLICATION_JSON_VALUE)
+public class TraceResource {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    TraceRecorder traceRecorder;
+
+    @GetMapping(path = "/slowest")
+    public TracesDto findSlowestTraces() {
+        return new TracesDto(traceRecorder.findSlowest().map(TraceResource::toTraceDto));
+    }
+
+    @DeleteMapping(path = "/slowest")
+    public void clearSlowestTraces() {
+        traceRecorder.clear();
+    }
+
+    // Spans in the order they started
+    private static TraceDto toTraceDto(Trace trace) {
+        return new TraceDto(trace.getName(), Instant.ofEpochMilli(trace.getStartMillis()), trace.getDurationNanos() / NANOS_PER_MILLI,
+                List.ofAll(trace.getSpans())
+                        .sortBy(Trace.SpanRecord::getOffsetNanos)
+                        .map(span -> new SpanDto(span.getName(), span.getOffsetNanos() / NANOS_PER_MILLI, span.getDurationNanos() / NANOS_PER_MILLI, span.getThread())));
+    }
+}
@@ -0,0 +1,91 @@
+package bitcoin.trace;
+
+import io.vavr.collection.List;
+import lombok.experimental.UtilityClass;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+// Spans of the request traced on the current thread. A request that is not sampled has no trace, and then a span is
+// a thread local read returning a shared span that records nothing.
+@UtilityClass
+public class Tracing {
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    // Traces that changed a wallet and wait for its file to be saved
+    private static final Map<UUID, Queue<Trace>> TRACES_AWAITING_SAVE = new ConcurrentHashMap<>();
+
+    public static Span span(String name) {
+        Trace trace = CURRENT.get();
+        return trace == null ? Span.NOOP : new Span(name, List.of(trace));
+    }
+
+    // For work done on another thread on behalf of the requests that handed it over
+    public static Span span(String name, List<Trace> traces) {
+        return traces.isEmpty() ? Span.NOOP : new Span(name, traces);
+    }
+
+    public static List<Trace> current() {
+        Trace trace = CURRENT.get();
+        return trace == null ? List.empty() : List.of(trace);
+    }
+
+    // Work handed to another thread runs in the trace of the request that handed it over
+    public static <T> T within(List<Trace> traces, Supplier<T> work) {
+        Trace previous = CURRENT.get();
+        CURRENT.set(traces.headOption().getOrNull());
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // A stage timed by the caller, for stages only seen from inside a callback of code that must run in one piece
+    public static void record(String name, List<Trace> traces, long startNanos, long endNanos) {
+        String thread = Thread.currentThread().getName();
+        traces.forEach(trace -> trace.add(name, startNanos, endNanos, thread));
+    }
+
+    public static void awaitSave(UUID walletId, List<Trace> traces) {
+        if (!traces.isEmpty()) {
+            TRACES_AWAITING_SAVE.computeIfAbsent(walletId, id -> new ConcurrentLinkedQueue<>()).addAll(traces.toJavaList());
+        }
+    }
+
+    // The save of a wallet file is a span of every trace waiting for it
+    public static Span saving(UUID walletId) {
+        if (TRACES_AWAITING_SAVE.isEmpty()) {
+            return Span.NOOP;
+        }
+        Queue<Trace> traces = TRACES_AWAITING_SAVE.remove(walletId);
+        return traces == null ? Span.NOOP : new Span("wallet-save", List.ofAll(traces));
+    }
+
+    // A released wallet is not saved here anymore
+    static void forget(UUID walletId) {
+        TRACES_AWAITING_SAVE.remove(walletId);
+    }
+
+    // Traces of wallets saved elsewhere or never saved again are given up once they are older than maximumAgeNanos
+    static void forgetOlderThan(long maximumAgeNanos) {
+        long now = System.nanoTime();
+        TRACES_AWAITING_SAVE.values().removeIf(traces -> {
+            traces.removeIf(trace -> now - trace.getStartNanos() > maximumAgeNanos);
+            return traces.isEmpty();
+        });
+    }
+
+    static void begin(Trace trace) {
+        CURRENT.set(trace);
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,46 @@
+package bitcoin.trace;
+
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Right after the rate limits, so a trace covers everything the request waited for once it was let in
+@Component
+@AllArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class TracingFilter extends OncePerRequestFilter {
+
+    TraceRecorder traceRecorder;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        if (!traceRecorder.isSampled(request.getHeader(traceRecorder.getForceHeader()) != null)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        val trace = new Trace(request.getMethod() + " " + request.getRequestURI());
+        Tracing.begin(trace);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Tracing.end();
+            trace.finish();
+            traceRecorder.record(trace);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package bitcoin.trace;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "tracing")
+public class TracingProperties {
+
+    // Share of the requests traced, 0 traces only those asking for it with the force header
+    Double sampleRate = 0.0;
+
+    String forceHeader = "X-Trace";
+
+    // Slowest traces kept for the admin endpoint
+    Integer slowestCapacity = 50;
+
+    // Traces still waiting for the save of their wallet file after this long are given up
+    Long awaitSaveMillis = 60000L;
+
+}
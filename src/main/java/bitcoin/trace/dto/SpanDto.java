@@ -0,0 +1,15 @@
+package bitcoin.trace.dto;
+
+import lombok.Value;
+
+@Value
+public class SpanDto {
+
+    String name;
+
+    double offsetMillis;
+
+    double durationMillis;
+
+    String thread;
+}
@@ -0,0 +1,18 @@
+package bitcoin.trace.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+public class TraceDto {
+
+    String name;
+
+    Instant startTime;
+
+    double durationMillis;
+
+    List<SpanDto> spans;
+}
@@ -0,0 +1,10 @@
+package bitcoin.trace.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+@Value
+public class TracesDto {
+
+    List<TraceDto> traces;
+}
@@ -0,0 +1,8 @@
+package bitcoin.transaction;
+
+public enum FeeBumpMethod {
+
+    CPFP,
+
+    RBF
+}
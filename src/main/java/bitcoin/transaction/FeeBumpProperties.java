@@ -0,0 +1,21 @@
+package bitcoin.transaction;
+
+import bitcoin.fee.FeeTarget;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "fee-bump")
+public class FeeBumpProperties {
+
+    Boolean enabled = false;
+
+    Integer blocksWithoutConfirmation = 6;
+
+    FeeTarget feeTarget = FeeTarget.NEXT_BLOCK;
+
+}
@@ -0,0 +1,226 @@
+package bitcoin.transaction;
+
+import bitcoin.chain.ChainEngine;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.wallet.OutputReservations;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.transaction.FeeBumpMethod.CPFP;
+import static bitcoin.transaction.FeeBumpMethod.RBF;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static lombok.AccessLevel.PRIVATE;
+import static org.bitcoinj.core.Transaction.MIN_NONDUST_OUTPUT;
+import static org.bitcoinj.core.Transaction.Purpose.RAISE_FEE;
+import static org.bitcoinj.core.Transaction.REFERENCE_DEFAULT_MIN_TX_FEE;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.PENDING;
+
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(FeeBumpProperties.class)
+public class FeeBumpService {
+
+    // Size of the one input, one output P2PKH child transaction
+    private static final int CHILD_TRANSACTION_SIZE = 192;
+
+    WalletRepository walletRepository;
+
+    ChainEngine chainEngine;
+
+    FeeEstimator feeEstimator;
+
+    FeeBumpProperties feeBumpProperties;
+
+    SpendQueue spendQueue;
+
+    OutputReservations outputReservations;
+
+    Map<Sha256Hash, Integer> lastBumpHeightByTransactionHash = new ConcurrentHashMap<>();
+
+    Transaction bumpFee(UUID walletId, Sha256Hash txHash, Option<FeeBumpMethod> feeBumpMethod, FeeTarget feeTarget) {
+
+        walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        val transaction = spendQueue.spend(walletId, wallet -> bumpFee(walletId, wallet, txHash, feeBumpMethod, feeTarget));
+
+        chainEngine.broadcastTransaction(transaction).future()
+                .addListener(() -> log.info("Fee bump of wallet={} for txHash={} broadcast successfully with txHash={}", walletId, txHash, transaction.getHashAsString()), directExecutor());
+
+        return transaction;
+    }
+
+    // The transaction is looked up again on the spend queue, a spend before this one may have replaced it
+    Transaction bumpFee(UUID walletId, Wallet wallet, Sha256Hash txHash, Option<FeeBumpMethod> feeBumpMethod, FeeTarget feeTarget) {
+
+        if (wallet.isWatching()) {
+            throw new RuntimeException(String.format("Wallet with walletId=%s is watching only, it cannot sign a fee bump", walletId));
+        }
+
+        val transaction = Option.of(wallet.getTransaction(txHash)).getOrElseThrow(() -> new RuntimeException(String.format("Transaction not found with txHash=%s in walletId=%s", txHash, walletId)));
+
+        if (transaction.getConfidence().getConfidenceType() != PENDING) {
+            throw new RuntimeException(String.format("Transaction with txHash=%s is not pending", txHash));
+        }
+
+        val method = feeBumpMethod.getOrElse(() -> transaction.isOptInFullRBF() ? RBF : CPFP);
+        val feePerKb = feeEstimator.estimateFeePerKb(feeTarget);
+        val sendRequest = method == RBF ? replaceByFee(wallet, transaction, feePerKb) : childPaysForParent(wallet, transaction, feePerKb);
+
+        wallet.signTransaction(sendRequest);
+        if (method == RBF) {
+            killReplaced(wallet, transaction, sendRequest.tx);
+        }
+        wallet.commitTx(sendRequest.tx);
+
+        log.info("Bumped fee of wallet={} for txHash={} using {} with txHash={}", walletId, txHash, method, sendRequest.tx.getHashAsString());
+        lastBumpHeightByTransactionHash.put(txHash, wallet.getLastBlockSeenHeight());
+
+        return sendRequest.tx;
+    }
+
+    @Scheduled(fixedDelayString = "${fee-bump.fixed-delay:60000}")
+    void bumpStuckTransactions() {
+        if (!feeBumpProperties.getEnabled()) {
+            return;
+        }
+
+        // Watching wallets have no keys to sign a replacement or a child with, a replacement is bumped again like any other
+        val pendingTransactionHashes = walletRepository.findAllWalletIds()
+                .flatMap(walletId -> walletRepository.findWalletById(walletId).toList().filter(wallet -> !wallet.isWatching()).flatMap(wallet -> bumpStuckTransactionsOfWallet(walletId, wallet)))
+                .toSet();
+
+        lastBumpHeightByTransactionHash.keySet().removeIf(txHash -> !pendingTransactionHashes.contains(txHash));
+    }
+
+    private List<Sha256Hash> bumpStuckTransactionsOfWallet(UUID walletId, Wallet wallet) {
+
+        val height = wallet.getLastBlockSeenHeight();
+        val stuckTransactions = List.ofAll(wallet.getPendingTransactions())
+                .filter(transaction -> transaction.getConfidence().getConfidenceType() == PENDING)
+                .filter(transaction -> transaction.getValueSentFromMe(wallet).isPositive())
+                .filter(transaction -> !hasPendingChild(transaction));
+
+        stuckTransactions
+                .filter(transaction -> height - lastBumpHeightByTransactionHash.getOrDefault(transaction.getHash(), sentAtHeight(wallet, transaction)) >= feeBumpProperties.getBlocksWithoutConfirmation())
+                .forEach(transaction -> Try.of(() -> bumpFee(walletId, transaction.getHash(), Option.none(), feeBumpProperties.getFeeTarget()))
+                        .onFailure(t -> log.warn("Couldn't bump fee of txHash={} in wallet={}", transaction.getHashAsString(), walletId, t)));
+
+        return stuckTransactions.map(Transaction::getHash);
+    }
+
+    private SendRequest childPaysForParent(Wallet wallet, Transaction parent, Coin feePerKb) {
+
+        // The child pays for the whole package, minus what the parent already paid
+        val packageFee = feePerKb.value * (parent.getMessageSize() + CHILD_TRANSACTION_SIZE) / 1000;
+        val parentFee = Option.of(parent.getFee()).map(Coin::longValue).getOrElse(0L);
+        val feeRaise = Coin.valueOf(Math.max(packageFee - parentFee, REFERENCE_DEFAULT_MIN_TX_FEE.value * CHILD_TRANSACTION_SIZE / 1000));
+
+        // The child spends an output picked without the coin selector, a reserved one is not taken from under its psbt
+        val outputToSpend = List.ofAll(parent.getOutputs())
+                .find(output -> output.isMine(wallet) && output.isAvailableForSpending() && output.getValue().isGreaterThan(feeRaise) && !outputReservations.isReserved(output.getOutPointFor()))
+                .getOrElseThrow(() -> new RuntimeException(String.format("Transaction with txHash=%s has no unreserved output of ours that can pay a fee of %s", parent.getHashAsString(), feeRaise.toFriendlyString())));
+
+        // The child pays back to the script of the output it spends, so an output owned by an account stays with it
+        val child = new Transaction(networkParameters());
+        child.addInput(outputToSpend);
+        child.addOutput(outputToSpend.getValue().subtract(feeRaise), outputToSpend.getScriptPubKey());
+        child.setPurpose(RAISE_FEE);
+
+        return SendRequest.forTx(child);
+    }
+
+    // Same inputs and outputs as the original, with the extra fee taken from our change output. An output paying one of
+    // our receive addresses is a payment to ourselves and is left as it is.
+    SendRequest replaceByFee(Wallet wallet, Transaction original, Coin feePerKb) {
+
+        if (!original.isOptInFullRBF()) {
+            throw new RuntimeException(String.format("Transaction with txHash=%s does not signal replace-by-fee", original.getHashAsString()));
+        }
+        if (hasPendingChild(original)) {
+            throw new RuntimeException(String.format("Transaction with txHash=%s has outputs spent by another transaction, replacing it would drop that one too", original.getHashAsString()));
+        }
+
+        val size = original.getMessageSize();
+        val originalFee = Option.of(original.getFee()).getOrElseThrow(() -> new RuntimeException(String.format("Fee of transaction with txHash=%s is unknown", original.getHashAsString())));
+        // BIP125 requires the replacement to pay at least the minimum relay fee on top of what the original paid
+        val feeRaise = Coin.valueOf(Math.max(feePerKb.value * size / 1000 - originalFee.value, REFERENCE_DEFAULT_MIN_TX_FEE.value * size / 1000));
+
+        val changeOutput = List.ofAll(original.getOutputs())
+                .find(output -> isChange(wallet, output) && !output.getValue().subtract(feeRaise).isLessThan(MIN_NONDUST_OUTPUT))
+                .getOrElseThrow(() -> new RuntimeException(String.format("Transaction with txHash=%s has no change output that can pay a fee of %s", original.getHashAsString(), feeRaise.toFriendlyString())));
+
+        val replacement = new Transaction(networkParameters());
+        original.getInputs().forEach(input -> replacement.addInput(input.getConnectedOutput()).setSequenceNumber(input.getSequenceNumber()));
+        original.getOutputs().forEach(output -> replacement.addOutput(output == changeOutput ? output.getValue().subtract(feeRaise) : output.getValue(), output.getScriptPubKey()));
+        replacement.setPurpose(RAISE_FEE);
+
+        return SendRequest.forTx(replacement);
+    }
+
+    // bitcoinj keeps a replaced transaction pending next to its replacement and marks both IN_CONFLICT, so the
+    // replacement could not be bumped again nor its change spent until one of them confirms. The original is killed
+    // the way a double spend confirming in a block kills it, under the wallet lock, before the replacement is committed.
+    private static void killReplaced(Wallet wallet, Transaction original, Transaction replacement) {
+        Try.run(() -> {
+            val lockField = Wallet.class.getDeclaredField("lock");
+            lockField.setAccessible(true);
+            val killTxns = Wallet.class.getDeclaredMethod("killTxns", Set.class, Transaction.class);
+            killTxns.setAccessible(true);
+            val lock = (ReentrantLock) lockField.get(wallet);
+            lock.lock();
+            try {
+                killTxns.invoke(wallet, Collections.singleton(original), replacement);
+            } finally {
+                lock.unlock();
+            }
+        }).getOrElseThrow(t -> new RuntimeException(String.format("Couldn't drop transaction with txHash=%s replaced by txHash=%s", original.getHashAsString(), replacement.getHashAsString()), t));
+    }
+
+    // The wallet keeps no height for a pending transaction, the blocks since it was sent are told from its update time
+    private static int sentAtHeight(Wallet wallet, Transaction transaction) {
+        val secondsSinceSent = wallet.getLastBlockSeenTimeSecs() - transaction.getUpdateTime().getTime() / 1000;
+        return wallet.getLastBlockSeenHeight() - (int) Math.max(0, secondsSinceSent / NetworkParameters.TARGET_SPACING);
+    }
+
+    // A child already pays for the transaction, bumping it again is up to the child
+    private static boolean hasPendingChild(Transaction transaction) {
+        return List.ofAll(transaction.getOutputs()).exists(output -> output.getSpentBy() != null);
+    }
+
+    private static boolean isChange(Wallet wallet, TransactionOutput output) {
+        return output.getScriptPubKey().isSentToAddress()
+                && Option.of(wallet.findKeyFromPubHash(output.getScriptPubKey().getPubKeyHash()))
+                .filter(DeterministicKey.class::isInstance)
+                .map(key -> ((DeterministicKey) key).getPath())
+                .exists(path -> path.size() >= 2 && path.get(path.size() - 2).equals(ChildNumber.ONE));
+    }
+}
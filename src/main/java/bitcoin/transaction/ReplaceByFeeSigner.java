@@ -0,0 +1,49 @@
+package bitcoin.transaction;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.val;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.signers.LocalTransactionSigner;
+import org.bitcoinj.signers.StatelessTransactionSigner;
+import org.bitcoinj.wallet.KeyBag;
+import org.bitcoinj.wallet.RedeemData;
+
+// Makes the transactions of a wallet signal BIP125 replace-by-fee, so a pending one can be bumped. A wallet runs its own
+// local signer before the signers added to it, and the sequence numbers are signed, so the inputs are signed again once
+// they signal. Transactions with an input this wallet cannot sign are left as they are. The signer is saved with the
+// wallet file and created again by name when it is loaded.
+public class ReplaceByFeeSigner extends StatelessTransactionSigner {
+
+    static final long REPLACEABLE_SEQUENCE = TransactionInput.NO_SEQUENCE - 2;
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public boolean signInputs(ProposedTransaction propTx, KeyBag keyBag) {
+
+        val transaction = propTx.partialTx;
+        val inputs = List.ofAll(transaction.getInputs());
+        val redeemData = inputs.map(input -> redeemDataOf(input, keyBag));
+
+        if (transaction.isOptInFullRBF() || !redeemData.forAll(data -> data.exists(ownData -> ownData.getFullKey() != null))) {
+            return true;
+        }
+
+        inputs.zip(redeemData.map(Option::get)).forEach(inputAndRedeemData -> {
+            val input = inputAndRedeemData._1;
+            input.setSequenceNumber(REPLACEABLE_SEQUENCE);
+            input.setScriptSig(input.getConnectedOutput().getScriptPubKey().createEmptyInputScript(inputAndRedeemData._2.keys.get(0), inputAndRedeemData._2.redeemScript));
+        });
+
+        return new LocalTransactionSigner().signInputs(propTx, keyBag);
+    }
+
+    private static Option<RedeemData> redeemDataOf(TransactionInput input, KeyBag keyBag) {
+        return Option.of(input.getConnectedOutput()).flatMap(output -> Try.of(() -> input.getConnectedRedeemData(keyBag)).toOption()).flatMap(Option::of);
+    }
+}
@@ -0,0 +1,270 @@
+package bitcoin.transaction;
+
+import bitcoin.chain.ChainEngine;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.trace.Span;
+import bitcoin.trace.Trace;
+import bitcoin.trace.Tracing;
+import bitcoin.wallet.WalletReleasedEvent;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.CheckedFunction1;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static lombok.AccessLevel.PRIVATE;
+
+// Spends of the same wallet are drained one at a time, so they never race for the same coins. Payments arriving within
+// the batch window are paid by a single transaction with one output each, any other spend of the wallet runs on its own
+// before the next batch. Callers give up waiting after the timeout, a spend already started still completes.
+@Component
+@AllArgsConstructor
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(SpendQueueProperties.class)
+public class SpendQueue {
+
+    WalletRepository walletRepository;
+
+    FeeEstimator feeEstimator;
+
+    SpendQueueProperties spendQueueProperties;
+
+    ChainEngine chainEngine;
+
+    Map<UUID, WalletSpends> walletSpendsByWalletId = new ConcurrentHashMap<>();
+
+    ScheduledExecutorService spendExecutor = newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+
+    public Transaction pay(UUID walletId, Address address, Coin amount, FeeTarget feeTarget) {
+        return await(walletId, submit(walletId, address, amount, feeTarget));
+    }
+
+    public <T> T spend(UUID walletId, CheckedFunction1<Wallet, T> spend) {
+        return await(walletId, submit(walletId, spend));
+    }
+
+    CompletableFuture<Transaction> submit(UUID walletId, Address address, Coin amount, FeeTarget feeTarget) {
+
+        val spend = new Spend(address, amount, feeTarget, new CompletableFuture<>(), Tracing.current(), Tracing.span("spend-queue"));
+        val walletSpends = walletSpendsByWalletId.computeIfAbsent(walletId, id -> new WalletSpends());
+
+        walletSpends.getSpends().add(spend);
+        scheduleDrain(walletId, walletSpends, spendQueueProperties.getBatchWindowMillis());
+
+        return spend.getResult();
+    }
+
+    // Runs in the trace of the request that submitted it
+    <T> CompletableFuture<T> submit(UUID walletId, CheckedFunction1<Wallet, T> spend) {
+
+        val result = new CompletableFuture<T>();
+        val traces = Tracing.current();
+        val queued = Tracing.span("spend-queue");
+        val walletSpends = walletSpendsByWalletId.computeIfAbsent(walletId, id -> new WalletSpends());
+
+        walletSpends.getTasks().add(() -> {
+            queued.close();
+            if (!result.isDone()) {
+                Tracing.within(traces, () -> walletRepository.findWalletById(walletId)
+                        .toTry(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)))
+                        .mapTry(spend))
+                        .onSuccess(result::complete)
+                        .onFailure(result::completeExceptionally);
+            }
+        });
+        scheduleDrain(walletId, walletSpends, 0L);
+
+        return result;
+    }
+
+    // What the wallet still has queued is drained once more, and fails as the wallet is not here anymore
+    @EventListener
+    public void onWalletReleased(WalletReleasedEvent event) {
+        Option.of(walletSpendsByWalletId.remove(event.getWalletId())).forEach(walletSpends -> scheduleDrain(event.getWalletId(), walletSpends, 0L));
+    }
+
+    @PreDestroy
+    public void close() {
+        spendExecutor.shutdown();
+    }
+
+    // A spend the caller gave up on is left out if it did not start yet, cancelling a completed one does nothing
+    private <T> T await(UUID walletId, CompletableFuture<T> result) {
+        return Try.of(() -> result.get(spendQueueProperties.getTimeoutMillis(), MILLISECONDS))
+                .onFailure(t -> result.cancel(false))
+                .getOrElseThrow(t -> t instanceof TimeoutException
+                        ? new RuntimeException(String.format("Spend of wallet=%s not done after %s ms", walletId, spendQueueProperties.getTimeoutMillis()))
+                        : new RuntimeException(t instanceof ExecutionException ? t.getCause() : t));
+    }
+
+    private void scheduleDrain(UUID walletId, WalletSpends walletSpends, long delayMillis) {
+        if (walletSpends.getDraining().compareAndSet(false, true)) {
+            spendExecutor.schedule(() -> drain(walletId, walletSpends), delayMillis, MILLISECONDS);
+        }
+    }
+
+    private void drain(UUID walletId, WalletSpends walletSpends) {
+        try {
+            Runnable task;
+            while ((task = walletSpends.getTasks().poll()) != null) {
+                task.run();
+            }
+
+            List<Spend> batch = List.empty();
+            Spend spend;
+            while (batch.size() < spendQueueProperties.getMaximumBatchSize() && (spend = walletSpends.getSpends().poll()) != null) {
+                spend.getQueued().close();
+                if (!spend.getResult().isDone()) {
+                    batch = batch.prepend(spend);
+                }
+            }
+
+            batch.reverse().groupBy(Spend::getFeeTarget).values().forEach(spends -> send(walletId, spends));
+        } finally {
+            walletSpends.getDraining().set(false);
+            if (!walletSpends.getSpends().isEmpty() || !walletSpends.getTasks().isEmpty()) {
+                scheduleDrain(walletId, walletSpends, 0L);
+            }
+        }
+    }
+
+    private void send(UUID walletId, List<Spend> spends) {
+
+        val wallet = walletRepository.findWalletById(walletId);
+        if (wallet.isEmpty()) {
+            spends.forEach(spend -> spend.getResult().completeExceptionally(new RuntimeException(String.format("Wallet not found with walletId=%s", walletId))));
+            return;
+        }
+
+        val committed = Try.of(() -> commitBatch(walletId, wallet.get(), spends));
+        if (committed.isFailure()) {
+            // One spend the wallet cannot afford must not fail the rest of the batch, so they are retried on their own
+            if (spends.size() == 1) {
+                spends.head().getResult().completeExceptionally(committed.getCause());
+            } else {
+                log.warn("Couldn't send batch of {} spends of wallet={}, sending them one by one", spends.size(), walletId, committed.getCause());
+                spends.forEach(spend -> send(walletId, List.of(spend)));
+            }
+            return;
+        }
+
+        // Once committed the transaction pays every spend of the batch, only its broadcast may still have to be retried
+        spends.forEach(spend -> spend.getResult().complete(committed.get()));
+        broadcast(walletId, committed.get(), spends.size(), Tracing.span("broadcast", spends.flatMap(Spend::getTraces)));
+    }
+
+    // Selecting, signing and committing happen in one hold of the wallet lock, so nothing else spends the selected coins
+    // in between. The stages are timed from the coin selector: the lock is held from its first call and the selection
+    // is done when its last call returns.
+    private Transaction commitBatch(UUID walletId, Wallet wallet, List<Spend> spends) throws Exception {
+
+        val traces = spends.flatMap(Spend::getTraces);
+        val transaction = new Transaction(networkParameters());
+        spends.forEach(spend -> transaction.addOutput(spend.getAmount(), spend.getAddress()));
+
+        val sendRequest = SendRequest.forTx(transaction);
+        sendRequest.feePerKb = feeEstimator.estimateFeePerKb(spends.head().getFeeTarget());
+
+        val startNanos = System.nanoTime();
+        val selectionStartNanos = new AtomicLong();
+        val selectionEndNanos = new AtomicLong();
+        if (!traces.isEmpty()) {
+            sendRequest.coinSelector = (target, candidates) -> {
+                selectionStartNanos.compareAndSet(0, System.nanoTime());
+                val selection = wallet.getCoinSelector().select(target, candidates);
+                selectionEndNanos.set(System.nanoTime());
+                return selection;
+            };
+        }
+
+        wallet.sendCoinsOffline(sendRequest);
+
+        if (!traces.isEmpty() && selectionStartNanos.get() != 0) {
+            val endNanos = System.nanoTime();
+            Tracing.record("wallet-lock", traces, startNanos, selectionStartNanos.get());
+            Tracing.record("coin-selection", traces, selectionStartNanos.get(), selectionEndNanos.get());
+            Tracing.record("signing-and-commit", traces, selectionEndNanos.get(), endNanos);
+        }
+        Tracing.awaitSave(walletId, traces);
+
+        return sendRequest.tx;
+    }
+
+    // Retried while the wallet is here and still waits for the transaction, until the chain runs again
+    private void broadcast(UUID walletId, Transaction transaction, int spends, Span broadcasting) {
+        Try.run(() -> chainEngine.broadcastTransaction(transaction).future().addListener(() -> {
+            broadcasting.close();
+            log.info("Transaction of wallet={} paying {} spends broadcast successfully", walletId, spends);
+        }, directExecutor())).onFailure(t -> {
+            if (spendExecutor.isShutdown()) {
+                return;
+            }
+            log.warn("Couldn't broadcast transaction={} of wallet={}, retrying in {} ms: {}", transaction.getHashAsString(), walletId, spendQueueProperties.getBroadcastRetryMillis(), t.getMessage());
+            spendExecutor.schedule(() -> {
+                if (walletRepository.findWalletById(walletId).exists(wallet -> wallet.getTransaction(transaction.getHash()) != null
+                        && transaction.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.PENDING)) {
+                    broadcast(walletId, transaction, spends, broadcasting);
+                }
+            }, spendQueueProperties.getBroadcastRetryMillis(), MILLISECONDS);
+        });
+    }
+
+    @Value
+    private static class Spend {
+
+        Address address;
+
+        Coin amount;
+
+        FeeTarget feeTarget;
+
+        CompletableFuture<Transaction> result;
+
+        List<Trace> traces;
+
+        Span queued;
+    }
+
+    @Value
+    private static class WalletSpends {
+
+        Queue<Spend> spends = new ConcurrentLinkedQueue<>();
+
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        AtomicBoolean draining = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,23 @@
+package bitcoin.transaction;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "spend-queue")
+public class SpendQueueProperties {
+
+    Long batchWindowMillis = 50L;
+
+    Integer maximumBatchSize = 50;
+
+    Long timeoutMillis = 60000L;
+
+    // A committed transaction that could not be broadcast is tried again after this long
+    Long broadcastRetryMillis = 10000L;
+
+}
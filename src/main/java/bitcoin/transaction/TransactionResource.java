@@ -1,22 +1,24 @@
 package bitcoin.transaction;
 
+import bitcoin.config.AddressCache;
+import bitcoin.history.StoredTransaction;
+import bitcoin.transaction.dto.BumpFeeDto;
 import bitcoin.transaction.dto.CreateTransactionDto;
+import bitcoin.transaction.dto.RawTransactionsDto;
+import bitcoin.transaction.dto.StreamedTransactionsDto;
 import bitcoin.transaction.dto.TransactionDto;
-import bitcoin.transaction.dto.TransactionDto.TransactionInputDto;
-import bitcoin.transaction.dto.TransactionDto.TransactionOutputDto;
-import bitcoin.transaction.dto.TransactionsDto;
+import io.vavr.Tuple2;
 import io.vavr.collection.List;
+import io.vavr.control.Try;
 import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.val;
-import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutPoint;
 import org.bitcoinj.core.TransactionOutput;
-import org.bitcoinj.script.Script;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -25,14 +27,20 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.UUID;
 
 import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.fee.FeeTarget.NEXT_BLOCK;
+import static bitcoin.fee.FeeTarget.SIX_BLOCKS;
 import static io.vavr.API.Option;
+import static io.vavr.API.Tuple;
 import static lombok.AccessLevel.PRIVATE;
-import static org.bitcoinj.core.Address.fromBase58;
 import static org.bitcoinj.core.Utils.HEX;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN_VALUE;
 
 @RestController
 @AllArgsConstructor
@@ -42,24 +50,48 @@ public class TransactionResource {
 
     TransactionService transactionService;
 
+    FeeBumpService feeBumpService;
+
+    AddressCache addressCache;
+
     @GetMapping
-    public TransactionsDto findTransactionsOfWallet(@PathVariable("walletId") UUID walletId) {
-        return new TransactionsDto(transactionService.findTransactionsOfWallet(walletId).map(this::transactionToDto));
+    public StreamedTransactionsDto findTransactionsOfWallet(@PathVariable("walletId") UUID walletId) {
+        return StreamedTransactionsDto.of(transactionService.findTransactionsOfWallet(walletId).map(this::storedTransactionWithFee));
     }
 
     @GetMapping(path = "/recent")
-    public TransactionsDto findRecentTransactionsOfWallet(@PathVariable("walletId") UUID walletId, @RequestParam(name = "numberOfTransactions", required = false) Integer numberOfTransactions) {
-        return new TransactionsDto(transactionService.findRecentTransactionsOfWallet(walletId, Option(numberOfTransactions).getOrElse(10)).map(this::transactionToDto));
+    public StreamedTransactionsDto findRecentTransactionsOfWallet(@PathVariable("walletId") UUID walletId, @RequestParam(name = "numberOfTransactions", required = false) Integer numberOfTransactions) {
+        return StreamedTransactionsDto.of(transactionService.findRecentTransactionsOfWallet(walletId, Option(numberOfTransactions).getOrElse(10)).toList().map(this::transactionWithFee));
     }
 
     @GetMapping(path = "/pending")
-    public TransactionsDto findPendingTransactionsOfWallet(@PathVariable("walletId") UUID walletId) {
-        return new TransactionsDto(transactionService.findPendingTransactionsOfWallet(walletId).map(this::transactionToDto));
+    public StreamedTransactionsDto findPendingTransactionsOfWallet(@PathVariable("walletId") UUID walletId) {
+        return StreamedTransactionsDto.of(transactionService.findPendingTransactionsOfWallet(walletId).toList().map(this::transactionWithFee));
+    }
+
+    @GetMapping(path = "/mempool")
+    public StreamedTransactionsDto findMempoolTransactionsOfWallet(@PathVariable("walletId") UUID walletId) {
+        return StreamedTransactionsDto.of(transactionService.findMempoolTransactionsOfWallet(walletId).map(mempoolTransaction -> Tuple(mempoolTransaction.getTransaction(), mempoolTransaction.getFee())));
     }
 
     @GetMapping(path = "/address/{address}")
-    public TransactionsDto findTransactionsOfWalletUsingAddress(@PathVariable("walletId") UUID walletId, @PathVariable("address") String address) {
-        return new TransactionsDto(transactionService.findTransactionsOfWalletUsingAddress(walletId, Address.fromBase58(networkParameters(), address)).map(this::transactionToDto));
+    public StreamedTransactionsDto findTransactionsOfWalletUsingAddress(@PathVariable("walletId") UUID walletId, @PathVariable("address") String address) {
+        return StreamedTransactionsDto.of(transactionService.findTransactionsOfWalletUsingAddress(walletId, addressCache.fromBase58(address)).map(this::storedTransactionWithFee));
+    }
+
+    @GetMapping(path = "/history/height")
+    public StreamedTransactionsDto findTransactionsOfWalletByHeight(@PathVariable("walletId") UUID walletId, @RequestParam(name = "from", required = false) Integer fromHeight, @RequestParam(name = "to", required = false) Integer toHeight) {
+        return StreamedTransactionsDto.of(transactionService.findTransactionsOfWalletByHeight(walletId, Option(fromHeight).getOrElse(-1), Option(toHeight).getOrElse(Integer.MAX_VALUE)).map(this::storedTransactionWithFee));
+    }
+
+    @GetMapping(path = "/history/time")
+    public StreamedTransactionsDto findTransactionsOfWalletByUpdateTime(@PathVariable("walletId") UUID walletId, @RequestParam(name = "from", required = false) Long fromTime, @RequestParam(name = "to", required = false) Long toTime) {
+        return StreamedTransactionsDto.of(transactionService.findTransactionsOfWalletByUpdateTime(walletId, Option(fromTime).getOrElse(0L), Option(toTime).getOrElse(Long.MAX_VALUE)).map(this::storedTransactionWithFee));
+    }
+
+    @GetMapping(path = "/history/amount")
+    public StreamedTransactionsDto findTransactionsOfWalletByAmount(@PathVariable("walletId") UUID walletId, @RequestParam(name = "from", required = false) Long fromAmount, @RequestParam(name = "to", required = false) Long toAmount) {
+        return StreamedTransactionsDto.of(transactionService.findTransactionsOfWalletByAmount(walletId, Option(fromAmount).getOrElse(Long.MIN_VALUE), Option(toAmount).getOrElse(Long.MAX_VALUE)).map(this::storedTransactionWithFee));
     }
 
     @GetMapping(path = "/{transactionId}")
@@ -69,12 +101,12 @@ public class TransactionResource {
 
     @PutMapping(path = "/send")
     public TransactionDto sendFundsToAddress(@PathVariable("walletId") UUID walletId, @RequestBody CreateTransactionDto createTransactionDto) {
-        return transactionToDto(transactionService.sendFundsToAddress(walletId, Address.fromBase58(networkParameters(), createTransactionDto.getAddress()), createTransactionDto.getAmount()));
+        return transactionToDto(transactionService.sendFundsToAddress(walletId, addressCache.fromBase58(createTransactionDto.getAddress()), createTransactionDto.getAmount(), Option(createTransactionDto.getFeeTarget()).getOrElse(SIX_BLOCKS)));
     }
 
     @PutMapping(path = "/create")
     public TransactionDto createTransaction(@PathVariable("walletId") UUID walletId, @RequestBody CreateTransactionDto createTransactionDto) {
-        return transactionToDto(transactionService.createTransaction(walletId, Address.fromBase58(networkParameters(), createTransactionDto.getAddress()), createTransactionDto.getAmount()));
+        return transactionToDto(transactionService.createTransaction(walletId, addressCache.fromBase58(createTransactionDto.getAddress()), createTransactionDto.getAmount(), Option(createTransactionDto.getFeeTarget()).getOrElse(SIX_BLOCKS)));
     }
 
     @PutMapping(path = "/broadcast")
@@ -82,22 +114,90 @@ public class TransactionResource {
         return transactionToDto(transactionService.broadcastTransaction(walletId, transactionDtoToModel(transactionDto)));
     }
 
+    @PutMapping(path = "/{transactionId}/bump")
+    public TransactionDto bumpFeeOfTransaction(@PathVariable("walletId") UUID walletId, @PathVariable("transactionId") String txHash, @RequestBody(required = false) BumpFeeDto bumpFeeDto) {
+        val bumpFee = Option(bumpFeeDto);
+        return transactionToDto(feeBumpService.bumpFee(walletId, Sha256Hash.wrap(txHash), bumpFee.flatMap(dto -> Option(dto.getMethod())), bumpFee.flatMap(dto -> Option(dto.getFeeTarget())).getOrElse(NEXT_BLOCK)));
+    }
+
+    @GetMapping(path = "/{transactionId}/raw", produces = APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] findRawTransactionOfWalletByHash(@PathVariable("walletId") UUID walletId, @PathVariable("transactionId") String txHash) {
+        return transactionService.findTransactionOfWalletByHash(walletId, Sha256Hash.wrap(txHash)).unsafeBitcoinSerialize();
+    }
+
+    @GetMapping(path = "/{transactionId}/hex", produces = TEXT_PLAIN_VALUE)
+    public String findHexTransactionOfWalletByHash(@PathVariable("walletId") UUID walletId, @PathVariable("transactionId") String txHash) {
+        return HEX.encode(transactionService.findTransactionOfWalletByHash(walletId, Sha256Hash.wrap(txHash)).unsafeBitcoinSerialize());
+    }
+
+    @PutMapping(path = "/broadcast/raw", consumes = APPLICATION_OCTET_STREAM_VALUE, produces = APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] broadcastRawTransaction(@PathVariable("walletId") UUID walletId, @RequestBody byte[] rawTransaction) {
+        return transactionService.broadcastRawTransactions(walletId, List.of(rawToTransaction(rawTransaction, 0))).head().unsafeBitcoinSerialize();
+    }
+
+    @PutMapping(path = "/broadcast/raw/bulk", consumes = APPLICATION_OCTET_STREAM_VALUE, produces = APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] broadcastRawTransactions(@PathVariable("walletId") UUID walletId, @RequestBody byte[] rawTransactions) {
+        return transactionsToRaw(transactionService.broadcastRawTransactions(walletId, rawToTransactions(rawTransactions)));
+    }
+
+    @PutMapping(path = "/broadcast/hex", consumes = TEXT_PLAIN_VALUE, produces = TEXT_PLAIN_VALUE)
+    public String broadcastHexTransaction(@PathVariable("walletId") UUID walletId, @RequestBody String hexTransaction) {
+        return HEX.encode(transactionService.broadcastRawTransactions(walletId, List.of(rawToTransaction(HEX.decode(hexTransaction.trim()), 0))).head().unsafeBitcoinSerialize());
+    }
+
+    @PutMapping(path = "/broadcast/hex/bulk", consumes = APPLICATION_JSON_VALUE)
+    public RawTransactionsDto broadcastHexTransactions(@PathVariable("walletId") UUID walletId, @RequestBody RawTransactionsDto rawTransactionsDto) {
+        return new RawTransactionsDto(transactionService.broadcastRawTransactions(walletId, rawTransactionsDto.getTransactions().map(HEX::decode).map(rawTransaction -> rawToTransaction(rawTransaction, 0)))
+                .map(Transaction::unsafeBitcoinSerialize).map(HEX::encode));
+    }
+
     private TransactionDto transactionToDto(Transaction transaction) {
-        return new TransactionDto(
-                transaction.getHashAsString(),
-                transaction.getLockTime(),
-                List.ofAll(transaction.getInputs()).map(transactionInput -> new TransactionInputDto(String.valueOf(transactionInput.getOutpoint().getHash()), (int) transactionInput.getOutpoint().getIndex(), HEX.encode(transactionInput.getScriptSig().getProgram()))),
-                List.ofAll(transaction.getOutputs()).map(transactionOutput -> new TransactionOutputDto(new Script(transactionOutput.getScriptBytes()).getToAddress(networkParameters()).toBase58(), transactionOutput.getValue().value)),
-                (int) transaction.getVersion(),
-                Option(transaction.getFee()).map(Coin::longValue).getOrNull()
-        );
+        return transactionToDto(transaction, Option(transaction.getFee()).map(Coin::longValue).getOrNull());
+    }
+
+    private Tuple2<Transaction, Long> transactionWithFee(Transaction transaction) {
+        return Tuple(transaction, Option(transaction.getFee()).map(Coin::longValue).getOrNull());
+    }
+
+    // Transactions read back from the history are not connected to the wallet, so their fee comes from the history record
+    private Tuple2<Transaction, Long> storedTransactionWithFee(StoredTransaction storedTransaction) {
+        return Tuple(storedTransaction.getTransaction(), storedTransaction.getFee());
+    }
+
+    private TransactionDto transactionToDto(Transaction transaction, Long fee) {
+        return TransactionDto.of(transaction, fee);
     }
 
     private Transaction transactionDtoToModel(TransactionDto transactionDto) {
         val transaction = new Transaction(networkParameters());
         transactionDto.getInputs().forEach(transactionInputDto -> transaction.addInput(new TransactionInput(networkParameters(), null, Option(transactionInputDto.getScriptSig()).map(HEX::decode).getOrElse(() -> new byte[]{}), new TransactionOutPoint(networkParameters(), transactionInputDto.getVout(), Sha256Hash.wrap(transactionInputDto.getTxHash())))));
-        transactionDto.getOutputs().forEach(transactionOutputDto -> transaction.addOutput(new TransactionOutput(networkParameters(), null, Coin.valueOf(transactionOutputDto.getAmount()), fromBase58(networkParameters(), transactionOutputDto.getAddress()))));
+        transactionDto.getOutputs().forEach(transactionOutputDto -> transaction.addOutput(new TransactionOutput(networkParameters(), null, Coin.valueOf(transactionOutputDto.getAmount()), addressCache.fromBase58(transactionOutputDto.getAddress()))));
 
         return transaction;
     }
+
+    private Transaction rawToTransaction(byte[] rawTransactions, int offset) {
+        return Try.of(() -> new Transaction(networkParameters(), rawTransactions, offset))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Couldn't parse raw transaction at offset=%s", offset), t));
+    }
+
+    // Serialized transactions carry their own length, so a bulk payload is just the transactions written back to back
+    private List<Transaction> rawToTransactions(byte[] rawTransactions) {
+        val transactions = new ArrayList<Transaction>();
+        int offset = 0;
+        while (offset < rawTransactions.length) {
+            val transaction = rawToTransaction(rawTransactions, offset);
+            transactions.add(transaction);
+            offset += transaction.getMessageSize();
+        }
+
+        return List.ofAll(transactions);
+    }
+
+    private byte[] transactionsToRaw(List<Transaction> transactions) {
+        val rawTransactions = new ByteArrayOutputStream(transactions.map(Transaction::getMessageSize).sum().intValue());
+        transactions.forEach(transaction -> Try.run(() -> transaction.bitcoinSerialize(rawTransactions)).get());
+
+        return rawTransactions.toByteArray();
+    }
 }
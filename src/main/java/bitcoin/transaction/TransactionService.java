@@ -1,8 +1,18 @@
 package bitcoin.transaction;
 
+import bitcoin.chain.ChainEngine;
+import bitcoin.chain.MempoolTracker;
+import bitcoin.chain.MempoolTransaction;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.history.StoredTransaction;
+import bitcoin.history.TransactionHistoryStore;
+import bitcoin.trace.Span;
+import bitcoin.trace.Tracing;
 import bitcoin.wallet.WalletRepository;
-import io.vavr.collection.HashSet;
+import io.vavr.collection.LinkedHashSet;
 import io.vavr.collection.List;
+import io.vavr.collection.Seq;
 import io.vavr.collection.Set;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
@@ -12,6 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
@@ -25,8 +36,9 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.config.UnitConfig.SATOSHI_TO_BITCOIN_CONVERSION;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.math.MathContext.DECIMAL128;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static lombok.AccessLevel.PRIVATE;
 
 @Component
@@ -35,80 +47,172 @@ import static lombok.AccessLevel.PRIVATE;
 @Slf4j
 public class TransactionService {
 
-    private static final BigDecimal SATOSHI_TO_BITCOIN_CONVERSION = BigDecimal.valueOf(100000000L);
-
     WalletRepository walletRepository;
 
-    Set<Transaction> findTransactionsOfWallet(UUID walletId) {
+    FeeEstimator feeEstimator;
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+    SpendQueue spendQueue;
+
+    TransactionHistoryStore transactionHistoryStore;
+
+    ChainEngine chainEngine;
 
-        return HashSet.ofAll(wallet.getTransactions(false));
+    TransactionVerifier transactionVerifier;
+
+    MempoolTracker mempoolTracker;
+
+    Seq<StoredTransaction> findTransactionsOfWallet(UUID walletId) {
+        return transactionHistoryStore.findTransactions(walletId);
     }
 
     Transaction findTransactionOfWalletByHash(UUID walletId, Sha256Hash txHash) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val walletSnapshot = walletRepository.findWalletSnapshotById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
 
-        return wallet.getTransaction(txHash);
+        return walletSnapshot.getTransactionByHash().get(txHash).getOrElseThrow(() -> new RuntimeException(String.format("Transaction not found with txHash=%s in walletId=%s", txHash, walletId)));
     }
 
     Set<Transaction> findPendingTransactionsOfWallet(UUID walletId) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val walletSnapshot = walletRepository.findWalletSnapshotById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
 
-        return HashSet.ofAll(wallet.getPendingTransactions());
+        return walletSnapshot.getPendingTransactions();
     }
 
-    Set<Transaction> findRecentTransactionsOfWallet(UUID walletId, int numberOfTransactions) {
+    // Unconfirmed transactions touching the wallet as the peers announced them, not only those the wallet made
+    List<MempoolTransaction> findMempoolTransactionsOfWallet(UUID walletId) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
 
-        return HashSet.ofAll(wallet.getRecentTransactions(numberOfTransactions, false));
+        // Confidences of the tracked transactions live in the context of the chain engine
+        Context.propagate(chainEngine.context());
+        return mempoolTracker.findTransactionsOfWallet(walletId);
     }
 
-    Set<Transaction> findTransactionsOfWalletUsingAddress(UUID walletId, Address address) {
+    Set<Transaction> findRecentTransactionsOfWallet(UUID walletId, int numberOfTransactions) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val recentTransactions = walletRepository.findRecentTransactionsById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        if (numberOfTransactions <= recentTransactions.getCapacity()) {
+            return LinkedHashSet.ofAll(recentTransactions.latest(numberOfTransactions));
+        }
 
-        return HashSet.ofAll(wallet.getTransactions(false)).filter(transactionContainsAddress(address));
+        // Asking for more than what is kept is rare enough to afford reading that many records from the history
+        return LinkedHashSet.ofAll(transactionHistoryStore.findTransactions(walletId).take(numberOfTransactions).map(StoredTransaction::getTransaction));
     }
 
-    Transaction sendFundsToAddress(UUID walletId, Address address, BigDecimal amount) {
+    Seq<StoredTransaction> findTransactionsOfWalletUsingAddress(UUID walletId, Address address) {
+        return transactionHistoryStore.findTransactionsByAddress(walletId, address);
+    }
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+    Seq<StoredTransaction> findTransactionsOfWalletByHeight(UUID walletId, int fromHeight, int toHeight) {
+        return transactionHistoryStore.findTransactionsByHeight(walletId, fromHeight, toHeight);
+    }
 
-        val sendResponse = Try.of(() -> wallet.sendCoins(SendRequest.to(address, Coin.valueOf(amount.multiply(SATOSHI_TO_BITCOIN_CONVERSION, DECIMAL128).longValueExact()))))
-                .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+    Seq<StoredTransaction> findTransactionsOfWalletByUpdateTime(UUID walletId, long fromTime, long toTime) {
+        return transactionHistoryStore.findTransactionsByUpdateTime(walletId, fromTime, toTime);
+    }
 
-        sendResponse.broadcastComplete.addListener(() -> log.info("Transaction of wallet={} for address={} and amount={} broadcast successfully", walletId, address, amount), newSingleThreadExecutor());
+    Seq<StoredTransaction> findTransactionsOfWalletByAmount(UUID walletId, long fromAmount, long toAmount) {
+        return transactionHistoryStore.findTransactionsByValue(walletId, fromAmount, toAmount);
+    }
 
-        return sendResponse.tx;
+    Transaction sendFundsToAddress(UUID walletId, Address address, BigDecimal amount, FeeTarget feeTarget) {
+
+        walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        return spendQueue.pay(walletId, address, toCoin(amount), feeTarget);
     }
 
-    Transaction createTransaction(UUID walletId, Address address, BigDecimal amount) {
+    Transaction createTransaction(UUID walletId, Address address, BigDecimal amount, FeeTarget feeTarget) {
 
         val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val sendRequest = sendRequest(address, amount, feeTarget);
 
-        return Try.of(() -> wallet.createSend(address, Coin.valueOf(amount.multiply(SATOSHI_TO_BITCOIN_CONVERSION, DECIMAL128).longValueExact())))
-                .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        try (Span completing = Tracing.span("complete")) {
+            return Try.run(() -> wallet.completeTx(sendRequest)).map(ignored -> sendRequest.tx)
+                    .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        }
     }
 
     Transaction broadcastTransaction(UUID walletId, Transaction transaction) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
-
-        val sendResponse = Try.of(() -> wallet.sendCoins(SendRequest.forTx(transaction))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val sendRequest = SendRequest.forTx(transaction);
+
+        // Completed like sendCoins would, but the scripts are checked before the wallet commits to the transaction. The
+        // transaction may have been created a while ago, so its inputs are checked to still be unspent on the queue.
+        spendQueue.spend(walletId, wallet -> {
+            try (Span ignored = Tracing.span("complete")) {
+                wallet.completeTx(sendRequest);
+            }
+            try (Span ignored = Tracing.span("verify-scripts")) {
+                TransactionVerifier.verifyUnspent(List.of(sendRequest.tx), TransactionVerifier.spentOutputsOf(wallet));
+                transactionVerifier.verify(List.of(sendRequest.tx), TransactionVerifier.spentOutputsOf(wallet));
+            }
+            try (Span ignored = Tracing.span("wallet-commit")) {
+                wallet.commitTx(sendRequest.tx);
+            }
+            return sendRequest.tx;
+        });
+        Tracing.awaitSave(walletId, Tracing.current());
+
+        val broadcasting = Tracing.span("broadcast");
+        chainEngine.broadcastTransaction(sendRequest.tx).future().addListener(() -> {
+            broadcasting.close();
+            log.info("Transaction of wallet={} for transaction={} broadcast successfully", walletId, sendRequest.tx);
+        }, directExecutor());
+
+        return sendRequest.tx;
+    }
 
-        sendResponse.broadcastComplete.addListener(() -> log.info("Transaction of wallet={} for transaction={} broadcast successfully", walletId, transaction), newSingleThreadExecutor());
+    List<Transaction> broadcastRawTransactions(UUID walletId, List<Transaction> transactions) {
+
+        walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+
+        // Raw transactions are already complete and signed, so they skip SendRequest completion and go straight to the wallet and the peers.
+        // The whole batch is checked before the first commit, then each transaction is broadcast once the wallet took it, so a commit
+        // failing part way leaves none of the transactions before it committed and unsent. A transaction the wallet holds already is
+        // submitted again: it is not committed twice, only broadcast again.
+        spendQueue.spend(walletId, wallet -> {
+            try (Span ignored = Tracing.span("verify-scripts")) {
+                transactions.forEach(Transaction::verify);
+                TransactionVerifier.verifyUnspent(transactions, TransactionVerifier.spentOutputsOf(wallet));
+                transactionVerifier.verify(transactions, TransactionVerifier.spentOutputsOf(wallet));
+            }
+            transactions.zipWithIndex().forEach(transactionAndIndex -> {
+                try (Span ignored = Tracing.span("wallet-commit")) {
+                    Try.of(() -> wallet.maybeCommitTx(transactionAndIndex._1))
+                            .getOrElseThrow(t -> new RuntimeException(String.format("Couldn't commit raw transaction with txHash=%s of wallet=%s, the %s transactions before it were broadcast",
+                                    transactionAndIndex._1.getHashAsString(), walletId, transactionAndIndex._2), t));
+                }
+                broadcastRawTransaction(walletId, transactionAndIndex._1);
+            });
+            return transactions;
+        });
+        Tracing.awaitSave(walletId, Tracing.current());
+
+        return transactions;
+    }
 
-        return sendResponse.tx;
+    private void broadcastRawTransaction(UUID walletId, Transaction transaction) {
+        val broadcasting = Tracing.span("broadcast");
+        chainEngine.broadcastTransaction(transaction).future().addListener(() -> {
+            broadcasting.close();
+            log.info("Raw transaction of wallet={} with txHash={} broadcast successfully", walletId, transaction.getHashAsString());
+        }, directExecutor());
     }
 
-    private Predicate<Transaction> transactionContainsAddress(Address address) {
-        return transaction -> List.ofAll(transaction.getInputs()).map(TransactionInput::getConnectedOutput).flatMap(Option::of).map(TransactionOutput::getScriptPubKey).map(scriptPubKey -> scriptPubKey.getToAddress(networkParameters())).exists(address::equals)
-                || List.ofAll(transaction.getOutputs()).map(TransactionOutput::getScriptPubKey).map(scriptPubKey -> scriptPubKey.getToAddress(networkParameters())).exists(address::equals);
+    private SendRequest sendRequest(Address address, BigDecimal amount, FeeTarget feeTarget) {
+
+        val sendRequest = SendRequest.to(address, toCoin(amount));
+        sendRequest.feePerKb = feeEstimator.estimateFeePerKb(feeTarget);
+
+        return sendRequest;
+    }
 
+    private Coin toCoin(BigDecimal amount) {
+        return Coin.valueOf(amount.multiply(SATOSHI_TO_BITCOIN_CONVERSION, DECIMAL128).longValueExact());
     }
 
 
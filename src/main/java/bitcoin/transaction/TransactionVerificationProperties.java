@@ -0,0 +1,18 @@
+package bitcoin.transaction;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "transaction-verification")
+public class TransactionVerificationProperties {
+
+    Integer parallelism = Runtime.getRuntime().availableProcessors();
+
+    Long cacheSize = 100000L;
+
+}
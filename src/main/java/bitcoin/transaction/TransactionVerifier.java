@@ -0,0 +1,140 @@
+package bitcoin.transaction;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.vavr.Tuple2;
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.DefaultRiskAnalysis;
+import org.bitcoinj.wallet.RiskAnalysis;
+import org.bitcoinj.wallet.Wallet;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static io.vavr.API.Tuple;
+import static lombok.AccessLevel.PRIVATE;
+
+// Runs the scriptSig of every input against the output it spends, the inputs of a whole batch in parallel on a fork-join
+// pool. A legacy txid commits to the scriptSig and to the spent outpoint, so an input that passed once is remembered
+// by (txid, input index) and a transaction seen again, after a reorg or from a second peer, is not checked twice.
+// Inputs spending outputs the caller does not know, which for an SPV wallet are most inputs paying it, are skipped.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(TransactionVerificationProperties.class)
+public class TransactionVerifier {
+
+    ForkJoinPool verificationPool;
+
+    Cache<Tuple2<Sha256Hash, Integer>, Boolean> verifiedInputs;
+
+    AtomicLong verifiedInputCount = new AtomicLong();
+
+    AtomicLong cachedInputCount = new AtomicLong();
+
+    public TransactionVerifier(TransactionVerificationProperties transactionVerificationProperties) {
+        this.verificationPool = new ForkJoinPool(transactionVerificationProperties.getParallelism());
+        this.verifiedInputs = CacheBuilder.newBuilder().maximumSize(transactionVerificationProperties.getCacheSize()).build();
+    }
+
+    // Spent outputs are looked up on the calling thread, which may hold the wallet lock, the pool only runs scripts.
+    // Transactions of the batch may spend each other.
+    public void verify(List<Transaction> transactions, Function<TransactionOutPoint, Option<TransactionOutput>> spentOutputs) {
+
+        val transactionByHash = transactions.toMap(transaction -> Tuple(transaction.getHash(), transaction));
+        val inputs = transactions.flatMap(transaction -> List.range(0, transaction.getInputs().size()).map(index -> Tuple(transaction, index)));
+        val uncachedInputs = inputs.filter(input -> verifiedInputs.getIfPresent(Tuple(input._1.getHash(), input._2)) == null);
+        cachedInputCount.addAndGet(inputs.size() - uncachedInputs.size());
+
+        List<Tuple3<Transaction, Integer, Script>> checks = uncachedInputs.flatMap(input -> {
+            val outPoint = input._1.getInput(input._2).getOutpoint();
+            return transactionByHash.get(outPoint.getHash()).flatMap(parent -> Try.of(() -> parent.getOutput(outPoint.getIndex())).toOption())
+                    .orElse(() -> spentOutputs.apply(outPoint))
+                    .map(spentOutput -> Tuple(input._1, input._2, spentOutput.getScriptPubKey()));
+        });
+        if (checks.isEmpty()) {
+            return;
+        }
+
+        Try.of(() -> verificationPool.submit(() -> checks.toJavaParallelStream().forEach(this::verifyInput)).get())
+                .getOrElseThrow(t -> new RuntimeException(t instanceof ExecutionException ? t.getCause() : t));
+    }
+
+    // Pending transactions from the peers go through the default rules first, then their scripts
+    public RiskAnalysis.Analyzer riskAnalyzer() {
+        return (wallet, transaction, dependencies) -> () -> {
+            val result = DefaultRiskAnalysis.FACTORY.create(wallet, transaction, dependencies).analyze();
+            if (result != RiskAnalysis.Result.OK) {
+                return result;
+            }
+
+            val batch = List.of(transaction).appendAll(Option.of(dependencies).map(List::ofAll).getOrElse(List.empty()));
+            return Try.run(() -> verify(batch, spentOutputsOf(wallet)))
+                    .onFailure(t -> log.warn("Dropping pending tx={} with an invalid input script", transaction.getHashAsString(), t))
+                    .map(ignored -> RiskAnalysis.Result.OK)
+                    .getOrElse(RiskAnalysis.Result.NON_STANDARD);
+        };
+    }
+
+    // Checked again right before a commit, an output may have been spent since the transaction was made. An output spent
+    // by the very transaction checked is not, that transaction was committed already and is only submitted again.
+    public static void verifyUnspent(List<Transaction> transactions, Function<TransactionOutPoint, Option<TransactionOutput>> spentOutputs) {
+
+        val outPoints = transactions.flatMap(Transaction::getInputs).map(TransactionInput::getOutpoint);
+
+        transactions.flatMap(transaction -> List.ofAll(transaction.getInputs()).map(input -> Tuple(transaction, input.getOutpoint())))
+                .find(transactionAndOutPoint -> spentOutputs.apply(transactionAndOutPoint._2).exists(spentOutput -> !spentOutput.isAvailableForSpending()
+                        && Option.of(spentOutput.getSpentBy()).forAll(spentBy -> !spentBy.getParentTransaction().getHash().equals(transactionAndOutPoint._1.getHash()))))
+                .map(Tuple2::_2)
+                .orElse(() -> outPoints.groupBy(Function.identity()).find(sameOutPoints -> sameOutPoints._2.size() > 1).map(Tuple2::_1))
+                .forEach(outPoint -> {
+                    throw new RuntimeException(String.format("Output=%s is already spent", outPoint));
+                });
+    }
+
+    // Outputs of the transactions the wallet knows about, spent or not
+    public static Function<TransactionOutPoint, Option<TransactionOutput>> spentOutputsOf(Wallet wallet) {
+        return outPoint -> Option.of(wallet.getTransaction(outPoint.getHash())).flatMap(parent -> Try.of(() -> parent.getOutput(outPoint.getIndex())).toOption());
+    }
+
+    long getVerifiedInputCount() {
+        return verifiedInputCount.get();
+    }
+
+    long getCachedInputCount() {
+        return cachedInputCount.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        verificationPool.shutdown();
+    }
+
+    private void verifyInput(Tuple3<Transaction, Integer, Script> check) {
+
+        val transaction = check._1;
+        val index = check._2;
+        Try.run(() -> transaction.getInput(index).getScriptSig().correctlySpends(transaction, index, check._3, Script.ALL_VERIFY_FLAGS))
+                .getOrElseThrow(t -> new RuntimeException(String.format("Input=%s of transaction=%s does not spend its output", index, transaction.getHashAsString()), t));
+
+        verifiedInputs.put(Tuple(transaction.getHash(), index), true);
+        verifiedInputCount.incrementAndGet();
+    }
+}
@@ -0,0 +1,13 @@
+package bitcoin.transaction.dto;
+
+import bitcoin.fee.FeeTarget;
+import bitcoin.transaction.FeeBumpMethod;
+import lombok.Value;
+
+@Value
+public class BumpFeeDto {
+
+    FeeBumpMethod method;
+
+    FeeTarget feeTarget;
+}
@@ -1,5 +1,6 @@
 package bitcoin.transaction.dto;
 
+import bitcoin.fee.FeeTarget;
 import lombok.Value;
 
 import java.math.BigDecimal;
@@ -10,4 +11,6 @@ public class CreateTransactionDto {
     String address;
 
     BigDecimal amount;
+
+    FeeTarget feeTarget;
 }
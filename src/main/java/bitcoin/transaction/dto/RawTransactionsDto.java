@@ -0,0 +1,10 @@
+package bitcoin.transaction.dto;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+@Value
+public class RawTransactionsDto {
+
+    List<String> transactions;
+}
@@ -0,0 +1,21 @@
+package bitcoin.transaction.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.vavr.Tuple2;
+import io.vavr.collection.Seq;
+import lombok.Value;
+import org.bitcoinj.core.Transaction;
+
+// The json of a TransactionsDto, written by TransactionsSerializer straight from the transactions and their fees instead
+// of from a tree of dtos built for every transaction of the listing
+@Value
+@JsonSerialize(using = TransactionsSerializer.class)
+public class StreamedTransactionsDto {
+
+    Seq<Tuple2<Transaction, Long>> transactions;
+
+    // A TransactionsDto is a set, transactions listed twice are written once
+    public static StreamedTransactionsDto of(Seq<Tuple2<Transaction, Long>> transactions) {
+        return new StreamedTransactionsDto(transactions.distinct());
+    }
+}
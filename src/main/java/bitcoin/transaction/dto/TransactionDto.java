@@ -2,6 +2,11 @@ package bitcoin.transaction.dto;
 
 import io.vavr.collection.List;
 import lombok.Value;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.Script;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.bitcoinj.core.Utils.HEX;
 
 @Value
 public class TransactionDto {
@@ -18,6 +23,17 @@ public class TransactionDto {
 
     Long fee;
 
+    public static TransactionDto of(Transaction transaction, Long fee) {
+        return new TransactionDto(
+                transaction.getHashAsString(),
+                transaction.getLockTime(),
+                List.ofAll(transaction.getInputs()).map(transactionInput -> new TransactionInputDto(String.valueOf(transactionInput.getOutpoint().getHash()), (int) transactionInput.getOutpoint().getIndex(), HEX.encode(transactionInput.getScriptSig().getProgram()))),
+                List.ofAll(transaction.getOutputs()).map(transactionOutput -> new TransactionOutputDto(new Script(transactionOutput.getScriptBytes()).getToAddress(networkParameters()).toBase58(), transactionOutput.getValue().value)),
+                (int) transaction.getVersion(),
+                fee
+        );
+    }
+
     @Value
     public static class TransactionInputDto {
 
@@ -0,0 +1,182 @@
+package bitcoin.transaction.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.script.Script;
+
+import java.io.IOException;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static lombok.AccessLevel.PRIVATE;
+
+// Writes what Jackson writes for a TransactionDto with non empty inclusion: same properties in the same order, empty
+// scriptSigs and lists and null fees left out. Hashes, scripts and addresses are encoded into buffers reused for the
+// whole listing, and the addresses of P2PKH and P2SH outputs are read from their script bytes.
+class TransactionsSerializer extends StdSerializer<StreamedTransactionsDto> {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final char[] BASE58_ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+
+    private static final int HASH160_SIZE = 20;
+
+    private static final int ADDRESS_SIZE = 1 + HASH160_SIZE + 4;
+
+    public TransactionsSerializer() {
+        super(StreamedTransactionsDto.class);
+    }
+
+    @Override
+    public void serialize(StreamedTransactionsDto transactionsDto, JsonGenerator generator, SerializerProvider provider) throws IOException {
+
+        val encoder = new Encoder();
+        generator.writeStartObject();
+        if (!transactionsDto.getTransactions().isEmpty()) {
+            generator.writeArrayFieldStart("transactions");
+            for (val transaction : transactionsDto.getTransactions()) {
+                writeTransaction(generator, encoder, transaction._1, transaction._2);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeTransaction(JsonGenerator generator, Encoder encoder, Transaction transaction, Long fee) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeFieldName("txHash");
+        encoder.writeHex(generator, transaction.getHash().getBytes());
+        generator.writeNumberField("lockTime", transaction.getLockTime());
+
+        if (!transaction.getInputs().isEmpty()) {
+            generator.writeArrayFieldStart("inputs");
+            for (val input : transaction.getInputs()) {
+                writeInput(generator, encoder, input);
+            }
+            generator.writeEndArray();
+        }
+
+        if (!transaction.getOutputs().isEmpty()) {
+            generator.writeArrayFieldStart("outputs");
+            for (val output : transaction.getOutputs()) {
+                writeOutput(generator, encoder, output);
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeNumberField("version", (int) transaction.getVersion());
+        if (fee != null) {
+            generator.writeNumberField("fee", fee);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeInput(JsonGenerator generator, Encoder encoder, TransactionInput input) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeFieldName("txHash");
+        encoder.writeHex(generator, input.getOutpoint().getHash().getBytes());
+        generator.writeNumberField("vout", (int) input.getOutpoint().getIndex());
+
+        val scriptSig = input.getScriptBytes();
+        if (scriptSig.length > 0) {
+            generator.writeFieldName("scriptSig");
+            encoder.writeHex(generator, scriptSig);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeOutput(JsonGenerator generator, Encoder encoder, TransactionOutput output) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeFieldName("address");
+        val script = output.getScriptBytes();
+        if (isPayToPubKeyHash(script)) {
+            encoder.writeAddress(generator, networkParameters().getAddressHeader(), script, 3);
+        } else if (isPayToScriptHash(script)) {
+            encoder.writeAddress(generator, networkParameters().getP2SHHeader(), script, 2);
+        } else {
+            // Anything else fails or succeeds the way TransactionDto.of does
+            generator.writeString(new Script(script).getToAddress(networkParameters()).toBase58());
+        }
+        generator.writeNumberField("amount", output.getValue().value);
+        generator.writeEndObject();
+    }
+
+    // OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG
+    private static boolean isPayToPubKeyHash(byte[] script) {
+        return script.length == 25 && (script[0] & 0xff) == 0x76 && (script[1] & 0xff) == 0xa9 && script[2] == HASH160_SIZE && (script[23] & 0xff) == 0x88 && (script[24] & 0xff) == 0xac;
+    }
+
+    // OP_HASH160 <20 bytes> OP_EQUAL
+    private static boolean isPayToScriptHash(byte[] script) {
+        return script.length == 23 && (script[0] & 0xff) == 0xa9 && script[1] == HASH160_SIZE && (script[22] & 0xff) == 0x87;
+    }
+
+    // Buffers of one listing, grown to its longest script and reused for every string written
+    @FieldDefaults(level = PRIVATE)
+    private static class Encoder {
+
+        char[] chars = new char[2 * Sha256Hash.LENGTH];
+
+        final byte[] address = new byte[ADDRESS_SIZE];
+
+        void writeHex(JsonGenerator generator, byte[] bytes) throws IOException {
+
+            if (chars.length < 2 * bytes.length) {
+                chars = new char[2 * bytes.length];
+            }
+            for (int index = 0; index < bytes.length; index++) {
+                chars[2 * index] = HEX_DIGITS[(bytes[index] >> 4) & 0xf];
+                chars[2 * index + 1] = HEX_DIGITS[bytes[index] & 0xf];
+            }
+            generator.writeString(chars, 0, 2 * bytes.length);
+        }
+
+        // Version byte, hash160 and the first 4 bytes of its double SHA-256, in base58
+        void writeAddress(JsonGenerator generator, int version, byte[] script, int hash160Offset) throws IOException {
+
+            address[0] = (byte) version;
+            System.arraycopy(script, hash160Offset, address, 1, HASH160_SIZE);
+            System.arraycopy(Sha256Hash.hashTwice(address, 0, 1 + HASH160_SIZE), 0, address, 1 + HASH160_SIZE, 4);
+
+            int zeros = 0;
+            while (zeros < address.length && address[zeros] == 0) {
+                ++zeros;
+            }
+
+            // Repeated division by 58 of the address as a big endian number, which is consumed in place
+            int outputStart = chars.length;
+            for (int inputStart = zeros; inputStart < address.length; ) {
+                chars[--outputStart] = BASE58_ALPHABET[divideBy58(inputStart)];
+                if (address[inputStart] == 0) {
+                    ++inputStart;
+                }
+            }
+            while (outputStart < chars.length && chars[outputStart] == BASE58_ALPHABET[0]) {
+                ++outputStart;
+            }
+            while (--zeros >= 0) {
+                chars[--outputStart] = BASE58_ALPHABET[0];
+            }
+            generator.writeString(chars, outputStart, chars.length - outputStart);
+        }
+
+        private int divideBy58(int firstDigit) {
+            int remainder = 0;
+            for (int index = firstDigit; index < address.length; index++) {
+                int temp = remainder * 256 + (address[index] & 0xff);
+                address[index] = (byte) (temp / 58);
+                remainder = temp % 58;
+            }
+            return remainder;
+        }
+    }
+}
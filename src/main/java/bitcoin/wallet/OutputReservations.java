@@ -0,0 +1,42 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.Stream;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.wallet.CoinSelector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// Outputs promised to a transaction the wallet has not committed yet, like a psbt waiting for its signatures. Every
+// wallet selects its coins through coinSelector, so no spend picks a reserved output until it is released or expires.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class OutputReservations {
+
+    Map<TransactionOutPoint, Long> reservedUntilByOutPoint = new ConcurrentHashMap<>();
+
+    public void reserve(Iterable<TransactionOutPoint> outPoints, long reservedUntilMillis) {
+        val now = System.currentTimeMillis();
+        reservedUntilByOutPoint.values().removeIf(reservedUntil -> reservedUntil < now);
+        outPoints.forEach(outPoint -> reservedUntilByOutPoint.put(outPoint, reservedUntilMillis));
+    }
+
+    public void release(Iterable<TransactionOutPoint> outPoints) {
+        outPoints.forEach(reservedUntilByOutPoint::remove);
+    }
+
+    public boolean isReserved(TransactionOutPoint outPoint) {
+        val reservedUntil = reservedUntilByOutPoint.get(outPoint);
+        return reservedUntil != null && reservedUntil >= System.currentTimeMillis();
+    }
+
+    // Leaves the reserved outputs out of the candidates, the selector given picks among the rest
+    public CoinSelector coinSelector(CoinSelector coinSelector) {
+        return (target, candidates) -> coinSelector.select(target, Stream.ofAll(candidates).filter(candidate -> !isReserved(candidate.getOutPointFor())).toJavaList());
+    }
+}
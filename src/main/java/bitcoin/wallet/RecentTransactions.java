@@ -0,0 +1,70 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.Iterator;
+import io.vavr.collection.List;
+import lombok.Value;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static lombok.AccessLevel.PRIVATE;
+
+// The most recently updated transactions of a wallet, newest first, kept up to date from wallet events so that reading
+// the latest N costs O(N) instead of sorting the whole wallet. Same order as Transaction.SORT_TX_BY_UPDATE_TIME.
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+public class RecentTransactions {
+
+    private static final Comparator<RecencyKey> NEWEST_FIRST = Comparator.comparingLong(RecencyKey::getUpdateTime).reversed().thenComparing(RecencyKey::getTxHash);
+
+    int capacity;
+
+    NavigableMap<RecencyKey, Transaction> transactionByRecency = new ConcurrentSkipListMap<>(NEWEST_FIRST);
+
+    Map<Sha256Hash, RecencyKey> recencyKeyByHash = new ConcurrentHashMap<>();
+
+    public RecentTransactions(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public List<Transaction> latest(int numberOfTransactions) {
+        return Iterator.ofAll(transactionByRecency.values().iterator()).take(numberOfTransactions).toList();
+    }
+
+    synchronized void update(Transaction transaction) {
+
+        val recencyKey = new RecencyKey(transaction.getUpdateTime().getTime(), transaction.getHash());
+        val previous = recencyKeyByHash.put(transaction.getHash(), recencyKey);
+        if (recencyKey.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            transactionByRecency.remove(previous);
+        }
+        transactionByRecency.put(recencyKey, transaction);
+
+        // Only the oldest entry can fall out, and it comes back as soon as the wallet updates it again
+        if (recencyKeyByHash.size() > capacity) {
+            val evicted = transactionByRecency.pollLastEntry();
+            recencyKeyByHash.remove(evicted.getKey().getTxHash());
+        }
+    }
+
+    @Value
+    private static class RecencyKey {
+
+        long updateTime;
+
+        Sha256Hash txHash;
+    }
+}
@@ -0,0 +1,16 @@
+package bitcoin.wallet;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "recent-transactions")
+public class RecentTransactionsProperties {
+
+    Integer capacity = 1000;
+
+}
@@ -0,0 +1,12 @@
+package bitcoin.wallet;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+// A new wallet was saved and started on this node
+@Value
+public class WalletCreatedEvent {
+
+    UUID walletId;
+}
@@ -0,0 +1,38 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.List;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static lombok.AccessLevel.PRIVATE;
+
+// The listeners of every wallet share a bounded set of threads instead of each wallet starting its own. A wallet always
+// gets the same thread, so its listeners still run one at a time in the order the wallet called them, and a released
+// wallet leaves no thread behind.
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@EnableConfigurationProperties(WalletListenerProperties.class)
+public class WalletListenerExecutors {
+
+    List<ExecutorService> executors;
+
+    public WalletListenerExecutors(WalletListenerProperties walletListenerProperties) {
+        this.executors = List.fill(walletListenerProperties.getThreads(), () -> newSingleThreadExecutor());
+    }
+
+    public Executor executorOf(UUID walletId) {
+        return executors.get(Math.floorMod(walletId.hashCode(), executors.size()));
+    }
+
+    @PreDestroy
+    void close() {
+        executors.forEach(ExecutorService::shutdown);
+    }
+}
@@ -0,0 +1,18 @@
+package bitcoin.wallet;
+
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Data
+@FieldDefaults(level = PRIVATE)
+@ConfigurationProperties(prefix = "wallet-provisioning")
+public class WalletProvisioningProperties {
+
+    Integer threads = Runtime.getRuntime().availableProcessors();
+
+    Long timeoutMillis = 3600000L;
+
+}
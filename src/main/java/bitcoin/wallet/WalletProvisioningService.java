@@ -0,0 +1,94 @@
+package bitcoin.wallet;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static lombok.AccessLevel.PRIVATE;
+
+// Seed derivation (PBKDF2 over the mnemonic) dominates the creation of a wallet, so wallets are created in parallel
+// on a bounded pool shared by every provisioning request
+@Component
+@FieldDefaults(level = PRIVATE, makeFinal = true)
+@Slf4j
+@EnableConfigurationProperties(WalletProvisioningProperties.class)
+public class WalletProvisioningService {
+
+    WalletService walletService;
+
+    WalletProvisioningProperties walletProvisioningProperties;
+
+    ExecutorService provisioningExecutor;
+
+    public WalletProvisioningService(WalletService walletService, WalletProvisioningProperties walletProvisioningProperties) {
+        this.walletService = walletService;
+        this.walletProvisioningProperties = walletProvisioningProperties;
+        this.provisioningExecutor = newFixedThreadPool(walletProvisioningProperties.getThreads());
+    }
+
+    long timeoutMillis() {
+        return walletProvisioningProperties.getTimeoutMillis();
+    }
+
+    // Every wallet is handed to the consumer as soon as it is running, the returned future completes after the last one.
+    // Once a wallet cannot be handed over no more are created, and the ones created but never handed over are
+    // discarded since nobody got their mnemonics. The future then fails with how many wallets were delivered.
+    CompletableFuture<Void> provisionWallets(int count, String passphrase, int wordNumber, Consumer<Tuple2<UUID, List<String>>> onProvisioned) {
+
+        log.info("Provisioning {} wallets", count);
+
+        val failure = new AtomicReference<Throwable>();
+        val delivered = new AtomicInteger();
+
+        return CompletableFuture.allOf(List.range(0, count)
+                .map(index -> CompletableFuture.runAsync(() -> {
+                    if (failure.get() == null) {
+                        provisionWallet(passphrase, wordNumber, onProvisioned, failure, delivered);
+                    }
+                }, provisioningExecutor))
+                .toJavaList()
+                .toArray(new CompletableFuture[0]))
+                .thenRun(() -> Option.of(failure.get()).forEach(t -> {
+                    throw new RuntimeException(String.format("Provisioning stopped after %s of %s wallets were delivered", delivered.get(), count), t);
+                }));
+    }
+
+    @PreDestroy
+    void close() {
+        provisioningExecutor.shutdown();
+    }
+
+    private void provisionWallet(String passphrase, int wordNumber, Consumer<Tuple2<UUID, List<String>>> onProvisioned, AtomicReference<Throwable> failure, AtomicInteger delivered) {
+
+        val provisioned = Try.of(() -> walletService.provisionWallet(passphrase, wordNumber)).onFailure(t -> failure.compareAndSet(null, t));
+        provisioned.forEach(wallet -> Try.run(() -> onProvisioned.accept(wallet))
+                .onSuccess(ignored -> delivered.incrementAndGet())
+                .onFailure(t -> {
+                    failure.compareAndSet(null, t);
+                    discard(wallet._1);
+                }));
+    }
+
+    private void discard(UUID walletId) {
+        log.warn("Discarding wallet={}, it could not be delivered", walletId);
+        Try.run(() -> {
+            walletService.releaseWallet(walletId);
+            walletService.deleteWalletFile(walletId);
+        }).onFailure(t -> log.warn("Couldn't discard wallet={}", walletId, t));
+    }
+}
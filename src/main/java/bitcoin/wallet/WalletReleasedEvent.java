@@ -0,0 +1,15 @@
+package bitcoin.wallet;
+
+import lombok.Value;
+import org.bitcoinj.wallet.Wallet;
+
+import java.util.UUID;
+
+// An unlocked wallet stopped running on this node and was handed somewhere else, what is kept for it here can go
+@Value
+public class WalletReleasedEvent {
+
+    UUID walletId;
+
+    Wallet wallet;
+}
@@ -1,5 +1,6 @@
 package bitcoin.wallet;
 
+import io.vavr.collection.List;
 import io.vavr.control.Option;
 import lombok.experimental.FieldDefaults;
 import org.bitcoinj.wallet.Wallet;
@@ -17,11 +18,41 @@ public class WalletRepository {
 
     Map<UUID, Wallet> walletById = new ConcurrentHashMap<>();
 
+    Map<UUID, WalletSnapshot> walletSnapshotById = new ConcurrentHashMap<>();
+
+    Map<UUID, RecentTransactions> recentTransactionsById = new ConcurrentHashMap<>();
+
     public Option<Wallet> findWalletById(UUID walletId) {
         return Option.of(walletById.get(walletId));
     }
 
+    public List<UUID> findAllWalletIds() {
+        return List.ofAll(walletById.keySet());
+    }
+
+    public Option<WalletSnapshot> findWalletSnapshotById(UUID walletId) {
+        return Option.of(walletSnapshotById.get(walletId));
+    }
+
+    public Option<RecentTransactions> findRecentTransactionsById(UUID walletId) {
+        return Option.of(recentTransactionsById.get(walletId));
+    }
+
+    void saveRecentTransactions(UUID walletId, RecentTransactions recentTransactions) {
+        recentTransactionsById.put(walletId, recentTransactions);
+    }
+
+    void saveSnapshot(UUID walletId, WalletSnapshot walletSnapshot) {
+        walletSnapshotById.put(walletId, walletSnapshot);
+    }
+
     void save(UUID walletId, Wallet wallet) {
         walletById.put(walletId, wallet);
     }
+
+    void remove(UUID walletId) {
+        walletById.remove(walletId);
+        walletSnapshotById.remove(walletId);
+        recentTransactionsById.remove(walletId);
+    }
 }
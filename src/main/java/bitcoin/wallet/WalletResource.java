@@ -3,11 +3,16 @@ package bitcoin.wallet;
 import bitcoin.wallet.dto.AddressDto;
 import bitcoin.wallet.dto.BalanceDto;
 import bitcoin.wallet.dto.CreateWalletDto;
+import bitcoin.wallet.dto.CreateWatchingWalletDto;
 import bitcoin.wallet.dto.MnemonicsDto;
+import bitcoin.wallet.dto.ProvisionWalletsDto;
+import bitcoin.wallet.dto.ProvisionedWalletDto;
 import bitcoin.wallet.dto.WalletDto;
 import io.vavr.collection.List;
+import io.vavr.control.Try;
 import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.val;
 import org.bitcoinj.wallet.Wallet;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,14 +22,18 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.validation.Valid;
 import java.util.UUID;
+import java.util.function.Function;
 
 import static io.vavr.API.Option;
 import static lombok.AccessLevel.PRIVATE;
 import static org.bitcoinj.wallet.Wallet.BalanceType.AVAILABLE;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_PLAIN;
 
 @RestController
 @AllArgsConstructor
@@ -32,8 +41,13 @@ import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 @RequestMapping(path = "/wallet", produces = APPLICATION_JSON_VALUE)
 public class WalletResource {
 
+    // One JSON document per line, written as each wallet is ready
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     WalletService walletService;
 
+    WalletProvisioningService walletProvisioningService;
+
     @GetMapping(path = "/mnemonic")
     public MnemonicsDto generateWalletMnemonics(@RequestParam(value = "wordNumber", required = false) Integer wordNumber) {
         return new MnemonicsDto(walletService.mnemonics(Option(wordNumber).getOrElse(12)).mkString(" "));
@@ -44,6 +58,30 @@ public class WalletResource {
         return new WalletDto(walletService.createWalletWithMnemonics(createWalletDto.getPassword(), List.of(createWalletDto.getMnemonics().split(" ")))._1);
     }
 
+    @PostMapping(path = "/watching", consumes = APPLICATION_JSON_VALUE)
+    public WalletDto createWatchingWallet(@Valid @RequestBody CreateWatchingWalletDto createWatchingWalletDto) {
+        return new WalletDto(walletService.createWatchingWallet(createWatchingWalletDto.getXpub().trim(), createWatchingWalletDto.getCreationTime(),
+                Option(createWatchingWalletDto.getMasterFingerprint()), Option(createWatchingWalletDto.getDerivationPath()))._1);
+    }
+
+    @PostMapping(path = "/bulk", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter provisionWallets(@Valid @RequestBody ProvisionWalletsDto provisionWalletsDto) {
+
+        val emitter = new ResponseBodyEmitter(walletProvisioningService.timeoutMillis());
+
+        walletProvisioningService.provisionWallets(provisionWalletsDto.getCount(), provisionWalletsDto.getPassword(), Option(provisionWalletsDto.getWordNumber()).getOrElse(12),
+                provisioned -> sendLine(emitter, new ProvisionedWalletDto(provisioned._1, provisioned._2.mkString(" "))))
+                .whenComplete((ignored, t) -> {
+                    if (t == null) {
+                        emitter.complete();
+                    } else {
+                        emitter.completeWithError(t);
+                    }
+                });
+
+        return emitter;
+    }
+
     @GetMapping(path = "/{walletId}")
     public WalletDto findWalletById(@PathVariable("walletId") UUID walletId) {
         return new WalletDto(walletService.findWalletById(walletId)._1);
@@ -63,4 +101,14 @@ public class WalletResource {
     public AddressDto deriveReceiveAddress(@PathVariable("walletId") UUID walletId) {
         return new AddressDto(walletService.deriveReceiveAddress(walletId).toBase58());
     }
+
+    // Wallets finish on several threads, the document and its line break have to go out together
+    private static void sendLine(ResponseBodyEmitter emitter, Object document) {
+        synchronized (emitter) {
+            Try.run(() -> {
+                emitter.send(document, APPLICATION_JSON);
+                emitter.send("\n", TEXT_PLAIN);
+            }).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+        }
+    }
 }
@@ -0,0 +1,12 @@
+package bitcoin.wallet;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+// The file of an unlocked wallet was written with its latest transactions, keys and last seen block
+@Value
+public class WalletSavedEvent {
+
+    UUID walletId;
+}
@@ -1,88 +1,236 @@
 package bitcoin.wallet;
 
-import com.google.common.util.concurrent.Service;
+import bitcoin.chain.ChainEngine;
+import bitcoin.chain.ConfirmationEvent;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.history.TransactionHistoryStore;
+import bitcoin.log.EventLog;
+import bitcoin.trace.Span;
+import bitcoin.trace.Tracing;
+import bitcoin.transaction.ReplaceByFeeSigner;
+import bitcoin.transaction.TransactionVerifier;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
 import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.bitcoinj.core.Address;
-import org.bitcoinj.core.TransactionConfidence;
-import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.MnemonicCode;
-import org.bitcoinj.kits.WalletAppKit;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.DefaultCoinSelector;
 import org.bitcoinj.wallet.DeterministicSeed;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletFiles;
+import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
 import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.File;
 import java.math.BigDecimal;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.Files;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
 import static bitcoin.config.NetworkConfig.networkParameters;
+import static bitcoin.config.StorageConfig.walletsDirectory;
+import static bitcoin.config.UnitConfig.SATOSHI_TO_BITCOIN_CONVERSION;
 import static io.vavr.API.Tuple;
 import static java.math.RoundingMode.HALF_EVEN;
 import static java.util.UUID.nameUUIDFromBytes;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static lombok.AccessLevel.PRIVATE;
 
 @Component
 @AllArgsConstructor
 @FieldDefaults(level = PRIVATE, makeFinal = true)
 @Slf4j
+@EnableConfigurationProperties({WatchingWalletProperties.class, RecentTransactionsProperties.class})
 public class WalletService {
 
     private static final int MIN_WORDS = 3;
 
     private static final int MIN_BITS = 4;
 
-    private static final Path PROJECT_BASE = Paths.get("development/wallets");
+    private static final long AUTOSAVE_DELAY_SECONDS = 5;
 
-    private static final BigDecimal SATOSHI_TO_BITCOIN_CONVERSION = BigDecimal.valueOf(100000000L);
+    private static final String WALLET_FILE_EXTENSION = ".wallet";
 
     WalletRepository walletRepository;
 
+    FeeEstimator feeEstimator;
+
+    TransactionHistoryStore transactionHistoryStore;
+
+    ChainEngine chainEngine;
+
+    WatchingWalletProperties watchingWalletProperties;
+
+    RecentTransactionsProperties recentTransactionsProperties;
+
+    TransactionVerifier transactionVerifier;
+
+    OutputReservations outputReservations;
+
+    WalletListenerExecutors walletListenerExecutors;
+
+    ApplicationEventPublisher applicationEventPublisher;
+
+    Set<UUID> walletIdsWithSnapshotScheduled = ConcurrentHashMap.newKeySet();
+
+    ExecutorService snapshotExecutor = newSingleThreadExecutor();
+
+    // Seeding is the expensive part of a SecureRandom, one instance serves every mnemonic
+    SecureRandom secureRandom = new SecureRandom();
+
     List<String> mnemonics(int wordNumber) {
-        return Try.of(() -> MnemonicCode.INSTANCE.toMnemonic(getEntropy(new SecureRandom(), wordNumberToNumberOfBits(wordNumber)))).map(List::ofAll)
+        return Try.of(() -> MnemonicCode.INSTANCE.toMnemonic(getEntropy(secureRandom, wordNumberToNumberOfBits(wordNumber)))).map(List::ofAll)
                 .getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
     }
 
+    // Mnemonics may belong to a wallet used before, without a birthday it is scanned from where the shared chain starts
     Tuple2<UUID, Wallet> createWalletWithMnemonics(String passphrase, List<String> mnemonic) {
+        return createWallet(passphrase, mnemonic, 0L);
+    }
 
-        val walletId = nameUUIDFromBytes(mnemonic.mkString().getBytes());
-        val walletAppKit = walletAppKit(walletId)
-                .restoreWalletFromSeed(new DeterministicSeed(mnemonic.toJavaList(), null, passphrase, 0L));
+    // A wallet made from new mnemonics has no history, so the chain does not need to go back for it
+    Tuple2<UUID, List<String>> provisionWallet(String passphrase, int wordNumber) {
+
+        val mnemonic = mnemonics(wordNumber);
+
+        return Tuple(createWallet(passphrase, mnemonic, Utils.currentTimeSeconds())._1, mnemonic);
+    }
+
+    // Keys are held elsewhere, the wallet only derives public keys and looks ahead less than a spending wallet, which
+    // keeps its share of the shared bloom filter small. An xpub may have been used long before it is imported, so
+    // its creation time is required rather than guessed. The origin of the xpub is kept for the signers of its psbts.
+    Tuple2<UUID, Wallet> createWatchingWallet(String xpub, long creationTimeSeconds, Option<String> masterFingerprint, Option<String> derivationPath) {
+
+        if (creationTimeSeconds <= 0) {
+            throw new RuntimeException(String.format("Invalid creationTime=%s of the extended public key, it must be its creation time in seconds", creationTimeSeconds));
+        }
 
-        walletAppKit.startAsync()
-                .addListener(listenerForWallet(walletId, () -> {
-                    walletRepository.save(walletId, walletAppKit.wallet());
-                    walletAppKit.wallet().addTransactionConfidenceEventListener(newSingleThreadExecutor(), transactionConfidenceEventListener(walletId));
-                    walletAppKit.wallet().addCoinsReceivedEventListener(newSingleThreadExecutor(), walletCoinsReceivedEventListener(walletId));
-                }), newSingleThreadExecutor());
+        val walletId = nameUUIDFromBytes(xpub.getBytes());
 
-        return Tuple(walletId, walletAppKit.wallet());
+        return walletRepository.findWalletById(walletId).map(wallet -> Tuple(walletId, wallet)).getOrElse(() -> {
+            Context.propagate(chainEngine.context());
+            val watchingKey = Try.of(() -> DeterministicKey.deserializeB58(xpub, networkParameters()))
+                    .getOrElseThrow(t -> new RuntimeException(String.format("Invalid extended public key=%s", xpub), t));
+            val keyOrigin = WatchingKeyOrigin.of(watchingKey, masterFingerprint, derivationPath);
+            val wallet = Wallet.fromWatchingKeyB58(networkParameters(), xpub, creationTimeSeconds);
+            wallet.setKeyChainGroupLookaheadSize(watchingWalletProperties.getLookaheadSize());
+            keyOrigin.saveTo(wallet);
+            Try.run(() -> wallet.saveToFile(walletFile(walletId))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+
+            startWallet(walletId, wallet);
+            applicationEventPublisher.publishEvent(new WalletCreatedEvent(walletId));
+
+            return Tuple(walletId, wallet);
+        });
     }
 
     Tuple2<UUID, Wallet> unlockWallet(UUID walletId) {
 
         verifyThereIsAWalletToUnlock(walletId);
 
-        val walletAppKit = walletAppKit(walletId);
+        return walletRepository.findWalletById(walletId).map(wallet -> Tuple(walletId, wallet)).getOrElse(() -> {
+            Context.propagate(chainEngine.context());
+            val wallet = Try.of(() -> Wallet.loadFromFile(walletFile(walletId))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+
+            startWallet(walletId, wallet);
+
+            return Tuple(walletId, wallet);
+        });
+    }
+
+    // Wallets saved on this node, unlocked or not
+    public List<UUID> findWalletFileIds() {
+        return Option.of(walletsDirectory().toFile().list()).map(Arrays::asList).map(List::ofAll).getOrElse(List.empty())
+                .filter(fileName -> fileName.endsWith(WALLET_FILE_EXTENSION))
+                .flatMap(fileName -> Try.of(() -> UUID.fromString(fileName.substring(0, fileName.length() - WALLET_FILE_EXTENSION.length()))));
+    }
+
+    // An unlocked wallet stops once its last changes are saved, the file stays until the wallet is taken somewhere else
+    public byte[] releaseWallet(UUID walletId) {
+
+        walletRepository.findWalletById(walletId).forEach(wallet -> {
+            log.info("Releasing wallet={}", walletId);
+            chainEngine.removeWallet(walletId);
+            wallet.shutdownAutosaveAndWait();
+            walletRepository.remove(walletId);
+            transactionHistoryStore.unfollow(walletId);
+            applicationEventPublisher.publishEvent(new WalletReleasedEvent(walletId, wallet));
+        });
+
+        return readWalletFile(walletId);
+    }
+
+    // A transaction takes the time of its block when it is first mined, the other updates come with coins received or sent
+    @EventListener
+    public void onConfirmation(ConfirmationEvent event) {
+        if (event.isReached() && event.getConfirmations() == 1) {
+            walletRepository.findWalletById(event.getWalletId())
+                    .flatMap(wallet -> Option.of(wallet.getTransaction(Sha256Hash.wrap(event.getTxHash()))))
+                    .forEach(tx -> walletRepository.findRecentTransactionsById(event.getWalletId()).forEach(recentTransactions -> recentTransactions.update(tx)));
+        }
+    }
+
+    public byte[] readWalletFile(UUID walletId) {
+        return Try.of(() -> Files.readAllBytes(walletFile(walletId).toPath())).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+    }
+
+    public void saveWalletFile(UUID walletId, byte[] walletFile) {
+        Try.run(() -> Files.write(walletFile(walletId).toPath(), walletFile)).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+    }
+
+    public void deleteWalletFile(UUID walletId) {
+        Try.run(() -> Files.deleteIfExists(walletFile(walletId).toPath())).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+    }
+
+    // A wallet file already here is never overwritten, it may hold changes the one sent does not have. It is here because
+    // an earlier hand over went through and its response was lost, so the adoption succeeds again and the sender drops
+    // its copy. A locked wallet only needs its file.
+    public void adoptWallet(UUID walletId, byte[] walletFile, boolean unlock) {
+
+        if (walletFile(walletId).exists()) {
+            log.info("Wallet={} was adopted already, its file here is kept", walletId);
+        } else {
+            saveWalletFile(walletId, walletFile);
+        }
+        if (unlock) {
+            unlockWallet(walletId);
+        }
+    }
 
-        walletAppKit.startAsync()
-                .addListener(listenerForWallet(walletId, () -> {
-                    walletRepository.save(walletId, walletAppKit.wallet());
-                    walletAppKit.wallet().addTransactionConfidenceEventListener(newSingleThreadExecutor(), transactionConfidenceEventListener(walletId));
-                    walletAppKit.wallet().addCoinsReceivedEventListener(newSingleThreadExecutor(), walletCoinsReceivedEventListener(walletId));
-                }), newSingleThreadExecutor());
+    // A released wallet that could not be handed over runs here again from its file
+    public void resumeWallet(UUID walletId) {
+        unlockWallet(walletId);
+    }
 
-        return Tuple(walletId, walletAppKit.wallet());
+    // A wallet a standby kept loaded, its file is already saved here
+    public void startReplicatedWallet(UUID walletId, Wallet wallet) {
+        if (walletRepository.findWalletById(walletId).isEmpty()) {
+            startWallet(walletId, wallet);
+        }
     }
 
     Tuple2<UUID, Wallet> findWalletById(UUID walletId) {
@@ -91,9 +239,9 @@ public class WalletService {
 
     BigDecimal findBalanceOfWalletById(UUID walletId, Wallet.BalanceType balanceType) {
 
-        val wallet = walletRepository.findWalletById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
+        val walletSnapshot = walletRepository.findWalletSnapshotById(walletId).getOrElseThrow(() -> new RuntimeException(String.format("Wallet not found with walletId=%s", walletId)));
 
-        return new BigDecimal(wallet.getBalance(balanceType).longValue()).divide(SATOSHI_TO_BITCOIN_CONVERSION, 8, HALF_EVEN);
+        return new BigDecimal(walletSnapshot.getBalance(balanceType).longValue()).divide(SATOSHI_TO_BITCOIN_CONVERSION, 8, HALF_EVEN);
     }
 
     Address deriveReceiveAddress(UUID walletId) {
@@ -103,6 +251,22 @@ public class WalletService {
         return wallet.freshReceiveAddress();
     }
 
+    private Tuple2<UUID, Wallet> createWallet(String passphrase, List<String> mnemonic, long creationTimeSeconds) {
+
+        val walletId = nameUUIDFromBytes(mnemonic.mkString().getBytes());
+
+        return walletRepository.findWalletById(walletId).map(wallet -> Tuple(walletId, wallet)).getOrElse(() -> {
+            Context.propagate(chainEngine.context());
+            val wallet = Wallet.fromSeed(networkParameters(), new DeterministicSeed(mnemonic.toJavaList(), null, passphrase, creationTimeSeconds));
+            Try.run(() -> wallet.saveToFile(walletFile(walletId))).getOrElseThrow((Function<? super Throwable, RuntimeException>) RuntimeException::new);
+
+            startWallet(walletId, wallet);
+            applicationEventPublisher.publishEvent(new WalletCreatedEvent(walletId));
+
+            return Tuple(walletId, wallet);
+        });
+    }
+
     private static int wordNumberToNumberOfBits(int wordNumber) {
         int count = 0;
         while (wordNumber >= MIN_WORDS) {
@@ -118,63 +282,116 @@ public class WalletService {
         return seed;
     }
 
-    private WalletAppKit walletAppKit(UUID walletId) {
+    // All wallets share the chain engine, so a wallet only needs its own file and listeners before joining it
+    private void startWallet(UUID walletId, Wallet wallet) {
 
-        val walletAppKit = new WalletAppKit(networkParameters(), PROJECT_BASE.toFile(), walletId.toString());
-        walletAppKit.setAutoSave(true);
-        walletAppKit.setAutoStop(true);
-        walletAppKit.setBlockingStartup(false);
+        log.info("Starting wallet={}", walletId);
+        wallet.autosaveToFile(walletFile(walletId), AUTOSAVE_DELAY_SECONDS, SECONDS, walletFilesListener(walletId));
+        wallet.setRiskAnalyzer(transactionVerifier.riskAnalyzer());
+        wallet.setCoinSelector(outputReservations.coinSelector(new DefaultCoinSelector()));
+        if (List.ofAll(wallet.getTransactionSigners()).find(ReplaceByFeeSigner.class::isInstance).isEmpty()) {
+            wallet.addTransactionSigner(new ReplaceByFeeSigner());
+        }
+        applicationEventPublisher.publishEvent(new WalletStartedEvent(walletId, wallet));
+
+        walletRepository.save(walletId, wallet);
+        walletRepository.saveSnapshot(walletId, WalletSnapshot.of(wallet));
+        transactionHistoryStore.follow(walletId, wallet);
+        followRecentTransactions(walletId, wallet);
+        followNewTransactions(walletId, wallet);
+        wallet.addCoinsReceivedEventListener(walletListenerExecutors.executorOf(walletId), walletCoinsReceivedEventListener(walletId));
+        wallet.addCoinsSentEventListener(walletListenerExecutors.executorOf(walletId), feeEstimator);
+        chainEngine.addNewBestBlockListener(feeEstimator);
+
+        chainEngine.addWallet(walletId, wallet);
+        applicationEventPublisher.publishEvent(new WalletSavedEvent(walletId));
+        log.info("Running wallet={}", walletId);
+    }
 
-        return walletAppKit;
+    @PreDestroy
+    public void close() {
+        walletRepository.findAllWalletIds().forEach(walletId -> walletRepository.findWalletById(walletId).forEach(Wallet::shutdownAutosaveAndWait));
+    }
+
+    private static File walletFile(UUID walletId) {
+        return walletsDirectory().resolve(walletId.toString() + WALLET_FILE_EXTENSION).toFile();
     }
 
     private void verifyThereIsAWalletToUnlock(UUID walletId) {
-        if (!PROJECT_BASE.resolve(walletId.toString() + ".wallet").toFile().exists()) {
+        if (!walletFile(walletId).exists()) {
             throw new RuntimeException(String.format("Wallet cannot be unlocked because it does not exists with walletId=%s", walletId));
         }
     }
 
-    private Service.Listener listenerForWallet(UUID walletId, Runnable runnable) {
-        return new Service.Listener() {
-            @Override
-            public void starting() {
-                log.info("Starting wallet={}", walletId);
-            }
+    private void followRecentTransactions(UUID walletId, Wallet wallet) {
 
-            @Override
-            public void running() {
-                log.info("Running wallet={}", walletId);
-                runnable.run();
-            }
+        val recentTransactions = new RecentTransactions(recentTransactionsProperties.getCapacity());
+        // One thread per wallet keeps the updates of a transaction in the order the wallet made them
+        val executor = walletListenerExecutors.executorOf(walletId);
 
-            @Override
-            public void stopping(Service.State from) {
-                log.info("Stopping wallet={}", walletId);
-            }
+        wallet.addCoinsReceivedEventListener(executor, (changedWallet, tx, prevBalance, newBalance) -> recentTransactions.update(tx));
+        wallet.addCoinsSentEventListener(executor, (changedWallet, tx, prevBalance, newBalance) -> recentTransactions.update(tx));
+        wallet.getTransactions(true).forEach(recentTransactions::update);
 
-            @Override
-            public void terminated(Service.State from) {
-                log.info("Terminated wallet={}", walletId);
-            }
+        walletRepository.saveRecentTransactions(walletId, recentTransactions);
+    }
 
-            @Override
-            public void failed(Service.State from, Throwable failure) {
-                log.error("Failed to run wallet={}", walletId, failure);
+    // Transactions are collected as the wallet takes them, before it tells its change listeners
+    private void followNewTransactions(UUID walletId, Wallet wallet) {
+
+        val newTransactions = new ConcurrentLinkedQueue<Transaction>();
+
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> newTransactions.add(tx));
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, (changedWallet, tx, prevBalance, newBalance) -> newTransactions.add(tx));
+        wallet.addChangeEventListener(walletListenerExecutors.executorOf(walletId), walletChangeEventListener(walletId, newTransactions));
+    }
+
+    // Wallet changes come in bursts, a snapshot is only scheduled if there is none waiting to be taken already. A released
+    // wallet has no snapshot left to build on and gets no new one.
+    private WalletChangeEventListener walletChangeEventListener(UUID walletId, Queue<Transaction> newTransactions) {
+        return wallet -> {
+            if (walletIdsWithSnapshotScheduled.add(walletId)) {
+                snapshotExecutor.execute(() -> {
+                    walletIdsWithSnapshotScheduled.remove(walletId);
+                    List<Transaction> added = List.empty();
+                    Transaction transaction;
+                    while ((transaction = newTransactions.poll()) != null) {
+                        added = added.prepend(transaction);
+                    }
+                    val transactions = added;
+                    walletRepository.findWalletSnapshotById(walletId)
+                            .forEach(previous -> walletRepository.saveSnapshot(walletId, WalletSnapshot.of(wallet, previous, transactions)));
+                });
             }
         };
     }
 
-    private TransactionConfidenceEventListener transactionConfidenceEventListener(UUID walletId) {
-        return (wallet, tx) -> {
-            if (tx.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.BUILDING && tx.getConfidence().getDepthInBlocks() < 10) {
-                log.info("Transaction tx={} of wallet={} now has {} confirmations", tx.getHashAsString(), walletId, tx.getConfidence().getDepthInBlocks());
+    // Requests traced while changing the wallet see its save as one of their spans
+    private WalletFiles.Listener walletFilesListener(UUID walletId) {
+        return new WalletFiles.Listener() {
+
+            Span saving;
+
+            @Override
+            public void onBeforeAutoSave(File tempFile) {
+                saving = Tracing.saving(walletId);
+            }
+
+            @Override
+            public void onAfterAutoSave(File newlySavedFile) {
+                saving.close();
+                applicationEventPublisher.publishEvent(new WalletSavedEvent(walletId));
             }
         };
     }
 
     private WalletCoinsReceivedEventListener walletCoinsReceivedEventListener(UUID walletId) {
-        return (wallet, tx, prevBalance, newBalance) -> log.info("Wallet={} has received {} from tx={}", walletId, tx.getValueSentToMe(wallet), tx.getHashAsString());
+        return (wallet, tx, prevBalance, newBalance) -> EventLog.info(log, "coins-received")
+                .field("walletId", walletId)
+                .field("txid", tx.getHash())
+                .field("amount", tx.getValueSentToMe(wallet))
+                .field("balance", newBalance)
+                .write();
     }
 
-
 }
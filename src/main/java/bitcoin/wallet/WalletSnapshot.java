@@ -0,0 +1,60 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import lombok.Value;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+
+import static io.vavr.API.Tuple;
+
+// Immutable view of a wallet taken after each change, so reads never wait on the wallet lock while a spend is being signed
+@Value
+public class WalletSnapshot {
+
+    Map<BalanceType, Coin> balanceByType;
+
+    Map<Sha256Hash, Transaction> transactionByHash;
+
+    Set<Transaction> pendingTransactions;
+
+    static WalletSnapshot of(Wallet wallet) {
+        val transactions = List.ofAll(wallet.getTransactions(false));
+
+        return new WalletSnapshot(
+                balanceByTypeOf(wallet),
+                transactions.toMap(transaction -> Tuple(transaction.getHash(), transaction)),
+                HashSet.ofAll(wallet.getPendingTransactions()));
+    }
+
+    // Transactions never leave a wallet and are updated in place, so only those it received or sent since the previous
+    // snapshot are added to it. When the pools of the wallet hold a transaction that was missed the whole history is read.
+    static WalletSnapshot of(Wallet wallet, WalletSnapshot previous, List<Transaction> newTransactions) {
+
+        val transactionByHash = previous.getTransactionByHash().merge(newTransactions.toMap(transaction -> Tuple(transaction.getHash(), transaction)));
+        if (transactionByHash.size() != List.of(Pool.values()).map(wallet::getPoolSize).sum().intValue()) {
+            return of(wallet);
+        }
+
+        return new WalletSnapshot(balanceByTypeOf(wallet), transactionByHash, HashSet.ofAll(wallet.getPendingTransactions()));
+    }
+
+    public Coin getBalance(BalanceType balanceType) {
+        return balanceByType.get(balanceType).getOrElse(Coin.ZERO);
+    }
+
+    public Set<Transaction> getTransactions() {
+        return transactionByHash.values().toSet();
+    }
+
+    private static Map<BalanceType, Coin> balanceByTypeOf(Wallet wallet) {
+        return List.of(BalanceType.values()).toMap(balanceType -> Tuple(balanceType, wallet.getBalance(balanceType)));
+    }
+}
@@ -0,0 +1,16 @@
+package bitcoin.wallet;
+
+import lombok.Value;
+import org.bitcoinj.wallet.Wallet;
+
+import java.util.UUID;
+
+// A wallet created or unlocked on this node is starting, published before it is found in the repository so its
+// listeners can set it up before anything else uses it
+@Value
+public class WalletStartedEvent {
+
+    UUID walletId;
+
+    Wallet wallet;
+}
@@ -0,0 +1,87 @@
+package bitcoin.wallet;
+
+import com.google.protobuf.ByteString;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import lombok.val;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.wallet.Wallet;
+
+import java.nio.ByteBuffer;
+
+// Where the xpub of a watching wallet sits under its master key: the fingerprint of the master key and the path down
+// to the xpub. An xpub only tells its depth and the fingerprint of its parent, so a signer finding its keys from the
+// master needs this for any xpub deeper than the children of the master. It is kept in a tag of the wallet.
+@Value
+public class WatchingKeyOrigin {
+
+    private static final String TAG = "watching-key-origin";
+
+    int masterFingerprint;
+
+    List<ChildNumber> path;
+
+    // Wallets watching an xpub from before the origin was kept fall back to what the xpub tells
+    public static WatchingKeyOrigin of(Wallet wallet) {
+        return Option.of(wallet.getTag(TAG)).map(WatchingKeyOrigin::parse).getOrElse(() -> of(wallet.getWatchingKey(), Option.none(), Option.none()));
+    }
+
+    // Without an origin given, a master xpub is its own origin and one at depth 1 is a child of the master
+    static WatchingKeyOrigin of(DeterministicKey watchingKey, Option<String> masterFingerprint, Option<String> derivationPath) {
+
+        if (masterFingerprint.isDefined() != derivationPath.isDefined()) {
+            throw new RuntimeException("Extended public key needs both its masterFingerprint and its derivationPath, or neither");
+        }
+
+        if (masterFingerprint.isDefined()) {
+            val path = parsePath(derivationPath.get());
+            if (path.size() != watchingKey.getDepth() || path.lastOption().exists(childNumber -> !childNumber.equals(watchingKey.getChildNumber()))) {
+                throw new RuntimeException(String.format("Invalid derivationPath=%s for an extended public key at depth=%s with child number=%s", derivationPath.get(), watchingKey.getDepth(), watchingKey.getChildNumber()));
+            }
+            val fingerprint = Try.of(() -> (int) Long.parseLong(masterFingerprint.get(), 16)).filter(ignored -> masterFingerprint.get().length() == 8)
+                    .getOrElseThrow(() -> new RuntimeException(String.format("Invalid masterFingerprint=%s, it must be 8 hex digits", masterFingerprint.get())));
+            return new WatchingKeyOrigin(fingerprint, path);
+        }
+
+        switch (watchingKey.getDepth()) {
+            case 0:
+                return new WatchingKeyOrigin(watchingKey.getFingerprint(), List.empty());
+            case 1:
+                return new WatchingKeyOrigin(watchingKey.getParentFingerprint(), List.of(watchingKey.getChildNumber()));
+            default:
+                throw new RuntimeException(String.format("Extended public key at depth=%s needs its masterFingerprint and derivationPath", watchingKey.getDepth()));
+        }
+    }
+
+    // The key chain only knows the path of a key from the xpub down
+    public List<ChildNumber> pathOf(DeterministicKey key, DeterministicKey watchingKey) {
+        return path.appendAll(List.ofAll(key.getPath()).drop(watchingKey.getPath().size()));
+    }
+
+    void saveTo(Wallet wallet) {
+        val value = ByteBuffer.allocate(4 + path.size() * 4).putInt(masterFingerprint);
+        path.forEach(childNumber -> value.putInt(childNumber.i()));
+        wallet.setTag(TAG, ByteString.copyFrom(value.array()));
+    }
+
+    private static WatchingKeyOrigin parse(ByteString tag) {
+        val value = tag.asReadOnlyByteBuffer();
+        return new WatchingKeyOrigin(value.getInt(), List.range(0, value.remaining() / 4).map(ignored -> new ChildNumber(value.getInt())));
+    }
+
+    // Paths as in m/44'/1'/0', hardened children marked with ' or h
+    private static List<ChildNumber> parsePath(String derivationPath) {
+        return List.of(derivationPath.trim().split("/"))
+                .filter(element -> !element.isEmpty() && !element.equalsIgnoreCase("m"))
+                .map(element -> {
+                    val hardened = element.endsWith("'") || element.toLowerCase().endsWith("h");
+                    val index = Try.of(() -> Integer.parseInt(hardened ? element.substring(0, element.length() - 1) : element))
+                            .filter(parsed -> parsed >= 0)
+                            .getOrElseThrow(() -> new RuntimeException(String.format("Invalid derivationPath=%s", derivationPath)));
+                    return new ChildNumber(index, hardened);
+                });
+    }
+}
@@ -0,0 +1,23 @@
+package bitcoin.wallet.dto;
+
+import lombok.Value;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+@Value
+public class CreateWatchingWalletDto {
+
+    @NotNull
+    @Size(min = 1)
+    String xpub;
+
+    @NotNull
+    @Min(1)
+    Long creationTime;
+
+    String masterFingerprint;
+
+    String derivationPath;
+}
@@ -0,0 +1,23 @@
+package bitcoin.wallet.dto;
+
+import lombok.Value;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+@Value
+public class ProvisionWalletsDto {
+
+    @NotNull
+    @Min(1)
+    @Max(10000)
+    Integer count;
+
+    @NotNull
+    @Size(min = 1)
+    String password;
+
+    Integer wordNumber;
+}
@@ -0,0 +1,13 @@
+package bitcoin.wallet.dto;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class ProvisionedWalletDto {
+
+    UUID walletId;
+
+    String mnemonics;
+}
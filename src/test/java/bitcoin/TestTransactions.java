@@ -0,0 +1,34 @@
+package bitcoin;
+
+import lombok.experimental.UtilityClass;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+
+import java.util.Date;
+
+// Unsigned transactions told apart by the index of the outpoint they spend and paying index * 1000 Satoshis
+@UtilityClass
+public class TestTransactions {
+
+    public static Transaction transaction(long index) {
+        val params = TestNet3Params.get();
+        val transaction = new Transaction(params);
+        transaction.addInput(new TransactionInput(params, null, new byte[]{}, new TransactionOutPoint(params, index, Sha256Hash.ZERO_HASH)));
+        transaction.addOutput(Coin.valueOf(index * 1000L), new ECKey().toAddress(params));
+
+        return transaction;
+    }
+
+    public static Transaction transaction(long index, long updateTime) {
+        val transaction = transaction(index);
+        transaction.setUpdateTime(new Date(updateTime));
+
+        return transaction;
+    }
+}
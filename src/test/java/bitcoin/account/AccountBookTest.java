@@ -0,0 +1,103 @@
+package bitcoin.account;
+
+import bitcoin.TestTransactions;
+import bitcoin.config.AddressCache;
+import bitcoin.config.AddressCacheProperties;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.bitcoinj.core.NetworkParameters.MAX_MONEY;
+import static org.bitcoinj.wallet.KeyChain.KeyPurpose.CHANGE;
+import static org.bitcoinj.wallet.KeyChain.KeyPurpose.RECEIVE_FUNDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccountBookTest {
+
+    private final AddressCache addressCache = new AddressCache(new AddressCacheProperties());
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAccountsAreReadBackFromTheWalletFile() throws Exception {
+
+        val wallet = new Wallet(networkParameters());
+        val accountBook = new AccountBook(wallet, addressCache);
+        val first = accountBook.deriveAddress("customer-1", RECEIVE_FUNDS);
+        val change = accountBook.deriveAddress("customer-1", CHANGE);
+        val second = accountBook.deriveAddress("customer-2", RECEIVE_FUNDS);
+
+        val walletFile = temporaryFolder.newFile("accounts.wallet");
+        wallet.saveToFile(walletFile);
+        val reloadedWallet = Wallet.loadFromFile(walletFile);
+        val reloaded = new AccountBook(reloadedWallet, addressCache);
+        assertEquals(List.of("customer-1", "customer-2"), reloaded.findAccountIds());
+        assertEquals(List.of(first, change), reloaded.findAddresses("customer-1"));
+        assertEquals(List.of(second), reloaded.findAddresses("customer-2"));
+        assertFalse(reloaded.contains("customer-3"));
+
+        val transaction = new Transaction(networkParameters());
+        val toSecond = new TransactionOutput(networkParameters(), transaction, Coin.COIN, second);
+        val toWallet = new TransactionOutput(networkParameters(), transaction, Coin.COIN, reloadedWallet.freshReceiveAddress());
+        assertEquals("customer-2", reloaded.findAccountIdOf(toSecond).get());
+        assertTrue(reloaded.findAccountIdOf(toWallet).isEmpty());
+    }
+
+    @Test
+    public void testChangeAddressIsOnlyIssuedOnceATransactionPaysIt() {
+
+        val wallet = new Wallet(networkParameters());
+        val accountBook = new AccountBook(wallet, addressCache);
+        val changeAddress = accountBook.peekChangeAddress();
+        assertEquals(changeAddress, accountBook.peekChangeAddress());
+        assertEquals(0, wallet.getActiveKeyChain().getIssuedInternalKeys());
+
+        val transaction = TestTransactions.transaction(1);
+        transaction.addOutput(Coin.COIN, changeAddress);
+        wallet.commitTx(transaction);
+
+        assertEquals(1, wallet.getActiveKeyChain().getIssuedInternalKeys());
+        assertNotEquals(changeAddress, accountBook.peekChangeAddress());
+    }
+
+    @Test
+    public void testSpendsOfTheWholeWalletLeaveTheOutputsOfAccountsAlone() {
+
+        val wallet = new Wallet(networkParameters());
+        assertFalse(AccountBook.hasAccounts(wallet));
+        val accountBook = new AccountBook(wallet, addressCache);
+        wallet.setCoinSelector(accountBook.coinSelector(Option.none()));
+        val accountAddress = accountBook.deriveAddress("customer-1", RECEIVE_FUNDS);
+        assertTrue(AccountBook.hasAccounts(wallet));
+
+        val transaction = TestTransactions.transaction(1);
+        val toAccount = transaction.addOutput(Coin.COIN, accountAddress);
+        val toWallet = transaction.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        transaction.getConfidence().setAppearedAtChainHeight(1);
+
+        val walletSelection = wallet.getCoinSelector().select(MAX_MONEY, List.of(toAccount, toWallet).toJavaList());
+        val accountSelection = accountBook.coinSelector(Option.of("customer-1")).select(MAX_MONEY, List.of(toAccount, toWallet).toJavaList());
+
+        assertEquals(List.of(toWallet), List.ofAll(walletSelection.gathered));
+        assertEquals(List.of(toAccount), List.ofAll(accountSelection.gathered));
+    }
+}
@@ -0,0 +1,123 @@
+package bitcoin.chain;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactFilterMatcherTest {
+
+    private final CompactFilterMatcher compactFilterMatcher = new CompactFilterMatcher();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(TestNet3Params.get()));
+    }
+
+    // Every output script of a stored block matches its stored filter, scripts that are not in the block do not
+    @Test
+    public void testCorpusBlocksMatchTheirFilters() throws Exception {
+
+        val corpus = corpus("/compact-filters/testnet3.txt");
+        assertFalse(corpus.isEmpty());
+
+        corpus.forEach(entry -> {
+            val block = new Block(TestNet3Params.get(), Utils.HEX.decode(entry[2]));
+            val filter = Utils.HEX.decode(entry[3]);
+            assertEquals(entry[1], block.getHashAsString());
+
+            List.ofAll(block.getTransactions())
+                    .flatMap(transaction -> transaction.getOutputs())
+                    .map(TransactionOutput::getScriptBytes)
+                    .forEach(script -> assertTrue(compactFilterMatcher.matchesAny(block.getHash(), filter, new byte[][]{script})));
+
+            assertFalse(compactFilterMatcher.matchesAny(block.getHash(), filter, randomScripts(new Random(Long.parseLong(entry[0])), 100)));
+        });
+    }
+
+    @Test
+    public void testMatchesAnyElementOfALargeFilter() {
+
+        val random = new Random(42);
+        val blockHash = Sha256Hash.of(new byte[]{1});
+        val scripts = randomScripts(random, 5000);
+        val filter = encode(blockHash, scripts);
+
+        assertTrue(compactFilterMatcher.matchesAny(blockHash, filter, new byte[][]{scripts[0]}));
+        assertTrue(compactFilterMatcher.matchesAny(blockHash, filter, new byte[][]{scripts[4999]}));
+        assertTrue(compactFilterMatcher.matchesAny(blockHash, filter, append(randomScripts(random, 200), scripts[2500])));
+        assertFalse(compactFilterMatcher.matchesAny(blockHash, filter, randomScripts(random, 200)));
+        assertFalse(compactFilterMatcher.matchesAny(Sha256Hash.of(new byte[]{2}), filter, new byte[][]{scripts[0]}));
+    }
+
+    private static List<String[]> corpus(String resource) throws Exception {
+        try (val reader = new BufferedReader(new InputStreamReader(CompactFilterMatcherTest.class.getResourceAsStream(resource)))) {
+            return List.ofAll(reader.lines()).filter(line -> !line.startsWith("#")).map(line -> line.split(" "));
+        }
+    }
+
+    private static byte[][] randomScripts(Random random, int count) {
+        val scripts = new byte[count][25];
+        Arrays.stream(scripts).forEach(random::nextBytes);
+        return scripts;
+    }
+
+    private static byte[][] append(byte[][] scripts, byte[] script) {
+        val appended = Arrays.copyOf(scripts, scripts.length + 1);
+        appended[scripts.length] = script;
+        return appended;
+    }
+
+    // Golomb-Rice encoding as described in BIP158, written bit by bit to keep it independent from the decoder
+    static byte[] encode(Sha256Hash blockHash, byte[][] elements) {
+
+        val key = blockHash.getReversedBytes();
+        val range = elements.length * CompactFilterMatcher.M;
+        val values = Arrays.stream(elements)
+                .mapToLong(element -> CompactFilterMatcher.hashToRange(Utils.readInt64(key, 0), Utils.readInt64(key, 8), element, range))
+                .sorted()
+                .toArray();
+
+        val bits = new StringBuilder();
+        long previous = 0;
+        for (long value : values) {
+            val delta = value - previous;
+            previous = value;
+            for (long q = delta >>> CompactFilterMatcher.P; q > 0; q--) {
+                bits.append('1');
+            }
+            bits.append('0');
+            for (int b = CompactFilterMatcher.P - 1; b >= 0; b--) {
+                bits.append((delta >>> b & 1) == 1 ? '1' : '0');
+            }
+        }
+        while (bits.length() % 8 != 0) {
+            bits.append('0');
+        }
+
+        val filter = new ByteArrayOutputStream();
+        val count = new VarInt(elements.length).encode();
+        filter.write(count, 0, count.length);
+        for (int i = 0; i < bits.length(); i += 8) {
+            filter.write(Integer.parseInt(bits.substring(i, i + 8), 2));
+        }
+        return filter.toByteArray();
+    }
+}
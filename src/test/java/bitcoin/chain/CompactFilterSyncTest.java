@@ -0,0 +1,114 @@
+package bitcoin.chain;
+
+import bitcoin.chain.dto.BlockFilterDto;
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+// Blocks are built here with a filter encoded as BIP158 describes: their output scripts, and the scripts their inputs
+// spend when the test knows them
+public class CompactFilterSyncTest {
+
+    private final Wallet payee = new Wallet(networkParameters());
+
+    private final Wallet otherPayee = new Wallet(networkParameters());
+
+    private final Wallet bystander = new Wallet(networkParameters());
+
+    private final AtomicInteger blocksDownloaded = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testOnlyRelevantTransactionsOfAMatchingBlockAreReceived() {
+
+        val payment = payment(payee.freshReceiveAddress(), otherPayee.freshReceiveAddress());
+        val unrelated = payment(new ECKey().toAddress(networkParameters()));
+        val block = block(payment, unrelated);
+
+        sync(block).receiveMatchingTransactions(new StoredBlock(block.cloneAsHeader(), BigInteger.ONE, 1), List.of(payee, otherPayee, bystander).toJavaList());
+
+        assertEquals(1, blocksDownloaded.get());
+        assertEquals(1, payee.getTransactions(false).size());
+        assertNotNull(payee.getTransaction(payment.getHash()));
+        assertNull(payee.getTransaction(unrelated.getHash()));
+        assertEquals(1, otherPayee.getTransactions(false).size());
+        assertNotSame(payee.getTransaction(payment.getHash()), otherPayee.getTransaction(payment.getHash()));
+        assertEquals(Coin.CENT, payee.getBalance());
+        assertEquals(0, bystander.getTransactions(false).size());
+    }
+
+    @Test
+    public void testBlockNotMatchingIsNotDownloaded() {
+
+        val block = block(payment(new ECKey().toAddress(networkParameters())));
+
+        sync(block).receiveMatchingTransactions(new StoredBlock(block.cloneAsHeader(), BigInteger.ONE, 1), List.of(payee, bystander).toJavaList());
+
+        assertEquals(0, blocksDownloaded.get());
+        assertEquals(0, payee.getTransactions(false).size());
+    }
+
+    private CompactFilterSync sync(Block block) {
+
+        val scripts = List.ofAll(block.getTransactions()).flatMap(Transaction::getOutputs).map(TransactionOutput::getScriptBytes);
+        val filter = Utils.HEX.encode(CompactFilterMatcherTest.encode(block.getHash(), scripts.toJavaArray(byte[].class)));
+
+        return new CompactFilterSync(new CompactFilterProperties(), new BlockFilterClient() {
+            @Override
+            public BlockFilterDto findBasicBlockFilter(String blockHash) {
+                assertEquals(block.getHashAsString(), blockHash);
+                return new BlockFilterDto(filter, null);
+            }
+
+            @Override
+            public byte[] findBlock(String blockHash) {
+                blocksDownloaded.incrementAndGet();
+                return block.bitcoinSerialize();
+            }
+        });
+    }
+
+    private static Transaction payment(Address... addresses) {
+        val transaction = new Transaction(networkParameters());
+        transaction.addInput(new TransactionInput(networkParameters(), transaction, new ScriptBuilder().data(new byte[]{1, 2}).build().getProgram(),
+                new TransactionOutPoint(networkParameters(), 0, Sha256Hash.of(new ECKey().getPubKey()))));
+        List.of(addresses).forEach(address -> transaction.addOutput(Coin.CENT, address));
+        return transaction;
+    }
+
+    private static Block block(Transaction... transactions) {
+        val coinbase = new Transaction(networkParameters());
+        coinbase.addInput(new TransactionInput(networkParameters(), coinbase, new ScriptBuilder().data(new byte[]{1, 0}).build().getProgram()));
+        coinbase.addOutput(Coin.FIFTY_COINS, new ECKey().toAddress(networkParameters()));
+        return new Block(networkParameters(), Block.BLOCK_VERSION_BIP66, networkParameters().getGenesisBlock().getHash(), null,
+                Utils.currentTimeSeconds(), Block.EASIEST_DIFFICULTY_TARGET, 0, List.of(coinbase).appendAll(List.of(transactions)).toJavaList());
+    }
+}
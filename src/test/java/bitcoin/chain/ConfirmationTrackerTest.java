@@ -0,0 +1,99 @@
+package bitcoin.chain;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.UUID;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+
+public class ConfirmationTrackerTest {
+
+    private final ArrayList<ConfirmationEvent> events = new ArrayList<>();
+
+    private final ConfirmationTracker confirmationTracker = new ConfirmationTracker(new ApplicationEventPublisher() {
+        @Override
+        public void publishEvent(ApplicationEvent event) {
+            publishEvent((Object) event);
+        }
+
+        @Override
+        public void publishEvent(Object event) {
+            events.add((ConfirmationEvent) event);
+        }
+    }, new ConfirmationTrackerProperties());
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testOnlyThresholdCrossingsAreEmittedAcrossReorganizations() throws Exception {
+
+        val walletId = UUID.randomUUID();
+        val wallet = new Wallet(networkParameters());
+        confirmationTracker.track(walletId, wallet);
+
+        val payment = payment(wallet, 1);
+        val reorganizedPayment = payment(wallet, 2);
+        val falsePositive = payment(new Wallet(networkParameters()), 3);
+
+        val oldBlocks = List.rangeClosed(101, 103).map(height -> block(height, 0)).reverse();
+        confirmationTracker.index(payment.getHash(), oldBlocks.get(2));
+        confirmationTracker.index(falsePositive.getHash(), oldBlocks.get(2));
+        confirmationTracker.index(reorganizedPayment.getHash(), oldBlocks.get(1));
+        oldBlocks.reverse().forEach(confirmationTracker::connect);
+
+        assertEquals(List.of(
+                new ConfirmationEvent(walletId, payment.getHashAsString(), 1, 101, true),
+                new ConfirmationEvent(walletId, reorganizedPayment.getHashAsString(), 1, 102, true),
+                new ConfirmationEvent(walletId, payment.getHashAsString(), 3, 103, true)), List.ofAll(events));
+        events.clear();
+
+        // The payment is mined again one block later and keeps its 3 confirmations, the other one goes back to pending
+        val newBlocks = List.rangeClosed(101, 104).map(height -> block(height, 1)).reverse();
+        confirmationTracker.index(payment.getHash(), newBlocks.get(2));
+        confirmationTracker.reorganize(oldBlocks, newBlocks);
+
+        assertEquals(List.of(new ConfirmationEvent(walletId, reorganizedPayment.getHashAsString(), 1, 104, false)), List.ofAll(events));
+        events.clear();
+
+        confirmationTracker.connect(block(105, 1));
+        confirmationTracker.connect(block(106, 1));
+        assertEquals(0, events.size());
+        confirmationTracker.connect(block(107, 1));
+        assertEquals(List.of(new ConfirmationEvent(walletId, payment.getHashAsString(), 6, 107, true)), List.ofAll(events));
+    }
+
+    private static Transaction payment(Wallet wallet, int seed) throws Exception {
+
+        val payment = new Transaction(networkParameters());
+        payment.addInput(Sha256Hash.of(new byte[]{(byte) seed}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        payment.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(payment, null);
+
+        return payment;
+    }
+
+    // Headers of different branches at the same height only differ by their nonce
+    private static StoredBlock block(int height, int branch) {
+        return new StoredBlock(new Block(networkParameters(), 1, Sha256Hash.ZERO_HASH, Sha256Hash.ZERO_HASH, height, 0x1d00ffffL, branch, Collections.emptyList()), BigInteger.ONE, height);
+    }
+}
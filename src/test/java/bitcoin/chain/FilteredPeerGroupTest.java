@@ -0,0 +1,83 @@
+package bitcoin.chain;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.bitcoinj.core.PeerGroup.FilterRecalculateMode.FORCE_SEND_FOR_REFRESH;
+import static org.bitcoinj.core.PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FilteredPeerGroupTest {
+
+    private static final UnitTestParams PARAMS = UnitTestParams.get();
+
+    private final ScheduledExecutorService filterExecutor = newSingleThreadScheduledExecutor();
+
+    private Context context;
+
+    private BlockChain chain;
+
+    private FilteredPeerGroup peerGroup;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new Context(PARAMS);
+        Context.propagate(context);
+        chain = new BlockChain(context, new MemoryBlockStore(PARAMS));
+    }
+
+    @After
+    public void tearDown() {
+        peerGroup.stop();
+        filterExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testBurstOfNewAddressesIsCoalescedIntoOneRecalculation() throws Exception {
+
+        peerGroup = start(new FilteredPeerGroup(context, chain, filterExecutor, 100L, false));
+
+        val recalculations = List.range(0, 10).map(index -> peerGroup.recalculateFastCatchupAndFilter(SEND_IF_CHANGED));
+        recalculations.head().get(5, SECONDS);
+
+        assertTrue(recalculations.forAll(recalculation -> recalculation == recalculations.head()));
+        assertEquals(1L, peerGroup.getRecalculations());
+        assertEquals(9L, peerGroup.getCoalescedRecalculations());
+
+        // The next burst waits for the interval, a refresh does not
+        val delayed = peerGroup.recalculateFastCatchupAndFilter(SEND_IF_CHANGED);
+        peerGroup.recalculateFastCatchupAndFilter(FORCE_SEND_FOR_REFRESH).get(5, SECONDS);
+        assertEquals(2L, peerGroup.getRecalculations());
+        delayed.get(5, SECONDS);
+        assertEquals(3L, peerGroup.getRecalculations());
+    }
+
+    @Test
+    public void testNoBloomFilterWithCompactFilters() throws Exception {
+
+        peerGroup = start(new FilteredPeerGroup(context, chain, filterExecutor, 100L, true));
+
+        assertNull(peerGroup.recalculateFastCatchupAndFilter(SEND_IF_CHANGED).get(5, SECONDS));
+        assertNull(peerGroup.recalculateFastCatchupAndFilter(FORCE_SEND_FOR_REFRESH).get(5, SECONDS));
+        assertEquals(0L, peerGroup.getRecalculations());
+    }
+
+    // A peer group only runs its jobs once started, without any peer discovery it never connects
+    private static FilteredPeerGroup start(FilteredPeerGroup peerGroup) {
+        peerGroup.start();
+        return peerGroup;
+    }
+}
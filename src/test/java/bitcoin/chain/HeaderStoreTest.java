@@ -0,0 +1,122 @@
+package bitcoin.chain;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.BlockStoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HeaderStoreTest {
+
+    private static final UnitTestParams PARAMS = UnitTestParams.get();
+
+    private Path headerStorePath;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        headerStorePath = Files.createTempFile("header-store", ".headers");
+        Files.delete(headerStorePath);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(headerStorePath);
+    }
+
+    @Test
+    public void testHeadersSurviveReopeningAndFollowReorganizations() throws Exception {
+
+        val headerStore = new HeaderStore(PARAMS, headerStorePath, 64);
+        val genesis = headerStore.getChainHead();
+        val mainChain = extend(headerStore, genesis, 10);
+        headerStore.setChainHead(mainChain.last());
+
+        // A longer side chain forking off at height 5 becomes the best chain
+        val sideChain = extend(headerStore, mainChain.get(4), 8);
+        headerStore.setChainHead(sideChain.last());
+        headerStore.close();
+
+        val reopened = new HeaderStore(PARAMS, headerStorePath, 64);
+        assertEquals(sideChain.last(), reopened.getChainHead());
+        assertEquals(13, reopened.getChainHead().getHeight());
+        assertEquals(mainChain.get(9), reopened.get(mainChain.get(9).getHeader().getHash()));
+        assertEquals(mainChain.get(4), reopened.findByHeight(5).get());
+        assertEquals(sideChain.get(0), reopened.findByHeight(6).get());
+        assertEquals(sideChain.get(7), reopened.findByHeight(13).get());
+        assertFalse(reopened.findByHeight(14).isDefined());
+        assertNull(reopened.get(Sha256Hash.of(new byte[]{1})));
+
+        // Going back to a lower head, like a chain rollback, keeps the heights below it
+        reopened.setChainHead(mainChain.get(2));
+        assertEquals(mainChain.get(2), reopened.findByHeight(3).get());
+        assertFalse(reopened.findByHeight(4).isDefined());
+        reopened.close();
+    }
+
+    @Test
+    public void testHeightsAboveARolledBackHeadAreRewrittenOnTheNextReorganization() throws Exception {
+
+        val headerStore = new HeaderStore(PARAMS, headerStorePath, 64);
+        val mainChain = extend(headerStore, headerStore.getChainHead(), 11);
+        headerStore.setChainHead(mainChain.last());
+
+        // Rolled back to height 2, a side block at height 3 becomes the head, then the main chain wins again
+        headerStore.setChainHead(mainChain.get(1));
+        val sideBlock = extend(headerStore, mainChain.get(1), 1).head();
+        headerStore.setChainHead(sideBlock);
+        headerStore.setChainHead(mainChain.last());
+
+        assertEquals(mainChain.get(2), headerStore.findByHeight(3).get());
+        assertEquals(mainChain.last(), headerStore.findByHeight(11).get());
+        headerStore.close();
+    }
+
+    @Test
+    public void testClosedStoreIsUnmappedAndCanBeReopened() throws Exception {
+
+        val headerStore = new HeaderStore(PARAMS, headerStorePath, 64);
+        val blocks = extend(headerStore, headerStore.getChainHead(), 3);
+        headerStore.setChainHead(blocks.last());
+        headerStore.close();
+
+        try {
+            headerStore.getChainHead();
+            fail("A closed store must not be read");
+        } catch (BlockStoreException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+
+        Files.delete(headerStorePath);
+        val recreated = new HeaderStore(PARAMS, headerStorePath, 64);
+        assertEquals(0, recreated.getChainHead().getHeight());
+        recreated.close();
+    }
+
+    private static List<StoredBlock> extend(HeaderStore headerStore, StoredBlock from, int count) throws Exception {
+        List<StoredBlock> blocks = List.empty();
+        StoredBlock previous = from;
+        for (int i = 0; i < count; i++) {
+            val block = previous.build(previous.getHeader().createNextBlock(new ECKey().toAddress(PARAMS)).cloneAsHeader());
+            headerStore.put(block);
+            blocks = blocks.append(block);
+            previous = block;
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,97 @@
+package bitcoin.chain;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MempoolTrackerTest {
+
+    private final MempoolTracker mempoolTracker = new MempoolTracker(new MempoolProperties());
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testTransactionsAreTrackedOnceAndIndexedByWallet() {
+
+        val walletId = UUID.randomUUID();
+        val wallet = new Wallet(networkParameters());
+        val walletById = HashMap.of(walletId, wallet).toJavaMap();
+        mempoolTracker.watch(walletId, wallet);
+
+        val payment = new Transaction(networkParameters());
+        payment.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        payment.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+
+        // The second payment spends the first one, so its fee is known from the tracker
+        val chainedPayment = new Transaction(networkParameters());
+        chainedPayment.addInput(payment.getOutput(0));
+        chainedPayment.addOutput(Coin.COIN.subtract(Coin.MILLICOIN), wallet.freshReceiveAddress());
+
+        mempoolTracker.track(payment, walletById);
+        mempoolTracker.track(payment, walletById);
+        mempoolTracker.track(chainedPayment, walletById);
+        mempoolTracker.track(new Transaction(networkParameters()), walletById);
+
+        val transactions = mempoolTracker.findTransactionsOfWallet(walletId);
+        assertEquals(2, transactions.size());
+        assertTrue(transactions.exists(transaction -> transaction.getTransaction().equals(payment) && transaction.getFee() == null));
+        assertTrue(transactions.exists(transaction -> transaction.getTransaction().equals(chainedPayment) && transaction.getFee() == Coin.MILLICOIN.value));
+
+        val metrics = mempoolTracker.metrics();
+        assertEquals(3L, (long) metrics.getTransactions());
+        assertEquals(4L, (long) metrics.getAnnouncements());
+        assertEquals(1L, (long) metrics.getDuplicateAnnouncements());
+        assertTrue(mempoolTracker.findTransactionsOfWallet(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    public void testWalletsAreFoundByTheirScriptsAndOutputs() throws Exception {
+
+        val walletId = UUID.randomUUID();
+        val wallet = new Wallet(networkParameters());
+        val walletById = HashMap.of(walletId, wallet).toJavaMap();
+        mempoolTracker.watch(walletId, wallet);
+
+        val payment = new Transaction(networkParameters());
+        payment.addInput(Sha256Hash.of(new byte[]{2}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        payment.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(payment, null);
+
+        // Pays nothing to the wallet, only spends its output
+        val spend = new Transaction(networkParameters());
+        spend.addInput(payment.getOutput(0));
+        spend.addOutput(Coin.COIN.subtract(Coin.MILLICOIN), new ECKey().toAddress(networkParameters()));
+
+        val unrelated = new Transaction(networkParameters());
+        unrelated.addInput(Sha256Hash.of(new byte[]{3}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        unrelated.addOutput(Coin.COIN, new ECKey().toAddress(networkParameters()));
+
+        assertEquals(HashSet.of(walletId), mempoolTracker.findWalletIds(payment, walletById));
+        assertEquals(HashSet.of(walletId), mempoolTracker.findWalletIds(spend, walletById));
+        assertTrue(mempoolTracker.findWalletIds(unrelated, walletById).isEmpty());
+
+        mempoolTracker.track(spend, walletById);
+        assertEquals(Coin.MILLICOIN.value, (long) mempoolTracker.findTransactionsOfWallet(walletId).head().getFee());
+
+        mempoolTracker.forget(walletId);
+        assertTrue(mempoolTracker.findWalletIds(payment, walletById).isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package bitcoin.config;
+
+import lombok.val;
+import org.bitcoinj.core.AddressFormatException;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class AddressCacheTest {
+
+    private final AddressCache addressCache = new AddressCache(new AddressCacheProperties());
+
+    @Test
+    public void testAddressesAreParsedOnce() {
+
+        val key = new ECKey();
+        val address = key.toAddress(networkParameters());
+        val script = ScriptBuilder.createOutputScript(address).getProgram();
+        val base58Hits = addressCache.base58Stats().hitCount();
+        val scriptHits = addressCache.scriptStats().hitCount();
+
+        assertEquals(address, addressCache.fromBase58(address.toBase58()));
+        assertSame(addressCache.fromBase58(address.toBase58()), addressCache.fromBase58(address.toBase58()));
+        assertEquals(address, addressCache.fromScript(script));
+        assertSame(addressCache.fromScript(script), addressCache.fromScript(script.clone()));
+        assertEquals(address, addressCache.fromScriptForcingPayToPubKey(ScriptBuilder.createOutputScript(key).getProgram()));
+
+        assertEquals(base58Hits + 2, addressCache.base58Stats().hitCount());
+        assertEquals(scriptHits + 2, addressCache.scriptStats().hitCount());
+    }
+
+    @Test(expected = AddressFormatException.class)
+    public void testInvalidAddressesAreNotKept() {
+
+        try {
+            addressCache.fromBase58("notAnAddress");
+        } catch (AddressFormatException e) {
+            assertEquals(0, addressCache.size());
+            addressCache.fromBase58("notAnAddress");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bitcoin.config;
+
+import lombok.val;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static bitcoin.config.ClusterAuthenticationFilter.SECRET_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ClusterAuthenticationFilterTest {
+
+    @Test
+    public void testClusterEndpointsNeedTheSecret() throws Exception {
+
+        val clusterProperties = new ClusterProperties();
+        clusterProperties.setSecret("secret");
+        val filter = new ClusterAuthenticationFilter(clusterProperties);
+
+        assertEquals(403, filter(filter, "PUT", "/shard/nodes", "guessed").getStatus());
+        assertEquals(403, filter(filter, "PUT", "/shard/wallet/b2a1c8f0-0000-4000-8000-000000000000", null).getStatus());
+        assertEquals(403, filter(filter, "POST", "/replication/promote", null).getStatus());
+        assertEquals(403, filter(filter, "DELETE", "/replication/wallet/b2a1c8f0-0000-4000-8000-000000000000", "guessed").getStatus());
+        assertEquals(200, filter(filter, "PUT", "/shard/nodes", "secret").getStatus());
+        assertEquals(200, filter(filter, "PUT", "/replication/heartbeat", "secret").getStatus());
+        assertEquals(200, filter(filter, "GET", "/shard/nodes", null).getStatus());
+        assertEquals(200, filter(filter, "GET", "/replication", null).getStatus());
+    }
+
+    @Test
+    public void testNoRequestIsFromAPeerWithoutASecret() throws Exception {
+
+        val filter = new ClusterAuthenticationFilter(new ClusterProperties());
+        val request = new MockHttpServletRequest("PUT", "/shard/nodes");
+        request.addHeader(SECRET_HEADER, "");
+        val filterChain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNull(filterChain.getRequest());
+    }
+
+    private static MockHttpServletResponse filter(ClusterAuthenticationFilter filter, String method, String path, String secret) throws Exception {
+
+        val request = new MockHttpServletRequest(method, path);
+        if (secret != null) {
+            request.addHeader(SECRET_HEADER, secret);
+        }
+        val response = new MockHttpServletResponse();
+        val filterChain = new MockFilterChain();
+        filter.doFilter(request, response, filterChain);
+        if (response.getStatus() == 200) {
+            assertNotNull(filterChain.getRequest());
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,115 @@
+package bitcoin.consolidation;
+
+import bitcoin.fee.FeeEstimationProperties;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.transaction.SpendQueue;
+import bitcoin.transaction.SpendQueueProperties;
+import bitcoin.wallet.OutputReservations;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UtxoConsolidationServiceTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    private final UUID watchingWalletId = UUID.randomUUID();
+
+    private final UtxoConsolidationProperties utxoConsolidationProperties = new UtxoConsolidationProperties();
+
+    private final FeeEstimator feeEstimator = new FeeEstimator(new FeeEstimationProperties());
+
+    private SpendQueue spendQueue;
+
+    private UtxoConsolidationService utxoConsolidationService;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+        val wallet = new Wallet(networkParameters());
+        val watchingWallet = Wallet.fromWatchingKeyB58(networkParameters(), new Wallet(networkParameters()).getWatchingKey().serializePubB58(networkParameters()), Utils.currentTimeSeconds());
+        val walletRepository = new WalletRepository() {
+            @Override
+            public Option<Wallet> findWalletById(UUID id) {
+                return id.equals(walletId) ? Option.of(wallet) : Option.when(id.equals(watchingWalletId), watchingWallet);
+            }
+        };
+        spendQueue = new SpendQueue(walletRepository, feeEstimator, new SpendQueueProperties(), null);
+        utxoConsolidationService = new UtxoConsolidationService(walletRepository, feeEstimator, spendQueue, utxoConsolidationProperties, new OutputReservations());
+    }
+
+    @After
+    public void tearDown() {
+        spendQueue.close();
+    }
+
+    @Test
+    public void testFallbackFeeIsWithinTheDefaultCeiling() {
+        assertTrue(new FeeEstimationProperties().getFallbackFeePerKb() <= new UtxoConsolidationProperties.Thresholds().getMaximumFeePerKb());
+    }
+
+    @Test
+    public void testConsolidationIsSkippedAboveTheFeeCeiling() {
+
+        utxoConsolidationProperties.getDefaults().setMaximumFeePerKb(1L);
+
+        val utxoConsolidation = utxoConsolidationService.consolidate(walletId);
+
+        assertTrue(utxoConsolidation.isSkipped());
+        assertTrue(utxoConsolidation.getSkippedReason().contains("above the ceiling=1"));
+        assertNull(utxoConsolidation.getTxHash());
+        assertTrue(utxoConsolidationService.findLastConsolidation(walletId).isEmpty());
+    }
+
+    @Test
+    public void testConsolidationIsSkippedWithTooFewSmallOutputs() {
+
+        val utxoConsolidation = utxoConsolidationService.consolidate(walletId);
+
+        assertTrue(utxoConsolidation.isSkipped());
+        assertTrue(utxoConsolidation.getSkippedReason().contains("Only 0 outputs"));
+    }
+
+    @Test
+    public void testConsolidationOfAWatchingWalletIsSkipped() {
+
+        val utxoConsolidation = utxoConsolidationService.consolidate(watchingWalletId);
+
+        assertTrue(utxoConsolidation.isSkipped());
+        assertTrue(utxoConsolidation.getSkippedReason().contains("Watching wallet"));
+    }
+
+    @Test
+    public void testSelectorGathersSmallOutputsUpToTheMaximumInputs() {
+
+        val parent = new Transaction(networkParameters());
+        parent.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        List.of(1000L, 200000L, 2000L, 3000L).forEach(value -> parent.addOutput(Coin.valueOf(value), new ECKey().toAddress(networkParameters())));
+        parent.getConfidence().setAppearedAtChainHeight(1);
+
+        val selection = new SmallOutputsSelector(100000L, 2).select(Coin.ZERO, parent.getOutputs());
+
+        assertEquals(List.of(1000L, 2000L), List.ofAll(selection.gathered).map(TransactionOutput::getValue).map(Coin::longValue));
+        assertEquals(Coin.valueOf(3000L), selection.valueGathered);
+    }
+}
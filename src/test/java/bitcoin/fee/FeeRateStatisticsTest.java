@@ -0,0 +1,46 @@
+package bitcoin.fee;
+
+import lombok.val;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class FeeRateStatisticsTest {
+
+    @Test
+    public void testNoEstimateWithoutEnoughSamples() {
+
+        val feeRateStatistics = new FeeRateStatistics(1000L, 1000000L, 24, 0.998D, 4D);
+        feeRateStatistics.record(20000L, 1);
+
+        assertTrue(feeRateStatistics.estimate(1).isEmpty());
+    }
+
+    @Test
+    public void testEstimateIsTheCheapestRateThatConfirmsWithinTarget() {
+
+        val feeRateStatistics = new FeeRateStatistics(1000L, 1000000L, 24, 0.998D, 4D);
+        for (int i = 0; i < 10; i++) {
+            feeRateStatistics.record(50000L, 1);
+            feeRateStatistics.record(5000L, 6);
+        }
+
+        val nextBlock = feeRateStatistics.estimate(1).get();
+        val sixBlocks = feeRateStatistics.estimate(6).get();
+
+        assertTrue(nextBlock <= 50000L && nextBlock > 40000L);
+        assertTrue(sixBlocks <= 5000L && sixBlocks > 4000L);
+    }
+
+    @Test
+    public void testDecayForgetsOldSamples() {
+
+        val feeRateStatistics = new FeeRateStatistics(1000L, 1000000L, 24, 0.5D, 4D);
+        for (int i = 0; i < 4; i++) {
+            feeRateStatistics.record(5000L, 1);
+        }
+        feeRateStatistics.decay();
+
+        assertTrue(feeRateStatistics.estimate(1).isEmpty());
+    }
+}
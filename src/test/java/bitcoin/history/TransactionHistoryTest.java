@@ -0,0 +1,107 @@
+package bitcoin.history;
+
+import bitcoin.TestTransactions;
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static bitcoin.TestTransactions.transaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionHistoryTest {
+
+    private Path historyPath;
+
+    @Before
+    public void setUp() throws Exception {
+        historyPath = Files.createTempFile("transaction-history", ".history");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(historyPath);
+    }
+
+    @Test
+    public void testRangeQueriesSurviveReopening() throws Exception {
+
+        val pending = transaction(1L);
+        val confirmed = transaction(2L);
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            transactionHistory.append(pending, -1, (byte) 2, 2000L, 5000L, null, List.of("address-1"));
+            transactionHistory.append(confirmed, -1, (byte) 2, 1000L, -7000L, 300L, List.of("address-2"));
+            transactionHistory.append(confirmed, 100, (byte) 1, 1000L, -7000L, 300L, List.of("address-2"));
+        }
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            assertEquals(List.of(pending.getHash(), confirmed.getHash()), transactionHistory.findAll().map(storedTransaction -> storedTransaction.getTransaction().getHash()));
+            assertEquals(List.of(confirmed.getHash()), transactionHistory.findByHeight(0, 200).map(storedTransaction -> storedTransaction.getTransaction().getHash()));
+            assertEquals(List.of(pending.getHash()), transactionHistory.findByValue(0L, Long.MAX_VALUE).map(storedTransaction -> storedTransaction.getTransaction().getHash()));
+            assertEquals(Long.valueOf(300L), transactionHistory.findByAddress("address-2").head().getFee());
+            assertTrue(transactionHistory.contains(confirmed.getHash(), 100, (byte) 1, 1000L));
+            assertFalse(transactionHistory.contains(confirmed.getHash(), -1, (byte) 2, 1000L));
+        }
+    }
+
+    @Test
+    public void testAddressesNoLongerRecordedAreUnindexed() throws Exception {
+
+        val transaction = transaction(1L);
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            transactionHistory.append(transaction, -1, (byte) 2, 1000L, 5000L, null, List.of("address-1"));
+            transactionHistory.append(transaction, -1, (byte) 2, 1000L, 5000L, null, List.of("address-2"));
+
+            assertTrue(transactionHistory.findByAddress("address-1").isEmpty());
+            assertEquals(1, transactionHistory.findByAddress("address-2").size());
+        }
+    }
+
+    @Test
+    public void testReplacedRecordsAreCompactedAway() throws Exception {
+
+        val transactions = List.range(0L, 10L).map(TestTransactions::transaction);
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            for (int height = 0; height < 1000; height++) {
+                for (val transaction : transactions) {
+                    transactionHistory.append(transaction, height, (byte) 1, 1000L + height, 5000L, null, List.of("address-1"));
+                }
+            }
+
+            assertTrue(Files.size(historyPath) < 1024 * 1024);
+            assertEquals(transactions.map(Transaction::getHash).toSet(), transactionHistory.findByHeight(999, 999).map(storedTransaction -> storedTransaction.getTransaction().getHash()).toSet());
+        }
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            assertEquals(10, transactionHistory.findAll().size());
+            assertEquals(10, transactionHistory.findByAddress("address-1").size());
+            assertEquals(999, transactionHistory.findAll().head().getHeight());
+        }
+    }
+
+    @Test
+    public void testTruncatedRecordIsDropped() throws Exception {
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            transactionHistory.append(transaction(1L), 10, (byte) 1, 1000L, 5000L, null, List.empty());
+        }
+        val size = Files.size(historyPath);
+        Files.write(historyPath, new byte[]{0, 0, 0, 100, 1, 2}, APPEND);
+
+        try (val transactionHistory = new TransactionHistory(historyPath)) {
+            assertEquals(1, transactionHistory.findAll().size());
+        }
+        assertEquals(size, Files.size(historyPath));
+    }
+}
@@ -0,0 +1,43 @@
+package bitcoin.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EventLogTest {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+
+    @Test
+    public void testFieldsAreWrittenAsKeyValues() {
+
+        val walletId = UUID.randomUUID();
+        val event = EventLog.info(loggerContext.getLogger("test"), "coins-received")
+                .field("walletId", walletId)
+                .field("amount", () -> 1000)
+                .field("memo", "a \"test\" payment");
+
+        assertEquals("coins-received walletId=" + walletId + " amount=1000 memo=\"a \\\"test\\\" payment\"", event.toString());
+    }
+
+    @Test
+    public void testNothingIsFormattedWhenTheLevelIsOff() {
+
+        val logger = loggerContext.getLogger("test");
+        logger.setLevel(Level.INFO);
+        val formatted = new AtomicBoolean();
+
+        EventLog.debug(logger, "payment-transactions")
+                .field("transactions", () -> formatted.getAndSet(true))
+                .write();
+
+        assertFalse(formatted.get());
+    }
+}
@@ -0,0 +1,76 @@
+package bitcoin.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferAppenderTest {
+
+    // The writer is held up by the first event, so the buffer of two fills behind it
+    @Test
+    public void testWarningsAreWrittenWhenTheBufferIsFull() throws Exception {
+
+        val loggerContext = new LoggerContext();
+        val writing = new CountDownLatch(1);
+        val release = new CountDownLatch(1);
+        val written = new ConcurrentLinkedQueue<String>();
+        val target = new UnsynchronizedAppenderBase<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                if (event.getFormattedMessage().equals("first")) {
+                    writing.countDown();
+                    awaitQuietly(release);
+                }
+                written.add(event.getFormattedMessage());
+            }
+        };
+        target.setContext(loggerContext);
+        target.start();
+
+        val appender = new RingBufferAppender();
+        appender.setContext(loggerContext);
+        appender.setName("test");
+        appender.setCapacity(2);
+        appender.addAppender(target);
+        appender.start();
+
+        val logger = loggerContext.getLogger("test");
+        logger.setLevel(Level.INFO);
+        logger.addAppender(appender);
+
+        logger.info("first");
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        logger.info("queued-1");
+        logger.info("queued-2");
+        logger.info("dropped");
+        logger.warn("warning");
+
+        assertEquals(List.of("warning"), List.ofAll(written));
+        assertEquals(1, appender.getDropped());
+
+        release.countDown();
+        appender.stop();
+
+        assertEquals(List.of("warning", "first", "queued-1", "queued-2"), List.ofAll(written).take(4));
+        assertTrue(List.ofAll(written).last().startsWith("Dropped 1 log events"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
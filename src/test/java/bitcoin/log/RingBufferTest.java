@@ -0,0 +1,72 @@
+package bitcoin.log;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void testElementsComeOutInOrderAndAFullBufferRefuses() {
+
+        val buffer = new RingBuffer<Integer>(3);
+        assertEquals(4, buffer.capacity());
+
+        for (int round = 0; round < 3; round++) {
+            for (int element = 0; element < 4; element++) {
+                assertTrue(buffer.offer(element));
+            }
+            assertFalse(buffer.offer(4));
+
+            for (int element = 0; element < 4; element++) {
+                assertEquals(Integer.valueOf(element), buffer.poll());
+            }
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    public void testNothingIsLostBetweenProducers() throws Exception {
+
+        val buffer = new RingBuffer<Integer>(1024);
+        val producers = 4;
+        val perProducer = 10000;
+        val executor = Executors.newFixedThreadPool(producers);
+        val done = new CountDownLatch(producers);
+
+        for (int producer = 0; producer < producers; producer++) {
+            val first = producer * perProducer;
+            executor.execute(() -> {
+                for (int element = first; element < first + perProducer; element++) {
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        long sum = 0;
+        int count = 0;
+        while (count < producers * perProducer) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                sum += element;
+                count++;
+            }
+        }
+        done.await();
+        executor.shutdown();
+
+        assertEquals(List.range(0L, (long) producers * perProducer).sum().longValue(), sum);
+        assertNull(buffer.poll());
+    }
+}
@@ -0,0 +1,127 @@
+package bitcoin.psbt;
+
+import bitcoin.TestTransactions;
+import bitcoin.psbt.Psbt.KeyOrigin;
+import bitcoin.psbt.Psbt.PsbtInput;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.DeterministicSeed;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.bitcoinj.core.Utils.HEX;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PsbtTest {
+
+    private static final List<String> MNEMONIC = List.of("abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "about");
+
+    private final PsbtSigner psbtSigner = new PsbtSigner();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    // A psbt survives serialization at every step, and the signature the signer adds from the seed alone spends the output
+    @Test
+    public void testSignFinalizeAndExtractASpendOfAWalletKey() throws Exception {
+
+        val wallet = Wallet.fromSeed(networkParameters(), new DeterministicSeed(MNEMONIC.toJavaList(), null, "password", 0L));
+        val key = wallet.freshReceiveKey();
+
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, key.toAddress(networkParameters()));
+
+        val spending = new Transaction(networkParameters());
+        spending.addInput(new TransactionInput(networkParameters(), spending, new byte[0], new TransactionOutPoint(networkParameters(), 0, funding.getHash())));
+        spending.addOutput(Coin.CENT, new ECKey().toAddress(networkParameters()));
+
+        val keyOrigin = new KeyOrigin(0, List.ofAll(key.getPath()));
+        val unsigned = Psbt.of(spending, List.of(PsbtInput.unsigned(funding, HashMap.of(HEX.encode(key.getPubKey()), keyOrigin))));
+        assertArrayEquals(unsigned.serialize(), Psbt.parse(unsigned.serialize()).serialize());
+
+        val signed = Psbt.parse(psbtSigner.sign(List.of(unsigned), MNEMONIC, "password").head().serialize());
+        assertEquals(1, signed.getInputs().head().getPartialSignatureByPublicKey().size());
+        assertEquals(keyOrigin, signed.getInputs().head().getKeyOriginByPublicKey().get(HEX.encode(key.getPubKey())).get());
+
+        // A signer with another seed adds nothing, combining with it keeps the signature
+        val otherSigned = psbtSigner.sign(List.of(unsigned), MNEMONIC.update(11, "abandon"), "password").head();
+        assertTrue(otherSigned.getInputs().head().getPartialSignatureByPublicKey().isEmpty());
+
+        val finalized = Psbt.parse(otherSigned.combine(signed).finalizeInputs().serialize());
+        assertTrue(finalized.getInputs().head().getPartialSignatureByPublicKey().isEmpty());
+
+        val transaction = finalized.extract();
+        transaction.getInput(0).verify(funding.getOutput(0));
+        assertTrue(Arrays.equals(spending.getOutput(0).getScriptBytes(), transaction.getOutput(0).getScriptBytes()));
+    }
+
+    // Fields this wallet does not use go back out as they came in, in the global, input and output maps
+    @Test
+    public void testUnknownFieldsAreWrittenBackOut() {
+
+        val funding = TestTransactions.transaction(1);
+        val spending = new Transaction(networkParameters());
+        spending.addInput(new TransactionInput(networkParameters(), spending, new byte[0], new TransactionOutPoint(networkParameters(), 0, funding.getHash())));
+        spending.addOutput(Coin.CENT, new ECKey().toAddress(networkParameters()));
+
+        val input = PsbtInput.unsigned(funding, HashMap.empty());
+        val withUnknown = new Psbt(spending, HashMap.of("fc01", new byte[]{1}), List.of(new PsbtInput(input.getPreviousTransaction(), input.getSighashType(), HashMap.empty(),
+                HashMap.empty(), Option.none(), HashMap.of("1000", new byte[]{5}))), List.of(HashMap.of("02aa", new byte[]{4})));
+
+        val parsed = Psbt.parse(withUnknown.serialize());
+
+        assertArrayEquals(new byte[]{1}, parsed.getUnknownGlobals().get("fc01").get());
+        assertArrayEquals(new byte[]{5}, parsed.getInputs().head().getUnknown().get("1000").get());
+        assertArrayEquals(new byte[]{4}, parsed.getOutputs().head().get("02aa").get());
+        assertArrayEquals(withUnknown.serialize(), parsed.serialize());
+    }
+
+    @Test
+    public void testPreviousTransactionMustBeTheOneOfTheOutpoint() {
+
+        val spending = new Transaction(networkParameters());
+        spending.addInput(new TransactionInput(networkParameters(), spending, new byte[0], new TransactionOutPoint(networkParameters(), 0, TestTransactions.transaction(1).getHash())));
+        spending.addOutput(Coin.CENT, new ECKey().toAddress(networkParameters()));
+
+        try {
+            Psbt.of(spending, List.of(PsbtInput.unsigned(TestTransactions.transaction(2), HashMap.empty())));
+            fail("A previous transaction that is not the one spent must not be trusted for its output");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("does not have it"));
+        }
+    }
+
+    @Test
+    public void testEntryLongerThanThePsbtIsRejected() {
+
+        // Magic bytes, then a key claiming 0xffffffff bytes
+        val truncated = HEX.decode("70736274ff" + "feffffffff" + "00");
+
+        try {
+            Psbt.parse(truncated);
+            fail("A length read from the psbt must not be allocated past its end");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("exceeds the remaining"));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bitcoin.ratelimit;
+
+import bitcoin.config.ClusterAuthenticationFilter;
+import bitcoin.config.ClusterProperties;
+import lombok.val;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static bitcoin.config.ClusterAuthenticationFilter.SECRET_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitFilterTest {
+
+    private static final String API_KEY_HEADER = "X-Api-Key";
+
+    private final RateLimitFilter filter = rateLimitFilter();
+
+    @Test
+    public void testClientChangingItsApiKeyKeepsItsBudget() throws Exception {
+
+        for (int request = 0; request < 5; request++) {
+            assertEquals(200, filter("POST", "/wallet", "10.0.0.1", "key-" + request, null).getStatus());
+        }
+
+        assertEquals(429, filter("POST", "/wallet/bulk", "10.0.0.1", "key-5", null).getStatus());
+        assertEquals(429, filter("POST", "/wallet/watching", "10.0.0.1", "key-6", null).getStatus());
+        assertEquals(200, filter("POST", "/wallet", "10.0.0.2", null, null).getStatus());
+        assertEquals(200, filter("GET", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/balance", "10.0.0.1", null, null).getStatus());
+    }
+
+    @Test
+    public void testRequestsOfPeersAreNotCounted() throws Exception {
+
+        for (int request = 0; request < 10; request++) {
+            assertEquals(200, filter("POST", "/wallet", "10.0.0.3", null, "secret").getStatus());
+        }
+
+        for (int request = 0; request < 5; request++) {
+            assertEquals(200, filter("POST", "/wallet", "10.0.0.3", null, "guessed").getStatus());
+        }
+        assertEquals(429, filter("POST", "/wallet", "10.0.0.3", null, "guessed").getStatus());
+    }
+
+    @Test
+    public void testCreationsAreClassified() {
+
+        assertTrue(RateLimitFilter.isCreation("POST", "/wallet"));
+        assertTrue(RateLimitFilter.isCreation("POST", "/wallet/bulk"));
+        assertTrue(RateLimitFilter.isCreation("POST", "/wallet/watching"));
+        assertFalse(RateLimitFilter.isCreation("GET", "/wallet"));
+        assertFalse(RateLimitFilter.isCreation("POST", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/transaction"));
+    }
+
+    private MockHttpServletResponse filter(String method, String path, String address, String apiKey, String secret) throws Exception {
+
+        val request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(address);
+        if (apiKey != null) {
+            request.addHeader(API_KEY_HEADER, apiKey);
+        }
+        if (secret != null) {
+            request.addHeader(SECRET_HEADER, secret);
+        }
+        val response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        return response;
+    }
+
+    private static RateLimitFilter rateLimitFilter() {
+        val clusterProperties = new ClusterProperties();
+        clusterProperties.setSecret("secret");
+        val rateLimitProperties = new RateLimitProperties();
+        rateLimitProperties.setEnabled(true);
+        return new RateLimitFilter(new RateLimiter(rateLimitProperties), new ClusterAuthenticationFilter(clusterProperties));
+    }
+}
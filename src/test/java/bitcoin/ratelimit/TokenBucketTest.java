@@ -0,0 +1,66 @@
+package bitcoin.ratelimit;
+
+import bitcoin.ratelimit.RateLimitProperties.Budget;
+import io.vavr.control.Option;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstIsLetThroughAndRefilledOverTime() {
+
+        val bucket = new TokenBucket(3, 2.0, 0);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(SECOND / 2, bucket.tryAcquire(0));
+        assertEquals(SECOND / 4, bucket.tryAcquire(SECOND / 4));
+
+        assertEquals(0, bucket.tryAcquire(SECOND / 2));
+        assertFalse(bucket.isFull(SECOND));
+        assertTrue(bucket.isFull(2 * SECOND));
+    }
+
+    // The client's token taken for a request its wallet's bucket turns away is given back
+    @Test
+    public void testTokensOfARequestTurnedAwayAreGivenBack() {
+
+        val rateLimitProperties = new RateLimitProperties();
+        rateLimitProperties.setClientOperations(new Budget(2, 1.0));
+        rateLimitProperties.setWalletOperations(new Budget(1, 1.0));
+        val rateLimiter = new RateLimiter(rateLimitProperties);
+        val busyWalletId = UUID.randomUUID();
+
+        assertEquals(0, rateLimiter.admit("client", Option.of(busyWalletId), true, false, 0));
+        assertTrue(rateLimiter.admit("client", Option.of(busyWalletId), true, false, 0) > 0);
+        assertTrue(rateLimiter.admit("client", Option.of(busyWalletId), true, true, 0) > 0);
+        assertEquals(0, rateLimiter.admit("client", Option.of(UUID.randomUUID()), true, false, 0));
+        assertTrue(rateLimiter.admit("client", Option.of(UUID.randomUUID()), true, false, 0) > 0);
+    }
+
+    @Test
+    public void testRequestsAreClassifiedByCost() {
+
+        assertFalse(RateLimitFilter.isOperation("GET", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/balance"));
+        assertFalse(RateLimitFilter.isOperation("GET", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/transaction/recent"));
+        assertTrue(RateLimitFilter.isOperation("GET", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/transaction"));
+        assertTrue(RateLimitFilter.isOperation("GET", "/wallet/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f/transaction/address/mv4rnyY3Su5gjcDNzbMLKBQkBicCtHUtFB"));
+        assertTrue(RateLimitFilter.isOperation("GET", "/payment-server/e2b5a2c2-7d2e-3c8a-9d0e-5b1a2c3d4e5f"));
+        assertTrue(RateLimitFilter.isOperation("POST", "/wallet"));
+
+        assertEquals(1, RateLimitFilter.retryAfterSeconds(1));
+        assertEquals(1, RateLimitFilter.retryAfterSeconds(SECOND));
+        assertEquals(2, RateLimitFilter.retryAfterSeconds(SECOND + 1));
+    }
+}
@@ -0,0 +1,99 @@
+package bitcoin.replication;
+
+import bitcoin.config.ClusterProperties;
+import bitcoin.replication.dto.ReplicationStatusDto;
+import bitcoin.wallet.WalletReleasedEvent;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WalletService;
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationServiceTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    private final CopyOnWriteArrayList<String> calls = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger heartbeats = new AtomicInteger();
+
+    @Test
+    public void testStandbyIsOnlyPromotedOnRequest() {
+
+        val replicationProperties = new ReplicationProperties();
+        replicationProperties.setStandby(true);
+        val replicationService = new ReplicationService(replicationProperties, new ClusterProperties(), null, null, null, null);
+
+        replicationService.heartbeat();
+        replicationService.replicate();
+        assertFalse(replicationService.status().isPromoted());
+
+        replicationService.promote();
+        assertTrue(replicationService.status().isPromoted());
+        assertTrue(replicationService.heartbeat().isPromoted());
+    }
+
+    @Test
+    public void testPrimaryStopsItsWalletsOnceItsStandbyWasPromoted() throws Exception {
+
+        val replicationProperties = new ReplicationProperties();
+        replicationProperties.setStandbyUrl("http://standby:8081");
+        val clusterProperties = new ClusterProperties();
+        clusterProperties.setSecret("secret");
+        val replicationService = new AtomicReference<ReplicationService>();
+
+        val walletRepository = new WalletRepository() {
+            @Override
+            public List<UUID> findAllWalletIds() {
+                return List.of(walletId);
+            }
+        };
+        val walletService = new WalletService(null, null, null, null, null, null, null, null, null, null) {
+            @Override
+            public byte[] releaseWallet(UUID walletId) {
+                calls.add("release " + walletId);
+                replicationService.get().onWalletReleased(new WalletReleasedEvent(walletId, null));
+                return new byte[0];
+            }
+        };
+        val replicationClient = new ReplicationClient() {
+            @Override
+            public ReplicationStatusDto heartbeat(URI standby, String secret) {
+                heartbeats.incrementAndGet();
+                calls.add("heartbeat with " + secret);
+                return new ReplicationStatusDto(true, true, List.empty(), 0L);
+            }
+
+            @Override
+            public void replicateWallet(URI standby, String secret, UUID walletId, byte[] walletFile) {
+                calls.add("replicate " + walletId);
+            }
+
+            @Override
+            public void removeWallet(URI standby, String secret, UUID walletId) {
+                calls.add("remove " + walletId);
+            }
+        };
+        replicationService.set(new ReplicationService(replicationProperties, clusterProperties, walletService, walletRepository, null, replicationClient));
+
+        replicationService.get().replicate();
+        for (int attempt = 0; attempt < 100 && calls.size() < 2; attempt++) {
+            Thread.sleep(10);
+        }
+        replicationService.get().replicate();
+        Thread.sleep(50);
+
+        assertEquals(List.of("heartbeat with secret", "release " + walletId), List.ofAll(calls));
+        assertEquals(1, heartbeats.get());
+    }
+}
@@ -0,0 +1,51 @@
+package bitcoin.shard;
+
+import bitcoin.config.RequestPaths;
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardRingTest {
+
+    private final List<UUID> walletIds = List.fill(1000, UUID::randomUUID);
+
+    @Test
+    public void testOwnerDoesNotDependOnNodesOrder() {
+
+        val ring = ShardRing.of(List.of("http://a:8080", "http://b:8080", "http://c:8080"), 128);
+        val reordered = ShardRing.of(List.of("http://c:8080", "http://a:8080", "http://b:8080", "http://a:8080"), 128);
+
+        assertEquals(walletIds.map(ring::ownerOf), walletIds.map(reordered::ownerOf));
+        assertEquals(3, walletIds.map(ring::ownerOf).distinct().size());
+    }
+
+    @Test
+    public void testJoiningNodeTakesWalletsOnlyForItself() {
+
+        val ring = ShardRing.of(List.of("http://a:8080", "http://b:8080", "http://c:8080"), 128);
+        val grown = ShardRing.of(List.of("http://a:8080", "http://b:8080", "http://c:8080", "http://d:8080"), 128);
+
+        val moved = walletIds.filter(walletId -> !ring.ownerOf(walletId).equals(grown.ownerOf(walletId)));
+
+        assertTrue(moved.forAll(walletId -> grown.ownerOf(walletId).equals("http://d:8080")));
+        assertTrue(moved.size() > 100 && moved.size() < 400);
+    }
+
+    @Test
+    public void testWalletIdIsReadFromWalletPaths() {
+
+        val walletId = UUID.randomUUID();
+
+        assertEquals(walletId, RequestPaths.walletIdOf("/wallet/" + walletId).get());
+        assertEquals(walletId, RequestPaths.walletIdOf("/wallet/unlock/" + walletId).get());
+        assertEquals(walletId, RequestPaths.walletIdOf("/wallet/" + walletId + "/transactions").get());
+        assertEquals(walletId, RequestPaths.walletIdOf("/payment-server/" + walletId).get());
+        assertTrue(RequestPaths.walletIdOf("/wallet/mnemonic").isEmpty());
+        assertTrue(RequestPaths.walletIdOf("/shard/wallet/" + walletId).isEmpty());
+    }
+}
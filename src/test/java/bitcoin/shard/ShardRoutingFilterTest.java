@@ -0,0 +1,133 @@
+package bitcoin.shard;
+
+import bitcoin.config.ClusterAuthenticationFilter;
+import bitcoin.config.ClusterProperties;
+import com.sun.net.httpserver.HttpServer;
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static bitcoin.config.ClusterAuthenticationFilter.SECRET_HEADER;
+import static bitcoin.shard.ShardRoutingFilter.FORWARDED_HEADER;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ShardRoutingFilterTest {
+
+    private static final String NODE = "http://localhost:1";
+
+    private final Map<String, String> ownerRequest = new ConcurrentHashMap<>();
+
+    private HttpServer owner;
+
+    private ShardService shardService;
+
+    private ShardRoutingFilter shardRoutingFilter;
+
+    // The owner node answers every request with what it got
+    @Before
+    public void setUp() throws Exception {
+
+        owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext("/", exchange -> {
+            ownerRequest.put("path", exchange.getRequestMethod() + " " + exchange.getRequestURI());
+            exchange.getRequestHeaders().forEach((name, values) -> ownerRequest.put(name.toLowerCase(), values.get(0)));
+            val body = "adopted".getBytes(UTF_8);
+            exchange.sendResponseHeaders(201, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        owner.start();
+
+        val shardingProperties = new ShardingProperties();
+        shardingProperties.setEnabled(true);
+        shardingProperties.setNodeUrl(NODE);
+        shardingProperties.setNodes(List.of(NODE, ownerUrl()).toJavaList());
+        val clusterProperties = new ClusterProperties();
+        clusterProperties.setSecret("secret");
+        shardService = new ShardService(shardingProperties, clusterProperties, null, null, null);
+        shardRoutingFilter = new ShardRoutingFilter(shardService, new ClusterAuthenticationFilter(clusterProperties), clusterProperties);
+    }
+
+    @After
+    public void tearDown() {
+        owner.stop(0);
+    }
+
+    @Test
+    public void testRequestForAWalletOfAnotherNodeIsForwarded() throws Exception {
+
+        val walletId = walletOwnedBy(ownerUrl());
+        val request = new MockHttpServletRequest("PUT", "/wallet/" + walletId + "/address");
+        request.setQueryString("label=first");
+        request.addHeader(SECRET_HEADER, "guessed");
+        val response = new MockHttpServletResponse();
+        val filterChain = new MockFilterChain();
+
+        shardRoutingFilter.doFilter(request, response, filterChain);
+
+        assertNull(filterChain.getRequest());
+        assertEquals(201, response.getStatus());
+        assertEquals("adopted", response.getContentAsString());
+        assertEquals("PUT /wallet/" + walletId + "/address?label=first", ownerRequest.get("path"));
+        assertEquals(NODE, ownerRequest.get(FORWARDED_HEADER.toLowerCase()));
+        assertEquals("secret", ownerRequest.get(SECRET_HEADER.toLowerCase()));
+    }
+
+    @Test
+    public void testClientCannotSayItWasForwarded() throws Exception {
+
+        val request = new MockHttpServletRequest("GET", "/wallet/" + walletOwnedBy(ownerUrl()));
+        request.addHeader(FORWARDED_HEADER, ownerUrl());
+        val filterChain = new MockFilterChain();
+
+        shardRoutingFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNull(filterChain.getRequest());
+        assertNotNull(ownerRequest.get("path"));
+    }
+
+    @Test
+    public void testRequestForwardedByAPeerIsServedHere() throws Exception {
+
+        val request = new MockHttpServletRequest("GET", "/wallet/" + walletOwnedBy(ownerUrl()));
+        request.addHeader(FORWARDED_HEADER, ownerUrl());
+        request.addHeader(SECRET_HEADER, "secret");
+        val filterChain = new MockFilterChain();
+
+        shardRoutingFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNotNull(filterChain.getRequest());
+        assertNull(ownerRequest.get("path"));
+    }
+
+    @Test
+    public void testUnknownMethodIsNotForwarded() throws Exception {
+
+        val response = new MockHttpServletResponse();
+        shardRoutingFilter.doFilter(new MockHttpServletRequest("PROPFIND", "/wallet/" + walletOwnedBy(ownerUrl())), response, new MockFilterChain());
+
+        assertEquals(405, response.getStatus());
+        assertNull(ownerRequest.get("path"));
+    }
+
+    private String ownerUrl() {
+        return "http://localhost:" + owner.getAddress().getPort();
+    }
+
+    private UUID walletOwnedBy(String node) {
+        return List.fill(1000, UUID::randomUUID).find(walletId -> shardService.ownerOf(walletId).equals(node)).get();
+    }
+}
@@ -0,0 +1,140 @@
+package bitcoin.shard;
+
+import bitcoin.config.ClusterProperties;
+import bitcoin.shard.dto.ShardNodesDto;
+import bitcoin.wallet.WalletCreatedEvent;
+import bitcoin.wallet.WalletRepository;
+import bitcoin.wallet.WalletService;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardServiceTest {
+
+    private static final String NODE = "http://a:8080";
+
+    private static final String OWNER = "http://b:8080";
+
+    private final ArrayList<String> calls = new ArrayList<>();
+
+    private final AtomicBoolean ownerRefuses = new AtomicBoolean();
+
+    private final AtomicBoolean handedOverMeanwhile = new AtomicBoolean();
+
+    private ShardService shardService;
+
+    @Before
+    public void setUp() {
+
+        Context.propagate(new Context(networkParameters()));
+        val wallet = new Wallet(networkParameters());
+        val walletRepository = new WalletRepository() {
+            @Override
+            public Option<Wallet> findWalletById(UUID walletId) {
+                return Option.of(wallet);
+            }
+        };
+        val walletService = new WalletService(null, null, null, null, null, null, null, null, null, null) {
+            @Override
+            public byte[] releaseWallet(UUID walletId) {
+                calls.add("release " + walletId);
+                if (handedOverMeanwhile.compareAndSet(true, false)) {
+                    shardService.onWalletCreated(new WalletCreatedEvent(walletId));
+                }
+                return new byte[]{1, 2, 3};
+            }
+
+            @Override
+            public void deleteWalletFile(UUID walletId) {
+                calls.add("delete " + walletId);
+            }
+
+            @Override
+            public void resumeWallet(UUID walletId) {
+                calls.add("resume " + walletId);
+            }
+        };
+        val shardClient = new ShardClient() {
+            @Override
+            public ShardNodesDto updateNodes(URI node, String secret, boolean propagate, ShardNodesDto shardNodesDto) {
+                return shardNodesDto;
+            }
+
+            @Override
+            public void adoptWallet(URI node, String secret, UUID walletId, boolean unlock, byte[] walletFile) {
+                if (ownerRefuses.get()) {
+                    throw new RuntimeException("Node is not reachable");
+                }
+                calls.add(String.format("adopt %s at %s with %s, unlock=%s, %s bytes", walletId, node, secret, unlock, walletFile.length));
+            }
+        };
+
+        val shardingProperties = new ShardingProperties();
+        shardingProperties.setEnabled(true);
+        shardingProperties.setNodeUrl(NODE);
+        shardingProperties.setNodes(List.of(NODE, OWNER).toJavaList());
+        val clusterProperties = new ClusterProperties();
+        clusterProperties.setSecret("secret");
+        shardService = new ShardService(shardingProperties, clusterProperties, walletService, walletRepository, shardClient);
+    }
+
+    @Test
+    public void testNewWalletIsHandedToItsOwnerBeforeTheResponse() {
+
+        val walletId = walletOwnedBy(OWNER);
+        shardService.onWalletCreated(new WalletCreatedEvent(walletId));
+
+        assertEquals(List.of(
+                "release " + walletId,
+                String.format("adopt %s at %s with secret, unlock=true, 3 bytes", walletId, OWNER),
+                "delete " + walletId), List.ofAll(calls));
+    }
+
+    @Test
+    public void testWalletRefusedByItsOwnerRunsHereAgain() {
+
+        ownerRefuses.set(true);
+        val walletId = walletOwnedBy(OWNER);
+        shardService.onWalletCreated(new WalletCreatedEvent(walletId));
+
+        assertEquals(List.of("release " + walletId, "resume " + walletId), List.ofAll(calls));
+    }
+
+    @Test
+    public void testWalletBeingHandedOverIsSkipped() {
+
+        handedOverMeanwhile.set(true);
+        val walletId = walletOwnedBy(OWNER);
+        shardService.onWalletCreated(new WalletCreatedEvent(walletId));
+
+        assertEquals(List.of(
+                "release " + walletId,
+                String.format("adopt %s at %s with secret, unlock=true, 3 bytes", walletId, OWNER),
+                "delete " + walletId), List.ofAll(calls));
+    }
+
+    @Test
+    public void testNewWalletOwnedHereStays() {
+
+        shardService.onWalletCreated(new WalletCreatedEvent(walletOwnedBy(NODE)));
+
+        assertTrue(calls.isEmpty());
+    }
+
+    private UUID walletOwnedBy(String node) {
+        return List.fill(1000, UUID::randomUUID).find(walletId -> shardService.ownerOf(walletId).equals(node)).get();
+    }
+}
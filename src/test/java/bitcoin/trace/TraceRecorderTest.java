@@ -0,0 +1,71 @@
+package bitcoin.trace;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TraceRecorderTest {
+
+    @Test
+    public void testOnlyTheSlowestTracesAreKept() throws Exception {
+
+        val tracingProperties = new TracingProperties();
+        tracingProperties.setSlowestCapacity(2);
+        val traceRecorder = new TraceRecorder(tracingProperties);
+
+        val traces = List.of("a", "b", "c", "d").map(Trace::new);
+        for (val trace : traces) {
+            Thread.sleep(2);
+            trace.finish();
+        }
+        traces.forEach(traceRecorder::record);
+
+        assertEquals(List.of("d", "c"), traceRecorder.findSlowest().map(Trace::getName));
+    }
+
+    @Test
+    public void testSpansAreRecordedOnlyInsideATrace() {
+
+        assertSame(Span.NOOP, Tracing.span("outside"));
+
+        val trace = new Trace("GET /");
+        Tracing.begin(trace);
+        try {
+            Tracing.span("inside").close();
+            val span = Tracing.span("twice");
+            span.close();
+            span.close();
+        } finally {
+            Tracing.end();
+        }
+
+        assertEquals(List.of("inside", "twice"), List.ofAll(trace.getSpans()).map(Trace.SpanRecord::getName));
+        assertSame(Span.NOOP, Tracing.span("after"));
+    }
+
+    @Test
+    public void testTracesAwaitingASaveThatNeverComesAreForgotten() throws Exception {
+
+        val released = UUID.randomUUID();
+        val stale = UUID.randomUUID();
+        val saved = UUID.randomUUID();
+        Tracing.awaitSave(released, List.of(new Trace("POST /released")));
+        Tracing.awaitSave(stale, List.of(new Trace("POST /stale")));
+        Thread.sleep(5);
+        Tracing.awaitSave(saved, List.of(new Trace("POST /saved")));
+
+        Tracing.forget(released);
+        Tracing.forgetOlderThan(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertSame(Span.NOOP, Tracing.saving(released));
+        assertSame(Span.NOOP, Tracing.saving(stale));
+        assertNotSame(Span.NOOP, Tracing.saving(saved));
+    }
+}
@@ -0,0 +1,121 @@
+package bitcoin.transaction;
+
+import bitcoin.fee.FeeEstimationProperties;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.wallet.OutputReservations;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.DEAD;
+import static org.bitcoinj.core.TransactionConfidence.ConfidenceType.PENDING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeeBumpServiceTest {
+
+    private final FeeBumpService feeBumpService = new FeeBumpService(null, null, null, new FeeBumpProperties(), null, new OutputReservations());
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testReplacementTakesTheFeeFromTheChangeOutput() throws Exception {
+
+        val wallet = new Wallet(networkParameters());
+        wallet.allowSpendingUnconfirmedTransactions();
+        wallet.addTransactionSigner(new ReplaceByFeeSigner());
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(funding, null);
+
+        // A payment to one of our own receive addresses, both outputs are ours
+        val ownAddress = wallet.freshReceiveAddress();
+        val sendRequest = SendRequest.to(ownAddress, Coin.CENT);
+        wallet.completeTx(sendRequest);
+        wallet.commitTx(sendRequest.tx);
+
+        val replacement = feeBumpService.replaceByFee(wallet, sendRequest.tx, Coin.valueOf(50000)).tx;
+
+        val paymentValue = List.ofAll(replacement.getOutputs()).find(output -> output.getScriptPubKey().getToAddress(networkParameters()).equals(ownAddress)).map(TransactionOutput::getValue);
+        assertEquals(Coin.CENT, paymentValue.get());
+        assertTrue(replacement.getOutputSum().isLessThan(sendRequest.tx.getOutputSum()));
+        assertTrue(replacement.isOptInFullRBF());
+    }
+
+    @Test
+    public void testReplacementIsPendingAndCanBeBumpedAgain() throws Exception {
+
+        val wallet = new Wallet(networkParameters());
+        wallet.allowSpendingUnconfirmedTransactions();
+        wallet.addTransactionSigner(new ReplaceByFeeSigner());
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(funding, null);
+
+        val sendRequest = SendRequest.to(new ECKey().toAddress(networkParameters()), Coin.CENT);
+        wallet.completeTx(sendRequest);
+        wallet.commitTx(sendRequest.tx);
+        val original = sendRequest.tx;
+
+        val bumping = new FeeBumpService(null, null, new FeeEstimator(new FeeEstimationProperties()), new FeeBumpProperties(), null, new OutputReservations());
+        val replacement = bumping.bumpFee(UUID.randomUUID(), wallet, original.getHash(), Option.some(FeeBumpMethod.RBF), FeeTarget.NEXT_BLOCK);
+
+        assertEquals(DEAD, original.getConfidence().getConfidenceType());
+        assertEquals(PENDING, replacement.getConfidence().getConfidenceType());
+        assertEquals(Coin.COIN.subtract(Coin.CENT).subtract(replacement.getFee()), wallet.getBalance(Wallet.BalanceType.ESTIMATED));
+
+        val secondReplacement = bumping.bumpFee(UUID.randomUUID(), wallet, replacement.getHash(), Option.some(FeeBumpMethod.RBF), FeeTarget.NEXT_BLOCK);
+
+        assertEquals(DEAD, replacement.getConfidence().getConfidenceType());
+        assertEquals(PENDING, secondReplacement.getConfidence().getConfidenceType());
+        assertTrue(secondReplacement.getFee().isGreaterThan(replacement.getFee()));
+        assertEquals(Coin.COIN.subtract(Coin.CENT).subtract(secondReplacement.getFee()), wallet.getBalance(Wallet.BalanceType.ESTIMATED));
+    }
+
+    @Test
+    public void testWatchingWalletIsNotBumped() {
+
+        val walletId = UUID.randomUUID();
+        val watchingWallet = Wallet.fromWatchingKeyB58(networkParameters(), new Wallet(networkParameters()).getWatchingKey().serializePubB58(networkParameters()), Utils.currentTimeSeconds());
+        val walletRepository = new WalletRepository() {
+            @Override
+            public Option<Wallet> findWalletById(UUID id) {
+                return Option.when(id.equals(walletId), watchingWallet);
+            }
+        };
+        val feeEstimator = new FeeEstimator(new FeeEstimationProperties());
+        val spendQueue = new SpendQueue(walletRepository, feeEstimator, new SpendQueueProperties(), null);
+
+        try {
+            new FeeBumpService(walletRepository, null, feeEstimator, new FeeBumpProperties(), spendQueue, new OutputReservations()).bumpFee(walletId, Sha256Hash.ZERO_HASH, Option.none(), FeeTarget.SIX_BLOCKS);
+            fail("A watching wallet has no keys to sign a fee bump");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("watching only"));
+        } finally {
+            spendQueue.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package bitcoin.transaction;
+
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplaceByFeeSignerTest {
+
+    private Wallet wallet;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(networkParameters()));
+        wallet = new Wallet(networkParameters());
+        wallet.allowSpendingUnconfirmedTransactions();
+        fund(wallet, 1);
+        fund(wallet, 2);
+    }
+
+    @Test
+    public void testInputsSignalReplaceByFeeAndAreSignedAgain() throws Exception {
+
+        wallet.addTransactionSigner(new ReplaceByFeeSigner());
+        val sendRequest = SendRequest.to(new ECKey().toAddress(networkParameters()), Coin.COIN.add(Coin.CENT));
+        wallet.completeTx(sendRequest);
+
+        assertEquals(2, sendRequest.tx.getInputs().size());
+        assertTrue(sendRequest.tx.isOptInFullRBF());
+        sendRequest.tx.getInputs().forEach(input -> {
+            assertEquals(ReplaceByFeeSigner.REPLACEABLE_SEQUENCE, input.getSequenceNumber());
+            input.verify(input.getConnectedOutput());
+        });
+    }
+
+    @Test
+    public void testWalletsWithoutTheSignerDoNotSignal() throws Exception {
+
+        val sendRequest = SendRequest.to(new ECKey().toAddress(networkParameters()), Coin.CENT);
+        wallet.completeTx(sendRequest);
+
+        assertFalse(sendRequest.tx.isOptInFullRBF());
+    }
+
+    private static void fund(Wallet wallet, int seed) throws Exception {
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{(byte) seed}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(funding, null);
+    }
+}
@@ -0,0 +1,152 @@
+package bitcoin.transaction;
+
+import bitcoin.chain.ChainEngine;
+import bitcoin.fee.FeeEstimationProperties;
+import bitcoin.fee.FeeEstimator;
+import bitcoin.fee.FeeTarget;
+import bitcoin.wallet.WalletRepository;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBroadcast;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpendQueueTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    private final SpendQueueProperties spendQueueProperties = new SpendQueueProperties();
+
+    private Wallet wallet;
+
+    private WalletRepository walletRepository;
+
+    private SpendQueue spendQueue;
+
+    // Spends run on their own never reach the chain, only the batched payments broadcast themselves
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+        wallet = new Wallet(networkParameters());
+        walletRepository = new WalletRepository() {
+            @Override
+            public Option<Wallet> findWalletById(UUID id) {
+                return Option.when(id.equals(walletId), wallet);
+            }
+        };
+        spendQueue = new SpendQueue(walletRepository, new FeeEstimator(new FeeEstimationProperties()), spendQueueProperties, null);
+    }
+
+    @After
+    public void tearDown() {
+        spendQueue.close();
+    }
+
+    @Test
+    public void testSpendsOfAWalletNeverOverlap() {
+
+        val running = new AtomicInteger();
+        val maximumRunning = new AtomicInteger();
+
+        val results = List.range(0, 20).map(index -> spendQueue.submit(walletId, wallet -> {
+            maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            running.decrementAndGet();
+            return index;
+        }));
+
+        assertEquals(List.range(0, 20), results.map(result -> Try.of(result::get).get()));
+        assertEquals(1, maximumRunning.get());
+    }
+
+    @Test
+    public void testSpendOfAnUnknownWalletFails() {
+        try {
+            spendQueue.spend(UUID.randomUUID(), wallet -> wallet);
+            fail("An unknown wallet must not be spent from");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Wallet not found"));
+        }
+    }
+
+    @Test
+    public void testSpendNotStartedBeforeTheTimeoutIsLeftOut() throws Exception {
+
+        spendQueueProperties.setTimeoutMillis(50L);
+        val release = new CountDownLatch(1);
+        val blocking = spendQueue.submit(walletId, wallet -> {
+            release.await();
+            return wallet;
+        });
+        val ran = new AtomicBoolean();
+
+        try {
+            spendQueue.spend(walletId, wallet -> ran.getAndSet(true));
+            fail("The spend queued behind a blocked one must time out");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("not done after 50 ms"));
+        }
+
+        release.countDown();
+        blocking.get();
+        spendQueue.submit(walletId, wallet -> wallet).get();
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void testBatchIsCommittedOnceWhenItsBroadcastFails() throws Exception {
+
+        wallet.allowSpendingUnconfirmedTransactions();
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        wallet.receivePending(funding, null);
+
+        val broadcasts = new CountDownLatch(3);
+        val chainEngine = new ChainEngine(null, null, null, null, null) {
+            @Override
+            public TransactionBroadcast broadcastTransaction(Transaction transaction) {
+                broadcasts.countDown();
+                throw new RuntimeException(String.format("Chain is not running to broadcast txHash=%s", transaction.getHashAsString()));
+            }
+        };
+        spendQueueProperties.setBatchWindowMillis(200L);
+        spendQueueProperties.setBroadcastRetryMillis(10L);
+        val batchingQueue = new SpendQueue(walletRepository, new FeeEstimator(new FeeEstimationProperties()), spendQueueProperties, chainEngine);
+
+        try {
+            val payments = List.range(0, 3).map(index -> batchingQueue.submit(walletId, new ECKey().toAddress(networkParameters()), Coin.CENT, FeeTarget.SIX_BLOCKS));
+            val transactions = payments.map(payment -> Try.of(payment::get).get());
+
+            assertEquals(1, transactions.distinct().size());
+            assertEquals(4, transactions.head().getOutputs().size());
+            assertEquals(2, wallet.getTransactions(false).size());
+            assertTrue(broadcasts.await(5, TimeUnit.SECONDS));
+            assertEquals(2, wallet.getTransactions(false).size());
+        } finally {
+            batchingQueue.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bitcoin.transaction;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionVerifierTest {
+
+    private final TransactionVerifier transactionVerifier = new TransactionVerifier(new TransactionVerificationProperties());
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testInputsAreVerifiedOnceAndBadSignaturesRejected() {
+
+        val key = new ECKey();
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        for (int index = 0; index < 8; index++) {
+            funding.addOutput(Coin.COIN, key.toAddress(networkParameters()));
+        }
+
+        // The spending transaction comes in the same batch as the one it spends
+        val spending = spend(funding, key);
+        transactionVerifier.verify(List.of(funding, spending), outPoint -> Option.none());
+        assertEquals(8, transactionVerifier.getVerifiedInputCount());
+
+        transactionVerifier.verify(List.of(spending), outPoint -> Option.of(funding.getOutput(outPoint.getIndex())));
+        assertEquals(8, transactionVerifier.getVerifiedInputCount());
+        assertEquals(8, transactionVerifier.getCachedInputCount());
+
+        try {
+            transactionVerifier.verify(List.of(spend(funding, new ECKey())), outPoint -> Option.of(funding.getOutput(outPoint.getIndex())));
+            fail("Signatures of another key must not verify");
+        } catch (RuntimeException e) {
+            assertEquals(8, transactionVerifier.getCachedInputCount());
+        }
+    }
+
+    @Test
+    public void testSpentOutputsAndOutputsSpentTwiceInTheBatchAreRejected() {
+
+        val key = new ECKey();
+        val funding = new Transaction(networkParameters());
+        funding.addInput(Sha256Hash.of(new byte[]{2}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        funding.addOutput(Coin.COIN, key.toAddress(networkParameters()));
+        funding.addOutput(Coin.COIN, key.toAddress(networkParameters()));
+
+        val spending = spend(funding, key);
+        TransactionVerifier.verifyUnspent(List.of(spending), outPoint -> Option.of(funding.getOutput(outPoint.getIndex())));
+
+        try {
+            TransactionVerifier.verifyUnspent(List.of(spending, spend(funding, new ECKey())), outPoint -> Option.none());
+            fail("Two transactions of the batch must not spend the same output");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("already spent"));
+        }
+
+        funding.getOutput(1).markAsSpent(spending.getInput(1));
+        try {
+            TransactionVerifier.verifyUnspent(List.of(spend(funding, key)), outPoint -> Option.of(funding.getOutput(outPoint.getIndex())));
+            fail("An output the wallet already spent must not be spent again");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("already spent"));
+        }
+
+        // The transaction spending it is submitted again
+        TransactionVerifier.verifyUnspent(List.of(spending), outPoint -> Option.of(funding.getOutput(outPoint.getIndex())));
+    }
+
+    private static Transaction spend(Transaction funding, ECKey key) {
+        val spending = new Transaction(networkParameters());
+        funding.getOutputs().forEach(spending::addInput);
+        spending.addOutput(Coin.CENT, new ECKey().toAddress(networkParameters()));
+        for (int index = 0; index < spending.getInputs().size(); index++) {
+            val signature = spending.calculateSignature(index, key, funding.getOutput(index).getScriptBytes(), Transaction.SigHash.ALL, false);
+            spending.getInput(index).setScriptSig(ScriptBuilder.createInputScript(new TransactionSignature(signature.r, signature.s), key));
+        }
+        return spending;
+    }
+}
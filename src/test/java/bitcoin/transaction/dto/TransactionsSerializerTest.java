@@ -0,0 +1,57 @@
+package bitcoin.transaction.dto;
+
+import bitcoin.config.SerializationConfig;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vavr.collection.LinkedHashSet;
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.script.ScriptBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static io.vavr.API.Tuple;
+import static org.junit.Assert.assertEquals;
+
+public class TransactionsSerializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new SerializationConfig().vavrModule())
+            .registerModule(new SerializationConfig().parameterNamesModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testStreamedTransactionsAreWrittenAsTransactionsDto() throws Exception {
+
+        val payment = new Transaction(networkParameters());
+        payment.addInput(Sha256Hash.of(new byte[]{1}), 0, new ScriptBuilder().data(new byte[]{1, 2}).build());
+        payment.addInput(Sha256Hash.of(new byte[]{2}), 7, new ScriptBuilder().build());
+        payment.addOutput(Coin.COIN, new ECKey().toAddress(networkParameters()));
+        payment.addOutput(Coin.ZERO, ScriptBuilder.createP2SHOutputScript(new byte[20]));
+        payment.setLockTime(500);
+
+        val unsigned = new Transaction(networkParameters());
+        unsigned.addInput(payment.getOutput(0)).clearScriptBytes();
+        unsigned.addOutput(Coin.CENT, new ECKey().toAddress(networkParameters()));
+
+        val transactions = List.of(Tuple(payment, 1000L), Tuple(unsigned, (Long) null), Tuple(payment, 1000L));
+
+        assertEquals(
+                objectMapper.writeValueAsString(new TransactionsDto(LinkedHashSet.ofAll(transactions.map(transaction -> TransactionDto.of(transaction._1, transaction._2))))),
+                objectMapper.writeValueAsString(StreamedTransactionsDto.of(transactions)));
+        assertEquals(
+                objectMapper.writeValueAsString(new TransactionsDto(LinkedHashSet.empty())),
+                objectMapper.writeValueAsString(StreamedTransactionsDto.of(List.empty())));
+    }
+}
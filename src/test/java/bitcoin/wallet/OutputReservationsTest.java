@@ -0,0 +1,44 @@
+package bitcoin.wallet;
+
+import bitcoin.TestTransactions;
+import io.vavr.collection.List;
+import lombok.val;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.CoinSelection;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputReservationsTest {
+
+    private final OutputReservations outputReservations = new OutputReservations();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testReservedOutputsAreLeftOutUntilReleasedOrExpired() {
+
+        val reserved = TestTransactions.transaction(1).getOutput(0);
+        val expired = TestTransactions.transaction(2).getOutput(0);
+        val free = TestTransactions.transaction(3).getOutput(0);
+        outputReservations.reserve(List.of(reserved.getOutPointFor()), System.currentTimeMillis() + 60000L);
+        outputReservations.reserve(List.of(expired.getOutPointFor()), System.currentTimeMillis() - 1L);
+
+        val offered = outputReservations.coinSelector((target, candidates) -> new CoinSelection(Coin.ZERO, candidates)).select(Coin.ZERO, List.of(reserved, expired, free).toJavaList());
+
+        assertEquals(List.of(expired, free), List.ofAll(offered.gathered).map(TransactionOutput.class::cast));
+        assertTrue(outputReservations.isReserved(reserved.getOutPointFor()));
+
+        outputReservations.release(List.of(reserved.getOutPointFor()));
+        assertFalse(outputReservations.isReserved(reserved.getOutPointFor()));
+    }
+}
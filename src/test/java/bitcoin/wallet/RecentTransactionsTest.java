@@ -0,0 +1,44 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static bitcoin.TestTransactions.transaction;
+import static org.junit.Assert.assertEquals;
+
+public class RecentTransactionsTest {
+
+    @Test
+    public void testLatestAreNewestFirst() {
+
+        val recentTransactions = new RecentTransactions(10);
+        val oldest = transaction(1L, 1000L);
+        val newest = transaction(2L, 3000L);
+        val middle = transaction(3L, 2000L);
+
+        List.of(oldest, newest, middle).forEach(recentTransactions::update);
+
+        assertEquals(List.of(newest, middle), recentTransactions.latest(2));
+        assertEquals(List.of(newest, middle, oldest), recentTransactions.latest(5));
+    }
+
+    @Test
+    public void testUpdatedTransactionMovesToTheFrontAndOldestIsEvicted() {
+
+        val recentTransactions = new RecentTransactions(2);
+        val first = transaction(1L, 1000L);
+        val second = transaction(2L, 2000L);
+        val third = transaction(3L, 3000L);
+
+        recentTransactions.update(first);
+        recentTransactions.update(second);
+        first.setUpdateTime(new Date(4000L));
+        recentTransactions.update(first);
+        recentTransactions.update(third);
+
+        assertEquals(List.of(first, third), recentTransactions.latest(10));
+    }
+}
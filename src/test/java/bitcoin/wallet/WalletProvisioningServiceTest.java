@@ -0,0 +1,91 @@
+package bitcoin.wallet;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import lombok.val;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.vavr.API.Tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WalletProvisioningServiceTest {
+
+    private final Set<UUID> runningWalletIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    // Only what provisioning uses, wallets are ids that are running until released
+    private final WalletService walletService = new WalletService(null, null, null, null, null, null, null, null, null, null) {
+
+        @Override
+        Tuple2<UUID, List<String>> provisionWallet(String passphrase, int wordNumber) {
+            created.incrementAndGet();
+            val walletId = UUID.randomUUID();
+            runningWalletIds.add(walletId);
+            return Tuple(walletId, List.of("mnemonic"));
+        }
+
+        @Override
+        public byte[] releaseWallet(UUID walletId) {
+            runningWalletIds.remove(walletId);
+            return new byte[0];
+        }
+
+        @Override
+        public void deleteWalletFile(UUID walletId) {
+        }
+    };
+
+    private final WalletProvisioningProperties walletProvisioningProperties = new WalletProvisioningProperties();
+
+    private WalletProvisioningService walletProvisioningService;
+
+    @After
+    public void tearDown() {
+        walletProvisioningService.close();
+    }
+
+    @Test
+    public void testEveryWalletIsDelivered() throws Exception {
+
+        walletProvisioningService = new WalletProvisioningService(walletService, walletProvisioningProperties);
+        val delivered = ConcurrentHashMap.<UUID>newKeySet();
+
+        walletProvisioningService.provisionWallets(20, "password", 12, wallet -> delivered.add(wallet._1)).get();
+
+        assertEquals(20, delivered.size());
+        assertEquals(runningWalletIds, delivered);
+    }
+
+    @Test
+    public void testFailedDeliveryStopsProvisioningAndDiscardsTheWallet() throws Exception {
+
+        walletProvisioningProperties.setThreads(1);
+        walletProvisioningService = new WalletProvisioningService(walletService, walletProvisioningProperties);
+        val delivered = ConcurrentHashMap.<UUID>newKeySet();
+
+        try {
+            walletProvisioningService.provisionWallets(5, "password", 12, wallet -> {
+                if (delivered.size() == 2) {
+                    throw new RuntimeException("Client went away");
+                }
+                delivered.add(wallet._1);
+            }).get();
+            fail("A failed delivery must fail the provisioning");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("stopped after 2 of 5 wallets were delivered"));
+        }
+
+        assertEquals(3, created.get());
+        assertEquals(delivered, runningWalletIds);
+    }
+}
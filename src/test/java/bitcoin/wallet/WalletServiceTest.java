@@ -0,0 +1,35 @@
+package bitcoin.wallet;
+
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WalletServiceTest {
+
+    private final WalletService walletService = new WalletService(null, null, null, null, null, null, null, null, null, null);
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(networkParameters()));
+    }
+
+    @Test
+    public void testWatchingWalletNeedsACreationTime() {
+
+        val xpub = new Wallet(networkParameters()).getWatchingKey().serializePubB58(networkParameters());
+
+        try {
+            walletService.createWatchingWallet(xpub, 0L, Option.none(), Option.none());
+            fail("A watching wallet without a creation time would be scanned from the start of the chain");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Invalid creationTime=0"));
+        }
+    }
+}
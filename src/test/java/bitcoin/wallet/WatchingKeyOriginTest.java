@@ -0,0 +1,76 @@
+package bitcoin.wallet;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.val;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicHierarchy;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.wallet.DeterministicSeed;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static bitcoin.config.NetworkConfig.networkParameters;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WatchingKeyOriginTest {
+
+    private static final List<String> MNEMONIC = List.of("abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "about");
+
+    private static final List<ChildNumber> ACCOUNT_PATH = List.of(new ChildNumber(44, true), new ChildNumber(1, true), new ChildNumber(0, true));
+
+    private DeterministicHierarchy hierarchy;
+
+    private String xpub;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(networkParameters()));
+        hierarchy = new DeterministicHierarchy(HDKeyDerivation.createMasterPrivateKey(new DeterministicSeed(MNEMONIC.toJavaList(), null, "", 0L).getSeedBytes()));
+        xpub = hierarchy.get(ACCOUNT_PATH.toJavaList(), false, true).serializePubB58(networkParameters());
+    }
+
+    // The signer derives the key of the wallet from the master key alone
+    @Test
+    public void testKeysOfADeepXpubAreFoundFromTheMasterKey() {
+
+        val masterFingerprint = String.format("%08x", hierarchy.getRootKey().getFingerprint());
+        val wallet = Wallet.fromWatchingKeyB58(networkParameters(), xpub, Utils.currentTimeSeconds());
+        WatchingKeyOrigin.of(DeterministicKey.deserializeB58(xpub, networkParameters()), Option.of(masterFingerprint), Option.of("m/44'/1'/0'")).saveTo(wallet);
+        val key = (DeterministicKey) wallet.freshReceiveKey();
+
+        val keyOrigin = WatchingKeyOrigin.of(wallet);
+        val path = keyOrigin.pathOf(key, wallet.getWatchingKey());
+
+        assertEquals(hierarchy.getRootKey().getFingerprint(), keyOrigin.getMasterFingerprint());
+        assertEquals(ACCOUNT_PATH.appendAll(List.of(ChildNumber.ZERO, ChildNumber.ZERO)), path);
+        assertArrayEquals(key.getPubKey(), hierarchy.get(path.toJavaList(), false, true).getPubKey());
+    }
+
+    @Test
+    public void testDeepXpubNeedsItsOrigin() {
+        try {
+            WatchingKeyOrigin.of(DeterministicKey.deserializeB58(xpub, networkParameters()), Option.none(), Option.none());
+            fail("The master fingerprint and the path of an xpub at depth 3 cannot be told from the xpub");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("depth=3"));
+        }
+    }
+
+    @Test
+    public void testDerivationPathMustEndAtTheXpub() {
+        try {
+            WatchingKeyOrigin.of(DeterministicKey.deserializeB58(xpub, networkParameters()), Option.of("00000000"), Option.of("m/44'/1'/1'"));
+            fail("A path ending at another child is not the origin of the xpub");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Invalid derivationPath"));
+        }
+    }
+}